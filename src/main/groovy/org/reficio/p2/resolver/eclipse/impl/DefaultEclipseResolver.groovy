@@ -18,8 +18,12 @@
  */
 package org.reficio.p2.resolver.eclipse.impl
 
+import org.apache.commons.io.FileUtils
 import org.apache.commons.io.FilenameUtils
+import org.reficio.p2.jfr.P2Event
+import org.reficio.p2.jfr.P2Events
 import org.reficio.p2.logger.Logger
+import org.reficio.p2.resolver.RepositoryRouter
 import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest
 import org.reficio.p2.resolver.eclipse.EclipseResolutionResponse
 import org.reficio.p2.resolver.eclipse.EclipseResolver
@@ -28,10 +32,22 @@ class DefaultEclipseResolver implements EclipseResolver {
 
     final File target
     final List<?> repositories
+    final RepositoryRouter router
+    final File cacheDirectory
 
     def DefaultEclipseResolver(List<?> repositories, File target) {
+        this(repositories, target, null, null)
+    }
+
+    /**
+     * @param cacheDirectory folder the downloaded artifacts are kept in, keyed by the repository url, so that they are
+     *                       not downloaded again; null disables the cache
+     */
+    def DefaultEclipseResolver(List<?> repositories, File target, RepositoryRouter router, File cacheDirectory) {
         this.target = target
         this.repositories = new ArrayList<?>(repositories)
+        this.router = router
+        this.cacheDirectory = cacheDirectory
     }
 
     @Override
@@ -62,25 +78,78 @@ class DefaultEclipseResolver implements EclipseResolver {
 
     File download(String name, EclipseResolutionRequest request, File destination) {
         File file = new File(destination, name)
-        for (def repository : repositories) {
-            if (repository.type == "p2") {
-                String url = repository.url + request.getTypeDirectory() + name
-                Logger.getLog().info("\tDownloading: " + url.toURL())
-                try {
-                    use(FileBinaryCategory)
-                            {
-                                file << url.toURL()
-                            }
-                    if (file.exists()) {
-                        request.setSourceURL(repository.url.toURL().toString())
-                        return file
-                    }
-                } catch (Exception ex) {
-                    Logger.getLog().info("An error occurred: " + ex.toString())
+        List<?> p2Repositories = routeRepositories(request.id).findAll { it.type == "p2" }
+        // a cached copy in any of the repositories is taken before going to the network
+        for (def repository : p2Repositories) {
+            File cached = cachedFile(repository.url, request.getTypeDirectory() + name)
+            if (cached != null && cached.isFile()) {
+                Logger.getLog().detail("\tCached: " + cached)
+                FileUtils.copyFile(cached, file)
+                return downloaded(file, request, repository)
+            }
+        }
+        for (def repository : p2Repositories) {
+            String url = repository.url + request.getTypeDirectory() + name
+            Logger.getLog().detail("\tDownloading: " + url.toURL())
+            P2Event event = P2Events.download(name, url)
+            try {
+                use(FileBinaryCategory)
+                        {
+                            file << url.toURL()
+                        }
+                if (file.exists()) {
+                    event.bytes(file.length()).success()
+                    cache(file, cachedFile(repository.url, request.getTypeDirectory() + name))
+                    return downloaded(file, request, repository)
                 }
+            } catch (Exception ex) {
+                Logger.getLog().info("An error occurred: " + ex.toString())
+            } finally {
+                event.commit()
             }
         }
     }
 
+    private File downloaded(File file, EclipseResolutionRequest request, repository) {
+        request.setSourceURL(repository.url.toURL().toString())
+        router?.learn(RepositoryRouter.P2, request.id, repository.id)
+        return file
+    }
+
+    private File cachedFile(String repositoryUrl, String path) {
+        if (cacheDirectory == null) {
+            return null
+        }
+        // e.g. download.eclipse.org_releases_2019-12/plugins/org.eclipse.core.runtime_3.17.0.v20191122-2104.jar
+        String repository = repositoryUrl.replaceFirst('^[a-zA-Z]+:/*', '').replaceAll('/+$', '').replaceAll('[^a-zA-Z0-9._-]', '_')
+        return new File(new File(cacheDirectory, repository), path)
+    }
+
+    private static void cache(File file, File cached) {
+        if (cached == null) {
+            return
+        }
+        // the cached file becomes visible only once it's complete, the cache may be shared by concurrent builds
+        File temp = new File(cached.parentFile, cached.name + "." + UUID.randomUUID() + ".part")
+        try {
+            FileUtils.copyFile(file, temp)
+            if (!temp.renameTo(cached)) {
+                FileUtils.deleteQuietly(temp)
+            }
+        } catch (IOException ex) {
+            FileUtils.deleteQuietly(temp)
+            Logger.getLog().warn("Cannot cache ${file.name}: ${ex}")
+        }
+    }
+
+    private List<?> routeRepositories(String id) {
+        if (router == null) {
+            return repositories
+        }
+        List<?> p2Repositories = repositories.findAll { it.type == "p2" }
+        List<String> routed = router.route(RepositoryRouter.P2, id, p2Repositories.collect { it.id })
+        return routed.collect { String routedId -> p2Repositories.find { it.id == routedId } }
+    }
+
 }
 
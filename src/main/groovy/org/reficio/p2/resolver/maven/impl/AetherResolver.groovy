@@ -19,13 +19,24 @@
 package org.reficio.p2.resolver.maven.impl
 
 import org.apache.commons.lang.StringUtils
+import org.reficio.p2.jfr.P2Event
+import org.reficio.p2.jfr.P2Events
 import org.reficio.p2.logger.Logger
+import org.reficio.p2.resolver.RepositoryRouter
 import org.reficio.p2.resolver.maven.impl.facade.AetherFacade
 import org.reficio.p2.resolver.maven.Artifact
 import org.reficio.p2.resolver.maven.ArtifactResolutionRequest
 import org.reficio.p2.resolver.maven.ArtifactResolutionResult
 import org.reficio.p2.resolver.maven.ArtifactResolver
+import org.reficio.p2.resolver.maven.ResolutionLock
+import org.reficio.p2.resolver.maven.ResolutionLock.LockedArtifact
+import org.reficio.p2.resolver.maven.ResolutionMode
+import org.reficio.p2.resolver.maven.ResolutionProfiler
 import org.reficio.p2.resolver.maven.ResolvedArtifact
+import org.reficio.p2.utils.HashUtils
+
+import static com.google.common.base.Preconditions.checkArgument
+import static com.google.common.base.Preconditions.checkNotNull
 
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
@@ -42,21 +53,75 @@ class AetherResolver implements ArtifactResolver {
     final List<?> remoteRepositories
     final String scope
     final AetherFacade aether
+    final ResolutionLock lock
+    final ResolutionMode mode
+    final ResolutionProfiler profiler
+    final RepositoryRouter router
 
     AetherResolver(repositorySystem, repositorySystemSession, List<?> repos) {
         this(repositorySystem, repositorySystemSession, repos, DEFAULT_SCOPE)
     }
 
     AetherResolver(repositorySystem, repositorySystemSession, List<?> remoteRepositories, String scope) {
-        this.repositorySystem = repositorySystem
-        this.repositorySystemSession = repositorySystemSession
-        this.remoteRepositories = remoteRepositories
-        this.scope = scope
-        this.aether = Aether.facade(repositorySystemSession)
+        this(builder()
+                .repositorySystem(repositorySystem)
+                .repositorySystemSession(repositorySystemSession)
+                .remoteRepositories(remoteRepositories)
+                .scope(scope))
+    }
+
+    private AetherResolver(Builder builder) {
+        this.repositorySystem = builder.repositorySystem
+        this.aether = Aether.facade(builder.repositorySystemSession)
+        this.repositorySystemSession = builder.profiler != null ?
+                aether.newProfilingSession(builder.repositorySystemSession, builder.profiler) : builder.repositorySystemSession
+        this.remoteRepositories = builder.remoteRepositories
+        this.scope = builder.scope
+        this.lock = builder.lock
+        this.mode = builder.mode
+        this.profiler = builder.profiler
+        this.router = builder.router
+    }
+
+    static Builder builder() {
+        return new Builder()
     }
 
     @Override
     ArtifactResolutionResult resolve(ArtifactResolutionRequest request) {
+        P2Event event = P2Events.resolve(request.rootArtifactId)
+        long start = System.nanoTime()
+        try {
+            ArtifactResolutionResult result = resolveInMode(request)
+            event.bytes(resolvedBytes(result)).success()
+            return result
+        } finally {
+            event.commit()
+            profiler?.rootResolved(request.rootArtifactId, System.nanoTime() - start)
+        }
+    }
+
+    private ArtifactResolutionResult resolveInMode(ArtifactResolutionRequest request) {
+        if (mode == ResolutionMode.LOCKED) {
+            return resolveLocked(request)
+        }
+        ArtifactResolutionResult result = resolveGraph(request)
+        if (mode == ResolutionMode.LOCK) {
+            lock.put(request, result)
+        }
+        return result
+    }
+
+    private static long resolvedBytes(ArtifactResolutionResult result) {
+        long bytes = 0
+        for (ResolvedArtifact resolvedArtifact : result.resolvedArtifacts) {
+            File file = resolvedArtifact.artifact.file
+            bytes += file != null ? file.length() : 0
+        }
+        return bytes
+    }
+
+    private ArtifactResolutionResult resolveGraph(ArtifactResolutionRequest request) {
         List<ResolvedArtifact> result = []
         List<Artifact> resolvedBinaries = resolveBinaries(request)
         for (Artifact resolvedBinary : resolvedBinaries) {
@@ -74,6 +139,43 @@ class AetherResolver implements ArtifactResolver {
         return new ArtifactResolutionResult(result)
     }
 
+    /**
+     * Resolves the locked closure without collecting the dependency graph. All the artifacts are requested in one batch,
+     * so that aether can serve them from the local repository or download the missing ones concurrently.
+     */
+    private ArtifactResolutionResult resolveLocked(ArtifactResolutionRequest request) {
+        List<LockedArtifact> lockedArtifacts = lock.get(request)
+        if (lockedArtifacts == null) {
+            throw new RuntimeException("p2-maven-plugin misconfiguration: artifact [${request.rootArtifactId}] " +
+                    "is not in the lockfile, regenerate it using resolutionMode=lock")
+        }
+        List<?> artifactRequests = []
+        for (LockedArtifact locked : lockedArtifacts) {
+            artifactRequests += populateArtifactRequest(locked.coordinates)
+            if (locked.sourceAvailable) {
+                artifactRequests += populateArtifactRequest("${locked.groupId}:${locked.artifactId}:jar:sources:${locked.version}".toString())
+            }
+        }
+        Iterator<?> artifactResults = repositorySystem.resolveArtifacts(repositorySystemSession, artifactRequests).iterator()
+        List<ResolvedArtifact> result = []
+        for (LockedArtifact locked : lockedArtifacts) {
+            Artifact binary = verifyLocked(learn(artifactResults.next()).artifact, locked.sha256)
+            Artifact source = locked.sourceAvailable ? verifyLocked(learn(artifactResults.next()).artifact, locked.sourceSha256) : null
+            result += new ResolvedArtifact(binary, source, locked.root)
+        }
+        return new ArtifactResolutionResult(result)
+    }
+
+    private Artifact verifyLocked(aetherArtifact, String sha256) {
+        Artifact artifact = aether.translateArtifactAetherToGeneric(aetherArtifact)
+        String actual = HashUtils.sha256(artifact.file)
+        if (actual != sha256) {
+            throw new RuntimeException("Checksum of [${artifact.longId}] does not match the lockfile, " +
+                    "expected ${sha256} but was ${actual}")
+        }
+        return artifact
+    }
+
     private static boolean isRoot(ArtifactResolutionRequest request, Artifact artifact) {
         String rootId = request.getRootArtifactId();
         return rootId == artifact.getShortId() || rootId == artifact.getExtendedId() || rootId == artifact.getLongId()
@@ -87,23 +189,29 @@ class AetherResolver implements ArtifactResolver {
         }
     }
 
-    private Artifact resolveSourceForArtifact(Artifact artifact) {
+    Artifact resolveSourceForArtifact(Artifact artifact) {
         def artifactRequest = populateSourceRequest(artifact)
-        def artifactResult = repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest).artifact
+        def artifactResult = learn(repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest)).artifact
         return aether.translateArtifactAetherToGeneric(artifactResult)
     }
 
     private resolveNoTransitive(String artifact) {
         def artifactRequest = populateArtifactRequest(artifact)
-        return repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest).artifact
+        return learn(repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest)).artifact
     }
 
     private List<?> resolveWithTransitive(String artifact, List<String> excludes) {
         def collectRequest = populateCollectRequest(artifact)
         def dependencyNode = repositorySystem.collectDependencies(repositorySystemSession, collectRequest).root
+        if (router != null) {
+            routeNodes(dependencyNode, Collections.newSetFromMap(new IdentityHashMap()))
+        }
         def dependencyRequest = aether.newDependencyRequest(dependencyNode, null)
         dependencyRequest.filter = getFilter(artifact, transformExcludes(artifact, excludes))
-        repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest)
+        def dependencyResult = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest)
+        for (def artifactResult : dependencyResult.artifactResults) {
+            learn(artifactResult)
+        }
         def preorderNodeListGenerator = aether.newPreorderNodeListGenerator()
         dependencyNode.accept(preorderNodeListGenerator)
         return preorderNodeListGenerator.getArtifacts(false)
@@ -140,38 +248,137 @@ class AetherResolver implements ArtifactResolver {
     }
 
 
+    /**
+     * Routes the downloads of the collected artifacts, each by its own groupId. The nodes carry the repositories
+     * their artifacts are requested from, which are all the repositories of the collect request.
+     */
+    private void routeNodes(node, Set<?> visited) {
+        if (!visited.add(node)) {
+            return
+        }
+        if (node.artifact != null) {
+            node.repositories = routeRepositories(node.artifact.groupId)
+        }
+        for (def child : node.children) {
+            routeNodes(child, visited)
+        }
+    }
+
     private populateCollectRequest(String artifact) {
         def collectRequest = aether.newCollectRequest()
+        def rootArtifact = aether.newDefaultArtifact(artifact)
+        // the transitive dependencies may be hosted elsewhere than the root, so the graph is collected from all
+        // the repositories - the poms are not routed; the downloads of the artifacts are routed once collected
         for (def remoteRepository : remoteRepositories) {
             collectRequest.addRepository(remoteRepository)
         }
-        collectRequest.addDependency(aether.newDependency(aether.newDefaultArtifact(artifact), scope))
+        collectRequest.addDependency(aether.newDependency(rootArtifact, scope))
         return collectRequest
     }
 
     private populateArtifactRequest(String artifact) {
-        def artifactRequest = populateRepos(aether.newArtifactRequest())
-        artifactRequest.artifact = aether.newDefaultArtifact(artifact)
+        def aetherArtifact = aether.newDefaultArtifact(artifact)
+        def artifactRequest = populateRepos(aether.newArtifactRequest(), aetherArtifact.groupId)
+        artifactRequest.artifact = aetherArtifact
         return artifactRequest
     }
 
     private populateSourceRequest(Artifact artifact) {
-        def artifactRequest = populateRepos(aether.newArtifactRequest())
+        def artifactRequest = populateRepos(aether.newArtifactRequest(), artifact.groupId)
         def aetherArtifact = aether.translateArtifactGenericToAether(artifact)
         def sourceArtifact = aether.newSubArtifact(aetherArtifact, "sources", "jar")
         artifactRequest.artifact = sourceArtifact
         return artifactRequest
     }
 
-    private populateRepos(artifactRequest) {
-        for (def remoteRepository : remoteRepositories) {
+    private populateRepos(artifactRequest, String groupId) {
+        for (def remoteRepository : routeRepositories(groupId)) {
             artifactRequest.addRepository(remoteRepository)
         }
         return artifactRequest
     }
 
+    private List<?> routeRepositories(String groupId) {
+        if (router == null) {
+            return remoteRepositories
+        }
+        List<String> routed = router.route(RepositoryRouter.MAVEN, groupId, remoteRepositories.collect { it.id })
+        return routed.collect { String id -> remoteRepositories.find { it.id == id } }
+    }
+
+    private learn(artifactResult) {
+        if (router != null && artifactResult.artifact != null) {
+            router.learn(RepositoryRouter.MAVEN, artifactResult.artifact.groupId, aether.remoteRepositoryId(artifactResult.repository))
+        }
+        return artifactResult
+    }
+
     private List<Artifact> translateArtifactsAetherToGeneric(List<?> artifacts) {
         artifacts.collect() { artifact -> aether.translateArtifactAetherToGeneric(artifact) }
     }
 
+    static class Builder {
+        private repositorySystem
+        private repositorySystemSession
+        private List<?> remoteRepositories
+        private String scope = DEFAULT_SCOPE
+        private ResolutionLock lock
+        private ResolutionMode mode = ResolutionMode.RESOLVE
+        private ResolutionProfiler profiler
+        private RepositoryRouter router
+
+        Builder repositorySystem(repositorySystem) {
+            this.repositorySystem = checkNotNull(repositorySystem, "repositorySystem cannot be null")
+            return this
+        }
+
+        Builder repositorySystemSession(repositorySystemSession) {
+            this.repositorySystemSession = checkNotNull(repositorySystemSession, "repositorySystemSession cannot be null")
+            return this
+        }
+
+        Builder remoteRepositories(List<?> remoteRepositories) {
+            this.remoteRepositories = checkNotNull(remoteRepositories, "remoteRepositories cannot be null")
+            return this
+        }
+
+        Builder scope(String scope) {
+            this.scope = checkNotNull(scope, "scope cannot be null")
+            return this
+        }
+
+        /**
+         * Lock the closures are recorded in (lock mode) or resolved from (locked mode), not needed to resolve.
+         */
+        Builder lock(ResolutionLock lock, ResolutionMode mode) {
+            this.lock = lock
+            this.mode = checkNotNull(mode, "mode cannot be null")
+            return this
+        }
+
+        /**
+         * Profiler of the transfers and of the resolution of every root, not used if not set.
+         */
+        Builder profiler(ResolutionProfiler profiler) {
+            this.profiler = profiler
+            return this
+        }
+
+        /**
+         * Router of the artifact and source requests, all the repositories are used if not set.
+         */
+        Builder router(RepositoryRouter router) {
+            this.router = router
+            return this
+        }
+
+        AetherResolver build() {
+            checkNotNull(repositorySystem, "repositorySystem cannot be null")
+            checkNotNull(repositorySystemSession, "repositorySystemSession cannot be null")
+            checkNotNull(remoteRepositories, "remoteRepositories cannot be null")
+            checkArgument(mode == ResolutionMode.RESOLVE || lock != null, "mode %s requires a lock", mode)
+            return new AetherResolver(this)
+        }
+    }
+
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven.impl
+
+import com.google.common.collect.ArrayListMultimap
+import com.google.common.collect.ListMultimap
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
+import org.apache.commons.lang.StringUtils
+import org.apache.maven.project.DefaultDependencyResolutionRequest
+import org.apache.maven.project.MavenProject
+import org.apache.maven.project.ProjectDependenciesResolver
+import org.reficio.p2.logger.Logger
+import org.reficio.p2.resolver.maven.Artifact
+import org.reficio.p2.resolver.maven.ArtifactResolutionRequest
+import org.reficio.p2.resolver.maven.ArtifactResolutionResult
+import org.reficio.p2.resolver.maven.ArtifactResolver
+import org.reficio.p2.resolver.maven.ResolutionLock
+import org.reficio.p2.resolver.maven.ResolvedArtifact
+import org.reficio.p2.resolver.maven.impl.facade.AetherFacade
+
+/**
+ * Resolves the dependencies of the project from the dependency graph already resolved by maven, so that they are not
+ * resolved again. The closure of each dependency is walked in the dependency graph of the project, where the nodes
+ * omitted as duplicates or conflicts point to the node that won, so that a dependency shared by several parents is
+ * in the closure of each of them. The sources are resolved on demand. Requests for other artifacts, requests with
+ * excludes and dependencies whose closure is not fully resolved by maven, e.g. in the test scope, are passed to
+ * the aether resolver.
+ *
+ * @since 1.4.3
+ */
+@CompileStatic
+class ProjectArtifactResolver implements ArtifactResolver {
+
+    final AetherResolver aetherResolver
+    final ResolutionLock lock
+    final AetherFacade aether
+    final Map<String, org.apache.maven.artifact.Artifact> projectArtifacts = new HashMap<String, org.apache.maven.artifact.Artifact>()
+    final Map<String, org.apache.maven.artifact.Artifact> directDependencies = new HashMap<String, org.apache.maven.artifact.Artifact>()
+    final ListMultimap<String, org.apache.maven.artifact.Artifact> transitiveDependencies =
+            (ListMultimap<String, org.apache.maven.artifact.Artifact>) ArrayListMultimap.create()
+
+    /**
+     * @param projectArtifacts artifacts resolved by maven, including the transitive ones
+     * @param dependencyGraph root node of the dependency graph of the project, see {@link #collectDependencyGraph},
+     *        if null everything is passed to the aether resolver
+     * @param lock if not null, the resolved closures are recorded in it
+     */
+    ProjectArtifactResolver(Collection<org.apache.maven.artifact.Artifact> projectArtifacts, dependencyGraph,
+                            AetherFacade aether, AetherResolver aetherResolver, ResolutionLock lock) {
+        this.aetherResolver = aetherResolver
+        this.lock = lock
+        this.aether = aether
+        for (org.apache.maven.artifact.Artifact artifact : projectArtifacts) {
+            if (artifact.file != null) {
+                this.projectArtifacts.put(toKey(artifact.groupId, artifact.artifactId, artifact.classifier), artifact)
+            }
+        }
+        if (dependencyGraph != null) {
+            for (def node : children(dependencyGraph)) {
+                addDirectDependency(node)
+            }
+        }
+    }
+
+    /**
+     * Collects the dependency graph of the project keeping the nodes omitted as duplicates or conflicts. Nothing is
+     * resolved, maven has already resolved the artifacts of the project.
+     *
+     * @return root node of the graph or null if it cannot be collected
+     */
+    @CompileDynamic
+    static collectDependencyGraph(ProjectDependenciesResolver projectDependenciesResolver, MavenProject project,
+                                  repositorySystemSession, AetherFacade aether) {
+        def request = new DefaultDependencyResolutionRequest(project, aether.newVerboseSession(repositorySystemSession))
+        request.resolutionFilter = aether.newDependencyFilter { node, parents -> false }
+        try {
+            return projectDependenciesResolver.resolve(request).dependencyGraph
+        } catch (Exception ex) {
+            Logger.getLog().warn("Cannot collect the dependency graph of the project, the dependencies will be " +
+                    "resolved again: ${ex.message}")
+            return null
+        }
+    }
+
+    /**
+     * @return id of the artifact as used for the dependencies in the artifact configuration
+     */
+    static String toArtifactId(org.apache.maven.artifact.Artifact artifact) {
+        return artifactIdWithVersion(artifact, artifact.version)
+    }
+
+    private static String artifactIdWithVersion(org.apache.maven.artifact.Artifact artifact, String version) {
+        if (artifact.classifier == null) {
+            return "${artifact.groupId}:${artifact.artifactId}:${version}".toString()
+        }
+        return "${artifact.groupId}:${artifact.artifactId}:jar:${artifact.classifier}:${version}".toString()
+    }
+
+    private static String toKey(String groupId, String artifactId, String classifier) {
+        return "${groupId}:${artifactId}:${StringUtils.defaultString(classifier)}".toString()
+    }
+
+    private void addDirectDependency(node) {
+        org.apache.maven.artifact.Artifact root = toProjectArtifact(node)
+        Set<org.apache.maven.artifact.Artifact> closure = new LinkedHashSet<org.apache.maven.artifact.Artifact>()
+        closure.add(root)
+        if (root == null || !collectClosure(node, closure)) {
+            // a part of the closure has not been resolved by maven, the dependency is left to aether
+            return
+        }
+        closure.remove(root)
+        // a resolved snapshot may carry the timestamped version
+        directDependencies.put(artifactIdWithVersion(root, root.version), root)
+        directDependencies.put(artifactIdWithVersion(root, root.baseVersion), root)
+        transitiveDependencies.putAll(root.id, closure)
+    }
+
+    private boolean collectClosure(node, Set<org.apache.maven.artifact.Artifact> closure) {
+        for (def child : children(node)) {
+            def effectiveChild = winner(child)
+            org.apache.maven.artifact.Artifact artifact = toProjectArtifact(effectiveChild)
+            if (artifact == null) {
+                return false
+            }
+            if (closure.add(artifact) && !collectClosure(effectiveChild, closure)) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * @return the node that won the conflict resolution, it's the one that keeps the children
+     */
+    private winner(node) {
+        def winner = aether.conflictWinner(node)
+        return winner != null ? winner : node
+    }
+
+    @CompileDynamic
+    private static List<?> children(node) {
+        return node.children
+    }
+
+    @CompileDynamic
+    private org.apache.maven.artifact.Artifact toProjectArtifact(node) {
+        def artifact = winner(node).artifact
+        return projectArtifacts.get(toKey(artifact.groupId, artifact.artifactId, artifact.classifier))
+    }
+
+    @Override
+    ArtifactResolutionResult resolve(ArtifactResolutionRequest request) {
+        org.apache.maven.artifact.Artifact root = directDependencies.get(request.rootArtifactId)
+        if (root == null || !request.excludes.isEmpty()) {
+            return aetherResolver.resolve(request)
+        }
+        List<ResolvedArtifact> result = [toResolvedArtifact(root, request, true)]
+        if (request.resolveTransitive) {
+            for (org.apache.maven.artifact.Artifact dependency : transitiveDependencies.get(root.id)) {
+                result.add(toResolvedArtifact(dependency, request, false))
+            }
+        }
+        ArtifactResolutionResult resolutionResult = new ArtifactResolutionResult(result)
+        if (lock != null) {
+            lock.put(request, resolutionResult)
+        }
+        return resolutionResult
+    }
+
+    private ResolvedArtifact toResolvedArtifact(org.apache.maven.artifact.Artifact mavenArtifact,
+                                                ArtifactResolutionRequest request, boolean root) {
+        Artifact artifact = toGeneric(mavenArtifact)
+        Artifact source = null
+        if (request.resolveSource) {
+            try {
+                source = aetherResolver.resolveSourceForArtifact(artifact)
+            } catch (Exception ex) {
+                // will not fail if the source not resolved
+            }
+        }
+        return new ResolvedArtifact(artifact, source, root)
+    }
+
+    private static Artifact toGeneric(org.apache.maven.artifact.Artifact artifact) {
+        String extension = artifact.artifactHandler != null ? artifact.artifactHandler.extension : artifact.type
+        return new Artifact(artifact.groupId, artifact.artifactId, artifact.baseVersion, extension,
+                StringUtils.defaultString(artifact.classifier), artifact.snapshot, artifact.version, artifact.file)
+    }
+
+}
@@ -18,18 +18,35 @@
  */
 package org.reficio.p2.resolver.maven.impl.facade
 
+import org.eclipse.aether.AbstractRepositoryListener
+import org.eclipse.aether.DefaultRepositorySystemSession
+import org.eclipse.aether.RepositoryEvent
+import org.eclipse.aether.RepositoryListener
+import org.eclipse.aether.RepositorySystemSession
 import org.eclipse.aether.artifact.Artifact as AetherArtifact
 import org.eclipse.aether.artifact.DefaultArtifact
 import org.eclipse.aether.collection.CollectRequest
 import org.eclipse.aether.graph.Dependency
 import org.eclipse.aether.graph.DependencyFilter
 import org.eclipse.aether.graph.DependencyNode
+import org.eclipse.aether.repository.ArtifactRepository
+import org.eclipse.aether.repository.RemoteRepository
 import org.eclipse.aether.resolution.ArtifactRequest
 import org.eclipse.aether.resolution.DependencyRequest
+import org.eclipse.aether.transfer.AbstractTransferListener
+import org.eclipse.aether.transfer.ArtifactNotFoundException
+import org.eclipse.aether.transfer.MetadataNotFoundException
+import org.eclipse.aether.transfer.TransferEvent
+import org.eclipse.aether.transfer.TransferListener
+import org.eclipse.aether.transfer.TransferResource
 import org.eclipse.aether.util.artifact.SubArtifact
 import org.eclipse.aether.util.filter.PatternExclusionsDependencyFilter
+import org.eclipse.aether.util.graph.transformer.ConflictResolver
 import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator
+import org.eclipse.aether.util.listener.ChainedRepositoryListener
+import org.eclipse.aether.util.listener.ChainedTransferListener
 import org.reficio.p2.resolver.maven.Artifact
+import org.reficio.p2.resolver.maven.ResolutionProfiler
 
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
@@ -104,4 +121,86 @@ class AetherEclipseFacade implements AetherFacade {
         new DefaultArtifact(a.groupId, a.artifactId, a.classifier, a.extension, a.version, null, a.file)
     }
 
+    @Override
+    def newProfilingSession(repositorySystemSession, ResolutionProfiler profiler) {
+        RepositorySystemSession session = (RepositorySystemSession) repositorySystemSession
+        DefaultRepositorySystemSession profilingSession = new DefaultRepositorySystemSession(session)
+        TransferListener transferListener = new ProfilingTransferListener(profiler)
+        RepositoryListener repositoryListener = new ProfilingRepositoryListener(profiler)
+        profilingSession.transferListener = session.transferListener != null ?
+                new ChainedTransferListener(transferListener, session.transferListener) : transferListener
+        profilingSession.repositoryListener = session.repositoryListener != null ?
+                new ChainedRepositoryListener(repositoryListener, session.repositoryListener) : repositoryListener
+        return profilingSession
+    }
+
+    @Override
+    String remoteRepositoryId(repository) {
+        repository instanceof RemoteRepository ? ((RemoteRepository) repository).id : null
+    }
+
+    @Override
+    def newVerboseSession(repositorySystemSession) {
+        DefaultRepositorySystemSession verboseSession = new DefaultRepositorySystemSession((RepositorySystemSession) repositorySystemSession)
+        verboseSession.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true)
+        return verboseSession
+    }
+
+    @Override
+    def conflictWinner(dependencyNode) {
+        ((DependencyNode) dependencyNode).data.get(ConflictResolver.NODE_DATA_WINNER)
+    }
+
+    static class ProfilingTransferListener extends AbstractTransferListener {
+
+        final ResolutionProfiler profiler
+
+        ProfilingTransferListener(ResolutionProfiler profiler) {
+            this.profiler = profiler
+        }
+
+        @Override
+        void transferSucceeded(TransferEvent event) {
+            record(event, ResolutionProfiler.Outcome.SUCCEEDED)
+        }
+
+        @Override
+        void transferFailed(TransferEvent event) {
+            boolean missing = event.exception instanceof ArtifactNotFoundException ||
+                    event.exception instanceof MetadataNotFoundException
+            record(event, missing ? ResolutionProfiler.Outcome.MISSING : ResolutionProfiler.Outcome.FAILED)
+        }
+
+        private void record(TransferEvent event, ResolutionProfiler.Outcome outcome) {
+            TransferResource resource = event.resource
+            profiler.transfer(resource.repositoryUrl, resource.transferStartTime, event.transferredBytes, outcome)
+        }
+    }
+
+    static class ProfilingRepositoryListener extends AbstractRepositoryListener {
+
+        final ResolutionProfiler profiler
+
+        ProfilingRepositoryListener(ResolutionProfiler profiler) {
+            this.profiler = profiler
+        }
+
+        @Override
+        void artifactDownloading(RepositoryEvent event) {
+            register(event.repository)
+        }
+
+        @Override
+        void metadataDownloading(RepositoryEvent event) {
+            register(event.repository)
+        }
+
+        // the transfers know only the url, the mirrors are named after the repositories they replace
+        private void register(ArtifactRepository repository) {
+            if (repository instanceof RemoteRepository) {
+                profiler.registerRepository(repository.id, ((RemoteRepository) repository).url)
+            }
+        }
+    }
+
 }
@@ -19,6 +19,7 @@
 package org.reficio.p2.resolver.maven.impl.facade
 
 import org.reficio.p2.resolver.maven.Artifact
+import org.reficio.p2.resolver.maven.ResolutionProfiler
 
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
@@ -50,4 +51,24 @@ interface AetherFacade {
 
     def translateArtifactGenericToAether(Artifact artifact)
 
+    /**
+     * Copy of the session with transfer and repository listeners feeding the profiler chained to its own listeners.
+     */
+    def newProfilingSession(repositorySystemSession, ResolutionProfiler profiler)
+
+    /**
+     * Id of the repository if it's a remote repository, null otherwise.
+     */
+    String remoteRepositoryId(repository)
+
+    /**
+     * Copy of the session whose conflict resolution keeps the omitted nodes, each pointing to the node that won.
+     */
+    def newVerboseSession(repositorySystemSession)
+
+    /**
+     * Node that won the conflict resolution over the given node, null if the node was not omitted.
+     */
+    def conflictWinner(dependencyNode)
+
 }
\ No newline at end of file
@@ -19,17 +19,34 @@
 package org.reficio.p2.resolver.maven.impl.facade
 
 import org.reficio.p2.resolver.maven.Artifact
+import org.reficio.p2.resolver.maven.ResolutionProfiler
+import org.sonatype.aether.AbstractRepositoryListener
+import org.sonatype.aether.RepositoryEvent
+import org.sonatype.aether.RepositoryListener
+import org.sonatype.aether.RepositorySystemSession
 import org.sonatype.aether.artifact.Artifact as AetherArtifact
 import org.sonatype.aether.collection.CollectRequest
 import org.sonatype.aether.graph.Dependency
 import org.sonatype.aether.graph.DependencyFilter
 import org.sonatype.aether.graph.DependencyNode
+import org.sonatype.aether.repository.ArtifactRepository
+import org.sonatype.aether.repository.RemoteRepository
 import org.sonatype.aether.resolution.ArtifactRequest
 import org.sonatype.aether.resolution.DependencyRequest
+import org.sonatype.aether.transfer.AbstractTransferListener
+import org.sonatype.aether.transfer.ArtifactNotFoundException
+import org.sonatype.aether.transfer.MetadataNotFoundException
+import org.sonatype.aether.transfer.TransferEvent
+import org.sonatype.aether.transfer.TransferListener
+import org.sonatype.aether.transfer.TransferResource
+import org.sonatype.aether.util.DefaultRepositorySystemSession
 import org.sonatype.aether.util.artifact.DefaultArtifact
 import org.sonatype.aether.util.artifact.SubArtifact
 import org.sonatype.aether.util.filter.PatternExclusionsDependencyFilter
 import org.sonatype.aether.util.graph.PreorderNodeListGenerator
+import org.sonatype.aether.util.graph.transformer.ConflictResolver
+import org.sonatype.aether.util.listener.ChainedRepositoryListener
+import org.sonatype.aether.util.listener.ChainedTransferListener
 
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
@@ -104,4 +121,86 @@ class AetherSonatypeFacade implements AetherFacade {
         new DefaultArtifact(a.groupId, a.artifactId, a.classifier, a.extension, a.version, null, a.file)
     }
 
+    @Override
+    def newProfilingSession(repositorySystemSession, ResolutionProfiler profiler) {
+        RepositorySystemSession session = (RepositorySystemSession) repositorySystemSession
+        DefaultRepositorySystemSession profilingSession = new DefaultRepositorySystemSession(session)
+        TransferListener transferListener = new ProfilingTransferListener(profiler)
+        RepositoryListener repositoryListener = new ProfilingRepositoryListener(profiler)
+        profilingSession.transferListener = session.transferListener != null ?
+                new ChainedTransferListener(transferListener, session.transferListener) : transferListener
+        profilingSession.repositoryListener = session.repositoryListener != null ?
+                new ChainedRepositoryListener(repositoryListener, session.repositoryListener) : repositoryListener
+        return profilingSession
+    }
+
+    @Override
+    String remoteRepositoryId(repository) {
+        repository instanceof RemoteRepository ? ((RemoteRepository) repository).id : null
+    }
+
+    @Override
+    def newVerboseSession(repositorySystemSession) {
+        DefaultRepositorySystemSession verboseSession = new DefaultRepositorySystemSession((RepositorySystemSession) repositorySystemSession)
+        verboseSession.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true)
+        return verboseSession
+    }
+
+    @Override
+    def conflictWinner(dependencyNode) {
+        ((DependencyNode) dependencyNode).data.get(ConflictResolver.NODE_DATA_WINNER)
+    }
+
+    static class ProfilingTransferListener extends AbstractTransferListener {
+
+        final ResolutionProfiler profiler
+
+        ProfilingTransferListener(ResolutionProfiler profiler) {
+            this.profiler = profiler
+        }
+
+        @Override
+        void transferSucceeded(TransferEvent event) {
+            record(event, ResolutionProfiler.Outcome.SUCCEEDED)
+        }
+
+        @Override
+        void transferFailed(TransferEvent event) {
+            boolean missing = event.exception instanceof ArtifactNotFoundException ||
+                    event.exception instanceof MetadataNotFoundException
+            record(event, missing ? ResolutionProfiler.Outcome.MISSING : ResolutionProfiler.Outcome.FAILED)
+        }
+
+        private void record(TransferEvent event, ResolutionProfiler.Outcome outcome) {
+            TransferResource resource = event.resource
+            profiler.transfer(resource.repositoryUrl, resource.transferStartTime, event.transferredBytes, outcome)
+        }
+    }
+
+    static class ProfilingRepositoryListener extends AbstractRepositoryListener {
+
+        final ResolutionProfiler profiler
+
+        ProfilingRepositoryListener(ResolutionProfiler profiler) {
+            this.profiler = profiler
+        }
+
+        @Override
+        void artifactDownloading(RepositoryEvent event) {
+            register(event.repository)
+        }
+
+        @Override
+        void metadataDownloading(RepositoryEvent event) {
+            register(event.repository)
+        }
+
+        // the transfers know only the url, the mirrors are named after the repositories they replace
+        private void register(ArtifactRepository repository) {
+            if (repository instanceof RemoteRepository) {
+                profiler.registerRepository(repository.id, ((RemoteRepository) repository).url)
+            }
+        }
+    }
+
 }
@@ -28,6 +28,8 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.lang.StringUtils;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
 import org.reficio.p2.logger.Logger;
 import org.reficio.p2.utils.JarUtils;
 import org.reficio.p2.utils.XmlUtils;
@@ -56,6 +58,7 @@ public class FeatureBuilder {
 	private String featureTimeStamp;
 	
 	public void generate(File destinationFolder) {
+		P2Event event = P2Events.featureGenerate(this.getFeatureFullName());
 		try {
 			File featureContent = new File(destinationFolder, this.getFeatureFullName());
 			featureContent.mkdir();
@@ -65,9 +68,12 @@ public class FeatureBuilder {
 			
 			File destJar = new File(destinationFolder, this.getFeatureFullName()+".jar");
 			JarUtils.createJar(featureContent, destJar);
+			event.bytes(destJar.length()).success();
 			
 		} catch (Exception e) {
 			throw new RuntimeException("Cannot generate feature", e);
+		} finally {
+			event.commit();
 		}
 	}
 	
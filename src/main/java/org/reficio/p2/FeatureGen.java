@@ -44,6 +44,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.reficio.p2.logger.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -133,11 +134,10 @@ public class FeatureGen {
 				}
 
 				mainRootElement.appendChild(plugin);
-				System.out.println("JAR: " + file.getFileName() + "    Bundle: " + name + "    Version: " + version);
+				Logger.getLog().detail("JAR: " + file.getFileName() + "    Bundle: " + name + "    Version: " + version);
 			}
 			catch (Exception e) {
-				System.out.println("FEATUREGEN ERROR: " + file.getFileName() + " caused an exception:");
-				e.printStackTrace();
+				Logger.getLog().error("FEATUREGEN ERROR: " + file.getFileName() + " caused an exception:", e);
 			}
 
 			return FileVisitResult.CONTINUE;
@@ -150,7 +150,7 @@ public class FeatureGen {
 
 		@Override
 		public FileVisitResult visitFileFailed(Path file, IOException exc) {
-			System.err.println(exc);
+			Logger.getLog().warn(exc);
 			return FileVisitResult.CONTINUE;
 		}
 	}
@@ -172,7 +172,7 @@ public class FeatureGen {
 			mainRootElement.setAttribute("ws", "win32");
 			mainRootElement.setAttribute("arch", "x86_64");
 			doc.appendChild(mainRootElement);
-			System.out.println("Feature: com.objectiflune.repository.def.feature    Version: " + featureVersion);
+			Logger.getLog().info("Feature: com.objectiflune.repository.def.feature    Version: " + featureVersion);
 
 			// add dependencies
 			JarVisitor jarVisitor = new JarVisitor(doc, mainRootElement);
@@ -219,7 +219,7 @@ public class FeatureGen {
 				feature.setAttribute("version", version.trim());
 
 				mainRootElement.appendChild(feature);
-				System.out.println("JAR: " + feat.getName() + "    Feature: " + name + "    Version: " + version);
+				Logger.getLog().detail("JAR: " + feat.getName() + "    Feature: " + name + "    Version: " + version);
 			}
 
 			// output DOM XML to console
@@ -233,11 +233,11 @@ public class FeatureGen {
 			StreamResult console = new StreamResult(f);
 			transformer.transform(source, console);
 
-			System.out.println("\nXML DOM Created Successfully..");
+			Logger.getLog().debug("Feature XML created successfully");
 
 		}
 		catch (Exception e) {
-			e.printStackTrace();
+			Logger.getLog().error("Cannot generate the repository feature", e);
 		}
 	}
 }
@@ -180,6 +180,28 @@ public class P2Artifact {
         markCombinedInstructionsObsolete();
     }
 
+    /**
+     * Appends the global instructions to the instructions of the artifact and forces its manifest to be overridden.
+     * The values of the instructions configured in both are joined.
+     */
+    public void applyGlobalInstructions(Map<String, String> globalInstructions, boolean keepOsgi) {
+        if (globalInstructions.isEmpty()) {
+            return;
+        }
+        if (instructions.isEmpty()) {
+            setInstructions(new LinkedHashMap<String, String>(globalInstructions));
+            setKeepOSGi(keepOsgi);
+        } else {
+            Map<String, String> appended = new LinkedHashMap<String, String>(instructions);
+            for (Map.Entry<String, String> entry : globalInstructions.entrySet()) {
+                String value = appended.get(entry.getKey());
+                appended.put(entry.getKey(), value != null ? value + "," + entry.getValue() : entry.getValue());
+            }
+            setInstructions(appended);
+        }
+        setOverride(true);
+    }
+
     public Map<String, String> getCombinedInstructions() {
         if (shouldResetCombinedInstructions) {
             resetCombinedInstructions();
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.reficio.p2.bundler.cache.BundleCacheServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Runs the file-system-backed stand-in server of the remote bundle cache until the build is stopped.
+ *
+ * @since 1.4.3
+ */
+@Mojo(name = "cache-server", requiresProject = false)
+public class P2CacheServerMojo extends AbstractMojo {
+
+    /**
+     * Port the server listens on.
+     */
+    @Parameter(property = "p2.cacheServer.port", defaultValue = "8765")
+    private int port;
+
+    /**
+     * Address the server listens on. The uploads are not authenticated, so by default the server is reachable only
+     * from the local machine; set it e.g. to 0.0.0.0 to share the cache on a trusted network.
+     */
+    @Parameter(property = "p2.cacheServer.bindAddress")
+    private String bindAddress;
+
+    /**
+     * Folder the cached bundles are stored in.
+     */
+    @Parameter(property = "p2.cacheServer.directory", defaultValue = "${user.home}/.p2-maven-plugin/bundle-cache")
+    private File directory;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        final BundleCacheServer server;
+        try {
+            InetAddress address = bindAddress != null ? InetAddress.getByName(bindAddress) : InetAddress.getLoopbackAddress();
+            server = BundleCacheServer.start(directory, address, port);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot start the bundle cache server on port " + port, e);
+        }
+        getLog().info(String.format("Bundle cache server listening on %s, storing the bundles in %s", server.getAddress(), directory));
+        if (!server.getAddress().getAddress().isLoopbackAddress()) {
+            getLog().warn("The bundle cache server accepts unauthenticated uploads from every host that can reach " + server.getAddress());
+        }
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.stop();
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ package org.reficio.p2;
 
 import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Jar;
+import com.google.common.collect.Multimap;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
@@ -28,12 +29,17 @@ import org.reficio.p2.bundler.impl.AquteHelper;
 import org.reficio.p2.resolver.maven.Artifact;
 import org.reficio.p2.resolver.maven.ResolvedArtifact;
 import org.reficio.p2.utils.BundleUtils;
+import org.reficio.p2.utils.HashUtils;
 import org.reficio.p2.utils.JarUtils;
 import org.reficio.p2.utils.Utils;
+import org.reficio.p2.utils.VersionNormalizer;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Glues together the following independent modules that know nothing about the
@@ -132,6 +138,54 @@ public class P2Helper {
         }
     }
 
+    /**
+     * @return key of the artifact in the qualifier ledger, the same for all the builds of a snapshot
+     */
+    public static String calculateQualifierKey(ResolvedArtifact resolvedArtifact) {
+        Artifact artifact = resolvedArtifact.getArtifact();
+        return artifact.getGroupId() + "/" + artifact.getArtifactId() + "/" + StringUtils.defaultString(artifact.getClassifier())
+                + "/" + artifact.getBaseVersion();
+    }
+
+    /**
+     * @return hash of everything the bundle of the artifact is derived from: the jars and the instructions
+     */
+    public static String calculateContentHash(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, Map<String, String> osgiOverride) {
+        StringBuilder content = new StringBuilder(HashUtils.sha256(resolvedArtifact.getArtifact().getFile()));
+        if (resolvedArtifact.getSourceArtifact() != null) {
+            content.append('|').append(HashUtils.sha256(resolvedArtifact.getSourceArtifact().getFile()));
+        }
+        if (resolvedArtifact.isRoot()) {
+            content.append('|').append(new TreeMap<String, String>(p2Artifact.getCombinedInstructions()));
+        }
+        content.append('|').append(p2Artifact.isSingleton())
+                .append('|').append(p2Artifact.shouldOverrideManifest())
+                .append('|').append(p2Artifact.shouldKeepOSGiManifest())
+                .append('|').append(p2Artifact.shouldRemoveSignatures())
+                .append('|').append(new TreeMap<String, String>(osgiOverride));
+        return HashUtils.sha256(content.toString());
+    }
+
+    public static String calculateFeatureQualifierKey(P2FeatureDefinition p2FeatureDefinition) {
+        return "feature/" + p2FeatureDefinition.getId() + "/" + p2FeatureDefinition.getVersion();
+    }
+
+    /**
+     * @return hash of everything the generated feature is derived from: its attributes and the included bundles
+     */
+    public static String calculateFeatureContentHash(P2FeatureDefinition p2FeatureDefinition,
+                                                     Multimap<P2Artifact, ArtifactBundlerInstructions> bundlerInstructions) {
+        Set<String> plugins = new TreeSet<String>();
+        for (ArtifactBundlerInstructions instructions : bundlerInstructions.values()) {
+            plugins.add(instructions.getSymbolicName() + "_" + instructions.getVersion() + "_" + instructions.getSourceSymbolicName());
+        }
+        String content = p2FeatureDefinition.getLabel() + "|" + p2FeatureDefinition.getProviderName()
+                + "|" + p2FeatureDefinition.getDescription() + "|" + p2FeatureDefinition.getCopyright()
+                + "|" + p2FeatureDefinition.getLicense() + "|" + p2FeatureDefinition.getUnpack()
+                + "|" + p2FeatureDefinition.getGenerateSourceFeature() + "|" + plugins;
+        return HashUtils.sha256(content);
+    }
+
     private static String calculateName(String symbolicName) {
         return symbolicName;
     }
@@ -193,16 +247,8 @@ public class P2Helper {
                 version = BundleUtils.INSTANCE.calculateBundleVersion(resolvedArtifact.getArtifact());
             }
         }
-        // Ensure that any leading 0's in the version are removed.
-        version = version.replaceFirst("^0*(\\d+)\\.0*(\\d+)\\.0*(\\d+)", "$1.$2.$3");
-        while (version.endsWith("."))
-            version = version.substring(0, version.length() - 1);
-
-        // Ensure the version is three digits
-        String regex = "^\\d+\\.\\d+\\.\\d+";
-        Pattern pattern = Pattern.compile(regex);
-        while (!pattern.matcher(version).find())
-            version += ".0";
+        // Ensure that any leading 0's in the version are removed and the version is three digits
+        version = VersionNormalizer.normalize(version);
 
         // if still contains snapshot (manually set by the user) -> "SNAPSHOT" will be manually replaced
         return BundleUtils.INSTANCE.cleanupVersion(Utils.snapshotToTimestamp(version, timestamp));
@@ -229,7 +275,7 @@ public class P2Helper {
     }
 
     public static boolean isProperSnapshotVersion(String version) {
-        return version.matches(".*[0-9\\.]{13,16}-[0-9]{3}");
+        return VersionNormalizer.isProperSnapshotVersion(version);
     }
 
     public static String calculateSourceSymbolicName(String symbolicName) {
@@ -31,9 +31,9 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.AbstractMojoExecutionException;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
 import org.codehaus.plexus.PlexusConstants;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -45,30 +45,65 @@ import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
 import org.reficio.p2.bundler.ArtifactBundler;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
 import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.bundler.cache.BundleCacheMode;
+import org.reficio.p2.bundler.cache.RemoteBundleCache;
 import org.reficio.p2.bundler.impl.AquteBundler;
+import org.reficio.p2.bundler.impl.BundleContentRegistry;
+import org.reficio.p2.logger.LogPhase;
+import org.reficio.p2.jfr.P2Events;
 import org.reficio.p2.logger.Logger;
 import org.reficio.p2.mirror.BundleMirror;
 import org.reficio.p2.publisher.BundlePublisher;
 import org.reficio.p2.publisher.CategoryPublisher;
+import org.reficio.p2.publisher.DeltaPublisher;
+import org.reficio.p2.publisher.NativeCategoryPublisher;
+import org.reficio.p2.publisher.UnsupportedCategoryException;
+import org.reficio.p2.publisher.RepositoryPostProcessor;
+import org.reficio.p2.publisher.RepositorySharder;
+import org.reficio.p2.publisher.ShardStrategy;
+import org.reficio.p2.publisher.StreamingAppender;
+import org.reficio.p2.qualifier.QualifierLedger;
+import org.reficio.p2.qualifier.QualifierStrategy;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.repository.RepositoryIndex;
+import org.reficio.p2.resolver.RepositoryRouter;
 import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
 import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest.EclipseType;
 import org.reficio.p2.resolver.eclipse.impl.DefaultEclipseResolver;
 import org.reficio.p2.resolver.maven.*;
+import org.reficio.p2.resolver.maven.impl.Aether;
 import org.reficio.p2.resolver.maven.impl.AetherResolver;
+import org.reficio.p2.resolver.maven.impl.ProjectArtifactResolver;
+import org.reficio.p2.resolver.maven.impl.facade.AetherFacade;
 import org.reficio.p2.utils.BundleUtils;
+import org.reficio.p2.utils.FileLinker;
 import org.reficio.p2.utils.JarUtils;
+import org.reficio.p2.utils.Memoizer;
+import org.reficio.p2.utils.PerformanceReport;
 import org.reficio.p2.utils.Utils;
+import org.reficio.p2.utils.VersionNormalizer;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -90,6 +125,8 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     private static final String BUNDLES_TOP_FOLDER = "/source";
     private static final String FEATURES_DESTINATION_FOLDER = BUNDLES_TOP_FOLDER + "/features";
     private static final String BUNDLES_DESTINATION_FOLDER = BUNDLES_TOP_FOLDER + "/plugins";
+    private static final String APPEND_STAGING_FOLDER = "/append-staging";
+    private static final String FLIGHT_RECORDING_FILE = "/p2-maven-plugin.jfr";
     private static final String DEFAULT_CATEGORY_FILE = "category.xml";
     private static final String DEFAULT_CATEGORY_CLASSPATH_LOCATION = "/";
 
@@ -115,6 +152,10 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Requirement
     private P2ApplicationLauncher launcher;
 
+    @Component
+    @Requirement
+    private ProjectDependenciesResolver projectDependenciesResolver;
+
 
     /**
      * Specifies a file containing category definitions.
@@ -146,6 +187,13 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Parameter(defaultValue = "true")
     private boolean dependenciesTransitive;
 
+    /**
+     * Specifies whether the dependencies included by includeDependencies are taken from the dependency graph already
+     * resolved by maven instead of being resolved again. Dependencies with excludes are always resolved again.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean reuseProjectDependencies;
+
     /**
      * Optional line of additional arguments passed to the p2 application launcher.
      */
@@ -196,12 +244,38 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Parameter(defaultValue = "true")
     private boolean compressSite;
 
+    /**
+     * Specifies whether to additionally write xz compressed metadata (content.xml.xz, artifacts.xml.xz) and a p2.index.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean xzCompressSite;
+
+    /**
+     * Specifies whether the checksums and the compressed metadata of the site should be computed by the plugin
+     * in parallel instead of sequentially by the p2 publisher.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean parallelCompression;
+
+    /**
+     * Number of threads used by the parallel parts of the build. If set to 0, the number of available processors is used.
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
     /**
      * Specifies whether to create the categories xml file for the site.
      */
     @Parameter(defaultValue = "true")
     private boolean createCategories;
 
+    /**
+     * Specifies whether the categories are always published by the forked p2 CategoryPublisher application.
+     * By default they're published in-process, the forked application is used only for unsupported category definitions.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean forkCategoryPublisher;
+
     /**
      * Specifies whether to re-process artifacts already in the destinationDirectory.
      */
@@ -228,6 +302,175 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Parameter(defaultValue = "")
     private String additionalArgs;
 
+    /**
+     * Specifies whether byte-identical jars published under different coordinates, which result in the same symbolic
+     * name and version, should be emitted only once.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean deduplicateArtifacts;
+
+    /**
+     * Specifies how the artifacts are resolved: "resolve" collects the dependency graphs, "lock" collects them and
+     * records the resolved closures in the lockFile, "locked" resolves exactly the closures recorded in the lockFile.
+     */
+    @Parameter(defaultValue = "resolve")
+    private String resolutionMode;
+
+    /**
+     * Location of the resolution lockfile.
+     */
+    @Parameter(defaultValue = "${project.basedir}/p2-lock.xml")
+    private File lockFile;
+
+    /**
+     * Specifies whether the artifact resolution is profiled: the requests, misses, bytes and latency percentiles of
+     * every remote repository and the resolution time of every root artifact are printed in a ranked report, and the
+     * repositories that answer almost every request with not found or are much slower than the others are reported.
+     */
+    @Parameter(property = "p2.profileResolution", defaultValue = "false")
+    private boolean profileResolution;
+
+    /**
+     * File to write the resolution profile to as JSON, implies profileResolution.
+     */
+    @Parameter(property = "p2.resolutionProfile")
+    private File resolutionProfile;
+
+    /**
+     * Routes of the artifact lookups, repository ids keyed by groupId or p2 IU id prefix; the longest matching prefix
+     * wins. A routed artifact is looked up only in its repository instead of in every repository in turn.
+     */
+    @Parameter
+    private Map<String, String> repositoryRoutes = new LinkedHashMap<String, String>();
+
+    /**
+     * Specifies whether the repository every groupId and p2 IU id was found in is recorded in the routesFile, so that
+     * the next builds look it up in that repository first.
+     */
+    @Parameter(property = "p2.learnRoutes", defaultValue = "false")
+    private boolean learnRoutes;
+
+    /**
+     * Location of the learned repository routes.
+     */
+    @Parameter(defaultValue = "${project.basedir}/p2-routes.properties")
+    private File routesFile;
+
+    /**
+     * Folder the prefetch goal downloads the p2 artifacts to.
+     */
+    @Parameter(property = "p2.cacheDirectory", defaultValue = "${settings.localRepository}/.cache/p2-maven-plugin")
+    private File p2CacheDirectory;
+
+    /**
+     * Takes the p2 artifacts from the p2CacheDirectory, if they were downloaded there before, instead of downloading
+     * them again. A p2 artifact is cached by its id and version only and it's never refreshed, so it's off unless
+     * set or unless maven runs offline.
+     */
+    @Parameter(property = "p2.useCache", defaultValue = "false")
+    private boolean useP2Cache;
+
+    /**
+     * Specifies how the bundles that need no modification are placed in the work folder: "link" creates hard links,
+     * "reflink" creates copy-on-write reflinks, "copy" copies them. Unsupported methods fall back to copying.
+     */
+    @Parameter(defaultValue = "link")
+    private String outputStrategy;
+
+    /**
+     * URL of the remote cache of the produced bundles, shared between builds. Not used if not set.
+     */
+    @Parameter(property = "p2.bundleCacheUrl")
+    private String bundleCacheUrl;
+
+    /**
+     * Specifies how the remote bundle cache is used: "read" takes the bundles from it, "readwrite" also stores the
+     * missing ones in it, "off" disables it.
+     */
+    @Parameter(property = "p2.bundleCacheMode", defaultValue = "read")
+    private String bundleCacheMode;
+
+    /**
+     * Specifies how the qualifiers of the snapshot bundles and generated features are chosen: "timestamp" stamps the
+     * build timestamp into all of them, "content" keeps the previous qualifier of every bundle and feature whose
+     * content did not change, so p2 clients download only what really changed.
+     */
+    @Parameter(defaultValue = "timestamp")
+    private String qualifierStrategy;
+
+    /**
+     * Previously published site, folder or url, whose qualifiers are reused by the "content" qualifierStrategy.
+     * Defaults to the destination folder.
+     */
+    @Parameter
+    private String qualifierBaseline;
+
+    /**
+     * Specifies whether the bundles and features written by the plugin are normalized, so that the same input always
+     * results in byte-identical jars: sorted entries, fixed entry times and a stable manifest attribute order.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean reproducible;
+
+    /**
+     * Specifies whether a Flight Recorder recording of the build events (resolution, bundling, jar rewrites, downloads,
+     * feature generation and publishing) is written to target/p2-maven-plugin.jfr, to be opened in JDK Mission Control.
+     */
+    @Parameter(property = "p2.jfr", defaultValue = "false")
+    private boolean jfr;
+
+    /**
+     * File to write the performance measurements of the build to (wall-clock time, peak resident set size, peak heap
+     * use and bytes written to the destinationDirectory). Used by the performance regression suite (-Pperf).
+     */
+    @Parameter(property = "p2.perfReport")
+    private File perfReport;
+
+    /**
+     * Specifies whether appending publishes the new bundles to a staging repository first and merges it into the
+     * destination metadata in a streaming pass, instead of letting the publisher load the complete existing metadata.
+     * Only the publishing of the bundles is streamed: the category publishing (createCategories) and the
+     * post-processing (parallelCompression, xzCompressSite) still load the complete content metadata, so disable them
+     * to keep the memory use flat when appending to very large repositories.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean streamingAppend;
+
+    /**
+     * Folder of a layered site to publish the build to as a delta: the units and artifacts that none of its layers
+     * contains are published to a new layer, and the compositeContent.xml/compositeArtifacts.xml of the folder
+     * stack the layers. The complete site is still published to the destinationDirectory.
+     */
+    @Parameter(property = "p2.deltaAgainst")
+    private File deltaAgainst;
+
+    /**
+     * Number of layers of the deltaAgainst site above which all the layers are merged into one.
+     */
+    @Parameter(defaultValue = "10")
+    private int deltaMaxLayers;
+
+    /**
+     * Specifies whether the site is partitioned into child repositories of a composite site:
+     * none, groupId (by the leading groupId segments of the bundles) or feature (a shard per generated feature,
+     * the other bundles by groupId). The units not assigned to a shard are published to the default shard.
+     */
+    @Parameter(defaultValue = "none", property = "p2.shardBy")
+    private String shardBy;
+
+    /**
+     * Number of leading groupId segments that name the shard of a bundle, e.g. org.apache for 2.
+     */
+    @Parameter(defaultValue = "2")
+    private int shardGroupIdSegments;
+
+    /**
+     * Explicit shards of the bundles, keyed by groupId prefix; the longest matching prefix wins over the
+     * shardGroupIdSegments naming.
+     */
+    @Parameter
+    private Map<String, String> shardMapping = new LinkedHashMap<String, String>();
+
     /**
      * Dependency injection container - used to get some components programatically
      */
@@ -288,10 +531,22 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     private String repoFeatureVersion;
 
     /**
-     * Logger retrieved from the Maven internals.
-     * It's the recommended way to do it...
+     * Specifies whether the build log should be written asynchronously. Per-artifact detail is then rate-limited
+     * on the console, summarized per phase and fully written to the logFile.
      */
-    private Log log;
+    @Parameter(defaultValue = "false")
+    private boolean asyncLogging;
+
+    /**
+     * File that receives the full build log in the asynchronous logging mode.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/p2-maven-plugin.log")
+    private File logFile;
+
+    /**
+     * Logger facade wrapping the log retrieved from the Maven internals.
+     */
+    private Logger log;
 
     /**
      * Folder which the jar files bundled by the ArtifactBundler will be copied to
@@ -303,6 +558,63 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
      */
     private File featuresDestinationFolder;
 
+    private ResolutionLock resolutionLock;
+
+    private ResolutionProfiler resolutionProfiler;
+
+    private RepositoryRouter repositoryRouter;
+
+    /**
+     * Index of the destination repository, empty unless appending to it
+     */
+    private RepositoryIndex repositoryIndex;
+
+    private final BundleContentRegistry bundleContentRegistry = new BundleContentRegistry();
+
+    private FileLinker fileLinker;
+
+    private RemoteBundleCache remoteBundleCache;
+
+    /**
+     * Qualifiers of the previously published content, null unless the "content" qualifierStrategy is used
+     */
+    private QualifierLedger qualifierLedger;
+
+    /**
+     * Resolves the project dependencies from the graph resolved by maven, null unless includeDependencies is set
+     */
+    private ArtifactResolver projectArtifactResolver;
+
+    /**
+     * Artifacts resolved so far, keyed by the request signature. Feature definitions often share dependencies.
+     */
+    private final Memoizer<String, ArtifactResolutionResult> resolutionCache = new Memoizer<String, ArtifactResolutionResult>();
+
+    /**
+     * Artifacts bundled so far, every artifact is bundled only once even if many features include it.
+     */
+    private final Memoizer<Artifact, ArtifactBundlerInstructions> bundleCache = new Memoizer<Artifact, ArtifactBundlerInstructions>();
+
+    /**
+     * Metadata of the destination repository parsed so far, shared by the steps that follow the publisher.
+     */
+    private final MetadataCache metadataCache = new MetadataCache();
+
+    private ShardStrategy shardStrategy = ShardStrategy.NONE;
+
+    private Closeable flightRecording;
+
+    /**
+     * Shards of the published bundles keyed by id_version and by id, filled while bundling when sharding
+     */
+    private final Map<String, String> unitShards = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Bundles of the generated features, kept to assign the feature shards in the order of the definitions
+     */
+    private final Map<P2FeatureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions>> generatedFeatures =
+            new ConcurrentHashMap<P2FeatureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions>>();
+
     /**
      * Processing entry point.
      * Method that orchestrates the execution of the plugin.
@@ -310,37 +622,93 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Override
     public void execute() {
         try {
-            initializeEnvironment();
-            initializeRepositorySystem();
-            processDependencies();
-            processArtifacts(this.artifacts);
-            processFeatures();
-            processEclipseArtifacts();
-            processEclipseFeatures();
-            runFeatureGen();
-            executeP2PublisherPlugin();
-            executeCategoryPublisher();
-            cleanupEnvironment();
+            build();
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Generates the site without releasing the logger and the flight recording, so that the caller can go on
+     * working with them until it invokes {@link #shutdown()}.
+     */
+    void build() throws Exception {
+        initializeConfiguration();
+        validateConfiguration();
+        initializeResolution();
+        // the setup of the repository system and the dependencies of the project is not measured
+        PerformanceReport performanceReport = perfReport != null ? PerformanceReport.start() : null;
+        validateRootBundles();
+        processMainArtifacts();
+        processFeatures();
+        writeResolutionLock();
+        reportResolutionProfile();
+        reportDuplicateArtifacts();
+        reportBundleCache();
+        processEclipseArtifacts();
+        processEclipseFeatures();
+        saveRepositoryRoutes();
+        runFeatureGen();
+        executeP2PublisherPlugin();
+        executeCategoryPublisher();
+        writeQualifierLedger();
+        postProcessRepository();
+        writeRepositoryIndex();
+        publishDelta();
+        shardRepository();
+        cleanupEnvironment();
+        if (performanceReport != null) {
+            performanceReport.write(perfReport, new File(destinationDirectory));
         }
     }
 
+    /**
+     * Initializes the logger and the configuration defaults, without touching the disk or the network.
+     */
+    void initializeConfiguration() throws IOException {
+        Logger.initialize(getLog(), asyncLogging, logFile);
+        log = Logger.getLog();
+        artifacts = artifacts != null ? artifacts : new ArrayList<P2Artifact>();
+        features = features != null ? features : new ArrayList<P2Artifact>();
+        p2 = p2 != null ? p2 : new ArrayList<EclipseArtifact>();
+        p2Features = p2Features != null ? p2Features : new ArrayList<EclipseFeature>();
+        featureDefinitions = featureDefinitions != null ? featureDefinitions : new ArrayList<P2FeatureDefinition>();
+        shardStrategy = ShardStrategy.fromString(shardBy);
+        repositoryRouter = initializeRepositoryRouter();
+    }
+
+    void initializeResolution() throws IOException {
+        initializeEnvironment();
+        initializeRepositorySystem();
+        processDependencies();
+        applyGlobalInstructions();
+    }
+
+    void shutdown() {
+        stopFlightRecording();
+        Logger.shutdown();
+    }
+
     private void initializeEnvironment() throws IOException {
-        log = getLog();
-        Logger.initialize(log);
+        VersionNormalizer.clear();
+        BundleUtils.INSTANCE.clearVersionCache();
+        fileLinker = new FileLinker(FileLinker.Strategy.fromString(outputStrategy));
+        remoteBundleCache = initializeRemoteBundleCache();
+        qualifierLedger = initializeQualifierLedger();
+        flightRecording = startFlightRecording();
+        resolutionProfiler = profileResolution || resolutionProfile != null ? new ResolutionProfiler() : null;
+        // without append the destination is recreated, so nothing in it can be reused
+        repositoryIndex = append ? RepositoryIndex.load(new File(destinationDirectory)) : RepositoryIndex.empty();
         bundlesDestinationFolder = new File(buildDirectory, BUNDLES_DESTINATION_FOLDER);
         featuresDestinationFolder = new File(buildDirectory, FEATURES_DESTINATION_FOLDER);
         FileUtils.deleteDirectory(new File(buildDirectory, BUNDLES_TOP_FOLDER));
         FileUtils.forceMkdir(bundlesDestinationFolder);
         FileUtils.forceMkdir(featuresDestinationFolder);
-        artifacts = artifacts != null ? artifacts : new ArrayList<P2Artifact>();
-        features = features != null ? features : new ArrayList<P2Artifact>();
-        p2 = p2 != null ? p2 : new ArrayList<EclipseArtifact>();
-        p2Features = p2Features != null ? p2Features : new ArrayList<EclipseFeature>();
     }
 
-    private void initializeRepositorySystem() {
+    private void initializeRepositorySystem() throws IOException {
         if (repoSystem == null) {
             repoSystem = lookup("org.eclipse.aether.RepositorySystem");
         }
@@ -348,6 +716,119 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
             repoSystem = lookup("org.sonatype.aether.RepositorySystem");
         }
         Preconditions.checkNotNull(repoSystem, "Could not initialize RepositorySystem");
+        initializeResolutionLock();
+    }
+
+    private RemoteBundleCache initializeRemoteBundleCache() {
+        BundleCacheMode mode = BundleCacheMode.fromString(bundleCacheMode);
+        if (StringUtils.isBlank(bundleCacheUrl) || !mode.isReadEnabled()) {
+            return null;
+        }
+        log.info(String.format("Using remote bundle cache %s in %s mode", bundleCacheUrl, mode.name().toLowerCase()));
+        return new RemoteBundleCache(bundleCacheUrl, mode);
+    }
+
+    private Closeable startFlightRecording() throws IOException {
+        if (!jfr) {
+            return null;
+        }
+        File recordingFile = new File(buildDirectory + FLIGHT_RECORDING_FILE);
+        FileUtils.forceMkdir(recordingFile.getParentFile());
+        Closeable recording = P2Events.startRecording(recordingFile);
+        if (recording == null) {
+            log.warn("Flight Recorder is not available in this JVM, the build events are not recorded");
+        } else {
+            log.info("Recording the build events to " + recordingFile);
+        }
+        return recording;
+    }
+
+    private void stopFlightRecording() {
+        if (flightRecording != null) {
+            try {
+                flightRecording.close();
+            } catch (IOException e) {
+                log.warn("Cannot write the flight recording: " + e.getMessage());
+            }
+            flightRecording = null;
+        }
+    }
+
+    private RepositoryRouter initializeRepositoryRouter() throws IOException {
+        RepositoryRouter router = new RepositoryRouter(repositoryRoutes);
+        if (learnRoutes) {
+            router.load(routesFile);
+        }
+        return router;
+    }
+
+    void saveRepositoryRoutes() throws IOException {
+        if (learnRoutes) {
+            repositoryRouter.save(routesFile);
+        }
+    }
+
+    private QualifierLedger initializeQualifierLedger() throws IOException {
+        if (QualifierStrategy.fromString(qualifierStrategy) != QualifierStrategy.CONTENT) {
+            return null;
+        }
+        // read before the destination is recreated
+        String baseline = StringUtils.isNotBlank(qualifierBaseline) ? qualifierBaseline : destinationDirectory;
+        QualifierLedger ledger = QualifierLedger.load(baseline);
+        log.info(String.format("Reusing the qualifiers of the unchanged content published in %s", baseline));
+        return ledger;
+    }
+
+    private void initializeResolutionLock() throws IOException {
+        switch (getResolutionMode()) {
+            case LOCK:
+                resolutionLock = new ResolutionLock();
+                break;
+            case LOCKED:
+                if (!lockFile.isFile()) {
+                    throw new RuntimeException("p2-maven-plugin misconfiguration: lockfile " + lockFile + " does not exist, " +
+                            "generate it using resolutionMode=lock");
+                }
+                resolutionLock = ResolutionLock.read(lockFile);
+                log.info(String.format("Resolving %d locked artifacts from %s", resolutionLock.size(), lockFile));
+                break;
+            default:
+                resolutionLock = null;
+        }
+    }
+
+    private void writeResolutionLock() throws IOException {
+        if (getResolutionMode() == ResolutionMode.LOCK) {
+            resolutionLock.write(lockFile);
+            log.info(String.format("Written %d locked artifacts to %s", resolutionLock.size(), lockFile));
+        }
+    }
+
+    void reportResolutionProfile() throws IOException {
+        if (resolutionProfiler != null) {
+            resolutionProfiler.report();
+            if (resolutionProfile != null) {
+                resolutionProfiler.writeJson(resolutionProfile);
+            }
+        }
+    }
+
+    private void reportDuplicateArtifacts() {
+        int duplicates = bundleContentRegistry.reportDuplicates();
+        if (duplicates > 0) {
+            log.info(String.format("Found %d artifacts with content identical to other artifacts%s", duplicates,
+                    deduplicateArtifacts ? "" : ", set deduplicateArtifacts to emit them only once"));
+        }
+    }
+
+    private void reportBundleCache() {
+        if (remoteBundleCache != null) {
+            remoteBundleCache.reportStatistics();
+        }
+    }
+
+    private ResolutionMode getResolutionMode() {
+        return ResolutionMode.fromString(resolutionMode);
     }
 
     private Object lookup(String role) {
@@ -360,22 +841,30 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
 
     private void processDependencies() {
         if (includeDependencies) {
+            // configured artifacts by every prefix of their id, the dependencies are matched by their id prefixes
+            Map<String, List<P2Artifact>> configuredArtifacts = new HashMap<String, List<P2Artifact>>();
+            for (P2Artifact p2Artifact : artifacts) {
+                String prefix = p2Artifact.getId();
+                List<P2Artifact> configured = configuredArtifacts.get(prefix);
+                if (configured == null) {
+                    configured = new ArrayList<P2Artifact>();
+                    configuredArtifacts.put(prefix, configured);
+                }
+                configured.add(p2Artifact);
+            }
             for (org.apache.maven.artifact.Artifact defArtifact : project.getDependencyArtifacts()) {
                 P2Artifact p2Artifact = new P2Artifact();
-                if (defArtifact.getClassifier() == null) {
-                    p2Artifact.setId(defArtifact.getGroupId() + ":" + defArtifact.getArtifactId() + ":"
-                            + defArtifact.getVersion());
-                } else {
-                    p2Artifact.setId(defArtifact.getGroupId() + ":" + defArtifact.getArtifactId() + ":jar:"
-                            + defArtifact.getClassifier() + ":" + defArtifact.getVersion());
-                }
+                p2Artifact.setId(ProjectArtifactResolver.toArtifactId(defArtifact));
                 p2Artifact.setIncludeSources(dependenciesSource);
                 p2Artifact.setTransitive(dependenciesTransitive);
 
                 boolean skip = false;
-                for (P2Artifact p2DependencyInstrucions : artifacts) {
-                    String artifactWOVersion = p2DependencyInstrucions.getId() + ":";
-                    if (p2Artifact.getId().startsWith(artifactWOVersion)) {
+                for (int index = p2Artifact.getId().indexOf(':'); index >= 0; index = p2Artifact.getId().indexOf(':', index + 1)) {
+                    List<P2Artifact> configured = configuredArtifacts.get(p2Artifact.getId().substring(0, index));
+                    if (configured == null) {
+                        continue;
+                    }
+                    for (P2Artifact p2DependencyInstrucions : configured) {
                         p2DependencyInstrucions.setId(p2Artifact.getId());
                         p2DependencyInstrucions.setIncludeSources(dependenciesSource);
                         p2DependencyInstrucions.setTransitive(dependenciesTransitive);
@@ -386,6 +875,147 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
                     artifacts.add(p2Artifact);
                 }
             }
+            if (reuseProjectDependencies) {
+                AetherFacade aether = Aether.facade(repoSession);
+                Object dependencyGraph = ProjectArtifactResolver.collectDependencyGraph(projectDependenciesResolver,
+                        project, repoSession, aether);
+                projectArtifactResolver = new ProjectArtifactResolver(project.getArtifacts(), dependencyGraph, aether,
+                        newAetherResolver(), resolutionLock);
+            }
+        }
+    }
+
+    /**
+     * Validates all the definitions before anything is resolved or written and reports all the errors at once.
+     */
+    void validateConfiguration() {
+        List<String> errors = P2Validator.validateConfiguration(artifacts, features, featureDefinitions, p2,
+                p2Features, includeDependencies);
+        if (shardStrategy != ShardStrategy.NONE && append) {
+            errors.add("shardBy cannot be combined with append, the sharded site has no root repository to append to");
+        }
+        if (!repositoryRoutes.isEmpty()) {
+            errors.addAll(repositoryRouter.validate(getRepositoryIds()));
+        }
+        failOnConfigurationErrors(errors);
+    }
+
+    /**
+     * Validates the root artifacts whose validity depends on whether they are bundles, resolving them in parallel.
+     * Runs once the dependencies are included and the global instructions are applied.
+     */
+    private void validateRootBundles() throws InterruptedException {
+        List<String> errors = includeDependencies ? P2Validator.validateDependencyPatterns(artifacts) : new ArrayList<String>();
+        List<P2Artifact> bundleCandidates = new ArrayList<P2Artifact>();
+        for (P2Artifact p2Artifact : artifacts) {
+            if (P2Validator.requiresBundleCheck(p2Artifact)) {
+                bundleCandidates.add(p2Artifact);
+            }
+        }
+        for (P2FeatureDefinition definition : featureDefinitions) {
+            for (P2Artifact p2Artifact : definition.getArtifacts()) {
+                if (P2Validator.requiresBundleCheck(p2Artifact)) {
+                    bundleCandidates.add(p2Artifact);
+                }
+            }
+        }
+        if (errors.isEmpty()) {
+            // the ids are valid, so the roots can be resolved
+            errors.addAll(validateRootBundles(bundleCandidates));
+        }
+        failOnConfigurationErrors(errors);
+    }
+
+    private static void failOnConfigurationErrors(List<String> errors) {
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(String.format("p2-maven-plugin misconfiguration, %d errors found:\n\n\t%s\n",
+                    errors.size(), StringUtils.join(errors, "\n\t")));
+        }
+    }
+
+    /**
+     * Applies the global instructions once to all the configured artifacts, before they are validated and bundled.
+     */
+    private void applyGlobalInstructions() {
+        for (P2Artifact p2Artifact : artifacts) {
+            p2Artifact.applyGlobalInstructions(globalInstructions, keepOsgi);
+        }
+        for (P2FeatureDefinition definition : featureDefinitions) {
+            for (P2Artifact p2Artifact : definition.getArtifacts()) {
+                p2Artifact.applyGlobalInstructions(globalInstructions, keepOsgi);
+            }
+        }
+    }
+
+    private List<String> getRepositoryIds() {
+        AetherFacade aether = Aether.facade(repoSession);
+        List<String> ids = new ArrayList<String>();
+        for (Object repository : projectRepos) {
+            ids.add(aether.remoteRepositoryId(repository));
+        }
+        return ids;
+    }
+
+    private List<String> validateRootBundles(List<P2Artifact> bundleCandidates) throws InterruptedException {
+        List<String> errors = new ArrayList<String>();
+        if (bundleCandidates.isEmpty()) {
+            return errors;
+        }
+        // the regular memoized resolution, so the bundling reuses the results instead of resolving the roots again
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreads(), bundleCandidates.size()));
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (final P2Artifact p2Artifact : bundleCandidates) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return validateRootBundle(p2Artifact);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                try {
+                    String error = result.get();
+                    if (error != null) {
+                        errors.add(error.replaceFirst("^p2-maven-plugin misconfiguration\\s*", "").trim());
+                    }
+                } catch (ExecutionException e) {
+                    log.debug("Cannot validate the artifact", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return errors;
+    }
+
+    private String validateRootBundle(P2Artifact p2Artifact) {
+        ArtifactResolutionResult resolutionResult;
+        try {
+            resolutionResult = resolveArtifact(p2Artifact);
+        } catch (Exception ex) {
+            // not validated, the regular resolution reports or skips the artifact
+            return null;
+        }
+        for (ResolvedArtifact resolvedArtifact : resolutionResult.getResolvedArtifacts()) {
+            if (!resolvedArtifact.isRoot()) {
+                continue;
+            }
+            try {
+                P2Validator.validateArtifactConfig(p2Artifact, resolvedArtifact);
+            } catch (RuntimeException ex) {
+                return ex.getMessage();
+            }
+        }
+        return null;
+    }
+
+    private void processMainArtifacts() {
+        LogPhase phase = Logger.phase("Bundling");
+        try {
+            processArtifacts(this.artifacts);
+        } finally {
+            phase.end();
         }
     }
 
@@ -413,6 +1043,7 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
                     if (bundledArtifacts.add(resolvedArtifact.getArtifact())) {
                     	ArtifactBundlerInstructions abi = bundleArtifact(p2Artifact, resolvedArtifact);
                     	bundlerInstructions.put(p2Artifact,abi);
+                    	artifactBundled(p2Artifact, resolvedArtifact, abi);
                     } else {
                         String message = String.format("p2-maven-plugin misconfiguration" +
                                 "\n\n\tJar [%s] is configured as an artifact multiple times. " +
@@ -463,10 +1094,42 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
             }
         }
 
-        if (featureDefinitions != null) {
-	        for (P2FeatureDefinition p2Feature : featureDefinitions) {
-	        		this.createFeature(p2Feature);
-	        }
+        if (featureDefinitions != null && !featureDefinitions.isEmpty()) {
+            LogPhase phase = Logger.phase("Feature definitions");
+            try {
+                createFeatures();
+            } finally {
+                phase.end();
+            }
+        }
+    }
+
+    private void createFeatures() {
+        // the definitions are independent, they share only the resolution and bundle caches
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreads(), featureDefinitions.size()));
+        Map<P2FeatureDefinition, Future<Boolean>> bundledFeatures = new LinkedHashMap<P2FeatureDefinition, Future<Boolean>>();
+        try {
+            for (final P2FeatureDefinition p2Feature : featureDefinitions) {
+                bundledFeatures.put(p2Feature, executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return bundleFeature(p2Feature);
+                    }
+                }));
+            }
+            // tycho runs in the maven session, so the features with a feature file are built one by one
+            for (Entry<P2FeatureDefinition, Future<Boolean>> entry : bundledFeatures.entrySet()) {
+                if (entry.getValue().get() && entry.getKey().getFeatureFile() != null) {
+                    buildFeature(entry.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while creating the features", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -475,7 +1138,6 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = ArrayListMultimap.create();
         for (P2Artifact p2Artifact : artifacts) {
             logResolving(p2Artifact);
-            appendGlobalInstructions(p2Artifact);
             ArtifactResolutionResult resolutionResult;
             try {
                 resolutionResult = resolveArtifact(p2Artifact);
@@ -496,26 +1158,6 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         return resolvedArtifacts;
     }
 
-    private void appendGlobalInstructions(P2Artifact p2Artifact) {
-        if (!globalInstructions.isEmpty()) {
-            if (p2Artifact.getInstructions().isEmpty()) {
-                p2Artifact.setInstructions(globalInstructions);
-                p2Artifact.setKeepOSGi(keepOsgi);
-            } else {
-                for (Entry<String, String> entry : globalInstructions.entrySet()) {
-                    if (p2Artifact.getInstructions().containsKey(entry.getKey())) {
-                        String value = p2Artifact.getInstructions().get(entry.getKey());
-                        value += "," + entry.getValue();
-                        p2Artifact.getInstructions().put(entry.getKey(), value);
-                    } else {
-                        p2Artifact.getInstructions().put(entry.getKey(), entry.getValue());
-                    }
-                }
-            }
-            p2Artifact.setOverride(true);
-        }
-    }
-
     private Multimap<P2Artifact, ResolvedArtifact> resolveFeatures() {
         Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = ArrayListMultimap.create();
         for (P2Artifact p2Artifact : features) {
@@ -540,20 +1182,39 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
                 p2.shouldIncludeSources()));
     }
 
-    private ArtifactResolutionResult resolveArtifact(P2Artifact p2Artifact) {
-        ArtifactResolutionRequest resolutionRequest = ArtifactResolutionRequest.builder()
+    ArtifactResolutionResult resolveArtifact(P2Artifact p2Artifact) {
+        final ArtifactResolutionRequest resolutionRequest = ArtifactResolutionRequest.builder()
                 .rootArtifactId(p2Artifact.getId())
                 .resolveSource(p2Artifact.shouldIncludeSources())
                 .resolveTransitive(p2Artifact.shouldIncludeTransitive())
                 .excludes(p2Artifact.getExcludes())
                 .build();
-        ArtifactResolutionResult resolutionResult = getArtifactResolver().resolve(resolutionRequest);
-        logResolved(resolutionRequest, resolutionResult);
-        return resolutionResult;
+        return resolutionCache.get(resolutionRequest.getSignature(), new Callable<ArtifactResolutionResult>() {
+            @Override
+            public ArtifactResolutionResult call() {
+                ArtifactResolutionResult resolutionResult = getArtifactResolver().resolve(resolutionRequest);
+                logResolved(resolutionRequest, resolutionResult);
+                return resolutionResult;
+            }
+        });
     }
 
     private ArtifactResolver getArtifactResolver() {
-        return new AetherResolver(repoSystem, repoSession, projectRepos);
+        if (projectArtifactResolver != null && getResolutionMode() != ResolutionMode.LOCKED) {
+            return projectArtifactResolver;
+        }
+        return newAetherResolver();
+    }
+
+    private AetherResolver newAetherResolver() {
+        return AetherResolver.builder()
+                .repositorySystem(repoSystem)
+                .repositorySystemSession(repoSession)
+                .remoteRepositories(projectRepos)
+                .lock(resolutionLock, getResolutionMode())
+                .profiler(resolutionProfiler)
+                .router(repositoryRouter)
+                .build();
     }
 
     private void logResolved(ArtifactResolutionRequest resolutionRequest, ArtifactResolutionResult resolutionResult) {
@@ -567,37 +1228,44 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         }
     }
 
-    private void createFeature(P2FeatureDefinition p2featureDefinition) {
+    private boolean bundleFeature(P2FeatureDefinition p2featureDefinition) {
     	try {
     		Multimap<P2Artifact, ArtifactBundlerInstructions> bi = this.processArtifacts(p2featureDefinition.getArtifacts());
 
 			if (null==p2featureDefinition.getFeatureFile()) {
 				//we must be generating the feature file from the pom
-				p2featureDefinition.setVersion( Utils.mavenToEclipse(p2featureDefinition.getVersion(), timestamp) );
-
-				boolean unpack = p2featureDefinition.getUnpack();
-				FeatureBuilder featureBuilder = new FeatureBuilder(p2featureDefinition, bi, false, unpack, timestamp);
-				featureBuilder.generate(this.featuresDestinationFolder);
+				String qualifier = featureQualifier(p2featureDefinition, bi, timestamp);
+				p2featureDefinition.setVersion( Utils.mavenToEclipse(p2featureDefinition.getVersion(), qualifier) );
 
-				if ( p2featureDefinition.getGenerateSourceFeature()) {
-					// build also the source feature. (But do not unpack. Should not be neccessary)
-					FeatureBuilder sourceFeatureBuilder = new FeatureBuilder(p2featureDefinition, bi, true, false, timestamp);
-					sourceFeatureBuilder.generate(this.featuresDestinationFolder);
+				generateFeature(p2featureDefinition, bi, this.featuresDestinationFolder, qualifier);
+				if (shardStrategy == ShardStrategy.FEATURE) {
+					generatedFeatures.put(p2featureDefinition, bi);
 				}
-			} else {
-				//given a feature file, so build using tycho
-				File basedir = p2featureDefinition.getFeatureFile().getParentFile();
-				TychoFeatureBuilder builder = new TychoFeatureBuilder(
-						p2featureDefinition.getFeatureFile(),
-						this.featuresDestinationFolder.getAbsolutePath(),
-						"test.feature",  // these are only dummy values.
-						"1.0.0",
-						project,
-						this.session,
-						this.pluginManager
-				);
-				builder.execute();
+				featureGenerated(p2featureDefinition, bi);
+				log.info("Created feature "+p2featureDefinition.getId());
 			}
+			return true;
+
+    	} catch (Exception e) {
+    		log.error(e);
+    		return false;
+    	}
+    }
+
+    private void buildFeature(P2FeatureDefinition p2featureDefinition) {
+    	try {
+			//given a feature file, so build using tycho
+			File basedir = p2featureDefinition.getFeatureFile().getParentFile();
+			TychoFeatureBuilder builder = new TychoFeatureBuilder(
+					p2featureDefinition.getFeatureFile(),
+					this.featuresDestinationFolder.getAbsolutePath(),
+					"test.feature",  // these are only dummy values.
+					"1.0.0",
+					project,
+					this.session,
+					this.pluginManager
+			);
+			builder.execute();
 
 			log.info("Created feature "+p2featureDefinition.getId());
 
@@ -606,16 +1274,125 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     	}
     }
 
-    private ArtifactBundlerInstructions bundleArtifact(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
-    	log.info("Bundling Artifact "+p2Artifact.getId());
+    void generateFeature(P2FeatureDefinition p2featureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions> bi,
+                         File destinationFolder, String timestamp) {
+        boolean unpack = p2featureDefinition.getUnpack();
+        FeatureBuilder featureBuilder = new FeatureBuilder(p2featureDefinition, bi, false, unpack, timestamp);
+        featureBuilder.generate(destinationFolder);
+        normalizeFeature(featureBuilder, destinationFolder);
+
+        if ( p2featureDefinition.getGenerateSourceFeature()) {
+            // build also the source feature. (But do not unpack. Should not be neccessary)
+            FeatureBuilder sourceFeatureBuilder = new FeatureBuilder(p2featureDefinition, bi, true, false, timestamp);
+            sourceFeatureBuilder.generate(destinationFolder);
+            normalizeFeature(sourceFeatureBuilder, destinationFolder);
+        }
+    }
+
+    private void normalizeFeature(FeatureBuilder featureBuilder, File destinationFolder) {
+        if (reproducible) {
+            normalizeJar(new File(destinationFolder, featureBuilder.getFeatureFullName() + ".jar"));
+        }
+    }
+
+    private void normalizeJar(File jar) {
+        try {
+            JarUtils.normalizeJar(jar);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot normalize jar " + jar, e);
+        }
+    }
+
+    /**
+     * Callback invoked for every root artifact that has been bundled. Does nothing by default.
+     */
+    void artifactBundled(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, ArtifactBundlerInstructions bundlerInstructions) {
+    }
+
+    /**
+     * Callback invoked for every feature generated from a feature definition. Does nothing by default.
+     */
+    void featureGenerated(P2FeatureDefinition p2featureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions> bundlerInstructions) {
+    }
+
+    private ArtifactBundlerInstructions bundleArtifact(final P2Artifact p2Artifact, final ResolvedArtifact resolvedArtifact) {
+        // the first configuration of an artifact wins, later ones reuse its bundle
+        ArtifactBundlerInstructions bundlerInstructions = bundleCache.get(resolvedArtifact.getArtifact(),
+                new Callable<ArtifactBundlerInstructions>() {
+            @Override
+            public ArtifactBundlerInstructions call() {
+                return bundleArtifact(p2Artifact, resolvedArtifact, bundlesDestinationFolder, timestamp);
+            }
+        });
+        if (shardStrategy != ShardStrategy.NONE) {
+            assignShard(bundlerInstructions, groupIdShard(resolvedArtifact.getArtifact().getGroupId()), false);
+        }
+        return bundlerInstructions;
+    }
+
+    String groupIdShard(String groupId) {
+        String shard = null;
+        int matched = -1;
+        for (Entry<String, String> mapping : shardMapping.entrySet()) {
+            String prefix = mapping.getKey();
+            boolean matches = groupId.equals(prefix) || groupId.startsWith(prefix + ".");
+            if (matches && prefix.length() > matched) {
+                shard = mapping.getValue();
+                matched = prefix.length();
+            }
+        }
+        if (shard != null) {
+            return shard;
+        }
+        String[] segments = groupId.split("\\.");
+        return StringUtils.join(Arrays.copyOf(segments, Math.min(segments.length, Math.max(1, shardGroupIdSegments))), ".");
+    }
+
+    private void assignShard(ArtifactBundlerInstructions bundlerInstructions, String shard, boolean override) {
+        assignShard(bundlerInstructions.getSymbolicName(), bundlerInstructions.getVersion(), shard, override);
+        if (bundlerInstructions.getSourceSymbolicName() != null) {
+            assignShard(bundlerInstructions.getSourceSymbolicName(), bundlerInstructions.getVersion(), shard, override);
+        }
+    }
+
+    private void assignShard(String id, String version, String shard, boolean override) {
+        if (override) {
+            unitShards.put(id + "_" + version, shard);
+            unitShards.put(id, shard);
+        } else {
+            unitShards.putIfAbsent(id + "_" + version, shard);
+            unitShards.putIfAbsent(id, shard);
+        }
+    }
+
+    ArtifactBundlerInstructions bundleArtifact(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, File outputFolder, String timestamp) {
+    	log.detail("Bundling Artifact "+p2Artifact.getId());
         P2Validator.validateBundleRequest(p2Artifact, resolvedArtifact);
         ArtifactBundler bundler = getArtifactBundler();
-        ArtifactBundlerInstructions bundlerInstructions = P2Helper.createBundlerInstructions(p2Artifact, resolvedArtifact, timestamp);
-        ArtifactBundlerRequest bundlerRequest = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, bundlesDestinationFolder);
+        String qualifier = bundleQualifier(p2Artifact, resolvedArtifact, timestamp);
+        ArtifactBundlerInstructions bundlerInstructions = P2Helper.createBundlerInstructions(p2Artifact, resolvedArtifact, qualifier);
+        ArtifactBundlerRequest bundlerRequest = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, outputFolder);
         bundler.execute(bundlerRequest, bundlerInstructions, destinationDirectory, osgiOverride);
         return bundlerInstructions;
     }
 
+    private String bundleQualifier(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, String timestamp) {
+        if (qualifierLedger == null || !resolvedArtifact.isSnapshot()) {
+            return timestamp;
+        }
+        return qualifierLedger.qualifier(P2Helper.calculateQualifierKey(resolvedArtifact),
+                P2Helper.calculateContentHash(p2Artifact, resolvedArtifact, osgiOverride), timestamp);
+    }
+
+    String featureQualifier(P2FeatureDefinition p2featureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions> bi,
+                            String timestamp) {
+        if (qualifierLedger == null) {
+            return timestamp;
+        }
+        return qualifierLedger.qualifier(P2Helper.calculateFeatureQualifierKey(p2featureDefinition),
+                P2Helper.calculateFeatureContentHash(p2featureDefinition, bi), timestamp);
+    }
+
     private void handleFeature(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
         log.debug("Handling feature " + p2Artifact.getId());
         ArtifactBundlerRequest bundlerRequest = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, featuresDestinationFolder);
@@ -625,7 +1402,10 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
             File outputFile = bundlerRequest.getBinaryOutputFile();
             //This will also copy the input to the output
             JarUtils.adjustFeatureXml(inputFile, outputFile, this.bundlesDestinationFolder, log, timestamp);
-            log.info("Copied " + inputFile + " to " + outputFile);
+            if (reproducible) {
+                normalizeJar(outputFile);
+            }
+            log.detail("Copied " + inputFile + " to " + outputFile);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         } catch (Exception ex) {
@@ -634,16 +1414,16 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     }
 
     private void processEclipseArtifacts() {
-        DefaultEclipseResolver resolver = new DefaultEclipseResolver(projectRepos, bundlesDestinationFolder);
+        DefaultEclipseResolver resolver = newEclipseResolver(bundlesDestinationFolder);
         log.info("Resolving " + p2.size() + " p2 artifacts");
         for (EclipseArtifact artifact : p2) {
             String[] tokens = artifact.getId().split(":");
             if (tokens.length != 2) {
                 throw new RuntimeException("Wrong format " + artifact.getId());
             }
-            boolean alreadyDownloaded = new File(destinationDirectory + "/plugins", artifact.getId().replace(":", "_") + ".jar").exists();
+            boolean alreadyDownloaded = repositoryIndex.containsBundle(tokens[0], tokens[1]);
             if (artifact.shouldIncludeSources()) {
-                alreadyDownloaded = alreadyDownloaded && new File(destinationDirectory + "/plugins", artifact.getId().replace(":", ".source_") + ".jar").exists();
+                alreadyDownloaded = alreadyDownloaded && repositoryIndex.containsBundle(tokens[0] + ".source", tokens[1]);
             }
             if (!(alreadyDownloaded && skipExisting)) {
                 logResolving(artifact);
@@ -653,75 +1433,107 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         }
     }
 
+    DefaultEclipseResolver newEclipseResolver(File target) {
+        boolean useCache = useP2Cache || session.isOffline();
+        return newEclipseResolver(target, useCache ? p2CacheDirectory : null);
+    }
+
+    DefaultEclipseResolver newEclipseResolver(File target, File cacheDirectory) {
+        return new DefaultEclipseResolver(projectRepos, target, repositoryRouter, cacheDirectory);
+    }
+
+    File getP2CacheDirectory() {
+        return p2CacheDirectory;
+    }
+
     private void processEclipseFeatures() throws IOException, MojoExecutionException {
-        DefaultEclipseResolver resolver = new DefaultEclipseResolver(projectRepos, featuresDestinationFolder);
+        DefaultEclipseResolver resolver = newEclipseResolver(featuresDestinationFolder);
         log.info("Resolving " + p2Features.size() + " p2 features");
+        // the transitive features of one source repository are mirrored in a single run, loading the repository once
+        Map<List<Object>, BundleMirror.Builder> mirrors = new LinkedHashMap<List<Object>, BundleMirror.Builder>();
         for (EclipseFeature feature : p2Features) {
             String[] tokens = feature.getId().split(":");
             if (tokens.length != 2) {
                 throw new RuntimeException("Wrong format " + feature.getId());
             }
-            boolean alreadyDownloaded = new File(destinationDirectory + "/features", feature.getId().replace(":", "_") + ".jar").exists();
+            boolean alreadyDownloaded = repositoryIndex.containsFeature(tokens[0], tokens[1]);
             if (!(alreadyDownloaded && skipExisting)) {
                 logResolving(feature);
                 EclipseResolutionRequest request = new EclipseResolutionRequest(tokens[0], tokens[1], false, EclipseType.FEATURE);
                 resolver.resolve(request);
 
                 if (feature.isTransitive()) {
-                    BundleMirror mirror;
-//                  if (skipExisting) {
-//                      mirror = BundleMirror.builder()
-//                          .mavenProject(project)
-//                          .mavenSession(session)
-//                          .buildPluginManager(pluginManager)
-//
-//                          .sourceURL(request.getSourceURL())
-//                          .iuId(tokens[0] + ".feature.group")
-//                          .iuVersion(tokens[1])
-//                          .includePacked(false)
-//                          .followStrictOnly(true)
-//                          .append(append)
-//                          .additionalArgs("-compare -compareAgainst " + request.getSourceURL())
-//                          .destination(buildDirectory + BUNDLES_TOP_FOLDER)
-//                          .build();
-//                  }
-//                  else {
+                    List<Object> mirrorKey = Arrays.<Object>asList(request.getSourceURL(), feature.getFilter());
+                    BundleMirror.Builder mirror = mirrors.get(mirrorKey);
+                    if (mirror == null) {
                         mirror = BundleMirror.builder()
                                 .mavenProject(project)
                                 .mavenSession(session)
                                 .buildPluginManager(pluginManager)
-
                                 .sourceURL(request.getSourceURL())
-                                .iuId(tokens[0] + ".feature.group")
-                                .iuVersion(tokens[1])
                                 .includePacked(false)
                                 .followStrictOnly(true)
                                 .append(append)
                                 .destination(buildDirectory + BUNDLES_TOP_FOLDER)
-                                .filter(feature.getFilter())
-                                .build();
-//                  }
-                    mirror.execute();
+                                .filter(feature.getFilter());
+                        mirrors.put(mirrorKey, mirror);
+                    }
+                    mirror.iu(tokens[0] + ".feature.group", tokens[1]);
                 }
             }
         }
+        for (BundleMirror.Builder mirror : mirrors.values()) {
+            mirror.build().execute();
+        }
     }
 
     private ArtifactBundler getArtifactBundler() {
-        return new AquteBundler(pedantic);
+        return AquteBundler.builder()
+                .pedantic(pedantic)
+                .registry(bundleContentRegistry)
+                .deduplicate(deduplicateArtifacts)
+                .publishedBundles(repositoryIndex)
+                .linker(fileLinker)
+                .remoteCache(remoteBundleCache)
+                .reproducible(reproducible)
+                .build();
     }
 
     private void executeP2PublisherPlugin() throws IOException, MojoExecutionException {
         prepareDestinationDirectory();
+        publishBundles(buildDirectory + BUNDLES_TOP_FOLDER, append);
+    }
+
+    void publishBundles(String sourceLocation, boolean append) throws IOException, MojoExecutionException {
+        File destination = new File(destinationDirectory);
+        if (append && streamingAppend && RepositoryFiles.exists(destination, RepositoryFiles.CONTENT)
+                && RepositoryFiles.exists(destination, RepositoryFiles.ARTIFACTS)) {
+            File staging = new File(buildDirectory + APPEND_STAGING_FOLDER);
+            FileUtils.deleteDirectory(staging);
+            publishBundles(sourceLocation, staging.getAbsolutePath(), false);
+            StreamingAppender.builder()
+                    .repository(destination)
+                    .staging(staging)
+                    .metadataCache(metadataCache)
+                    .build()
+                    .execute();
+            FileUtils.deleteDirectory(staging);
+            return;
+        }
+        publishBundles(sourceLocation, destinationDirectory, append);
+    }
+
+    private void publishBundles(String sourceLocation, String repositoryLocation, boolean append) throws IOException, MojoExecutionException {
         BundlePublisher publisher = BundlePublisher.builder()
                 .mavenProject(project)
                 .mavenSession(session)
                 .buildPluginManager(pluginManager)
-                .compressSite(compressSite)
+                .compressSite(compressSite && !isPostProcessingRequired())
                 .append(append)
                 .additionalArgs(additionalArgs)
-                .artifactRepositoryLocation(destinationDirectory)
-                .metadataRepositoryLocation(destinationDirectory)
+                .sourceLocation(sourceLocation)
+                .artifactRepositoryLocation(repositoryLocation)
+                .metadataRepositoryLocation(repositoryLocation)
                 .build();
         publisher.execute();
     }
@@ -729,12 +1541,103 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     private void prepareDestinationDirectory() throws IOException {
         if (!append) {
             FileUtils.deleteDirectory(new File(destinationDirectory));
+        } else if (isPostProcessingRequired()) {
+            // the publisher does not update the xz metadata, stale files would shadow the appended units
+            RepositoryFiles.deleteXzMetadata(new File(destinationDirectory));
         }
     }
 
-    private void executeCategoryPublisher() throws AbstractMojoExecutionException, IOException {
+    private boolean isPostProcessingRequired() {
+        return parallelCompression || xzCompressSite;
+    }
+
+    void writeQualifierLedger() throws IOException {
+        if (qualifierLedger != null) {
+            qualifierLedger.write(new File(destinationDirectory));
+            log.info(String.format("Reused the qualifiers of %d unchanged out of %d snapshot bundles and features",
+                    qualifierLedger.getReused(), qualifierLedger.size()));
+        }
+    }
+
+    void writeRepositoryIndex() throws IOException {
+        if (shardStrategy != ShardStrategy.NONE) {
+            // a sharded site cannot be appended to
+            return;
+        }
+        // makes the next appending build load the index without parsing the metadata
+        RepositoryIndex.load(new File(destinationDirectory)).writeSidecar(new File(destinationDirectory));
+    }
+
+    void postProcessRepository() throws IOException {
+        if (isPostProcessingRequired()) {
+            RepositoryPostProcessor.builder()
+                    .repository(new File(destinationDirectory))
+                    .compress(compressSite)
+                    .xz(xzCompressSite)
+                    .threads(getThreads())
+                    .metadataCache(metadataCache)
+                    .build()
+                    .execute();
+        }
+    }
+
+    private void publishDelta() throws IOException {
+        if (deltaAgainst != null) {
+            DeltaPublisher.builder()
+                    .repository(new File(destinationDirectory))
+                    .baseline(deltaAgainst)
+                    .layerName(timestamp)
+                    .maxLayers(deltaMaxLayers)
+                    .compress(compressSite)
+                    .linker(fileLinker)
+                    .metadataCache(metadataCache)
+                    .build()
+                    .execute();
+        }
+    }
+
+    private void shardRepository() throws IOException {
+        if (shardStrategy == ShardStrategy.NONE) {
+            return;
+        }
+        if (shardStrategy == ShardStrategy.FEATURE && featureDefinitions != null) {
+            // the features are generated in parallel, the first definition of a bundle decides its shard
+            Set<String> assigned = new HashSet<String>();
+            for (P2FeatureDefinition definition : featureDefinitions) {
+                Multimap<P2Artifact, ArtifactBundlerInstructions> bi = generatedFeatures.get(definition);
+                if (bi == null) {
+                    continue;
+                }
+                unitShards.put(definition.getId() + ".feature.group", definition.getId());
+                unitShards.put(definition.getId() + ".source.feature.group", definition.getId());
+                for (ArtifactBundlerInstructions instructions : bi.values()) {
+                    if (assigned.add(instructions.getSymbolicName() + "_" + instructions.getVersion())) {
+                        assignShard(instructions, definition.getId(), true);
+                    }
+                }
+            }
+        }
+        RepositorySharder.builder()
+                .repository(new File(destinationDirectory))
+                .unitShards(unitShards)
+                .compress(compressSite)
+                .xz(xzCompressSite)
+                .threads(getThreads())
+                .metadataCache(metadataCache)
+                .build()
+                .execute();
+    }
+
+    int getThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    void executeCategoryPublisher() throws AbstractMojoExecutionException, IOException {
         if (createCategories) {
             prepareCategoryLocationFile();
+            if (!forkCategoryPublisher && publishCategoriesInProcess()) {
+                return;
+            }
             CategoryPublisher publisher = CategoryPublisher.builder()
                     .p2ApplicationLauncher(launcher)
                     .additionalArgs(additionalArgs)
@@ -746,6 +1649,23 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         }
     }
 
+    private boolean publishCategoriesInProcess() throws IOException {
+        try {
+            int categories = NativeCategoryPublisher.builder()
+                    .categoryFileLocation(categoryFileURL)
+                    .metadataRepositoryLocation(destinationDirectory)
+                    .versionQualifier(timestamp)
+                    .metadataCache(metadataCache)
+                    .build()
+                    .execute();
+            log.info(String.format("Published %d categories", categories));
+            return true;
+        } catch (UnsupportedCategoryException ex) {
+            log.info(ex.getMessage() + ", publishing the categories with the forked CategoryPublisher");
+            return false;
+        }
+    }
+
     private void prepareCategoryLocationFile() throws IOException {
         if (StringUtils.isBlank(categoryFileURL)) {
             InputStream is = getClass().getResourceAsStream(DEFAULT_CATEGORY_CLASSPATH_LOCATION + DEFAULT_CATEGORY_FILE);
@@ -760,7 +1680,12 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     }
 
     private void runFeatureGen() {
-        FeatureGen.execute(buildDirectory + BUNDLES_TOP_FOLDER, destinationDirectory, repoFeatureVersion);
+        LogPhase phase = Logger.phase("Feature generation");
+        try {
+            FeatureGen.execute(buildDirectory + BUNDLES_TOP_FOLDER, destinationDirectory, repoFeatureVersion);
+        } finally {
+            phase.end();
+        }
     }
 
     private void cleanupEnvironment() throws IOException {
@@ -772,6 +1697,30 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         }
     }
 
+    String getBuildDirectory() {
+        return buildDirectory;
+    }
+
+    List<P2FeatureDefinition> getFeatureDefinitions() {
+        return featureDefinitions;
+    }
+
+    List<P2Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    List<P2Artifact> getFeatures() {
+        return features;
+    }
+
+    List<EclipseArtifact> getP2() {
+        return p2;
+    }
+
+    List<EclipseFeature> getP2Features() {
+        return p2Features;
+    }
+
     @Override
     public void contextualize(Context context) throws ContextException {
         this.container = (PlexusContainer) context.get(PlexusConstants.PLEXUS_KEY);
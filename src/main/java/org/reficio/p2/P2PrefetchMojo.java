@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest.EclipseType;
+import org.reficio.p2.resolver.eclipse.impl.DefaultEclipseResolver;
+import org.reficio.p2.resolver.maven.ArtifactResolutionResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves all the inputs of the "site" goal ahead of the build - the binaries and sources of the artifacts,
+ * features and feature definitions with their transitive dependencies, and the p2 artifacts and features - and
+ * downloads them concurrently to the local caches, without bundling anything. A following "site" build then runs
+ * without waiting for the network when it is offline or reads the p2 cache with {@code -Dp2.useCache=true}.
+ *
+ * @since 1.4.3
+ */
+@Mojo(
+        name = "prefetch",
+        requiresDependencyResolution = ResolutionScope.RUNTIME,
+        requiresDependencyCollection = ResolutionScope.RUNTIME
+)
+public class P2PrefetchMojo extends P2Mojo {
+
+    private static final String PREFETCH_FOLDER = "/prefetch";
+
+    @Override
+    public void execute() {
+        try {
+            initializeConfiguration();
+            validateConfiguration();
+            initializeResolution();
+            prefetch();
+            reportResolutionProfile();
+            saveRepositoryRoutes();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void prefetch() throws IOException, InterruptedException {
+        File target = new File(getBuildDirectory(), PREFETCH_FOLDER);
+        // a bundle and a feature with the same id and version are downloaded to separate folders
+        File pluginsTarget = new File(target, "plugins");
+        File featuresTarget = new File(target, "features");
+        FileUtils.forceMkdir(pluginsTarget);
+        FileUtils.forceMkdir(featuresTarget);
+        // the p2 artifacts are kept in the p2 cache, the downloaded copies are not needed
+        DefaultEclipseResolver pluginResolver = newEclipseResolver(pluginsTarget, getP2CacheDirectory());
+        DefaultEclipseResolver featureResolver = newEclipseResolver(featuresTarget, getP2CacheDirectory());
+        // the same id may be configured several times with different options
+        List<Map.Entry<String, Callable<Void>>> tasks = new ArrayList<Map.Entry<String, Callable<Void>>>();
+        for (P2Artifact p2Artifact : getMavenArtifacts()) {
+            tasks.add(task(p2Artifact.getId(), resolveTask(p2Artifact)));
+        }
+        // every p2 artifact is downloaded by a single task, concurrent downloads of the same file would tear it
+        Map<String, Boolean> p2Plugins = new LinkedHashMap<String, Boolean>();
+        for (EclipseArtifact p2Artifact : getP2()) {
+            boolean source = p2Artifact.shouldIncludeSources() || Boolean.TRUE.equals(p2Plugins.get(p2Artifact.getId()));
+            p2Plugins.put(p2Artifact.getId(), source);
+        }
+        for (Map.Entry<String, Boolean> p2Plugin : p2Plugins.entrySet()) {
+            tasks.add(task(p2Plugin.getKey(), eclipseTask(pluginResolver, p2Plugin.getKey(), p2Plugin.getValue(),
+                    EclipseType.PLUGIN)));
+        }
+        Set<String> p2Features = new LinkedHashSet<String>();
+        for (EclipseFeature p2Feature : getP2Features()) {
+            if (!p2Features.add(p2Feature.getId())) {
+                continue;
+            }
+            if (p2Feature.isTransitive()) {
+                Logger.getLog().info(String.format("The content of the transitive p2 feature [%s] is mirrored " +
+                        "from its repository during the build, only the feature itself is prefetched", p2Feature.getId()));
+            }
+            tasks.add(task(p2Feature.getId(), eclipseTask(featureResolver, p2Feature.getId(), false, EclipseType.FEATURE)));
+        }
+        try {
+            fetch(tasks);
+        } finally {
+            FileUtils.deleteDirectory(target);
+        }
+    }
+
+    private List<P2Artifact> getMavenArtifacts() {
+        List<P2Artifact> mavenArtifacts = new ArrayList<P2Artifact>(getArtifacts());
+        mavenArtifacts.addAll(getFeatures());
+        if (getFeatureDefinitions() != null) {
+            for (P2FeatureDefinition definition : getFeatureDefinitions()) {
+                mavenArtifacts.addAll(definition.getArtifacts());
+            }
+        }
+        return mavenArtifacts;
+    }
+
+    private static Map.Entry<String, Callable<Void>> task(String id, Callable<Void> task) {
+        return new AbstractMap.SimpleImmutableEntry<String, Callable<Void>>(id, task);
+    }
+
+    private void fetch(List<Map.Entry<String, Callable<Void>>> tasks) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        Logger.getLog().info(String.format("Prefetching %d artifacts using %d threads", tasks.size(), getThreads()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(getThreads(), tasks.size()));
+        try {
+            List<Map.Entry<String, Future<Void>>> results = new ArrayList<Map.Entry<String, Future<Void>>>();
+            for (Map.Entry<String, Callable<Void>> task : tasks) {
+                results.add(new AbstractMap.SimpleImmutableEntry<String, Future<Void>>(task.getKey(),
+                        executor.submit(task.getValue())));
+            }
+            List<String> errors = new ArrayList<String>();
+            for (Map.Entry<String, Future<Void>> result : results) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    errors.add(String.format("[%s]: %s", result.getKey(), e.getCause().getMessage()));
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new RuntimeException(String.format("p2-maven-plugin prefetch failed, %d artifacts cannot be fetched:\n\n\t%s\n",
+                        errors.size(), StringUtils.join(errors, "\n\t")));
+            }
+            Logger.getLog().info(String.format("Prefetched %d artifacts", tasks.size()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Void> resolveTask(final P2Artifact p2Artifact) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                ArtifactResolutionResult result = resolveArtifact(p2Artifact);
+                Logger.getLog().detail(String.format("Prefetched %s with %d artifacts", p2Artifact.getId(),
+                        result.getResolvedArtifacts().size()));
+                return null;
+            }
+        };
+    }
+
+    private Callable<Void> eclipseTask(final DefaultEclipseResolver resolver, final String id, final boolean source,
+                                        final EclipseType type) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                // the format is validated upfront
+                String[] tokens = id.split(":");
+                resolver.resolve(new EclipseResolutionRequest(tokens[0], tokens[1], source, type));
+                return null;
+            }
+        };
+    }
+
+}
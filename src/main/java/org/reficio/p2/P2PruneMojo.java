@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.RepositoryPruner;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Removes the obsolete versions from a long-lived (appended) repository, keeping the newest versions of every unit
+ * and everything the retained features still reference.
+ *
+ * @since 1.4.3
+ */
+@Mojo(name = "prune", requiresProject = false)
+public class P2PruneMojo extends AbstractMojo {
+
+    /**
+     * Repository to prune.
+     */
+    @Parameter(property = "p2.prune.repository", defaultValue = "${project.build.directory}/repository")
+    private File repository;
+
+    /**
+     * Number of the newest versions retained per unit id, 0 to retain by date only.
+     */
+    @Parameter(property = "p2.prune.keepVersions", defaultValue = "0")
+    private int keepVersions;
+
+    /**
+     * Date (yyyy-MM-dd) after which all versions are retained. A version is dated by its timestamp qualifier,
+     * or by its artifact file if the qualifier is not a timestamp.
+     */
+    @Parameter(property = "p2.prune.keepNewerThan")
+    private String keepNewerThan;
+
+    /**
+     * Only reports what would be removed.
+     */
+    @Parameter(property = "p2.prune.dryRun", defaultValue = "false")
+    private boolean dryRun;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (keepVersions <= 0 && StringUtils.isBlank(keepNewerThan)) {
+            throw new MojoExecutionException("p2-maven-plugin misconfiguration: prune requires keepVersions or keepNewerThan");
+        }
+        Logger.initialize(getLog());
+        try {
+            RepositoryPruner.builder()
+                    .repository(repository)
+                    .keepVersions(Math.max(keepVersions, 0))
+                    .keepNewerThan(parseDate(keepNewerThan))
+                    .dryRun(dryRun)
+                    .build()
+                    .execute();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot prune repository " + repository, e);
+        } finally {
+            Logger.shutdown();
+        }
+    }
+
+    private static Long parseDate(String date) throws MojoExecutionException {
+        if (StringUtils.isBlank(date)) {
+            return null;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+            return format.parse(date.trim()).getTime();
+        } catch (ParseException e) {
+            throw new MojoExecutionException("p2-maven-plugin misconfiguration: keepNewerThan [" + date
+                    + "] is not a yyyy-MM-dd date", e);
+        }
+    }
+
+}
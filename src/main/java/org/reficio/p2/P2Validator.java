@@ -18,10 +18,16 @@
  */
 package org.reficio.p2;
 
+import org.apache.commons.lang.StringUtils;
 import org.reficio.p2.logger.Logger;
 import org.reficio.p2.resolver.maven.ResolvedArtifact;
 import org.reficio.p2.utils.BundleUtils;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -30,6 +36,133 @@ import org.reficio.p2.utils.BundleUtils;
  */
 public class P2Validator {
 
+    public static List<String> validateConfiguration(List<P2Artifact> artifacts, List<P2Artifact> features,
+                                                     List<P2FeatureDefinition> featureDefinitions,
+                                                     List<EclipseArtifact> p2, List<EclipseFeature> p2Features) {
+        return validateConfiguration(artifacts, features, featureDefinitions, p2, p2Features, false);
+    }
+
+    /**
+     * Validates the whole configuration upfront, without resolving anything.
+     *
+     * @param includeDependencies if set, the artifacts may be configured by a prefix of the dependency ids,
+     *                            e.g. groupId:artifactId, see {@link #validateDependencyPatterns(List)}
+     * @return all the errors found, empty if the configuration is valid
+     */
+    public static List<String> validateConfiguration(List<P2Artifact> artifacts, List<P2Artifact> features,
+                                                     List<P2FeatureDefinition> featureDefinitions,
+                                                     List<EclipseArtifact> p2, List<EclipseFeature> p2Features,
+                                                     boolean includeDependencies) {
+        List<String> errors = new ArrayList<String>();
+        validateArtifactIds("artifact", artifacts, includeDependencies, errors);
+        validateArtifactIds("feature", features, false, errors);
+        for (P2FeatureDefinition featureDefinition : featureDefinitions) {
+            validateFeatureDefinition(featureDefinition, errors);
+        }
+        for (EclipseArtifact artifact : p2) {
+            validateEclipseId("p2 artifact", artifact.getId(), errors);
+        }
+        for (EclipseFeature feature : p2Features) {
+            validateEclipseId("p2 feature", feature.getId(), errors);
+        }
+        return errors;
+    }
+
+    /**
+     * Checks that every artifact configured by a prefix of the dependency ids got the id of a dependency.
+     *
+     * @return all the errors found, empty if all the prefixes matched
+     */
+    public static List<String> validateDependencyPatterns(List<P2Artifact> artifacts) {
+        List<String> errors = new ArrayList<String>();
+        for (P2Artifact artifact : artifacts) {
+            if (!isValidArtifactId(artifact.getId()) && isDependencyPattern(artifact.getId())) {
+                errors.add(String.format("The artifact [%s] does not match any dependency of the project", artifact.getId()));
+            }
+        }
+        return errors;
+    }
+
+    private static void validateArtifactIds(String type, List<P2Artifact> artifacts, boolean dependencyPatterns,
+                                            List<String> errors) {
+        Set<String> ids = new HashSet<String>();
+        for (P2Artifact artifact : artifacts) {
+            String id = artifact.getId();
+            boolean pattern = dependencyPatterns && isDependencyPattern(id);
+            if (!pattern && !isValidArtifactId(id)) {
+                errors.add(String.format("Wrong format of the %s id [%s], expected " +
+                        "<groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>", type, id));
+            } else if (!ids.add(id)) {
+                errors.add(String.format("The %s [%s] is configured multiple times, remove the duplicate definitions", type, id));
+            }
+        }
+    }
+
+    private static boolean isDependencyPattern(String id) {
+        if (StringUtils.isBlank(id)) {
+            return false;
+        }
+        for (String token : id.split(":", -1)) {
+            if (StringUtils.isBlank(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isValidArtifactId(String id) {
+        if (StringUtils.isBlank(id)) {
+            return false;
+        }
+        String[] tokens = id.split(":", -1);
+        if (tokens.length < 3 || tokens.length > 5) {
+            return false;
+        }
+        for (int i = 0; i < tokens.length; i++) {
+            // the classifier is the only token that may be empty
+            boolean classifier = tokens.length == 5 && i == 3;
+            if (!classifier && StringUtils.isBlank(tokens[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void validateFeatureDefinition(P2FeatureDefinition featureDefinition, List<String> errors) {
+        String id = featureDefinition.getId();
+        if (StringUtils.isBlank(id)) {
+            errors.add("The id of a feature definition is not specified");
+        }
+        if (featureDefinition.getFeatureFile() == null) {
+            if (StringUtils.isBlank(featureDefinition.getVersion())) {
+                errors.add(String.format("The version of the feature definition [%s] is not specified", id));
+            }
+        } else if (!featureDefinition.getFeatureFile().isFile()) {
+            errors.add(String.format("The feature file %s of the feature definition [%s] does not exist",
+                    featureDefinition.getFeatureFile(), id));
+        }
+        validateArtifactIds("artifact of the feature definition [" + id + "]", featureDefinition.getArtifacts(), false, errors);
+    }
+
+    private static void validateEclipseId(String type, String id, List<String> errors) {
+        String[] tokens = id != null ? id.split(":", -1) : new String[0];
+        if (tokens.length != 2 || StringUtils.isBlank(tokens[0]) || StringUtils.isBlank(tokens[1])) {
+            errors.add(String.format("Wrong format of the %s id [%s], expected <bundleId>:<version>", type, id));
+        }
+    }
+
+    /**
+     * @return true if the artifact configuration is valid only if the root artifact is not a bundle,
+     * which can be checked only once the artifact is resolved
+     */
+    public static boolean requiresBundleCheck(P2Artifact p2Artifact) {
+        if (p2Artifact.shouldOverrideManifest()) {
+            return false;
+        }
+        return p2Artifact.isSingleton()
+                || (!p2Artifact.getCombinedInstructions().isEmpty() && !p2Artifact.shouldKeepOSGiManifest());
+    }
+
     public static void validateBundleRequest(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
         validateGeneralConfig(p2Artifact);
         validateArtifactConfig(p2Artifact, resolvedArtifact);
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.reficio.p2.bundler.ArtifactBundlerInstructions;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+import org.reficio.p2.utils.FileWatcher;
+import org.reficio.p2.utils.Utils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the site exactly like the "site" goal and then keeps watching the files of the resolved root artifacts.
+ * Whenever one of them changes only that artifact is re-bundled and appended to the existing site, together with
+ * the generated features that reference it.
+ *
+ * @since 1.4.3
+ */
+@Mojo(
+        name = "watch",
+        requiresDependencyResolution = ResolutionScope.RUNTIME,
+        requiresDependencyCollection = ResolutionScope.RUNTIME
+)
+public class P2WatchMojo extends P2Mojo {
+
+    private static final String WATCH_FOLDER = "/watch";
+
+    /**
+     * Time to wait after the last file event before the changed artifacts are re-bundled.
+     * Tools usually write a jar in several steps, so the events are collected until the file is quiet.
+     */
+    @Parameter(defaultValue = "300")
+    private long watchQuietPeriodInMillis;
+
+    private final Map<Path, List<WatchedArtifact>> watchedFiles = new HashMap<Path, List<WatchedArtifact>>();
+
+    private final Map<P2FeatureDefinition, String> featureVersions = new HashMap<P2FeatureDefinition, String>();
+
+    private final Map<P2FeatureDefinition, ListMultimap<P2Artifact, ArtifactBundlerInstructions>> featureInstructions =
+            new HashMap<P2FeatureDefinition, ListMultimap<P2Artifact, ArtifactBundlerInstructions>>();
+
+    private int round = 0;
+
+    @Override
+    public void execute() {
+        rememberFeatureVersions();
+        try {
+            build();
+            watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void rememberFeatureVersions() {
+        // the versions are rewritten while the features are generated, the originals are needed to re-qualify them
+        if (getFeatureDefinitions() != null) {
+            for (P2FeatureDefinition definition : getFeatureDefinitions()) {
+                featureVersions.put(definition, definition.getVersion());
+            }
+        }
+    }
+
+    @Override
+    synchronized void artifactBundled(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, ArtifactBundlerInstructions bundlerInstructions) {
+        Path file = resolvedArtifact.getArtifact().getFile().toPath().toAbsolutePath().normalize();
+        List<WatchedArtifact> artifacts = watchedFiles.get(file);
+        if (artifacts == null) {
+            artifacts = new ArrayList<WatchedArtifact>();
+            watchedFiles.put(file, artifacts);
+        }
+        for (WatchedArtifact watched : artifacts) {
+            // an artifact bundled again for the same file is republished once
+            if (watched.p2Artifact == p2Artifact) {
+                return;
+            }
+        }
+        artifacts.add(new WatchedArtifact(p2Artifact, resolvedArtifact, bundlerInstructions));
+    }
+
+    @Override
+    synchronized void featureGenerated(P2FeatureDefinition p2featureDefinition, Multimap<P2Artifact, ArtifactBundlerInstructions> bundlerInstructions) {
+        featureInstructions.put(p2featureDefinition, ArrayListMultimap.create(bundlerInstructions));
+    }
+
+    private void watch() throws Exception {
+        if (watchedFiles.isEmpty()) {
+            log().info("No artifacts to watch, the site is not republished");
+            return;
+        }
+        FileWatcher watcher = new FileWatcher(watchedFiles.keySet(), watchQuietPeriodInMillis);
+        try {
+            log().info(String.format("Watching %d artifacts in %d folders for changes", watchedFiles.size(), watcher.getFolderCount()));
+            while (true) {
+                Set<Path> changedFiles = watcher.awaitChanges();
+                if (!changedFiles.isEmpty()) {
+                    republish(changedFiles);
+                }
+            }
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private void republish(Set<Path> changedFiles) {
+        long start = System.currentTimeMillis();
+        String timestamp = Utils.getTimeStamp();
+        File stagingFolder = new File(getBuildDirectory(), WATCH_FOLDER + "/" + (++round));
+        File pluginsFolder = new File(stagingFolder, "plugins");
+        File featuresFolder = new File(stagingFolder, "features");
+        Set<P2FeatureDefinition> affectedFeatures = new LinkedHashSet<P2FeatureDefinition>();
+        int bundled = 0;
+        try {
+            for (Path file : changedFiles) {
+                for (WatchedArtifact watched : watchedFiles.get(file)) {
+                    if (!watched.resolvedArtifact.isSnapshot()) {
+                        log().warn(String.format("Artifact [%s] changed, but it is not a snapshot. Its version stays the same, " +
+                                "so it cannot be republished to the site", watched.resolvedArtifact.getArtifact()));
+                        continue;
+                    }
+                    ArtifactBundlerInstructions bundlerInstructions = bundleArtifact(watched.p2Artifact, watched.resolvedArtifact,
+                            pluginsFolder, timestamp);
+                    replaceFeatureInstructions(watched, bundlerInstructions, affectedFeatures);
+                    watched.bundlerInstructions = bundlerInstructions;
+                    bundled++;
+                }
+            }
+            if (bundled == 0) {
+                return;
+            }
+            for (P2FeatureDefinition definition : affectedFeatures) {
+                definition.setVersion(featureVersions.get(definition));
+                String qualifier = featureQualifier(definition, featureInstructions.get(definition), timestamp);
+                definition.setVersion(Utils.mavenToEclipse(definition.getVersion(), qualifier));
+                generateFeature(definition, featureInstructions.get(definition), featuresFolder, qualifier);
+            }
+            publishBundles(stagingFolder.getAbsolutePath(), true);
+            executeCategoryPublisher();
+            writeQualifierLedger();
+            postProcessRepository();
+            writeRepositoryIndex();
+            log().info(String.format("Republished %d artifacts and %d features in %d ms", bundled, affectedFeatures.size(),
+                    System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            // keep on watching, the next change may fix the problem
+            log().error("Cannot republish the changed artifacts", e);
+        } finally {
+            FileUtils.deleteQuietly(stagingFolder);
+        }
+    }
+
+    private void replaceFeatureInstructions(WatchedArtifact watched, ArtifactBundlerInstructions bundlerInstructions,
+                                            Set<P2FeatureDefinition> affectedFeatures) {
+        for (Map.Entry<P2FeatureDefinition, ListMultimap<P2Artifact, ArtifactBundlerInstructions>> entry : featureInstructions.entrySet()) {
+            List<ArtifactBundlerInstructions> instructions = entry.getValue().get(watched.p2Artifact);
+            int index = instructions.indexOf(watched.bundlerInstructions);
+            if (index >= 0) {
+                instructions.set(index, bundlerInstructions);
+                affectedFeatures.add(entry.getKey());
+            }
+        }
+    }
+
+    private Logger log() {
+        return Logger.getLog();
+    }
+
+    private static class WatchedArtifact {
+        private final P2Artifact p2Artifact;
+        private final ResolvedArtifact resolvedArtifact;
+        private ArtifactBundlerInstructions bundlerInstructions;
+
+        WatchedArtifact(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact, ArtifactBundlerInstructions bundlerInstructions) {
+            this.p2Artifact = p2Artifact;
+            this.resolvedArtifact = resolvedArtifact;
+            this.bundlerInstructions = bundlerInstructions;
+        }
+    }
+
+}
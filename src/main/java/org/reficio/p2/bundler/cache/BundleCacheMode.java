@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.cache;
+
+/**
+ * Specifies how the remote bundle cache is used.
+ *
+ * @since 1.4.3
+ */
+public enum BundleCacheMode {
+
+    /**
+     * the cache is not used
+     */
+    OFF,
+
+    /**
+     * the bundles are taken from the cache, but never stored in it, e.g. in pull request builds
+     */
+    READ,
+
+    /**
+     * the bundles are taken from the cache and the missing ones are stored in it
+     */
+    READWRITE;
+
+    public boolean isReadEnabled() {
+        return this != OFF;
+    }
+
+    public boolean isWriteEnabled() {
+        return this == READWRITE;
+    }
+
+    public static BundleCacheMode fromString(String mode) {
+        for (BundleCacheMode value : values()) {
+            if (value.name().equalsIgnoreCase(mode.trim())) {
+                return value;
+            }
+        }
+        throw new RuntimeException("p2-maven-plugin misconfiguration: unknown bundleCacheMode [" + mode + "], " +
+                "expected one of off, read, readwrite");
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.utils.HashUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal server of the remote bundle cache protocol that stores the bundles in a folder. It's meant as a stand-in
+ * for a real cache, e.g. for a single build machine or for testing the cache configuration.
+ * <p>
+ * The uploads are not authenticated, so the server listens only on the loopback interface unless another address is
+ * given explicitly. An upload is stored only if its content matches the checksum sent with it.
+ *
+ * @since 1.4.3
+ */
+public class BundleCacheServer {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    private final File directory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private BundleCacheServer(File directory, HttpServer server, ExecutorService executor) {
+        this.directory = directory;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the server on the loopback interface, port 0 picks a free port.
+     */
+    public static BundleCacheServer start(File directory, int port) throws IOException {
+        return start(directory, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Starts the server on the given address, port 0 picks a free port.
+     */
+    public static BundleCacheServer start(File directory, InetAddress address, int port) throws IOException {
+        FileUtils.forceMkdir(directory);
+        HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        BundleCacheServer cacheServer = new BundleCacheServer(directory, server, executor);
+        server.createContext("/", cacheServer.new CacheHandler());
+        server.setExecutor(executor);
+        server.start();
+        return cacheServer;
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getUrl() {
+        InetAddress address = server.getAddress().getAddress();
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+            return "http://localhost:" + getPort() + "/";
+        }
+        String host = address.getHostAddress();
+        return "http://" + (host.contains(":") ? "[" + host + "]" : host) + ":" + getPort() + "/";
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private class CacheHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String key = exchange.getRequestURI().getPath().substring(1);
+                if (!KEY.matcher(key).matches()) {
+                    sendEmpty(exchange, 400);
+                    return;
+                }
+                // two levels, so that the folders stay reasonably small
+                File file = new File(new File(directory, key.substring(0, 2)), key);
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    handleGet(exchange, file);
+                } else if ("PUT".equals(exchange.getRequestMethod())) {
+                    handlePut(exchange, file);
+                } else {
+                    sendEmpty(exchange, 405);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void handleGet(HttpExchange exchange, File file) throws IOException {
+            if (!file.isFile()) {
+                sendEmpty(exchange, 404);
+                return;
+            }
+            exchange.getResponseHeaders().set(RemoteBundleCache.CHECKSUM_HEADER, HashUtils.sha256(file));
+            exchange.sendResponseHeaders(200, file.length());
+            InputStream input = new FileInputStream(file);
+            try {
+                OutputStream output = exchange.getResponseBody();
+                IOUtils.copy(input, output);
+                output.close();
+            } finally {
+                input.close();
+            }
+        }
+
+        private void handlePut(HttpExchange exchange, File file) throws IOException {
+            String checksum = exchange.getRequestHeaders().getFirst(RemoteBundleCache.CHECKSUM_HEADER);
+            if (checksum == null || !KEY.matcher(checksum).matches()) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            FileUtils.forceMkdir(file.getParentFile());
+            // concurrent uploads of the same key are identical, the last one wins atomically
+            File temp = File.createTempFile(file.getName(), ".upload", file.getParentFile());
+            try {
+                OutputStream output = new FileOutputStream(temp);
+                try {
+                    IOUtils.copy(exchange.getRequestBody(), output);
+                } finally {
+                    output.close();
+                }
+                if (!checksum.equals(HashUtils.sha256(temp))) {
+                    sendEmpty(exchange, 400);
+                    return;
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                FileUtils.deleteQuietly(temp);
+            }
+            sendEmpty(exchange, 201);
+        }
+
+        private void sendEmpty(HttpExchange exchange, int status) throws IOException {
+            // an empty chunked body keeps the connection alive, without a body the server closes it after the response
+            exchange.sendResponseHeaders(status, 0);
+        }
+    }
+
+}
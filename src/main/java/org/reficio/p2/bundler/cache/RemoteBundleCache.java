@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.cache;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.utils.HashUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client of a remote cache of the produced bundles. The protocol is plain HTTP: a bundle is downloaded with
+ * GET {url}/{key} and uploaded with PUT {url}/{key}, a missing bundle is answered with 404. The key identifies the
+ * bundling inputs, so the SHA-256 of the bundle itself travels in the X-Checksum-Sha256 header both ways; a download
+ * that doesn't match it is rejected.
+ * <p>
+ * The cache never fails the build. If it cannot be reached it's disabled for the rest of the build.
+ *
+ * @since 1.4.3
+ */
+public class RemoteBundleCache {
+
+    static final String CHECKSUM_HEADER = "X-Checksum-Sha256";
+
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final String url;
+    private final BundleCacheMode mode;
+    private final AtomicBoolean available = new AtomicBoolean(true);
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger stores = new AtomicInteger();
+
+    public RemoteBundleCache(String url, BundleCacheMode mode) {
+        Preconditions.checkNotNull(url, "url cannot be null");
+        Preconditions.checkNotNull(mode, "mode cannot be null");
+        this.url = url.endsWith("/") ? url : url + "/";
+        this.mode = mode;
+    }
+
+    /**
+     * Downloads the bundle stored under the key to the given file.
+     *
+     * @return true if the bundle was in the cache
+     */
+    public boolean get(String key, File target) {
+        if (!mode.isReadEnabled() || !available.get()) {
+            return false;
+        }
+        try {
+            HttpURLConnection connection = open(key, "GET");
+            try {
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    misses.incrementAndGet();
+                    return false;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + status + " " + connection.getResponseMessage());
+                }
+                download(connection, target);
+                hits.incrementAndGet();
+                return true;
+            } finally {
+                release(connection);
+            }
+        } catch (IOException e) {
+            disable(e);
+            return false;
+        }
+    }
+
+    /**
+     * Uploads the bundle under the key, does nothing unless the cache is writable.
+     */
+    public void put(String key, File bundle) {
+        if (!mode.isWriteEnabled() || !available.get()) {
+            return;
+        }
+        try {
+            HttpURLConnection connection = open(key, "PUT");
+            try {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(bundle.length());
+                connection.setRequestProperty("Content-Type", "application/java-archive");
+                connection.setRequestProperty(CHECKSUM_HEADER, HashUtils.sha256(bundle));
+                InputStream input = new FileInputStream(bundle);
+                try {
+                    OutputStream output = connection.getOutputStream();
+                    try {
+                        IOUtils.copy(input, output);
+                    } finally {
+                        output.close();
+                    }
+                } finally {
+                    input.close();
+                }
+                int status = connection.getResponseCode();
+                if (status / 100 != 2) {
+                    throw new IOException("HTTP " + status + " " + connection.getResponseMessage());
+                }
+                stores.incrementAndGet();
+            } finally {
+                release(connection);
+            }
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    public void reportStatistics() {
+        if (mode.isReadEnabled()) {
+            Logger.getLog().info(String.format("Remote bundle cache %s: %d hits, %d misses, %d stored", url, hits.get(),
+                    misses.get(), stores.get()));
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getStores() {
+        return stores.get();
+    }
+
+    private HttpURLConnection open(String key, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + key).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static void release(HttpURLConnection connection) {
+        // an empty response puts the connection back to the keep-alive cache right away, disconnect() would close
+        // its socket there and the next request would fail on the stale connection
+        IOUtils.closeQuietly(connection.getErrorStream());
+    }
+
+    private void download(HttpURLConnection connection, File target) throws IOException {
+        // the bundle becomes visible only once it's complete
+        File temp = new File(target.getParentFile(), target.getName() + ".download");
+        try {
+            InputStream input = connection.getInputStream();
+            try {
+                OutputStream output = new FileOutputStream(temp);
+                try {
+                    IOUtils.copy(input, output);
+                } finally {
+                    output.close();
+                }
+            } finally {
+                input.close();
+            }
+            String checksum = connection.getHeaderField(CHECKSUM_HEADER);
+            if (checksum != null && !checksum.equalsIgnoreCase(HashUtils.sha256(temp))) {
+                throw new IOException("Checksum mismatch of the cached bundle " + connection.getURL());
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    private void disable(IOException e) {
+        if (available.compareAndSet(true, false)) {
+            Logger.getLog().warn(String.format("Remote bundle cache %s disabled for this build: %s", url, e.getMessage()));
+        }
+    }
+
+}
@@ -24,16 +24,27 @@ import org.apache.commons.io.FileUtils;
 import org.reficio.p2.bundler.ArtifactBundler;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
 import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.bundler.cache.RemoteBundleCache;
+import org.reficio.p2.bundler.impl.BundleContentRegistry.BundledContent;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
 import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.RepositoryIndex;
 import org.reficio.p2.utils.BundleUtils;
+import org.reficio.p2.utils.FileLinker;
+import org.reficio.p2.utils.HashUtils;
 import org.reficio.p2.utils.JarUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -49,54 +60,94 @@ public class AquteBundler implements ArtifactBundler {
 
     protected final BundleUtils bundleUtils;
     private final boolean pedantic;
+    private final BundleContentRegistry registry;
+    private final boolean deduplicate;
+    private final RepositoryIndex publishedBundles;
+    private final FileLinker linker;
+    private final RemoteBundleCache remoteCache;
+    private final boolean reproducible;
 
     public AquteBundler(boolean pedantic) {
+        this(builder().pedantic(pedantic));
+    }
+
+    private AquteBundler(Builder builder) {
         this.bundleUtils = new BundleUtils();
-        this.pedantic = pedantic;
+        this.pedantic = builder.pedantic;
+        this.registry = builder.registry;
+        this.deduplicate = builder.deduplicate;
+        this.publishedBundles = builder.publishedBundles;
+        this.linker = builder.linker;
+        this.remoteCache = builder.remoteCache;
+        this.reproducible = builder.reproducible;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
     public void execute(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions, String finalDestinationDirectory,
             Map<String, String> osgiOverride) {
 
-        String proposedBinaryJarName = request.getBinaryOutputFile().getName();
-        proposedBinaryJarName = instructions.getSymbolicName() + "_" + instructions.getVersion() + ".jar";
-
-        String proposedSourceJarName = "";
-        if (request.isShouldBundleSourceFile()) {
-            proposedSourceJarName = request.getSourceOutputFile().getName();
-            proposedSourceJarName = instructions.getSourceSymbolicName() + "_" + instructions.getVersion() + ".jar";
-        }
-
-        File binaryFinalFile = new File(finalDestinationDirectory + "\\plugins", proposedBinaryJarName);
-        boolean shouldCopy = binaryFinalFile.exists() ? !BundleUtils.INSTANCE.isBundle(binaryFinalFile) : true;
-        File sourceFinalFile = new File(finalDestinationDirectory + "\\plugins", proposedSourceJarName);
-        boolean shouldCopySource = sourceFinalFile.exists() ? !BundleUtils.INSTANCE.isBundle(sourceFinalFile) : true;
+        boolean shouldCopy = !isPublished(finalDestinationDirectory, instructions.getSymbolicName(), instructions.getVersion());
+        boolean shouldCopySource = !request.isShouldBundleSourceFile()
+                || !isPublished(finalDestinationDirectory, instructions.getSourceSymbolicName(), instructions.getVersion());
 
+        InputHash hash = new InputHash(request.getBinaryInputFile());
         try {
             log().debug("Executing Bundler:");
-            doWrap(request, instructions, shouldCopy, osgiOverride);
+            if (isDuplicate(hash, instructions)) {
+                log().detail("\t [DEDUP] " + request.getBinaryInputFile().getName());
+            } else {
+                doWrap(request, instructions, shouldCopy, osgiOverride, hash);
+            }
+            // the source bundle of a duplicate may be missing, e.g. if the sources of the first one were not found
             doSourceWrap(request, instructions, shouldCopySource);
         } catch (Exception ex) {
             throw new RuntimeException("Error while bundling jar or source: " + request.getBinaryInputFile().getName(), ex);
         }
     }
 
+    private boolean isPublished(String finalDestinationDirectory, String symbolicName, String version) {
+        if (publishedBundles != null) {
+            return publishedBundles.containsBundle(symbolicName, version);
+        }
+        File finalFile = new File(new File(finalDestinationDirectory, "plugins"), symbolicName + "_" + version + ".jar");
+        return finalFile.exists() && BundleUtils.INSTANCE.isBundle(finalFile);
+    }
+
+    private boolean isDuplicate(InputHash hash, ArtifactBundlerInstructions instructions) {
+        return deduplicate && registry != null && hash.get() != null
+                && registry.findBundle(hash.get(), instructions.getSymbolicName(), instructions.getVersion()) != null;
+    }
+
     private void doWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions, boolean shouldCopy,
-            Map<String, String> osgiOverride) throws Exception {
+            Map<String, String> osgiOverride, InputHash hash) throws Exception {
         if (request.isShouldBundleBinaryFile() && shouldCopy) {
             forceMkdirSilently(new File(request.getBinaryOutputFile().getParent()));
             prepareOutputFile(request.getBinaryOutputFile());
-            log().info("\t [EXEC] " + request.getBinaryInputFile().getName());
-            handleVanillaJarWrap(request, instructions);
+            log().detail("\t [EXEC] " + request.getBinaryInputFile().getName());
+            handleVanillaJarWrap(request, instructions, hash.get());
         } else {
             log().debug("\t [SKIP] " + request.getBinaryInputFile().getName());
             if (shouldCopy) {
                 handleBundleJarWrap(request, instructions, osgiOverride);
+                if (deduplicate) {
+                    // the copied bundles are looked up only to deduplicate the following ones
+                    register(hash.get(), request, instructions, null);
+                }
             }
         }
     }
 
+    private void register(String hash, ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions, String analysisKey) {
+        if (hash != null && registry != null) {
+            registry.register(hash, new BundledContent(request.getBinaryOutputFile(), instructions.getSymbolicName(),
+                    instructions.getVersion(), analysisKey));
+        }
+    }
+
     private static File forceMkdirSilently(File folder) {
         try {
             FileUtils.forceMkdir(folder);
@@ -119,29 +170,90 @@ public class AquteBundler implements ArtifactBundler {
         }
     }
 
-    private void handleVanillaJarWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions) throws Exception {
-        Analyzer analyzer = AquteHelper.buildAnalyzer(request, instructions, pedantic);
+    private void handleVanillaJarWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions, String hash) throws Exception {
+        // computed upfront as the analyzer modifies the instructions
+        String analysisKey = hash != null ? analysisKey(instructions) : null;
+        BundledContent analyzed = hash != null && registry != null ? registry.findAnalysis(hash, analysisKey) : null;
+        String cacheKey = hash != null && remoteCache != null ? cacheKey(hash, instructions, analysisKey) : null;
+        if (analyzed != null) {
+            log().detail("\t [REUSE] " + request.getBinaryInputFile().getName() + " analysis of " + analyzed.getOutputFile().getName());
+            reuseAnalysis(analyzed.getOutputFile(), request.getBinaryOutputFile(), instructions);
+        } else if (cacheKey != null && remoteCache.get(cacheKey, request.getBinaryOutputFile())) {
+            log().detail("\t [CACHED] " + request.getBinaryInputFile().getName());
+            normalize(request.getBinaryOutputFile());
+        } else {
+            Analyzer analyzer = AquteHelper.buildAnalyzer(request, instructions, pedantic);
+            try {
+                populateJar(analyzer, request.getBinaryInputFile(), request.getBinaryOutputFile());
+                bundleUtils.reportErrors(analyzer);
+            } finally {
+                analyzer.close();
+            }
+            normalize(request.getBinaryOutputFile());
+            if (cacheKey != null) {
+                remoteCache.put(cacheKey, request.getBinaryOutputFile());
+            }
+        }
+        register(hash, request, instructions, analysisKey);
+    }
+
+    private String analysisKey(ArtifactBundlerInstructions instructions) {
+        // everything the analysis depends on apart from the symbolic name and the name, which are patched on reuse
+        return instructions.getVersion() + "|" + pedantic + "|" + new TreeMap<String, String>(instructions.getInstructions());
+    }
+
+    private String cacheKey(String hash, ArtifactBundlerInstructions instructions, String analysisKey) {
+        // the whole manifest is derived from the input and the instructions, the tool identifies the producer
+        return HashUtils.sha256(hash + "|" + instructions.getSymbolicNameWithOptions() + "|" + instructions.getName()
+                + "|" + analysisKey + "|" + AquteHelper.TOOL + "|" + Analyzer.class.getPackage().getImplementationVersion());
+    }
+
+    private void reuseAnalysis(File analyzedFile, File outputFile, ArtifactBundlerInstructions instructions) throws Exception {
+        Jar jar = new Jar(analyzedFile);
         try {
-            populateJar(analyzer, request.getBinaryOutputFile());
-            bundleUtils.reportErrors(analyzer);
+            Manifest manifest = jar.getManifest();
+            Attributes attributes = manifest.getMainAttributes();
+            attributes.putValue(Analyzer.BUNDLE_SYMBOLICNAME, instructions.getSymbolicNameWithOptions());
+            if (!instructions.getInstructions().containsKey(Analyzer.BUNDLE_NAME)) {
+                attributes.putValue(Analyzer.BUNDLE_NAME, instructions.getName());
+            }
+            jar.setManifest(manifest);
+            writeJar(jar, outputFile, P2Events.OUTCOME_REUSED);
         } finally {
-            analyzer.close();
+            jar.close();
         }
+        normalize(outputFile);
     }
 
-    private void populateJar(Analyzer analyzer, File outputFile) throws Exception {
+    private void populateJar(Analyzer analyzer, File inputFile, File outputFile) throws Exception {
         Jar jar = analyzer.getJar();
-        jar.setManifest(analyzer.calcManifest());
+        P2Event analysis = P2Events.bundleAnalyze(inputFile.getName());
         try {
-            jar.write(outputFile);
+            jar.setManifest(analyzer.calcManifest());
+            analysis.bytes(inputFile.length()).success();
+        } finally {
+            analysis.commit();
+        }
+        try {
+            writeJar(jar, outputFile, P2Events.OUTCOME_SUCCESS);
         } finally {
             jar.close();
         }
     }
 
+    private static void writeJar(Jar jar, File outputFile, String outcome) throws Exception {
+        P2Event event = P2Events.bundleWrite(outputFile.getName());
+        try {
+            jar.write(outputFile);
+            event.bytes(outputFile.length()).outcome(outcome);
+        } finally {
+            event.commit();
+        }
+    }
+
     private void removeSignature(File jar) {
         if (JarUtils.containsSignature(jar)) {
-            log().info("\t [UNSIGN] " + jar.getName());
+            log().detail("\t [UNSIGN] " + jar.getName());
             JarUtils.removeSignature(jar);
         }
     }
@@ -149,8 +261,14 @@ public class AquteBundler implements ArtifactBundler {
     private void handleBundleJarWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions,
             Map<String, String> osgiOverride) throws IOException {
         // in general this method does not modify the jar since it's already a bundle
-        // so the file is copied only
-        FileUtils.copyFile(request.getBinaryInputFile(), request.getBinaryOutputFile());
+        // so the file is linked only, modified files are copied as the jar tools rewrite them in place
+        boolean modified = isModified(request, instructions, osgiOverride);
+        if (modified) {
+            FileUtils.copyFile(request.getBinaryInputFile(), request.getBinaryOutputFile());
+        } else {
+            FileLinker.Strategy placement = linker.place(request.getBinaryInputFile(), request.getBinaryOutputFile());
+            log().debug("\t [" + placement + "] " + request.getBinaryInputFile().getName());
+        }
         if (instructions.isSnapshot()) {
             // the only thing that is modified is the version of the bundle
             // in case it's a snapshot and the version does not contain a timestamp but a generic "SNAPSHOT" string only
@@ -167,6 +285,27 @@ public class AquteBundler implements ArtifactBundler {
                 removeSignature(request.getBinaryOutputFile());
             }
         }
+        if (modified) {
+            // the linked jars are the untouched input, the same bytes in every build anyway
+            normalize(request.getBinaryOutputFile());
+        }
+    }
+
+    private void normalize(File jar) throws IOException {
+        if (reproducible) {
+            JarUtils.normalizeJar(jar);
+        }
+    }
+
+    private boolean isModified(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions,
+            Map<String, String> osgiOverride) {
+        if (instructions.isSnapshot()) {
+            return true;
+        }
+        if (!request.isShouldRemoveSignatures()) {
+            return false;
+        }
+        return !osgiOverride.isEmpty() || JarUtils.containsSignature(request.getBinaryInputFile());
     }
 
     private void doSourceWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions, boolean shouldCopySource) throws Exception {
@@ -174,7 +313,7 @@ public class AquteBundler implements ArtifactBundler {
             if (request.getSourceInputFile() == null) {
                 return;
             }
-            log().info("\t [EXEC] " + request.getSourceInputFile().getName());
+            log().detail("\t [EXEC] " + request.getSourceInputFile().getName());
             FileUtils.forceMkdir(new File(request.getSourceOutputFile().getParent()));
             String symbolicName = instructions.getSourceSymbolicName();
             String referencedBundleSymbolicName = instructions.getSymbolicName();
@@ -193,10 +332,11 @@ public class AquteBundler implements ArtifactBundler {
                 Manifest manifest = getManifest(jar);
                 decorateSourceManifest(manifest, name, referencedBundleSymbolicName, symbolicName, version);
                 jar.setManifest(manifest);
-                jar.write(request.getSourceOutputFile());
+                writeJar(jar, request.getSourceOutputFile(), P2Events.OUTCOME_SUCCESS);
             } finally {
                 jar.close();
             }
+            normalize(request.getSourceOutputFile());
         }
     }
 
@@ -226,4 +366,99 @@ public class AquteBundler implements ArtifactBundler {
         return Logger.getLog();
     }
 
+    /**
+     * Sha-256 of the input jar, computed on the first lookup in the registry or the remote cache only, as the jars
+     * that are already published or merely copied need no hash.
+     */
+    private final class InputHash {
+        private final File inputFile;
+        private boolean computed;
+        private String hash;
+
+        InputHash(File inputFile) {
+            this.inputFile = inputFile;
+        }
+
+        String get() {
+            if (!computed) {
+                computed = true;
+                if ((registry != null || remoteCache != null) && inputFile != null) {
+                    hash = HashUtils.sha256(inputFile);
+                    if (registry != null) {
+                        registry.recordInput(hash, inputFile);
+                    }
+                }
+            }
+            return hash;
+        }
+    }
+
+    public static class Builder {
+        private boolean pedantic;
+        private BundleContentRegistry registry;
+        private boolean deduplicate;
+        private RepositoryIndex publishedBundles;
+        private FileLinker linker = new FileLinker(FileLinker.Strategy.COPY);
+        private RemoteBundleCache remoteCache;
+        private boolean reproducible;
+
+        public Builder pedantic(boolean pedantic) {
+            this.pedantic = pedantic;
+            return this;
+        }
+
+        /**
+         * Registry of the bundles already produced in the build, identical input jars are analyzed only once.
+         */
+        public Builder registry(BundleContentRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        /**
+         * If set, an identical jar resulting in an already produced symbolic name and version is not emitted again.
+         */
+        public Builder deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        /**
+         * Index of the destination repository, if not set the destination folder is probed for the bundles.
+         */
+        public Builder publishedBundles(RepositoryIndex publishedBundles) {
+            this.publishedBundles = publishedBundles;
+            return this;
+        }
+
+        /**
+         * Places the bundles that are not modified in the output folder.
+         */
+        public Builder linker(FileLinker linker) {
+            this.linker = checkNotNull(linker, "linker cannot be null");
+            return this;
+        }
+
+        /**
+         * Cache of the bundles shared between builds, not used if not set.
+         */
+        public Builder remoteCache(RemoteBundleCache remoteCache) {
+            this.remoteCache = remoteCache;
+            return this;
+        }
+
+        /**
+         * If set, the written jars are normalized so that the same input always gives the same bytes.
+         */
+        public Builder reproducible(boolean reproducible) {
+            this.reproducible = reproducible;
+            return this;
+        }
+
+        public AquteBundler build() {
+            checkArgument(!deduplicate || registry != null, "deduplicate requires a registry");
+            return new AquteBundler(this);
+        }
+    }
+
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.impl;
+
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the bundles produced during the build keyed by the sha-256 of their input jar.
+ * Byte-identical jars published under different coordinates (relocations, vendor republishes) are analyzed only once.
+ *
+ * @since 1.4.3
+ */
+public class BundleContentRegistry {
+
+    private final Map<String, List<BundledContent>> contents = new LinkedHashMap<String, List<BundledContent>>();
+    private final Map<String, Set<String>> inputs = new LinkedHashMap<String, Set<String>>();
+
+    /**
+     * Records the input jar of a bundle. Inputs are told apart by their path, the same file bundled twice
+     * (e.g. referenced by several features) is not a duplicate, identical files of the same name are.
+     */
+    public synchronized void recordInput(String hash, File inputFile) {
+        Set<String> paths = inputs.get(hash);
+        if (paths == null) {
+            paths = new LinkedHashSet<String>();
+            inputs.put(hash, paths);
+        }
+        paths.add(inputFile.getAbsolutePath());
+    }
+
+    public synchronized BundledContent findBundle(String hash, String symbolicName, String version) {
+        for (BundledContent content : get(hash)) {
+            if (content.symbolicName.equals(symbolicName) && content.version.equals(version)) {
+                return content;
+            }
+        }
+        return null;
+    }
+
+    public synchronized BundledContent findAnalysis(String hash, String analysisKey) {
+        for (BundledContent content : get(hash)) {
+            if (content.analysisKey != null && content.analysisKey.equals(analysisKey) && content.outputFile.isFile()) {
+                return content;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void register(String hash, BundledContent content) {
+        List<BundledContent> bundled = contents.get(hash);
+        if (bundled == null) {
+            bundled = new ArrayList<BundledContent>();
+            contents.put(hash, bundled);
+        }
+        bundled.add(content);
+    }
+
+    public synchronized int reportDuplicates() {
+        int duplicates = 0;
+        for (Set<String> paths : inputs.values()) {
+            if (paths.size() > 1) {
+                duplicates += paths.size() - 1;
+                Logger.getLog().info("\t [DUPLICATE] Identical content: " + paths);
+            }
+        }
+        return duplicates;
+    }
+
+    private List<BundledContent> get(String hash) {
+        List<BundledContent> bundled = contents.get(hash);
+        return bundled != null ? bundled : new ArrayList<BundledContent>();
+    }
+
+    /**
+     * Bundle written for a given input content.
+     */
+    public static class BundledContent {
+        private final File outputFile;
+        private final String symbolicName;
+        private final String version;
+        private final String analysisKey;
+
+        /**
+         * @param analysisKey key of the bnd analysis the bundle was created with, null if the jar was only copied
+         */
+        public BundledContent(File outputFile, String symbolicName, String version, String analysisKey) {
+            this.outputFile = outputFile;
+            this.symbolicName = symbolicName;
+            this.version = version;
+            this.analysisKey = analysisKey;
+        }
+
+        public File getOutputFile() {
+            return outputFile;
+        }
+
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+}
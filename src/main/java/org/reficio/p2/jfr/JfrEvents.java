@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * The Flight Recorder events, only loaded by {@link P2Events} if the JVM has the jdk.jfr module.
+ *
+ * @since 1.4.3
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    static P2Event begin(P2EventType type, String artifact, String operation) {
+        BuildEvent event = create(type);
+        if (!event.isEnabled()) {
+            return P2Events.DISABLED;
+        }
+        event.artifact = artifact;
+        event.operation = operation;
+        event.outcome = P2Events.OUTCOME_FAILURE;
+        event.begin();
+        return new RecordedEvent(event);
+    }
+
+    private static BuildEvent create(P2EventType type) {
+        switch (type) {
+            case RESOLVE:
+                return new ResolveEvent();
+            case BUNDLE_ANALYZE:
+                return new BundleAnalyzeEvent();
+            case BUNDLE_WRITE:
+                return new BundleWriteEvent();
+            case JAR_REWRITE:
+                return new JarRewriteEvent();
+            case DOWNLOAD:
+                return new DownloadEvent();
+            case FEATURE_GENERATE:
+                return new FeatureGenerateEvent();
+            case PUBLISH:
+                return new PublishEvent();
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+    }
+
+    static Closeable startRecording(File destination) throws IOException {
+        final Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException("Cannot read the default Flight Recorder configuration", e);
+        }
+        for (Class<? extends Event> eventClass : Arrays.<Class<? extends Event>>asList(ResolveEvent.class,
+                BundleAnalyzeEvent.class, BundleWriteEvent.class, JarRewriteEvent.class, DownloadEvent.class,
+                FeatureGenerateEvent.class, PublishEvent.class)) {
+            recording.enable(eventClass);
+        }
+        recording.setName("p2-maven-plugin");
+        recording.setDestination(destination.toPath());
+        recording.start();
+        return new Closeable() {
+            @Override
+            public void close() {
+                // the recording is written to the destination when it's stopped
+                recording.stop();
+                recording.close();
+            }
+        };
+    }
+
+    private static class RecordedEvent implements P2Event {
+        private final BuildEvent event;
+
+        RecordedEvent(BuildEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        public P2Event bytes(long bytes) {
+            event.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public P2Event outcome(String outcome) {
+            event.outcome = outcome;
+            return this;
+        }
+
+        @Override
+        public P2Event success() {
+            return outcome(P2Events.OUTCOME_SUCCESS);
+        }
+
+        @Override
+        public void commit() {
+            event.commit();
+        }
+    }
+
+    @Category("p2-maven-plugin")
+    abstract static class BuildEvent extends Event {
+        @Label("Artifact")
+        String artifact;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("org.reficio.p2.Resolve")
+    @Label("Artifact Resolution")
+    @Description("Resolution of a root artifact and its dependencies")
+    static class ResolveEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.BundleAnalyze")
+    @Label("Bundle Analysis")
+    @Description("Calculation of the OSGi manifest of a wrapped jar")
+    static class BundleAnalyzeEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.BundleWrite")
+    @Label("Bundle Write")
+    @Description("Writing of a bundle or source bundle")
+    static class BundleWriteEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.JarRewrite")
+    @Label("Jar Rewrite")
+    @Description("Rewrite of an existing jar, the operation names the rewrite")
+    static class JarRewriteEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.Download")
+    @Label("Download")
+    @Description("Download of a p2 artifact, the operation is the url")
+    static class DownloadEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.FeatureGenerate")
+    @Label("Feature Generation")
+    @Description("Generation of a feature jar")
+    static class FeatureGenerateEvent extends BuildEvent {
+    }
+
+    @Name("org.reficio.p2.Publish")
+    @Label("Publishing")
+    @Description("One publishing step of the repository, the operation names the step")
+    static class PublishEvent extends BuildEvent {
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.jfr;
+
+/**
+ * Flight Recorder event of one step of the build, started when it's created and recorded by {@link #commit()}.
+ * The outcome is {@link P2Events#OUTCOME_FAILURE} unless the step reports otherwise, so every path that completes
+ * the step has to call {@link #success()} or set another outcome before the event is committed.
+ *
+ * @since 1.4.3
+ */
+public interface P2Event {
+
+    P2Event bytes(long bytes);
+
+    P2Event outcome(String outcome);
+
+    P2Event success();
+
+    /**
+     * Ends and records the event, meant to be called in a finally block.
+     */
+    void commit();
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.jfr;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates the Flight Recorder events of the hot paths of the build: resolution, bundling, jar rewrites, downloads,
+ * feature generation and publishing. On JVMs without Flight Recorder, or while none of the events is recorded,
+ * the created events do nothing.
+ *
+ * @since 1.4.3
+ */
+public final class P2Events {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+    public static final String OUTCOME_UNCHANGED = "unchanged";
+    public static final String OUTCOME_REUSED = "reused";
+
+    static final P2Event DISABLED = new P2Event() {
+        @Override
+        public P2Event bytes(long bytes) {
+            return this;
+        }
+
+        @Override
+        public P2Event outcome(String outcome) {
+            return this;
+        }
+
+        @Override
+        public P2Event success() {
+            return this;
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    private P2Events() {
+    }
+
+    public static P2Event resolve(String artifact) {
+        return create(P2EventType.RESOLVE, artifact, null);
+    }
+
+    public static P2Event bundleAnalyze(String artifact) {
+        return create(P2EventType.BUNDLE_ANALYZE, artifact, null);
+    }
+
+    public static P2Event bundleWrite(String artifact) {
+        return create(P2EventType.BUNDLE_WRITE, artifact, null);
+    }
+
+    public static P2Event jarRewrite(String operation, File jar) {
+        return create(P2EventType.JAR_REWRITE, jar.getName(), operation);
+    }
+
+    public static P2Event download(String artifact, String url) {
+        return create(P2EventType.DOWNLOAD, artifact, url);
+    }
+
+    public static P2Event featureGenerate(String feature) {
+        return create(P2EventType.FEATURE_GENERATE, feature, null);
+    }
+
+    public static P2Event publish(String step, String repository) {
+        return create(P2EventType.PUBLISH, repository, step);
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Starts a recording of the build events written to the destination when it's closed.
+     *
+     * @return the recording, null if the JVM has no Flight Recorder
+     */
+    public static Closeable startRecording(File destination) throws IOException {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.startRecording(destination);
+    }
+
+    private static P2Event create(P2EventType type, String artifact, String operation) {
+        if (!AVAILABLE) {
+            return DISABLED;
+        }
+        return JfrEvents.begin(type, artifact, operation);
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Log that hands the messages over to a bounded buffer drained in batches by a daemon thread,
+ * so that the build threads do not wait for the console. Every message, including the detail that is not
+ * forwarded to the console, is written to the optional file sink. If the sinks cannot keep up and the buffer
+ * is full, the debug and info messages are dropped instead of stalling the build, and the number of dropped messages
+ * is logged. The warnings and errors are never dropped, they are forwarded to the console directly, out of order and
+ * without reaching the file sink.
+ *
+ * @since 1.4.3
+ */
+class AsyncLog implements Log {
+
+    private static final int CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final class Event {
+        private final Level level;
+        private final CharSequence message;
+        private final Throwable throwable;
+        private final boolean console;
+
+        Event(Level level, CharSequence message, Throwable throwable, boolean console) {
+            this.level = level;
+            this.message = message;
+            this.throwable = throwable;
+            this.console = console;
+        }
+    }
+
+    private static final Event STOP = new Event(Level.DEBUG, null, null, false);
+
+    private final Log delegate;
+    private final Writer fileSink;
+    private final BlockingQueue<Event> buffer = new ArrayBlockingQueue<Event>(CAPACITY);
+    private final Thread drainer;
+    private final AtomicLong dropped = new AtomicLong();
+    // the enqueuing threads share the read lock, close takes the write lock to drain what is left behind STOP
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private boolean fileSinkFailed;
+
+    AsyncLog(Log delegate, File logFile) throws IOException {
+        this.delegate = delegate;
+        this.fileSink = logFile != null ? openFileSink(logFile) : null;
+        this.drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "p2-log-drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    private static Writer openFileSink(File logFile) throws IOException {
+        FileUtils.forceMkdir(logFile.getAbsoluteFile().getParentFile());
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile), "UTF-8"));
+    }
+
+    boolean hasFileSink() {
+        return fileSink != null;
+    }
+
+    /**
+     * Writes the message to the file sink only.
+     */
+    void file(CharSequence message) {
+        if (fileSink != null) {
+            enqueue(new Event(Level.INFO, message, null, false));
+        }
+    }
+
+    private void enqueue(Event event) {
+        closeLock.readLock().lock();
+        try {
+            if (!closed) {
+                if (!buffer.offer(event)) {
+                    if (event.console && event.level.compareTo(Level.WARN) >= 0) {
+                        forward(event);
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                }
+                return;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        // the drainer is gone, messages logged after close are forwarded directly
+        synchronized (this) {
+            if (event.console) {
+                forward(event);
+            }
+        }
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void drain() {
+        List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+        try {
+            boolean stopped = false;
+            while (!stopped) {
+                batch.add(buffer.take());
+                buffer.drainTo(batch, BATCH_SIZE - 1);
+                // the events behind STOP are written by close
+                stopped = write(batch);
+                batch.clear();
+                if (buffer.isEmpty()) {
+                    flushFileSink();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushFileSink();
+        }
+    }
+
+    private boolean write(List<Event> batch) {
+        boolean stopped = false;
+        for (Event event : batch) {
+            if (event == STOP) {
+                stopped = true;
+            } else {
+                write(event);
+            }
+        }
+        reportDropped();
+        return stopped;
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            write(new Event(Level.WARN, count + " log messages dropped, the log buffer was full", null, true));
+        }
+    }
+
+    private void write(Event event) {
+        if (fileSink != null && !fileSinkFailed) {
+            try {
+                fileSink.write("[" + event.level + "] " + event.message + "\n");
+                if (event.throwable != null) {
+                    event.throwable.printStackTrace(new PrintWriter(fileSink));
+                }
+            } catch (IOException e) {
+                fileSinkFailed = true;
+                delegate.warn("Cannot write to the log file, the detail is not logged anymore", e);
+            }
+        }
+        if (event.console) {
+            forward(event);
+        }
+    }
+
+    private void flushFileSink() {
+        if (fileSink != null && !fileSinkFailed) {
+            try {
+                fileSink.flush();
+            } catch (IOException e) {
+                fileSinkFailed = true;
+                delegate.warn("Cannot write to the log file, the detail is not logged anymore", e);
+            }
+        }
+    }
+
+    private void forward(Event event) {
+        CharSequence message = event.message;
+        Throwable throwable = event.throwable;
+        switch (event.level) {
+            case DEBUG:
+                if (throwable == null) {
+                    delegate.debug(message);
+                } else {
+                    delegate.debug(message, throwable);
+                }
+                break;
+            case INFO:
+                if (throwable == null) {
+                    delegate.info(message);
+                } else {
+                    delegate.info(message, throwable);
+                }
+                break;
+            case WARN:
+                if (throwable == null) {
+                    delegate.warn(message);
+                } else {
+                    delegate.warn(message, throwable);
+                }
+                break;
+            default:
+                if (throwable == null) {
+                    delegate.error(message);
+                } else {
+                    delegate.error(message, throwable);
+                }
+        }
+    }
+
+    /**
+     * Flushes all the buffered messages and stops the drainer.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            buffer.put(STOP);
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLock.writeLock().lock();
+            try {
+                closed = true;
+                // the messages enqueued after STOP
+                List<Event> remaining = new ArrayList<Event>();
+                buffer.drainTo(remaining);
+                write(remaining);
+                flushFileSink();
+                IOUtils.closeQuietly(fileSink);
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void log(Level level, CharSequence message, Throwable throwable) {
+        enqueue(new Event(level, message != null ? message : "", throwable, true));
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(CharSequence charSequence) {
+        debug(charSequence, null);
+    }
+
+    @Override
+    public void debug(CharSequence charSequence, Throwable throwable) {
+        if (delegate.isDebugEnabled()) {
+            log(Level.DEBUG, charSequence, throwable);
+        }
+    }
+
+    @Override
+    public void debug(Throwable throwable) {
+        debug(null, throwable);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void info(CharSequence charSequence) {
+        info(charSequence, null);
+    }
+
+    @Override
+    public void info(CharSequence charSequence, Throwable throwable) {
+        log(Level.INFO, charSequence, throwable);
+    }
+
+    @Override
+    public void info(Throwable throwable) {
+        info(null, throwable);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(CharSequence charSequence) {
+        warn(charSequence, null);
+    }
+
+    @Override
+    public void warn(CharSequence charSequence, Throwable throwable) {
+        log(Level.WARN, charSequence, throwable);
+    }
+
+    @Override
+    public void warn(Throwable throwable) {
+        warn(null, throwable);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void error(CharSequence charSequence) {
+        error(charSequence, null);
+    }
+
+    @Override
+    public void error(CharSequence charSequence, Throwable throwable) {
+        log(Level.ERROR, charSequence, throwable);
+    }
+
+    @Override
+    public void error(Throwable throwable) {
+        error(null, throwable);
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.logger;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregates the per-item detail logged during one phase of the build (e.g. bundling).
+ * In the asynchronous mode only a few detail lines per second reach the console, the rest goes to the log file,
+ * and a summary is logged when the phase ends.
+ *
+ * @since 1.4.3
+ */
+public final class LogPhase {
+
+    private static final long DETAIL_INTERVAL_IN_MILLIS = 1000;
+    private static final int DETAILS_PER_INTERVAL = 10;
+
+    private final String name;
+    private final long start = System.currentTimeMillis();
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger suppressed = new AtomicInteger();
+    private volatile boolean ended;
+    private long intervalStart;
+    private int intervalDetails;
+
+    LogPhase(String name) {
+        this.name = name;
+    }
+
+    void detail(Log log, CharSequence message) {
+        count.incrementAndGet();
+        if (!(log instanceof AsyncLog)) {
+            log.info(message);
+        } else if (acquire()) {
+            log.info(message);
+        } else {
+            suppressed.incrementAndGet();
+            ((AsyncLog) log).file(message);
+        }
+    }
+
+    private synchronized boolean acquire() {
+        long now = System.currentTimeMillis();
+        if (now - intervalStart >= DETAIL_INTERVAL_IN_MILLIS) {
+            intervalStart = now;
+            intervalDetails = 0;
+        }
+        return ++intervalDetails <= DETAILS_PER_INTERVAL;
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public int getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * A pooled thread that inherited the phase may outlive it, its detail is then logged as usual.
+     */
+    boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Logs the summary of the phase.
+     */
+    public void end() {
+        ended = true;
+        Logger.endPhase(this);
+        StringBuilder summary = new StringBuilder(String.format("%s: %d items in %d ms", name, count.get(),
+                System.currentTimeMillis() - start));
+        if (suppressed.get() > 0) {
+            boolean fileSink = Logger.log instanceof AsyncLog && ((AsyncLog) Logger.log).hasFileSink();
+            summary.append(String.format(" (%d details %s)", suppressed.get(),
+                    fileSink ? "written to the log file only" : "not shown"));
+        }
+        Logger.getLog().info(summary);
+    }
+
+}
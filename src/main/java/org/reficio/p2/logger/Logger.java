@@ -20,6 +20,9 @@ package org.reficio.p2.logger;
 
 import org.apache.maven.plugin.logging.Log;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -30,6 +33,9 @@ public final class Logger implements Log {
 
     static Log log;
 
+    // inherited by the worker threads started during the phase, the threads of other builds do not see it
+    private static final InheritableThreadLocal<LogPhase> phase = new InheritableThreadLocal<LogPhase>();
+
     private Logger() {
     }
 
@@ -42,6 +48,52 @@ public final class Logger implements Log {
 
     public static void initialize(Log log) {
         Logger.log = log;
+        Logger.phase.remove();
+    }
+
+    /**
+     * @param async   if set, the messages are forwarded to the log by a background thread
+     * @param logFile file that receives all the messages including the detail not shown on the console, asynchronous mode only
+     */
+    public static void initialize(Log log, boolean async, File logFile) throws IOException {
+        initialize(async ? new AsyncLog(log, logFile) : log);
+    }
+
+    /**
+     * Flushes the messages buffered in the asynchronous mode.
+     */
+    public static void shutdown() {
+        if (log instanceof AsyncLog) {
+            ((AsyncLog) log).close();
+        }
+    }
+
+    /**
+     * Starts a phase that aggregates the detail logged by the current thread and the threads it starts
+     * until {@link LogPhase#end()} is called.
+     */
+    public static LogPhase phase(String name) {
+        LogPhase started = new LogPhase(name);
+        phase.set(started);
+        return started;
+    }
+
+    static void endPhase(LogPhase ended) {
+        if (phase.get() == ended) {
+            phase.remove();
+        }
+    }
+
+    /**
+     * Logs per-item detail, e.g. one line per bundled artifact. Rate-limited on the console in the asynchronous mode.
+     */
+    public void detail(CharSequence charSequence) {
+        LogPhase current = phase.get();
+        if (current != null && !current.isEnded()) {
+            current.detail(log, charSequence);
+        } else {
+            log.info(charSequence);
+        }
     }
 
     @Override
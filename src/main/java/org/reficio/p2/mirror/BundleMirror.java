@@ -18,11 +18,15 @@
  */
 package org.reficio.p2.mirror;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
 import org.reficio.p2.utils.Utils;
 
 import java.io.IOException;
@@ -32,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
@@ -48,23 +53,21 @@ public class BundleMirror {
     private final Boolean append;
     private final String sourceURL;
     private final String destination;
-    private final String iuId;
-    private final String iuVersion;
+    private final ListMultimap<String, String> ius;
     private final Map<String, String> filter;
     private final String additionalArgs;
     private final MavenProject mavenProject;
     private final MavenSession mavenSession;
     private final BuildPluginManager buildPluginManager;
 
-    public BundleMirror(Boolean includePacked, Boolean followStrictOnly, Boolean append, String sourceURL, String destination, String iuId, String iuVersion,
-            Map<String, String> filter, String additionalArgs, MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager buildPluginManager) {
+    public BundleMirror(Boolean includePacked, Boolean followStrictOnly, Boolean append, String sourceURL, String destination,
+            ListMultimap<String, String> ius, Map<String, String> filter, String additionalArgs, MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager buildPluginManager) {
         this.includePacked = includePacked;
         this.followStrictOnly = followStrictOnly;
         this.append = append;
         this.sourceURL = sourceURL;
         this.destination = destination;
-        this.iuId = iuId;
-        this.iuVersion = iuVersion;
+        this.ius = ius;
         this.filter = (filter==null) ? new HashMap<String, String>() : filter;
         this.additionalArgs = additionalArgs;
         this.mavenProject = mavenProject;
@@ -73,6 +76,16 @@ public class BundleMirror {
     }
 
     public void execute() throws MojoExecutionException, IOException {
+        P2Event event = P2Events.publish("mirror", destination);
+        try {
+            executeMirror();
+            event.success();
+        } finally {
+            event.commit();
+        }
+    }
+
+    private void executeMirror() throws MojoExecutionException, IOException {
 
         Xpp3Dom config = configuration(element(name("includePacked"), Boolean.toString(includePacked)),
                 element(name("followStrictOnly"), Boolean.toString(followStrictOnly)),
@@ -80,10 +93,7 @@ public class BundleMirror {
                 element(name("source"),
                     element(name("repository"),
                         element(name("url"),sourceURL))),
-                element(name("ius"),
-                    element(name("iu"),
-                        element(name("id"), iuId),
-                        element(name("version"),iuVersion))),
+                element(name("ius"), iuElements()),
                 element(name("destination"), destination)//,
 //              element(name("additionalArgs"), additionalArgs)
                 );
@@ -111,6 +121,16 @@ public class BundleMirror {
         );
     }
 
+    private Element[] iuElements() {
+        List<Element> elements = new ArrayList<Element>();
+        for (Entry<String, String> iu : ius.entries()) {
+            elements.add(element(name("iu"),
+                    element(name("id"), iu.getKey()),
+                    element(name("version"), iu.getValue())));
+        }
+        return elements.toArray(new Element[elements.size()]);
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -121,8 +141,7 @@ public class BundleMirror {
         private Boolean append;
         private String sourceURL;
         private String destination;
-        private String iuId;
-        private String iuVersion;
+        private final ListMultimap<String, String> ius = ArrayListMultimap.create();
         private Map<String, String> filter;
         private String additionalArgs;
         private MavenProject mavenProject;
@@ -154,13 +173,12 @@ public class BundleMirror {
             return this;
         }
 
-        public Builder iuId(String iuId) {
-            this.iuId = iuId;
-            return this;
-        }
-
-        public Builder iuVersion(String iuVersion) {
-            this.iuVersion = iuVersion;
+        /**
+         * Adds an installable unit to mirror, all the units of a builder are mirrored in a single run
+         * so the source repository is loaded only once.
+         */
+        public Builder iu(String iuId, String iuVersion) {
+            this.ius.put(iuId, iuVersion);
             return this;
         }
 
@@ -190,8 +208,9 @@ public class BundleMirror {
         }
 
         public BundleMirror build() {
-            return new BundleMirror(includePacked, followStrictOnly, append, sourceURL, destination, iuId, iuVersion,
-                    filter, additionalArgs, checkNotNull(mavenProject), checkNotNull(mavenSession), checkNotNull(buildPluginManager));
+            checkArgument(!ius.isEmpty(), "at least one iu has to be mirrored");
+            return new BundleMirror(includePacked, followStrictOnly, append, sourceURL, destination,
+                    ArrayListMultimap.create(ius), filter, additionalArgs, checkNotNull(mavenProject), checkNotNull(mavenSession), checkNotNull(buildPluginManager));
         }
     }
 }
@@ -22,6 +22,9 @@ import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
 import org.reficio.p2.utils.Utils;
 
 import java.io.IOException;
@@ -42,23 +45,45 @@ public class BundlePublisher {
     private final String artifactRepositoryLocation;
     private final String metadataRepositoryLocation;
     private final String additionalArgs;
+    private final String sourceLocation;
     private final MavenProject mavenProject;
     private final MavenSession mavenSession;
     private final BuildPluginManager buildPluginManager;
 
     public BundlePublisher(Boolean compressSite, Boolean append, String artifactRepositoryLocation, String metadataRepositoryLocation, String additionalArgs,
-                           MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager buildPluginManager) {
+                           String sourceLocation, MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager buildPluginManager) {
         this.compressSite = compressSite;
         this.append = append;
         this.artifactRepositoryLocation = artifactRepositoryLocation;
         this.metadataRepositoryLocation = metadataRepositoryLocation;
         this.additionalArgs = additionalArgs;
+        this.sourceLocation = sourceLocation;
         this.mavenProject = mavenProject;
         this.mavenSession = mavenSession;
         this.buildPluginManager = buildPluginManager;
     }
 
     public void execute() throws MojoExecutionException, IOException {
+        P2Event event = P2Events.publish("publish-features-and-bundles", metadataRepositoryLocation);
+        try {
+            executePublisher();
+            event.success();
+        } finally {
+            event.commit();
+        }
+    }
+
+    private void executePublisher() throws MojoExecutionException, IOException {
+        Xpp3Dom config = configuration(
+                element(name("compress"), Boolean.toString(compressSite)),
+                element(name("append"), Boolean.toString(append)),
+                element(name("artifactRepositoryLocation"), artifactRepositoryLocation),
+                element(name("metadataRepositoryLocation"), metadataRepositoryLocation),
+                element(name("additionalArgs"), additionalArgs)
+        );
+        if (sourceLocation != null) {
+            config.addChild(element(name("sourceLocation"), sourceLocation).toDom());
+        }
         executeMojo(
                 plugin(
                         groupId("org.eclipse.tycho.extras"),
@@ -66,13 +91,7 @@ public class BundlePublisher {
                         version(Utils.TYCHO_VERSION)
                 ),
                 goal("publish-features-and-bundles"),
-                configuration(
-                        element(name("compress"), Boolean.toString(compressSite)),
-                        element(name("append"), Boolean.toString(append)),
-                        element(name("artifactRepositoryLocation"), artifactRepositoryLocation),
-                        element(name("metadataRepositoryLocation"), metadataRepositoryLocation),
-                        element(name("additionalArgs"), additionalArgs)
-                ),
+                config,
                 executionEnvironment(
                         mavenProject,
                         mavenSession,
@@ -91,6 +110,7 @@ public class BundlePublisher {
         private String artifactRepositoryLocation;
         private String metadataRepositoryLocation;
         private String additionalArgs;
+        private String sourceLocation;
         private MavenProject mavenProject;
         private MavenSession mavenSession;
         private BuildPluginManager buildPluginManager;
@@ -120,6 +140,11 @@ public class BundlePublisher {
             return this;
         }
 
+        public Builder sourceLocation(String sourceLocation) {
+            this.sourceLocation = sourceLocation;
+            return this;
+        }
+
         public Builder mavenProject(MavenProject mavenProject) {
             this.mavenProject = mavenProject;
             return this;
@@ -136,7 +161,8 @@ public class BundlePublisher {
         }
 
         public BundlePublisher build() {
-            return new BundlePublisher(compressSite, append, artifactRepositoryLocation, metadataRepositoryLocation, additionalArgs, checkNotNull(mavenProject),
+            return new BundlePublisher(compressSite, append, artifactRepositoryLocation, metadataRepositoryLocation, additionalArgs, sourceLocation,
+                    checkNotNull(mavenProject),
                     checkNotNull(mavenSession), checkNotNull(buildPluginManager));
         }
     }
@@ -23,6 +23,8 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
 
 import java.io.File;
 import java.io.IOException;
@@ -56,8 +58,14 @@ public class CategoryPublisher {
     }
 
     public void execute() throws AbstractMojoExecutionException, IOException {
-        configureLauncher(categoryFileLocation, metadataRepositoryLocation);
-        executeLauncher();
+        P2Event event = P2Events.publish("category-publisher", metadataRepositoryLocation);
+        try {
+            configureLauncher(categoryFileLocation, metadataRepositoryLocation);
+            executeLauncher();
+            event.success();
+        } finally {
+            event.commit();
+        }
     }
 
     private void configureLauncher(String categoryFileLocation, String metadataRepositoryLocation) throws AbstractMojoExecutionException, IOException {
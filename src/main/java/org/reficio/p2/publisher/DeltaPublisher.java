@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.CompositeRepository;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.utils.FileLinker;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the difference between a freshly published site and a layered baseline site. The baseline is a composite
+ * repository whose children are the layers; the units and artifacts missing in all the layers are published to a new
+ * layer that is appended to the composite. Once there are more layers than allowed, all of them are merged into one.
+ *
+ * @since 1.4.3
+ */
+public class DeltaPublisher {
+
+    private static final String COMPACTED_SUFFIX = "-compacted";
+
+    private final File repository;
+    private final File baseline;
+    private final String layerName;
+    private final int maxLayers;
+    private final boolean compress;
+    private final FileLinker linker;
+    private final MetadataCache metadataCache;
+
+    public DeltaPublisher(File repository, File baseline, String layerName, int maxLayers, boolean compress, FileLinker linker,
+                          MetadataCache metadataCache) {
+        this.repository = repository;
+        this.baseline = baseline;
+        this.layerName = layerName;
+        this.maxLayers = maxLayers;
+        this.compress = compress;
+        this.linker = linker;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return number of the units published to the new layer, 0 if no layer has been added
+     */
+    public int execute() throws IOException {
+        List<String> layers = readLayers();
+        Set<String> publishedUnits = new HashSet<String>();
+        Set<String> publishedArtifacts = new HashSet<String>();
+        for (String layer : layers) {
+            File layerDir = new File(baseline, layer);
+            for (Element unit : MetadataXml.units(RepositoryFiles.readMetadata(layerDir, RepositoryFiles.CONTENT))) {
+                publishedUnits.add(unitKey(unit));
+            }
+            for (Element artifact : MetadataXml.artifacts(RepositoryFiles.readMetadata(layerDir, RepositoryFiles.ARTIFACTS))) {
+                publishedArtifacts.add(artifactKey(artifact));
+            }
+        }
+
+        Document content = metadataCache.read(repository, RepositoryFiles.CONTENT);
+        Document artifacts = metadataCache.read(repository, RepositoryFiles.ARTIFACTS);
+        int units = retainUnpublished(MetadataXml.units(content), publishedUnits, true);
+        int files = retainUnpublished(MetadataXml.artifacts(artifacts), publishedArtifacts, false);
+        if (units == 0 && files == 0) {
+            Logger.getLog().info(String.format("Nothing changed since the %d layers of %s, no layer added", layers.size(), baseline));
+            return 0;
+        }
+        File layerDir = new File(baseline, layerName);
+        FileUtils.deleteDirectory(layerDir);
+        for (Element artifact : MetadataXml.artifacts(artifacts)) {
+            placeArtifact(MetadataXml.artifactFile(repository, artifact), MetadataXml.artifactFile(layerDir, artifact));
+        }
+        writeLayer(layerDir, content, artifacts);
+        layers.add(layerName);
+        Logger.getLog().info(String.format("Published %d units and %d artifacts to layer %s of %s", units, files, layerName, baseline));
+
+        if (layers.size() > maxLayers) {
+            layers = compact(layers);
+        }
+        CompositeRepository.write(baseline, baseline.getName(), layers);
+        return units;
+    }
+
+    private static String unitKey(Element unit) {
+        return unit.getAttribute("id") + "_" + unit.getAttribute("version");
+    }
+
+    private static String artifactKey(Element artifact) {
+        return artifact.getAttribute("classifier") + "/" + artifact.getAttribute("id") + "_" + artifact.getAttribute("version");
+    }
+
+    private static int retainUnpublished(List<Element> elements, Set<String> published, boolean units) {
+        int retained = 0;
+        for (Element element : elements) {
+            if (published.contains(units ? unitKey(element) : artifactKey(element))) {
+                Element container = (Element) element.getParentNode();
+                container.removeChild(element);
+                MetadataXml.updateSize(container);
+            } else {
+                retained++;
+            }
+        }
+        return retained;
+    }
+
+    private void placeArtifact(File source, File target) throws IOException {
+        if (!source.isFile()) {
+            Logger.getLog().warn("Missing artifact file " + source);
+            return;
+        }
+        FileUtils.forceMkdir(target.getParentFile());
+        linker.place(source, target);
+    }
+
+    private void writeLayer(File layerDir, Document content, Document artifacts) throws IOException {
+        FileUtils.forceMkdir(layerDir);
+        for (Document document : new Document[]{content, artifacts}) {
+            MetadataXml.setProperty(document.getDocumentElement(), RepositoryPostProcessor.COMPRESSED, Boolean.toString(compress));
+        }
+        writeMetadata(layerDir, RepositoryFiles.CONTENT, content);
+        writeMetadata(layerDir, RepositoryFiles.ARTIFACTS, artifacts);
+    }
+
+    private void writeMetadata(File layerDir, String name, Document document) throws IOException {
+        File xml = RepositoryFiles.xml(layerDir, name);
+        XmlUtils.writeXml(document, xml);
+        if (compress) {
+            RepositoryFiles.writeJar(xml, RepositoryFiles.jar(layerDir, name));
+            FileUtils.deleteQuietly(xml);
+        }
+    }
+
+    /**
+     * Merges all the layers into a single one, the units and artifacts of the newer layers win.
+     */
+    private List<String> compact(List<String> layers) throws IOException {
+        String compactedName = layerName + COMPACTED_SUFFIX;
+        File compactedDir = new File(baseline, compactedName);
+        FileUtils.deleteDirectory(compactedDir);
+        Map<String, Element> units = new LinkedHashMap<String, Element>();
+        Map<String, Element> artifacts = new LinkedHashMap<String, Element>();
+        Document content = null;
+        Document artifactsDocument = null;
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            File layerDir = new File(baseline, layers.get(i));
+            Document layerContent = RepositoryFiles.readMetadata(layerDir, RepositoryFiles.CONTENT);
+            Document layerArtifacts = RepositoryFiles.readMetadata(layerDir, RepositoryFiles.ARTIFACTS);
+            if (content == null) {
+                content = layerContent;
+                artifactsDocument = layerArtifacts;
+            }
+            for (Element unit : MetadataXml.units(layerContent)) {
+                if (!units.containsKey(unitKey(unit))) {
+                    units.put(unitKey(unit), unit);
+                }
+            }
+            for (Element artifact : MetadataXml.artifacts(layerArtifacts)) {
+                if (!artifacts.containsKey(artifactKey(artifact))) {
+                    artifacts.put(artifactKey(artifact), artifact);
+                    placeArtifact(MetadataXml.artifactFile(layerDir, artifact), MetadataXml.artifactFile(compactedDir, artifact));
+                }
+            }
+        }
+        replaceChildren(content, "units", units.values());
+        replaceChildren(artifactsDocument, "artifacts", artifacts.values());
+        writeLayer(compactedDir, content, artifactsDocument);
+        for (String layer : layers) {
+            FileUtils.deleteDirectory(new File(baseline, layer));
+        }
+        Logger.getLog().info(String.format("Compacted %d layers of %s into layer %s", layers.size(), baseline, compactedName));
+        List<String> compacted = new ArrayList<String>();
+        compacted.add(compactedName);
+        return compacted;
+    }
+
+    private static void replaceChildren(Document document, String containerName, Iterable<Element> children) {
+        Element container = MetadataXml.child(document.getDocumentElement(), containerName);
+        if (container == null) {
+            container = document.createElement(containerName);
+            document.getDocumentElement().appendChild(container);
+        }
+        while (container.getFirstChild() != null) {
+            container.removeChild(container.getFirstChild());
+        }
+        for (Element child : children) {
+            container.appendChild(document.importNode(child, true));
+        }
+        MetadataXml.updateSize(container);
+    }
+
+    private List<String> readLayers() throws IOException {
+        List<String> layers = CompositeRepository.readChildren(baseline);
+        for (String layer : layers) {
+            if (layer.contains(":")) {
+                throw new RuntimeException("p2-maven-plugin misconfiguration: the composite in " + baseline
+                        + " references [" + layer + "], only layers in the same folder are supported");
+            }
+        }
+        return layers;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File repository;
+        private File baseline;
+        private String layerName;
+        private int maxLayers = 10;
+        private boolean compress;
+        private FileLinker linker = new FileLinker(FileLinker.Strategy.COPY);
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder repository(File repository) {
+            this.repository = checkNotNull(repository, "repository cannot be null");
+            return this;
+        }
+
+        public Builder baseline(File baseline) {
+            this.baseline = checkNotNull(baseline, "baseline cannot be null");
+            return this;
+        }
+
+        public Builder layerName(String layerName) {
+            this.layerName = checkNotNull(layerName, "layerName cannot be null");
+            return this;
+        }
+
+        public Builder maxLayers(int maxLayers) {
+            checkArgument(maxLayers > 0, "maxLayers has to be positive");
+            this.maxLayers = maxLayers;
+            return this;
+        }
+
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        public Builder linker(FileLinker linker) {
+            this.linker = checkNotNull(linker, "linker cannot be null");
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            this.metadataCache = checkNotNull(metadataCache, "metadataCache cannot be null");
+            return this;
+        }
+
+        public DeltaPublisher build() {
+            checkNotNull(repository, "repository cannot be null");
+            checkNotNull(baseline, "baseline cannot be null");
+            checkNotNull(layerName, "layerName cannot be null");
+            return new DeltaPublisher(repository, baseline, layerName, maxLayers, compress, linker, metadataCache);
+        }
+    }
+
+}
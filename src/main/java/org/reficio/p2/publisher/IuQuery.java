@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.reficio.p2.repository.MetadataXml;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Match expression of an IU query in a category definition. Supports the part of the p2 query language that the
+ * category definitions use: comparisons (==, !=, ~=) of id, version, properties[key] and of the namespace, name and
+ * version of the provided capabilities within providedCapabilities.exists(...), combined by &amp;&amp;, || and parentheses.
+ * Anything else is rejected with an {@link UnsupportedCategoryException}.
+ *
+ * @since 1.4.3
+ */
+class IuQuery {
+
+    private interface Condition {
+        boolean matches(Element subject);
+    }
+
+    private interface Accessor {
+        String get(Element subject);
+    }
+
+    private final String expression;
+    private final List<String> parameters;
+    private final List<String> tokens;
+    private int position = 0;
+    private String variable = null;
+    private final Condition condition;
+
+    private IuQuery(String expression, List<String> parameters) {
+        this.expression = expression;
+        this.parameters = parameters;
+        this.tokens = tokenize(expression);
+        this.condition = parseOr();
+        if (position < tokens.size()) {
+            throw unsupported("unexpected " + tokens.get(position));
+        }
+    }
+
+    static IuQuery parse(String expression, List<String> parameters) {
+        return new IuQuery(expression.trim(), parameters);
+    }
+
+    boolean matches(Element unit) {
+        return condition.matches(unit);
+    }
+
+    private Condition parseOr() {
+        Condition result = parseAnd();
+        while (accept("||")) {
+            final Condition left = result;
+            final Condition right = parseAnd();
+            result = new Condition() {
+                @Override
+                public boolean matches(Element subject) {
+                    return left.matches(subject) || right.matches(subject);
+                }
+            };
+        }
+        return result;
+    }
+
+    private Condition parseAnd() {
+        Condition result = parsePrimary();
+        while (accept("&&")) {
+            final Condition left = result;
+            final Condition right = parsePrimary();
+            result = new Condition() {
+                @Override
+                public boolean matches(Element subject) {
+                    return left.matches(subject) && right.matches(subject);
+                }
+            };
+        }
+        return result;
+    }
+
+    private Condition parsePrimary() {
+        if (accept("(")) {
+            Condition result = parseOr();
+            expect(")");
+            return result;
+        }
+        String identifier = next();
+        if (variable == null && identifier.equals("providedCapabilities.exists")) {
+            return parseExists();
+        }
+        if (variable == null && identifier.equals("properties")) {
+            expect("[");
+            final String key = value(next(), false);
+            expect("]");
+            return parseComparison(new Accessor() {
+                @Override
+                public String get(Element unit) {
+                    return MetadataXml.getProperty(unit, key);
+                }
+            });
+        }
+        return parseComparison(attribute(identifier));
+    }
+
+    private Condition parseExists() {
+        expect("(");
+        variable = next();
+        expect("|");
+        final Condition capability = parseOr();
+        expect(")");
+        variable = null;
+        return new Condition() {
+            @Override
+            public boolean matches(Element unit) {
+                Element provides = MetadataXml.child(unit, "provides");
+                if (provides != null) {
+                    for (Element provided : MetadataXml.children(provides, "provided")) {
+                        if (capability.matches(provided)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private Accessor attribute(String identifier) {
+        final String attribute;
+        if (variable == null && (identifier.equals("id") || identifier.equals("version"))) {
+            attribute = identifier;
+        } else if (variable != null && identifier.startsWith(variable + ".")
+                && identifier.substring(variable.length() + 1).matches("namespace|name|version")) {
+            attribute = identifier.substring(variable.length() + 1);
+        } else {
+            throw unsupported("unknown member " + identifier);
+        }
+        return new Accessor() {
+            @Override
+            public String get(Element subject) {
+                return subject.getAttribute(attribute);
+            }
+        };
+    }
+
+    private Condition parseComparison(final Accessor accessor) {
+        final String operator = next();
+        String operand = next();
+        if (operator.equals("~=")) {
+            final Pattern pattern = glob(value(operand, true));
+            return new Condition() {
+                @Override
+                public boolean matches(Element subject) {
+                    String actual = accessor.get(subject);
+                    return actual != null && pattern.matcher(actual).matches();
+                }
+            };
+        }
+        if (!operator.equals("==") && !operator.equals("!=")) {
+            throw unsupported("unknown operator " + operator);
+        }
+        final String expected = value(operand, false);
+        final boolean equal = operator.equals("==");
+        return new Condition() {
+            @Override
+            public boolean matches(Element subject) {
+                return expected.equals(accessor.get(subject)) == equal;
+            }
+        };
+    }
+
+    private String value(String token, boolean patternAllowed) {
+        if (token.startsWith("$")) {
+            try {
+                return parameters.get(Integer.parseInt(token.substring(1)));
+            } catch (RuntimeException e) {
+                throw unsupported("missing parameter " + token);
+            }
+        } else if (token.startsWith("'") || token.startsWith("\"") || (patternAllowed && token.startsWith("/"))) {
+            return token.substring(1, token.length() - 1);
+        }
+        throw unsupported("unexpected " + token);
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw unsupported("expected " + token);
+        }
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw unsupported("unexpected end");
+        }
+        return tokens.get(position++);
+    }
+
+    private List<String> tokenize(String expression) {
+        List<String> result = new ArrayList<String>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"' || c == '/') {
+                int end = expression.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw unsupported("unterminated literal");
+                }
+                result.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else if (expression.startsWith("==", i) || expression.startsWith("!=", i) || expression.startsWith("~=", i)
+                    || expression.startsWith("&&", i) || expression.startsWith("||", i)) {
+                result.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if ("()[]|".indexOf(c) >= 0) {
+                result.add(String.valueOf(c));
+                i++;
+            } else if (Character.isJavaIdentifierPart(c) || c == '.' || c == '$') {
+                int start = i;
+                while (i < expression.length() && (Character.isJavaIdentifierPart(expression.charAt(i))
+                        || expression.charAt(i) == '.' || expression.charAt(i) == '$')) {
+                    i++;
+                }
+                result.add(expression.substring(start, i));
+            } else {
+                throw unsupported("unexpected character " + c);
+            }
+        }
+        return result;
+    }
+
+    private UnsupportedCategoryException unsupported(String reason) {
+        return new UnsupportedCategoryException(String.format("Unsupported IU query [%s]: %s", expression, reason));
+    }
+
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.utils.VersionNormalizer;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Adds the categories of a category definition (category.xml) to the metadata repository in-process, instead of
+ * forking the p2 CategoryPublisher application. Features, bundles and IUs are looked up in the repository by id and
+ * version (the highest one for 0.0.0, any qualifier for .qualifier) or by an IU query.
+ * Unsupported constructs are reported with an {@link UnsupportedCategoryException}, so that the caller can fork instead.
+ *
+ * @since 1.4.3
+ */
+public class NativeCategoryPublisher {
+
+    static final String CATEGORY_PROPERTY = "org.eclipse.equinox.p2.type.category";
+    static final String NAME_PROPERTY = "org.eclipse.equinox.p2.name";
+    static final String DESCRIPTION_PROPERTY = "org.eclipse.equinox.p2.description";
+    static final String IU_NAMESPACE = "org.eclipse.equinox.p2.iu";
+    static final String FEATURE_GROUP_SUFFIX = ".feature.group";
+    private static final String QUALIFIER = "qualifier";
+
+    private final String categoryFileLocation;
+    private final String metadataRepositoryLocation;
+    private final String versionQualifier;
+    private final MetadataCache metadataCache;
+
+    public NativeCategoryPublisher(String categoryFileLocation, String metadataRepositoryLocation, String versionQualifier,
+                                   MetadataCache metadataCache) {
+        this.categoryFileLocation = categoryFileLocation;
+        this.metadataRepositoryLocation = metadataRepositoryLocation;
+        this.versionQualifier = versionQualifier;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return number of the published categories
+     */
+    public int execute() throws IOException {
+        File metadataRepositoryDir = new File(metadataRepositoryLocation).getCanonicalFile();
+        File categoryDefinitionFileSource = new File(categoryFileLocation).getCanonicalFile();
+        File categoryDefinitionFileTarget = new File(metadataRepositoryDir, "category.xml");
+        if (!categoryDefinitionFileSource.equals(categoryDefinitionFileTarget)) {
+            FileUtils.copyFile(categoryDefinitionFileSource, categoryDefinitionFileTarget);
+        }
+        Element site = parse(categoryDefinitionFileTarget).getDocumentElement();
+        Document content = metadataCache.read(metadataRepositoryDir, RepositoryFiles.CONTENT);
+        List<Element> units = MetadataXml.units(content);
+
+        // same ids as the ones the forked publisher derives from the location of the category definition
+        String idPrefix = categoryDefinitionFileTarget.getAbsoluteFile().toURI() + ".";
+        Map<String, Category> categories = readCategories(site);
+        for (Element entry : MetadataXml.children(site, "feature")) {
+            addMembers(categories, entry, findUnits(units, entry.getAttribute("id") + FEATURE_GROUP_SUFFIX, entry.getAttribute("version")));
+        }
+        for (Element entry : MetadataXml.children(site, "bundle")) {
+            addMembers(categories, entry, findUnits(units, entry.getAttribute("id"), entry.getAttribute("version")));
+        }
+        for (Element entry : MetadataXml.children(site, "iu")) {
+            addMembers(categories, entry, findIus(units, entry));
+        }
+
+        String version = "1.0.0." + versionQualifier;
+        List<Element> categoryUnits = new ArrayList<Element>();
+        for (Category category : categories.values()) {
+            if (category.isEmpty()) {
+                Logger.getLog().debug("Skipping empty category " + category.name);
+                continue;
+            }
+            categoryUnits.add(createCategoryUnit(content, category, idPrefix, version));
+        }
+        replaceUnits(content, categoryUnits);
+        metadataCache.write(metadataRepositoryDir, RepositoryFiles.CONTENT, content);
+        return categoryUnits.size();
+    }
+
+    private static Document parse(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return XmlUtils.parseXml(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static Map<String, Category> readCategories(Element site) {
+        Map<String, Category> categories = new LinkedHashMap<String, Category>();
+        for (Element definition : MetadataXml.children(site, "category-def")) {
+            Category category = category(categories, definition.getAttribute("name"));
+            category.label = StringUtils.defaultIfEmpty(definition.getAttribute("label"), category.name);
+            Element description = MetadataXml.child(definition, "description");
+            category.description = description != null ? StringUtils.trimToNull(description.getTextContent()) : null;
+        }
+        // nested categories reference their parents
+        for (Element definition : MetadataXml.children(site, "category-def")) {
+            for (Element parent : MetadataXml.children(definition, "category")) {
+                category(categories, parent.getAttribute("name")).children.add(categories.get(definition.getAttribute("name")));
+            }
+        }
+        return categories;
+    }
+
+    private static Category category(Map<String, Category> categories, String name) {
+        Category category = categories.get(name);
+        if (category == null) {
+            category = new Category(name);
+            categories.put(name, category);
+        }
+        return category;
+    }
+
+    private static void addMembers(Map<String, Category> categories, Element entry, List<Element> members) {
+        for (Element reference : MetadataXml.children(entry, "category")) {
+            Category category = category(categories, reference.getAttribute("name"));
+            for (Element member : members) {
+                category.members.put(member.getAttribute("id") + "_" + member.getAttribute("version"), member);
+            }
+        }
+    }
+
+    private static List<Element> findUnits(List<Element> units, String id, String version) {
+        List<Element> result = new ArrayList<Element>();
+        Element best = null;
+        boolean any = StringUtils.isBlank(version) || version.equals("0.0.0");
+        String prefix = version.endsWith(QUALIFIER) ? version.substring(0, version.length() - QUALIFIER.length()) : null;
+        for (Element unit : units) {
+            if (!unit.getAttribute("id").equals(id)) {
+                continue;
+            }
+            String unitVersion = unit.getAttribute("version");
+            boolean matches = any
+                    || (prefix != null ? unitVersion.startsWith(prefix) || (unitVersion + ".").equals(prefix) : unitVersion.equals(version));
+            if (matches && (best == null || VersionNormalizer.compare(unitVersion, best.getAttribute("version")) > 0)) {
+                best = unit;
+            }
+        }
+        if (best != null) {
+            result.add(best);
+        } else {
+            Logger.getLog().warn(String.format("Category member %s %s not found in the repository", id, version));
+        }
+        return result;
+    }
+
+    private static List<Element> findIus(List<Element> units, Element entry) {
+        Element query = MetadataXml.child(entry, "query");
+        if (query == null) {
+            return findUnits(units, entry.getAttribute("id"), entry.getAttribute("version"));
+        }
+        Element expression = MetadataXml.child(query, "expression");
+        if (expression == null || !"match".equals(StringUtils.defaultIfEmpty(expression.getAttribute("type"), "match"))) {
+            throw new UnsupportedCategoryException("Only the IU queries of type match are supported");
+        }
+        List<String> parameters = new ArrayList<String>();
+        for (Element parameter : MetadataXml.children(query, "param")) {
+            parameters.add(parameter.getTextContent().trim());
+        }
+        IuQuery iuQuery = IuQuery.parse(expression.getTextContent(), parameters);
+        List<Element> result = new ArrayList<Element>();
+        for (Element unit : units) {
+            if (iuQuery.matches(unit)) {
+                result.add(unit);
+            }
+        }
+        return result;
+    }
+
+    private static Element createCategoryUnit(Document content, Category category, String idPrefix, String version) {
+        String id = idPrefix + category.name;
+        Element unit = content.createElement("unit");
+        unit.setAttribute("id", id);
+        unit.setAttribute("version", version);
+        MetadataXml.setProperty(unit, NAME_PROPERTY, category.label != null ? category.label : category.name);
+        if (category.description != null) {
+            MetadataXml.setProperty(unit, DESCRIPTION_PROPERTY, category.description);
+        }
+        MetadataXml.setProperty(unit, CATEGORY_PROPERTY, "true");
+
+        Element provides = content.createElement("provides");
+        provides.appendChild(capability(content, "provided", id, "version", version));
+        MetadataXml.updateSize(provides);
+        unit.appendChild(provides);
+
+        Element requires = content.createElement("requires");
+        for (Element member : category.members.values()) {
+            String memberVersion = member.getAttribute("version");
+            requires.appendChild(capability(content, "required", member.getAttribute("id"), "range",
+                    "[" + memberVersion + "," + memberVersion + "]"));
+        }
+        for (Category child : category.children) {
+            if (child.isEmpty()) {
+                continue;
+            }
+            requires.appendChild(capability(content, "required", idPrefix + child.name, "range",
+                    "[" + version + "," + version + "]"));
+        }
+        MetadataXml.updateSize(requires);
+        unit.appendChild(requires);
+
+        Element touchpoint = content.createElement("touchpoint");
+        touchpoint.setAttribute("id", "null");
+        touchpoint.setAttribute("version", "0.0.0");
+        unit.appendChild(touchpoint);
+        return unit;
+    }
+
+    private static Element capability(Document content, String tagName, String name, String versionAttribute, String version) {
+        Element element = content.createElement(tagName);
+        element.setAttribute("namespace", IU_NAMESPACE);
+        element.setAttribute("name", name);
+        element.setAttribute(versionAttribute, version);
+        return element;
+    }
+
+    private static void replaceUnits(Document content, List<Element> categoryUnits) {
+        Element container = MetadataXml.child(content.getDocumentElement(), "units");
+        if (container == null) {
+            container = content.createElement("units");
+            content.getDocumentElement().appendChild(container);
+        }
+        Set<String> added = new LinkedHashSet<String>();
+        for (Element unit : categoryUnits) {
+            added.add(unit.getAttribute("id") + "_" + unit.getAttribute("version"));
+        }
+        for (Element unit : MetadataXml.children(container, "unit")) {
+            if (added.contains(unit.getAttribute("id") + "_" + unit.getAttribute("version"))) {
+                container.removeChild(unit);
+            }
+        }
+        for (Element unit : categoryUnits) {
+            container.appendChild(unit);
+        }
+        MetadataXml.updateSize(container);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private String categoryFileLocation;
+        private String metadataRepositoryLocation;
+        private String versionQualifier;
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder categoryFileLocation(String categoryFileLocation) {
+            checkNotNull(categoryFileLocation, "categoryFileLocation cannot be null");
+            this.categoryFileLocation = categoryFileLocation;
+            return this;
+        }
+
+        public Builder metadataRepositoryLocation(String metadataRepositoryLocation) {
+            checkNotNull(metadataRepositoryLocation, "metadataRepositoryLocation cannot be null");
+            this.metadataRepositoryLocation = metadataRepositoryLocation;
+            return this;
+        }
+
+        public Builder versionQualifier(String versionQualifier) {
+            checkNotNull(versionQualifier, "versionQualifier cannot be null");
+            this.versionQualifier = versionQualifier;
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            checkNotNull(metadataCache, "metadataCache cannot be null");
+            this.metadataCache = metadataCache;
+            return this;
+        }
+
+        public NativeCategoryPublisher build() {
+            checkNotNull(categoryFileLocation, "categoryFileLocation cannot be null");
+            checkNotNull(metadataRepositoryLocation, "metadataRepositoryLocation cannot be null");
+            checkNotNull(versionQualifier, "versionQualifier cannot be null");
+            return new NativeCategoryPublisher(categoryFileLocation, metadataRepositoryLocation, versionQualifier,
+                    metadataCache);
+        }
+
+    }
+
+    private static class Category {
+        private final String name;
+        private String label;
+        private String description;
+        private final Map<String, Element> members = new LinkedHashMap<String, Element>();
+        private final Set<Category> children = new LinkedHashSet<Category>();
+
+        Category(String name) {
+            this.name = name;
+        }
+
+        boolean isEmpty() {
+            return members.isEmpty() && children.isEmpty();
+        }
+    }
+
+}
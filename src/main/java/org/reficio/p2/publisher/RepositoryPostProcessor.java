@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.utils.HashUtils;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Post-processes a published repository: computes the missing artifact checksums and compresses the metadata.
+ * Checksums of all artifacts and all the compressed metadata variants are computed in parallel.
+ */
+public class RepositoryPostProcessor {
+
+    static final String DOWNLOAD_SIZE = "download.size";
+    static final String ARTIFACT_SIZE = "artifact.size";
+    static final String DOWNLOAD_MD5 = "download.md5";
+    static final String CHECKSUM_MD5 = "download.checksum.md5";
+    static final String CHECKSUM_SHA_256 = "download.checksum.sha-256";
+    static final String COMPRESSED = "p2.compressed";
+
+    private final File repository;
+    private final boolean compress;
+    private final boolean xz;
+    private final int threads;
+    private final MetadataCache metadataCache;
+
+    public RepositoryPostProcessor(File repository, boolean compress, boolean xz, int threads, MetadataCache metadataCache) {
+        this.repository = repository;
+        this.compress = compress;
+        this.xz = xz;
+        this.threads = threads;
+        this.metadataCache = metadataCache;
+    }
+
+    public void execute() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Document artifacts = metadataCache.read(repository, RepositoryFiles.ARTIFACTS);
+            Document content = metadataCache.read(repository, RepositoryFiles.CONTENT);
+            int updated = addChecksums(artifacts, executor);
+            MetadataXml.setProperty(artifacts.getDocumentElement(), COMPRESSED, Boolean.toString(compress));
+            MetadataXml.setProperty(content.getDocumentElement(), COMPRESSED, Boolean.toString(compress));
+            XmlUtils.writeXml(artifacts, RepositoryFiles.xml(repository, RepositoryFiles.ARTIFACTS));
+            XmlUtils.writeXml(content, RepositoryFiles.xml(repository, RepositoryFiles.CONTENT));
+            compressMetadata(executor);
+            metadataCache.update(repository, RepositoryFiles.ARTIFACTS, artifacts);
+            metadataCache.update(repository, RepositoryFiles.CONTENT, content);
+            Logger.getLog().info(String.format("Post-processed repository %s, checksums of %d artifacts computed", repository, updated));
+        } catch (IOException e) {
+            // the cached documents may have been modified without being written
+            metadataCache.invalidate(repository);
+            throw e;
+        } catch (RuntimeException e) {
+            metadataCache.invalidate(repository);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int addChecksums(Document artifacts, ExecutorService executor) throws IOException {
+        List<Element> elements = new ArrayList<Element>();
+        List<Future<Map<String, String>>> checksums = new ArrayList<Future<Map<String, String>>>();
+        for (Element artifact : MetadataXml.artifacts(artifacts)) {
+            if (MetadataXml.getProperty(artifact, CHECKSUM_SHA_256) != null) {
+                continue;
+            }
+            final File file = MetadataXml.artifactFile(repository, artifact);
+            if (!file.isFile()) {
+                Logger.getLog().warn("Missing artifact file " + file);
+                continue;
+            }
+            elements.add(artifact);
+            checksums.add(executor.submit(new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() {
+                    return HashUtils.digest(file, HashUtils.MD5, HashUtils.SHA_256);
+                }
+            }));
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            Element artifact = elements.get(i);
+            Map<String, String> checksum = get(checksums.get(i));
+            String size = String.valueOf(MetadataXml.artifactFile(repository, artifact).length());
+            MetadataXml.setProperty(artifact, ARTIFACT_SIZE, size);
+            MetadataXml.setProperty(artifact, DOWNLOAD_SIZE, size);
+            MetadataXml.setProperty(artifact, DOWNLOAD_MD5, checksum.get(HashUtils.MD5));
+            MetadataXml.setProperty(artifact, CHECKSUM_MD5, checksum.get(HashUtils.MD5));
+            MetadataXml.setProperty(artifact, CHECKSUM_SHA_256, checksum.get(HashUtils.SHA_256));
+        }
+        return elements.size();
+    }
+
+    private void compressMetadata(ExecutorService executor) throws IOException {
+        List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+        for (String name : new String[]{RepositoryFiles.CONTENT, RepositoryFiles.ARTIFACTS}) {
+            final File xml = RepositoryFiles.xml(repository, name);
+            final File jar = RepositoryFiles.jar(repository, name);
+            final File xzFile = RepositoryFiles.xz(repository, name);
+            FileUtils.deleteQuietly(jar);
+            FileUtils.deleteQuietly(xzFile);
+            if (compress) {
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        RepositoryFiles.writeJar(xml, jar);
+                        return null;
+                    }
+                }));
+            }
+            if (xz) {
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        RepositoryFiles.writeXz(xml, xzFile);
+                        return null;
+                    }
+                }));
+            }
+        }
+        for (Future<Void> task : tasks) {
+            get(task);
+        }
+        if (xz) {
+            RepositoryFiles.writeXzIndex(repository);
+        }
+        if (compress) {
+            // the same layout as written by the publisher: only the jars are kept
+            FileUtils.deleteQuietly(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT));
+            FileUtils.deleteQuietly(RepositoryFiles.xml(repository, RepositoryFiles.ARTIFACTS));
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Repository post-processing interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File repository;
+        private boolean compress;
+        private boolean xz;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder repository(File repository) {
+            this.repository = repository;
+            return this;
+        }
+
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        public Builder xz(boolean xz) {
+            this.xz = xz;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            this.metadataCache = checkNotNull(metadataCache, "metadataCache cannot be null");
+            return this;
+        }
+
+        public RepositoryPostProcessor build() {
+            return new RepositoryPostProcessor(checkNotNull(repository, "repository cannot be null"), compress, xz, threads,
+                    metadataCache);
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataRewriter;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.utils.VersionNormalizer;
+
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Removes the obsolete versions from a long-lived repository. Per unit id the newest keepVersions versions and the
+ * versions built after keepNewerThan are retained, together with everything a retained unit requires with an exact
+ * version range, like the bundles of a retained feature. The metadata is rewritten in streaming passes and the files
+ * of the removed artifacts are deleted.
+ *
+ * @since 1.4.3
+ */
+public class RepositoryPruner {
+
+    private static final String IU_NAMESPACE = "org.eclipse.equinox.p2.iu";
+    private static final String FEATURE_JAR_SUFFIX = ".feature.jar";
+    private static final String FEATURE_GROUP_SUFFIX = ".feature.group";
+    private static final String[] QUALIFIER_FORMATS = {"yyyyMMddHHmmss", "yyyyMMddHHmm", "yyyyMMdd"};
+
+    private final File repository;
+    private final int keepVersions;
+    private final Long keepNewerThan;
+    private final boolean dryRun;
+    private final MetadataCache metadataCache;
+
+    public RepositoryPruner(File repository, int keepVersions, Long keepNewerThan, boolean dryRun, MetadataCache metadataCache) {
+        this.repository = repository;
+        this.keepVersions = keepVersions;
+        this.keepNewerThan = keepNewerThan;
+        this.dryRun = dryRun;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return number of the removed units
+     */
+    public int execute() throws IOException {
+        final Map<String, List<String>> versions = new HashMap<String, List<String>>();
+        final Map<String, List<String>> requirements = new HashMap<String, List<String>>();
+        MetadataRewriter content = MetadataRewriter.content(repository);
+        content.visit(new MetadataRewriter.ElementVisitor() {
+            private String unit;
+
+            @Override
+            public void start(StartElement start) {
+                String id = MetadataRewriter.attribute(start, "id", "");
+                String version = MetadataRewriter.attribute(start, "version", "");
+                List<String> unitVersions = versions.get(id);
+                if (unitVersions == null) {
+                    unitVersions = new ArrayList<String>();
+                    versions.put(id, unitVersions);
+                }
+                unitVersions.add(version);
+                unit = unitKey(id, version);
+            }
+
+            @Override
+            public void event(XMLEvent event) {
+                if (!event.isStartElement() || !"required".equals(event.asStartElement().getName().getLocalPart())) {
+                    return;
+                }
+                StartElement required = event.asStartElement();
+                String version = exactVersion(MetadataRewriter.attribute(required, "range", ""));
+                if (IU_NAMESPACE.equals(MetadataRewriter.attribute(required, "namespace", null)) && version != null) {
+                    List<String> unitRequirements = requirements.get(unit);
+                    if (unitRequirements == null) {
+                        unitRequirements = new ArrayList<String>();
+                        requirements.put(unit, unitRequirements);
+                    }
+                    unitRequirements.add(unitKey(MetadataRewriter.attribute(required, "name", ""), version));
+                }
+            }
+
+            @Override
+            public void end() {
+            }
+        });
+
+        Set<String> retained = retain(versions, requirements);
+        final Set<String> removedUnits = new HashSet<String>();
+        for (Map.Entry<String, List<String>> unit : versions.entrySet()) {
+            for (String version : unit.getValue()) {
+                String key = unitKey(unit.getKey(), version);
+                if (!retained.contains(key)) {
+                    removedUnits.add(key);
+                }
+            }
+        }
+        if (removedUnits.isEmpty()) {
+            Logger.getLog().info(String.format("Nothing to prune in %s, all %d units are retained", repository, retained.size()));
+            return 0;
+        }
+
+        MetadataRewriter artifacts = MetadataRewriter.artifacts(repository);
+        final Set<String> removedArtifacts = new HashSet<String>();
+        final List<File> removedFiles = new ArrayList<File>();
+        artifacts.visit(new MetadataRewriter.ElementVisitor() {
+            @Override
+            public void start(StartElement start) {
+                String classifier = MetadataRewriter.attribute(start, "classifier", "");
+                String id = MetadataRewriter.attribute(start, "id", "");
+                String version = MetadataRewriter.attribute(start, "version", "");
+                String unitId = MetadataXml.FEATURE_CLASSIFIER.equals(classifier) ? id + FEATURE_JAR_SUFFIX : id;
+                if (removedUnits.contains(unitKey(unitId, version))) {
+                    removedArtifacts.add(MetadataRewriter.key(start));
+                    removedFiles.add(MetadataXml.artifactFile(repository, classifier, id, version));
+                }
+            }
+
+            @Override
+            public void event(XMLEvent event) {
+            }
+
+            @Override
+            public void end() {
+            }
+        });
+
+        Logger.getLog().info(String.format("%s %d of %d units and %d artifacts from %s", dryRun ? "Would prune" : "Pruning",
+                removedUnits.size(), removedUnits.size() + retained.size(), removedArtifacts.size(), repository));
+        if (!dryRun) {
+            content.rewrite(removedUnits, removedUnits.size(), null);
+            artifacts.rewrite(removedArtifacts, removedArtifacts.size(), null);
+            for (File file : removedFiles) {
+                FileUtils.deleteQuietly(file);
+            }
+            metadataCache.invalidate(repository);
+        }
+        return removedUnits.size();
+    }
+
+    private Set<String> retain(Map<String, List<String>> versions, Map<String, List<String>> requirements) {
+        Set<String> retained = new HashSet<String>();
+        LinkedList<String> pending = new LinkedList<String>();
+        for (Map.Entry<String, List<String>> unit : versions.entrySet()) {
+            List<String> sorted = new ArrayList<String>(unit.getValue());
+            Collections.sort(sorted, Collections.reverseOrder(new Comparator<String>() {
+                @Override
+                public int compare(String first, String second) {
+                    return VersionNormalizer.compare(first, second);
+                }
+            }));
+            for (int i = 0; i < sorted.size(); i++) {
+                String version = sorted.get(i);
+                boolean newest = keepVersions > 0 && i < keepVersions;
+                boolean recent = keepNewerThan != null && buildTime(unit.getKey(), version) >= keepNewerThan;
+                if (newest || recent) {
+                    String key = unitKey(unit.getKey(), version);
+                    retained.add(key);
+                    pending.add(key);
+                }
+            }
+        }
+        // everything a retained unit pins stays, e.g. the bundles of a retained feature
+        while (!pending.isEmpty()) {
+            List<String> required = requirements.get(pending.removeFirst());
+            if (required == null) {
+                continue;
+            }
+            for (String key : required) {
+                if (retained.add(key)) {
+                    pending.add(key);
+                }
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * @return time the version was built, taken from its timestamp qualifier or else from its artifact file, which is
+     * the feature jar for both the feature group and the feature jar unit; versions of unknown age are considered recent
+     */
+    private long buildTime(String id, String version) {
+        String[] segments = version.split("\\.", 4);
+        if (segments.length == 4) {
+            String digits = segments[3].replaceFirst("^(\\d+).*$", "$1");
+            for (String format : QUALIFIER_FORMATS) {
+                if (digits.length() == format.length()) {
+                    try {
+                        SimpleDateFormat parser = new SimpleDateFormat(format);
+                        parser.setLenient(false);
+                        return parser.parse(digits).getTime();
+                    } catch (ParseException e) {
+                        // not a timestamp
+                    }
+                }
+            }
+        }
+        File file;
+        if (id.endsWith(FEATURE_JAR_SUFFIX) || id.endsWith(FEATURE_GROUP_SUFFIX)) {
+            String featureId = id.substring(0, id.lastIndexOf(".feature."));
+            file = MetadataXml.artifactFile(repository, MetadataXml.FEATURE_CLASSIFIER, featureId, version);
+        } else {
+            file = MetadataXml.artifactFile(repository, MetadataXml.BUNDLE_CLASSIFIER, id, version);
+        }
+        return file.isFile() ? file.lastModified() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the version of an exact range like [1.0.0,1.0.0], null for any other range
+     */
+    static String exactVersion(String range) {
+        if (range.startsWith("[") && range.endsWith("]")) {
+            String[] bounds = range.substring(1, range.length() - 1).split(",");
+            if (bounds.length == 2 && bounds[0].trim().equals(bounds[1].trim())) {
+                return bounds[0].trim();
+            }
+        }
+        return null;
+    }
+
+    private static String unitKey(String id, String version) {
+        return MetadataRewriter.key("", id, version);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File repository;
+        private int keepVersions;
+        private Long keepNewerThan;
+        private boolean dryRun;
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder repository(File repository) {
+            this.repository = checkNotNull(repository, "repository cannot be null");
+            return this;
+        }
+
+        public Builder keepVersions(int keepVersions) {
+            checkArgument(keepVersions >= 0, "keepVersions cannot be negative");
+            this.keepVersions = keepVersions;
+            return this;
+        }
+
+        public Builder keepNewerThan(Long keepNewerThan) {
+            this.keepNewerThan = keepNewerThan;
+            return this;
+        }
+
+        public Builder dryRun(boolean dryRun) {
+            this.dryRun = dryRun;
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            this.metadataCache = checkNotNull(metadataCache, "metadataCache cannot be null");
+            return this;
+        }
+
+        public RepositoryPruner build() {
+            checkNotNull(repository, "repository cannot be null");
+            checkArgument(keepVersions > 0 || keepNewerThan != null, "keepVersions or keepNewerThan has to be set");
+            return new RepositoryPruner(repository, keepVersions, keepNewerThan, dryRun, metadataCache);
+        }
+    }
+
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.CompositeRepository;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Partitions a published site into child repositories behind a composite root, so that the clients that need only
+ * a part of the site can point to its shard and load only the metadata of that shard.
+ * The shards are written in parallel; the units that are not assigned to any shard, like the categories,
+ * go to the default shard.
+ *
+ * @since 1.4.3
+ */
+public class RepositorySharder {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private static final String FEATURE_GROUP_SUFFIX = ".feature.group";
+    private static final String FEATURE_JAR_SUFFIX = ".feature.jar";
+
+    private final File repository;
+    private final Map<String, String> unitShards;
+    private final boolean compress;
+    private final boolean xz;
+    private final int threads;
+    private final MetadataCache metadataCache;
+
+    /**
+     * @param unitShards shards of the units, keyed by id_version or by id only
+     */
+    public RepositorySharder(File repository, Map<String, String> unitShards, boolean compress, boolean xz, int threads,
+                             MetadataCache metadataCache) {
+        this.repository = repository;
+        this.unitShards = unitShards;
+        this.compress = compress;
+        this.xz = xz;
+        this.threads = threads;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return number of the shards
+     */
+    public int execute() throws IOException {
+        final Document content = metadataCache.read(repository, RepositoryFiles.CONTENT);
+        final Document artifacts = metadataCache.read(repository, RepositoryFiles.ARTIFACTS);
+        Set<String> shards = new TreeSet<String>();
+        for (Element unit : MetadataXml.units(content)) {
+            shards.add(shardOf(unit.getAttribute("id"), unit.getAttribute("version")));
+        }
+        for (Element artifact : MetadataXml.artifacts(artifacts)) {
+            shards.add(shardOfArtifact(artifact));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+            for (final String shard : shards) {
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        writeShard(shard, content, artifacts);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                get(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (String name : new String[]{RepositoryFiles.CONTENT, RepositoryFiles.ARTIFACTS}) {
+            FileUtils.deleteQuietly(RepositoryFiles.xml(repository, name));
+            FileUtils.deleteQuietly(RepositoryFiles.jar(repository, name));
+            FileUtils.deleteQuietly(RepositoryFiles.xz(repository, name));
+        }
+        metadataCache.invalidate(repository);
+        CompositeRepository.write(repository, content.getDocumentElement().getAttribute("name"), new ArrayList<String>(shards));
+        Logger.getLog().info(String.format("Partitioned repository %s into %d shards %s", repository, shards.size(), shards));
+        return shards.size();
+    }
+
+    private String shardOf(String id, String version) {
+        String unitId = id.endsWith(FEATURE_JAR_SUFFIX)
+                ? id.substring(0, id.length() - FEATURE_JAR_SUFFIX.length()) + FEATURE_GROUP_SUFFIX : id;
+        String shard = unitShards.get(unitId + "_" + version);
+        if (shard == null) {
+            shard = unitShards.get(unitId);
+        }
+        return shard != null ? toFolderName(shard) : DEFAULT_SHARD;
+    }
+
+    private String shardOfArtifact(Element artifact) {
+        String classifier = artifact.getAttribute("classifier");
+        if (MetadataXml.BUNDLE_CLASSIFIER.equals(classifier)) {
+            return shardOf(artifact.getAttribute("id"), artifact.getAttribute("version"));
+        } else if (MetadataXml.FEATURE_CLASSIFIER.equals(classifier)) {
+            return shardOf(artifact.getAttribute("id") + FEATURE_GROUP_SUFFIX, artifact.getAttribute("version"));
+        }
+        return DEFAULT_SHARD;
+    }
+
+    static String toFolderName(String shard) {
+        return shard.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private void writeShard(String shard, Document content, Document artifacts) throws IOException {
+        File shardDir = new File(repository, shard);
+        FileUtils.deleteDirectory(shardDir);
+        FileUtils.forceMkdir(shardDir);
+        Document shardContent;
+        Document shardArtifacts;
+        // the source documents are shared by all the shards, they're only read
+        synchronized (content) {
+            shardContent = (Document) content.cloneNode(true);
+        }
+        synchronized (artifacts) {
+            shardArtifacts = (Document) artifacts.cloneNode(true);
+        }
+        Set<String> retained = new HashSet<String>();
+        for (Element unit : MetadataXml.units(shardContent)) {
+            if (!shard.equals(shardOf(unit.getAttribute("id"), unit.getAttribute("version")))) {
+                remove(unit);
+            }
+        }
+        for (Element artifact : MetadataXml.artifacts(shardArtifacts)) {
+            if (!shard.equals(shardOfArtifact(artifact))) {
+                remove(artifact);
+                continue;
+            }
+            File source = MetadataXml.artifactFile(repository, artifact);
+            if (source.isFile() && retained.add(source.getName())) {
+                File target = MetadataXml.artifactFile(shardDir, artifact);
+                FileUtils.forceMkdir(target.getParentFile());
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        writeMetadata(shardDir, RepositoryFiles.CONTENT, shardContent);
+        writeMetadata(shardDir, RepositoryFiles.ARTIFACTS, shardArtifacts);
+        if (xz) {
+            RepositoryFiles.writeXzIndex(shardDir);
+        }
+    }
+
+    private static void remove(Element element) {
+        Element container = (Element) element.getParentNode();
+        container.removeChild(element);
+        MetadataXml.updateSize(container);
+    }
+
+    private void writeMetadata(File shardDir, String name, Document document) throws IOException {
+        File xml = RepositoryFiles.xml(shardDir, name);
+        XmlUtils.writeXml(document, xml);
+        if (xz) {
+            RepositoryFiles.writeXz(xml, RepositoryFiles.xz(shardDir, name));
+        }
+        if (compress) {
+            RepositoryFiles.writeJar(xml, RepositoryFiles.jar(shardDir, name));
+            FileUtils.deleteQuietly(xml);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Repository sharding interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File repository;
+        private Map<String, String> unitShards = new HashMap<String, String>();
+        private boolean compress;
+        private boolean xz;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder repository(File repository) {
+            this.repository = checkNotNull(repository, "repository cannot be null");
+            return this;
+        }
+
+        public Builder unitShards(Map<String, String> unitShards) {
+            this.unitShards = checkNotNull(unitShards, "unitShards cannot be null");
+            return this;
+        }
+
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        public Builder xz(boolean xz) {
+            this.xz = xz;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            this.metadataCache = checkNotNull(metadataCache, "metadataCache cannot be null");
+            return this;
+        }
+
+        public RepositorySharder build() {
+            return new RepositorySharder(checkNotNull(repository, "repository cannot be null"), unitShards, compress, xz,
+                    threads, metadataCache);
+        }
+    }
+
+}
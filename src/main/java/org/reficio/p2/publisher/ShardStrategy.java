@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+/**
+ * Specifies how the published site is partitioned into child repositories.
+ *
+ * @since 1.4.3
+ */
+public enum ShardStrategy {
+
+    /**
+     * a single repository is published
+     */
+    NONE,
+
+    /**
+     * the bundles are partitioned by the leading segments of their groupId
+     */
+    GROUPID,
+
+    /**
+     * every generated feature gets a shard with its bundles, the other bundles are partitioned by their groupId
+     */
+    FEATURE;
+
+    public static ShardStrategy fromString(String strategy) {
+        for (ShardStrategy value : values()) {
+            if (value.name().equalsIgnoreCase(strategy.trim())) {
+                return value;
+            }
+        }
+        throw new RuntimeException("p2-maven-plugin misconfiguration: unknown shardBy [" + strategy + "], " +
+                "expected one of none, groupId, feature");
+    }
+
+}
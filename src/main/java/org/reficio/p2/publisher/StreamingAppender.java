@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataCache;
+import org.reficio.p2.repository.MetadataRewriter;
+
+import javax.xml.stream.XMLEventWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Appends a freshly published staging repository to an existing repository without loading the existing metadata:
+ * every metadata file is copied in a streaming pass, the units and artifacts of the staging repository replace the ones
+ * with the same id and version and are added at the end of their container. The memory use depends only on the size
+ * of the staging repository.
+ *
+ * @since 1.4.3
+ */
+public class StreamingAppender {
+
+    private static final String[] ARTIFACT_FOLDERS = {"plugins", "features", "binary"};
+
+    private final File repository;
+    private final File staging;
+    private final MetadataCache metadataCache;
+
+    public StreamingAppender(File repository, File staging, MetadataCache metadataCache) {
+        this.repository = repository;
+        this.staging = staging;
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return number of the appended units
+     */
+    public int execute() throws IOException {
+        int units = merge(MetadataRewriter.content(repository), MetadataRewriter.content(staging));
+        int artifacts = merge(MetadataRewriter.artifacts(repository), MetadataRewriter.artifacts(staging));
+        for (String folder : ARTIFACT_FOLDERS) {
+            moveFiles(new File(staging, folder), new File(repository, folder));
+        }
+        metadataCache.invalidate(repository);
+        Logger.getLog().info(String.format("Appended %d units and %d artifacts to %s", units, artifacts, repository));
+        return units;
+    }
+
+    private static int merge(MetadataRewriter existing, final MetadataRewriter staged) throws IOException {
+        final List<String> stagedKeys = staged.keys(null);
+        Set<String> replacedKeys = new HashSet<String>(stagedKeys);
+        int replaced = existing.keys(replacedKeys).size();
+        existing.rewrite(replacedKeys, replaced, new MetadataRewriter.Additions() {
+            @Override
+            public int size() {
+                return stagedKeys.size();
+            }
+
+            @Override
+            public void write(XMLEventWriter writer) throws IOException {
+                staged.copyElements(writer);
+            }
+        });
+        return stagedKeys.size();
+    }
+
+    private static void moveFiles(File source, File target) throws IOException {
+        File[] files = source.listFiles();
+        if (files == null) {
+            return;
+        }
+        FileUtils.forceMkdir(target);
+        for (File file : files) {
+            File moved = new File(target, file.getName());
+            if (file.isDirectory()) {
+                FileUtils.deleteDirectory(moved);
+                FileUtils.moveDirectory(file, moved);
+            } else {
+                Files.move(file.toPath(), moved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File repository;
+        private File staging;
+        private MetadataCache metadataCache = new MetadataCache();
+
+        public Builder repository(File repository) {
+            this.repository = checkNotNull(repository, "repository cannot be null");
+            return this;
+        }
+
+        public Builder staging(File staging) {
+            this.staging = checkNotNull(staging, "staging cannot be null");
+            return this;
+        }
+
+        public Builder metadataCache(MetadataCache metadataCache) {
+            this.metadataCache = checkNotNull(metadataCache, "metadataCache cannot be null");
+            return this;
+        }
+
+        public StreamingAppender build() {
+            return new StreamingAppender(checkNotNull(repository, "repository cannot be null"),
+                    checkNotNull(staging, "staging cannot be null"), metadataCache);
+        }
+    }
+
+}
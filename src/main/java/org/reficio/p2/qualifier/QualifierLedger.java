@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.qualifier;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Records the content hash and the qualifier of every published snapshot bundle and generated feature.
+ * The ledger is published with the site as qualifiers.properties; the next build reads it from the previous site
+ * and reuses the qualifiers of the unchanged content, so p2 clients download only what really changed.
+ *
+ * @since 1.4.3
+ */
+public class QualifierLedger {
+
+    public static final String FILE = "qualifiers.properties";
+
+    private static final String SEPARATOR = ",";
+
+    private final Map<String, String> previous;
+    private final Map<String, String> current = new TreeMap<String, String>();
+
+    private int reused = 0;
+
+    QualifierLedger(Map<String, String> previous) {
+        this.previous = previous;
+    }
+
+    public static QualifierLedger empty() {
+        return new QualifierLedger(new TreeMap<String, String>());
+    }
+
+    /**
+     * Reads the ledger of a previously published site, given as a folder or as an url.
+     * A site without a ledger results in an empty one.
+     */
+    public static QualifierLedger load(String location) throws IOException {
+        InputStream input;
+        try {
+            input = open(location);
+        } catch (FileNotFoundException e) {
+            return empty();
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(input);
+            Map<String, String> entries = new TreeMap<String, String>();
+            for (String key : properties.stringPropertyNames()) {
+                entries.put(key, properties.getProperty(key));
+            }
+            return new QualifierLedger(entries);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static InputStream open(String location) throws IOException {
+        URL url;
+        try {
+            url = new URL(StringUtils.removeEnd(location, "/") + "/" + FILE);
+        } catch (MalformedURLException e) {
+            return new FileInputStream(new File(location, FILE));
+        }
+        return url.openStream();
+    }
+
+    /**
+     * @param key       identifies the bundle or feature regardless of its qualifier
+     * @param hash      hash of everything the published content is derived from
+     * @param timestamp qualifier used if the content changed
+     * @return the qualifier to publish the content with
+     */
+    public synchronized String qualifier(String key, String hash, String timestamp) {
+        String qualifier = timestamp;
+        String entry = previous.get(key);
+        if (entry != null && entry.startsWith(hash + SEPARATOR)) {
+            qualifier = entry.substring(hash.length() + SEPARATOR.length());
+            reused++;
+        }
+        current.put(key, hash + SEPARATOR + qualifier);
+        return qualifier;
+    }
+
+    public synchronized int getReused() {
+        return reused;
+    }
+
+    public synchronized int size() {
+        return current.size();
+    }
+
+    /**
+     * Writes the ledger to the given site, the entries of the previous site not published again are kept.
+     */
+    public synchronized void write(File repository) throws IOException {
+        Map<String, String> entries = new TreeMap<String, String>(previous);
+        entries.putAll(current);
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            content.append(escape(entry.getKey())).append('=').append(entry.getValue()).append('\n');
+        }
+        FileUtils.writeStringToFile(new File(repository, FILE), content.toString(), "ISO-8859-1");
+    }
+
+    private static String escape(String key) {
+        return key.replace("\\", "\\\\").replace(":", "\\:").replace("=", "\\=").replace(" ", "\\ ");
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.qualifier;
+
+/**
+ * Specifies how the qualifiers of the snapshot bundles and generated features are chosen.
+ *
+ * @since 1.4.3
+ */
+public enum QualifierStrategy {
+
+    /**
+     * every build stamps its timestamp into all the qualifiers
+     */
+    TIMESTAMP,
+
+    /**
+     * a bundle or feature whose content is unchanged keeps the qualifier it was published with before,
+     * only the changed ones get the timestamp of the build
+     */
+    CONTENT;
+
+    public static QualifierStrategy fromString(String strategy) {
+        for (QualifierStrategy value : values()) {
+            if (value.name().equalsIgnoreCase(strategy.trim())) {
+                return value;
+            }
+        }
+        throw new RuntimeException("p2-maven-plugin misconfiguration: unknown qualifierStrategy [" + strategy + "], " +
+                "expected one of timestamp, content");
+    }
+
+}
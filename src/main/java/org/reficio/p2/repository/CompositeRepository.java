@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the compositeContent.xml and compositeArtifacts.xml files of a composite p2 repository.
+ *
+ * @since 1.4.3
+ */
+public class CompositeRepository {
+
+    public static final String COMPOSITE_CONTENT = "compositeContent";
+    public static final String COMPOSITE_ARTIFACTS = "compositeArtifacts";
+
+    private static final String COMPOSITE_CONTENT_TYPE = "org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository";
+    private static final String COMPOSITE_ARTIFACTS_TYPE = "org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository";
+
+    public static boolean exists(File root) {
+        return RepositoryFiles.xml(root, COMPOSITE_CONTENT).isFile();
+    }
+
+    /**
+     * @return the locations of the children of the composite, empty if there is no composite in the folder
+     */
+    public static List<String> readChildren(File root) throws IOException {
+        List<String> locations = new ArrayList<String>();
+        if (!exists(root)) {
+            return locations;
+        }
+        InputStream input = new FileInputStream(RepositoryFiles.xml(root, COMPOSITE_CONTENT));
+        try {
+            Element children = MetadataXml.child(XmlUtils.parseXml(input).getDocumentElement(), "children");
+            if (children != null) {
+                for (Element child : MetadataXml.children(children, "child")) {
+                    locations.add(child.getAttribute("location"));
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return locations;
+    }
+
+    /**
+     * Writes both composite files and the p2.index that makes p2 clients skip probing for simple repository files.
+     */
+    public static void write(File root, String name, List<String> children) throws IOException {
+        String timestamp = String.valueOf(System.currentTimeMillis());
+        FileUtils.writeStringToFile(RepositoryFiles.xml(root, COMPOSITE_CONTENT),
+                composite("compositeMetadataRepository", COMPOSITE_CONTENT_TYPE, name, children, timestamp), "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(root, COMPOSITE_ARTIFACTS),
+                composite("compositeArtifactRepository", COMPOSITE_ARTIFACTS_TYPE, name, children, timestamp), "UTF-8");
+        String index = "version=1\n" +
+                "metadata.repository.factory.order=" + COMPOSITE_CONTENT + ".xml,!\n" +
+                "artifact.repository.factory.order=" + COMPOSITE_ARTIFACTS + ".xml,!\n";
+        FileUtils.writeStringToFile(new File(root, RepositoryFiles.P2_INDEX), index, "UTF-8");
+    }
+
+    private static String composite(String instruction, String type, String name, List<String> children, String timestamp) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        xml.append("<?").append(instruction).append(" version='1.0.0'?>\n");
+        xml.append("<repository name='").append(escape(name)).append("' type='").append(type).append("' version='1.0.0'>\n");
+        xml.append("  <properties size='2'>\n");
+        xml.append("    <property name='p2.timestamp' value='").append(timestamp).append("'/>\n");
+        xml.append("    <property name='p2.atomic.composite.loading' value='true'/>\n");
+        xml.append("  </properties>\n");
+        xml.append("  <children size='").append(children.size()).append("'>\n");
+        for (String child : children) {
+            xml.append("    <child location='").append(escape(child)).append("'/>\n");
+        }
+        xml.append("  </children>\n");
+        xml.append("</repository>\n");
+        return xml.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("'", "&apos;").replace("\"", "&quot;");
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the parsed metadata of the repositories written during a build, so the steps that follow each other
+ * (category publishing, post-processing) do not parse the same content again.
+ * A cached document is handed out only while the metadata file it was read from or written to stays unchanged.
+ * Every read returns a copy of the cached document that the caller owns, and the documents written or updated are
+ * handed over to the cache, so the callers must not modify them afterwards.
+ *
+ * @since 1.4.3
+ */
+public class MetadataCache {
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private int hits = 0;
+
+    public synchronized Document read(File repository, String name) throws IOException {
+        String key = key(repository, name);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isCurrent(repository, name)) {
+            hits++;
+            return copy(entry.document);
+        }
+        Document document = RepositoryFiles.readMetadata(repository, name);
+        entries.put(key, new Entry(document, repository, name));
+        return copy(document);
+    }
+
+    /**
+     * Writes the document to the metadata files and keeps it, the caller must not modify it afterwards.
+     */
+
+    public synchronized void write(File repository, String name, Document document) throws IOException {
+        try {
+            RepositoryFiles.writeMetadata(repository, name, document);
+        } catch (IOException e) {
+            entries.remove(key(repository, name));
+            throw e;
+        }
+        update(repository, name, document);
+    }
+
+    /**
+     * Records a document that has just been written to the metadata files by other means, the caller must not modify
+     * it afterwards.
+     */
+    public synchronized void update(File repository, String name, Document document) throws IOException {
+        entries.put(key(repository, name), new Entry(document, repository, name));
+    }
+
+    public synchronized void invalidate(File repository) throws IOException {
+        entries.remove(key(repository, RepositoryFiles.CONTENT));
+        entries.remove(key(repository, RepositoryFiles.ARTIFACTS));
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    private static Document copy(Document document) {
+        return (Document) document.cloneNode(true);
+    }
+
+    private static String key(File repository, String name) throws IOException {
+        return repository.getCanonicalPath() + "/" + name;
+    }
+
+    private static class Entry {
+        private final Document document;
+        private final File file;
+        private final long lastModified;
+        private final long length;
+
+        Entry(Document document, File repository, String name) {
+            this.document = document;
+            this.file = RepositoryFiles.newestMetadata(repository, name);
+            this.lastModified = file != null ? file.lastModified() : 0;
+            this.length = file != null ? file.length() : 0;
+        }
+
+        boolean isCurrent(File repository, String name) {
+            File newest = RepositoryFiles.newestMetadata(repository, name);
+            return newest != null && newest.equals(file) && newest.lastModified() == lastModified && newest.length() == length;
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads and rewrites the elements of one container of a metadata file, e.g. the &lt;unit&gt; elements of the
+ * &lt;units&gt; of content.xml, in streaming passes without loading the document.
+ * The elements are identified by their classifier/id/version key.
+ *
+ * @since 1.4.3
+ */
+public class MetadataRewriter {
+
+    private static final String TIMESTAMP = "p2.timestamp";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    private final File repository;
+    private final String name;
+    private final String container;
+    private final String element;
+
+    public MetadataRewriter(File repository, String name, String container, String element) {
+        this.repository = repository;
+        this.name = name;
+        this.container = container;
+        this.element = element;
+    }
+
+    public static MetadataRewriter content(File repository) {
+        return new MetadataRewriter(repository, RepositoryFiles.CONTENT, "units", "unit");
+    }
+
+    public static MetadataRewriter artifacts(File repository) {
+        return new MetadataRewriter(repository, RepositoryFiles.ARTIFACTS, "artifacts", "artifact");
+    }
+
+    /**
+     * Elements written at the end of the container by {@link #rewrite}.
+     */
+    public interface Additions {
+        int size();
+
+        void write(XMLEventWriter writer) throws IOException, XMLStreamException;
+    }
+
+    /**
+     * Receives every element of the container: its start, all the events of its subtree and its end.
+     */
+    public interface ElementVisitor {
+        void start(StartElement start);
+
+        void event(XMLEvent event);
+
+        void end();
+    }
+
+    /**
+     * @return keys of the elements of the container, only the ones in the filter unless it's null
+     */
+    public List<String> keys(final Set<String> filter) throws IOException {
+        final List<String> keys = new ArrayList<String>();
+        visit(new ElementVisitor() {
+            @Override
+            public void start(StartElement start) {
+                String key = key(start);
+                if (filter == null || filter.contains(key)) {
+                    keys.add(key);
+                }
+            }
+
+            @Override
+            public void event(XMLEvent event) {
+            }
+
+            @Override
+            public void end() {
+            }
+        });
+        return keys;
+    }
+
+    public void visit(ElementVisitor visitor) throws IOException {
+        InputStream input = RepositoryFiles.openMetadata(repository, name);
+        try {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(input);
+            int depth = 0;
+            boolean inContainer = false;
+            boolean inElement = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement start = event.asStartElement();
+                    String tag = start.getName().getLocalPart();
+                    if (depth == 2) {
+                        inContainer = tag.equals(container);
+                    } else if (depth == 3 && inContainer && tag.equals(element)) {
+                        inElement = true;
+                        visitor.start(start);
+                    }
+                }
+                if (inElement) {
+                    visitor.event(event);
+                }
+                if (event.isEndElement()) {
+                    depth--;
+                    if (depth == 2 && inElement) {
+                        inElement = false;
+                        visitor.end();
+                    }
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read the " + name + " metadata of " + repository, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Copies the elements of the container, indented as children of the container.
+     */
+    public void copyElements(final XMLEventWriter writer) throws IOException {
+        try {
+            visit(new ElementVisitor() {
+                @Override
+                public void start(StartElement start) {
+                    add(writer, EVENT_FACTORY.createCharacters("  "));
+                }
+
+                @Override
+                public void event(XMLEvent event) {
+                    add(writer, event);
+                }
+
+                @Override
+                public void end() {
+                    add(writer, EVENT_FACTORY.createCharacters("\n  "));
+                }
+            });
+        } catch (WriterException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Rewrites every existing variant of the metadata file without the removed elements and with the additions,
+     * updating the size of the container and the timestamp of the repository.
+     *
+     * @param removed      keys of the elements to drop
+     * @param removedCount number of the existing elements that are dropped
+     */
+    public void rewrite(Set<String> removed, int removedCount, Additions additions) throws IOException {
+        File temp = Files.createTempDirectory("p2-metadata").toFile();
+        try {
+            // the jar entry has to be named like the plain xml
+            File rewritten = RepositoryFiles.xml(temp, name);
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(rewritten));
+            try {
+                write(removed, removedCount, additions, output);
+            } finally {
+                output.close();
+            }
+            install(rewritten);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    private void write(Set<String> removed, int removedCount, Additions additions, OutputStream output) throws IOException {
+        InputStream input = RepositoryFiles.openMetadata(repository, name);
+        try {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(input);
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(output, "UTF-8");
+            boolean containerFound = false;
+            int added = additions != null ? additions.size() : 0;
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement start = event.asStartElement();
+                    String tag = start.getName().getLocalPart();
+                    if (depth == 2 && tag.equals(container)) {
+                        containerFound = true;
+                        int size = Integer.parseInt(attribute(start, MetadataXml.SIZE, "0"));
+                        event = withAttribute(start, MetadataXml.SIZE, String.valueOf(size - removedCount + added));
+                    } else if (depth == 3 && tag.equals(element) && removed.contains(key(start))) {
+                        skipElement(reader);
+                        depth--;
+                        continue;
+                    } else if (depth == 3 && tag.equals(MetadataXml.PROPERTY) && TIMESTAMP.equals(attribute(start, "name", null))) {
+                        event = withAttribute(start, "value", String.valueOf(System.currentTimeMillis()));
+                    }
+                } else if (event.isEndElement()) {
+                    if (depth == 2 && additions != null && event.asEndElement().getName().getLocalPart().equals(container)) {
+                        additions.write(writer);
+                    }
+                    depth--;
+                }
+                writer.add(event);
+                if (depth == 0 && (event.isStartDocument() || event.isProcessingInstruction())) {
+                    // the whitespace of the prolog is not reported
+                    writer.add(EVENT_FACTORY.createCharacters("\n"));
+                }
+            }
+            writer.close();
+            reader.close();
+            if (!containerFound) {
+                throw new IOException("No " + container + " in the " + name + " metadata of " + repository);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot rewrite the " + name + " metadata of " + repository, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Replaces every existing variant of the metadata file, like {@link RepositoryFiles#writeMetadata}.
+     */
+    private void install(File rewritten) throws IOException {
+        File xml = RepositoryFiles.xml(repository, name);
+        File jar = RepositoryFiles.jar(repository, name);
+        File xz = RepositoryFiles.xz(repository, name);
+        if (jar.exists()) {
+            RepositoryFiles.writeJar(rewritten, jar);
+        }
+        if (xz.exists()) {
+            RepositoryFiles.writeXz(rewritten, xz);
+        }
+        if (xml.exists() || (!jar.exists() && !xz.exists())) {
+            Files.move(rewritten.toPath(), xml.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void add(XMLEventWriter writer, XMLEvent event) {
+        try {
+            writer.add(event);
+        } catch (XMLStreamException e) {
+            throw new WriterException(new IOException("Cannot write metadata", e));
+        }
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+        // drops the indentation that followed the element
+        if (reader.hasNext() && reader.peek().isCharacters() && reader.peek().asCharacters().isWhiteSpace()) {
+            reader.nextEvent();
+        }
+    }
+
+    public static String key(StartElement element) {
+        return key(attribute(element, "classifier", ""), attribute(element, "id", ""), attribute(element, "version", ""));
+    }
+
+    public static String key(String classifier, String id, String version) {
+        return classifier + "/" + id + "/" + version;
+    }
+
+    public static String attribute(StartElement element, String name, String defaultValue) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : defaultValue;
+    }
+
+    private static StartElement withAttribute(StartElement element, String name, String value) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        Iterator<?> iterator = element.getAttributes();
+        while (iterator.hasNext()) {
+            Attribute attribute = (Attribute) iterator.next();
+            if (!attribute.getName().getLocalPart().equals(name)) {
+                attributes.add(attribute);
+            } else {
+                attributes.add(EVENT_FACTORY.createAttribute(name, value));
+            }
+        }
+        return EVENT_FACTORY.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static class WriterException extends RuntimeException {
+        WriterException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+}
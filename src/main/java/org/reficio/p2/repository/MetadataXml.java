@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DOM helpers for the content.xml and artifacts.xml documents of a simple p2 repository.
+ */
+public class MetadataXml {
+
+    public static final String BUNDLE_CLASSIFIER = "osgi.bundle";
+    public static final String FEATURE_CLASSIFIER = "org.eclipse.update.feature";
+    public static final String BINARY_CLASSIFIER = "binary";
+
+    public static final String PROPERTIES = "properties";
+    public static final String PROPERTY = "property";
+    public static final String SIZE = "size";
+
+    public static List<Element> children(Element parent, String tagName) {
+        List<Element> result = new ArrayList<Element>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element && ((Element) node).getTagName().equals(tagName)) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    public static Element child(Element parent, String tagName) {
+        List<Element> children = children(parent, tagName);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    /**
+     * Returns the &lt;unit&gt; elements of a content.xml document.
+     */
+    public static List<Element> units(Document content) {
+        Element units = child(content.getDocumentElement(), "units");
+        return units == null ? new ArrayList<Element>() : children(units, "unit");
+    }
+
+    /**
+     * Returns the &lt;artifact&gt; elements of an artifacts.xml document.
+     */
+    public static List<Element> artifacts(Document artifacts) {
+        Element container = child(artifacts.getDocumentElement(), "artifacts");
+        return container == null ? new ArrayList<Element>() : children(container, "artifact");
+    }
+
+    /**
+     * Resolves the file of an &lt;artifact&gt; element according to the default mapping rules of a simple repository.
+     */
+    public static File artifactFile(File repository, Element artifact) {
+        return artifactFile(repository, artifact.getAttribute("classifier"), artifact.getAttribute("id"),
+                artifact.getAttribute("version"));
+    }
+
+    public static File artifactFile(File repository, String classifier, String id, String version) {
+        String name = id + "_" + version;
+        if (BUNDLE_CLASSIFIER.equals(classifier)) {
+            return new File(repository, "plugins/" + name + ".jar");
+        } else if (FEATURE_CLASSIFIER.equals(classifier)) {
+            return new File(repository, "features/" + name + ".jar");
+        } else {
+            return new File(repository, "binary/" + name);
+        }
+    }
+
+    public static String getProperty(Element owner, String name) {
+        Element properties = child(owner, PROPERTIES);
+        if (properties != null) {
+            for (Element property : children(properties, PROPERTY)) {
+                if (name.equals(property.getAttribute("name"))) {
+                    return property.getAttribute("value");
+                }
+            }
+        }
+        return null;
+    }
+
+    public static void setProperty(Element owner, String name, String value) {
+        Element properties = child(owner, PROPERTIES);
+        if (properties == null) {
+            properties = owner.getOwnerDocument().createElement(PROPERTIES);
+            owner.insertBefore(properties, owner.getFirstChild());
+        }
+        for (Element property : children(properties, PROPERTY)) {
+            if (name.equals(property.getAttribute("name"))) {
+                property.setAttribute("value", value);
+                return;
+            }
+        }
+        Element property = owner.getOwnerDocument().createElement(PROPERTY);
+        property.setAttribute("name", name);
+        property.setAttribute("value", value);
+        properties.appendChild(property);
+        updateSize(properties);
+    }
+
+    /**
+     * Recalculates the size attribute of a container element like &lt;units&gt; or &lt;properties&gt;.
+     */
+    public static void updateSize(Element container) {
+        int size = 0;
+        NodeList nodes = container.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i) instanceof Element) {
+                size++;
+            }
+        }
+        container.setAttribute(SIZE, String.valueOf(size));
+    }
+
+}
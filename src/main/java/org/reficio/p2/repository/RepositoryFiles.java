@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.utils.XmlUtils;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+import org.w3c.dom.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Locates, reads and writes the metadata files of a simple p2 repository.
+ * The metadata may be stored as plain xml (content.xml), as a jar (content.jar) or xz-compressed (content.xml.xz).
+ */
+public class RepositoryFiles {
+
+    public static final String CONTENT = "content";
+    public static final String ARTIFACTS = "artifacts";
+    public static final String P2_INDEX = "p2.index";
+
+    public static File xml(File repository, String name) {
+        return new File(repository, name + ".xml");
+    }
+
+    public static File jar(File repository, String name) {
+        return new File(repository, name + ".jar");
+    }
+
+    public static File xz(File repository, String name) {
+        return new File(repository, name + ".xml.xz");
+    }
+
+    public static boolean exists(File repository, String name) {
+        return xml(repository, name).exists() || jar(repository, name).exists() || xz(repository, name).exists();
+    }
+
+    /**
+     * @return the most recently written variant of the given metadata file, null if there is none
+     */
+    public static File newestMetadata(File repository, String name) {
+        File newest = null;
+        for (File candidate : new File[]{xml(repository, name), jar(repository, name), xz(repository, name)}) {
+            if (candidate.exists() && (newest == null || candidate.lastModified() > newest.lastModified())) {
+                newest = candidate;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Opens the most recently written variant of the given metadata file.
+     */
+    public static InputStream openMetadata(File repository, String name) throws IOException {
+        File newest = newestMetadata(repository, name);
+        if (newest == null) {
+            throw new IOException("No " + name + " metadata in " + repository);
+        }
+        InputStream input = new BufferedInputStream(new FileInputStream(newest));
+        if (newest.getName().endsWith(".xz")) {
+            return new XZInputStream(input);
+        } else if (newest.getName().endsWith(".jar")) {
+            JarInputStream jarInput = new JarInputStream(input);
+            JarEntry entry;
+            while ((entry = jarInput.getNextJarEntry()) != null) {
+                if (entry.getName().equals(name + ".xml")) {
+                    return jarInput;
+                }
+            }
+            jarInput.close();
+            throw new IOException("No " + name + ".xml entry in " + newest);
+        }
+        return input;
+    }
+
+    public static Document readMetadata(File repository, String name) throws IOException {
+        InputStream input = openMetadata(repository, name);
+        try {
+            return XmlUtils.parseXml(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Writes the document to every existing variant of the given metadata file, to the plain xml if there is none.
+     */
+    public static void writeMetadata(File repository, String name, Document document) throws IOException {
+        File xml = xml(repository, name);
+        File jar = jar(repository, name);
+        File xz = xz(repository, name);
+        if (xml.exists() || (!jar.exists() && !xz.exists())) {
+            XmlUtils.writeXml(document, xml);
+            if (jar.exists()) {
+                writeJar(xml, jar);
+            }
+            if (xz.exists()) {
+                writeXz(xml, xz);
+            }
+            return;
+        }
+        // the jar entry has to be named like the plain xml
+        File staging = Files.createTempDirectory("p2-metadata").toFile();
+        try {
+            File stagedXml = xml(staging, name);
+            XmlUtils.writeXml(document, stagedXml);
+            if (jar.exists()) {
+                writeJar(stagedXml, jar);
+            }
+            if (xz.exists()) {
+                writeXz(stagedXml, xz);
+            }
+        } finally {
+            FileUtils.deleteQuietly(staging);
+        }
+    }
+
+    public static void writeJar(File xml, File jar) throws IOException {
+        JarOutputStream output = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+        try {
+            output.putNextEntry(new JarEntry(xml.getName()));
+            FileUtils.copyFile(xml, output);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+    }
+
+    public static void writeXz(File xml, File xz) throws IOException {
+        OutputStream output = new XZOutputStream(new BufferedOutputStream(new FileOutputStream(xz)), new LZMA2Options());
+        try {
+            FileUtils.copyFile(xml, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Writes the p2.index file that makes p2 clients look for the xz-compressed metadata first.
+     */
+    public static void writeXzIndex(File repository) throws IOException {
+        String index = "version=1\n" +
+                "metadata.repository.factory.order=" + CONTENT + ".xml.xz," + CONTENT + ".xml,!\n" +
+                "artifact.repository.factory.order=" + ARTIFACTS + ".xml.xz," + ARTIFACTS + ".xml,!\n";
+        FileUtils.writeStringToFile(new File(repository, P2_INDEX), index, "UTF-8");
+    }
+
+    /**
+     * Removes the xz-compressed metadata and the index advertising it, e.g. before the publisher rewrites the metadata.
+     */
+    public static void deleteXzMetadata(File repository) {
+        FileUtils.deleteQuietly(xz(repository, CONTENT));
+        FileUtils.deleteQuietly(xz(repository, ARTIFACTS));
+        FileUtils.deleteQuietly(new File(repository, P2_INDEX));
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the artifacts published in a p2 repository (symbolic name, version, classifier and checksum).
+ * It's loaded once per build from a sidecar file, or streamed from the artifacts metadata if the sidecar is stale,
+ * so that the append and skip decisions do not have to probe the file system or open the jars.
+ *
+ * @since 1.4.3
+ */
+public class RepositoryIndex {
+
+    static final String SIDECAR = ".p2-maven-plugin.index";
+
+    private static final String SOURCE_HEADER = "# source=";
+    private static final String SEPARATOR = "\t";
+    private static final String CHECKSUM_SHA_256 = "download.checksum.sha-256";
+    private static final String CHECKSUM_MD5 = "download.md5";
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    public static RepositoryIndex empty() {
+        return new RepositoryIndex();
+    }
+
+    /**
+     * Loads the index of the given repository, the index is empty if the repository does not exist.
+     */
+    public static RepositoryIndex load(File repository) throws IOException {
+        RepositoryIndex index = new RepositoryIndex();
+        File metadata = RepositoryFiles.newestMetadata(repository, RepositoryFiles.ARTIFACTS);
+        if (metadata == null) {
+            return index;
+        }
+        File sidecar = new File(repository, SIDECAR);
+        if (!index.readSidecar(sidecar, metadata)) {
+            index.readMetadata(repository);
+        }
+        return index;
+    }
+
+    public boolean containsBundle(String symbolicName, String version) {
+        return entries.containsKey(key(MetadataXml.BUNDLE_CLASSIFIER, symbolicName, version));
+    }
+
+    public boolean containsFeature(String id, String version) {
+        return entries.containsKey(key(MetadataXml.FEATURE_CLASSIFIER, id, version));
+    }
+
+    public Entry get(String classifier, String id, String version) {
+        return entries.get(key(classifier, id, version));
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the sidecar file read by the next build, valid as long as the artifacts metadata does not change.
+     */
+    public void writeSidecar(File repository) throws IOException {
+        File metadata = RepositoryFiles.newestMetadata(repository, RepositoryFiles.ARTIFACTS);
+        if (metadata == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<String>();
+        lines.add(SOURCE_HEADER + source(metadata));
+        for (Entry entry : entries.values()) {
+            lines.add(StringUtils.join(new String[]{entry.classifier, entry.id, entry.version,
+                    StringUtils.defaultString(entry.checksum)}, SEPARATOR));
+        }
+        FileUtils.writeLines(new File(repository, SIDECAR), "UTF-8", lines, "\n");
+    }
+
+    private boolean readSidecar(File sidecar, File metadata) throws IOException {
+        if (!sidecar.isFile()) {
+            return false;
+        }
+        List<String> lines = FileUtils.readLines(sidecar, "UTF-8");
+        if (lines.isEmpty() || !lines.get(0).equals(SOURCE_HEADER + source(metadata))) {
+            return false;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] tokens = line.split(SEPARATOR, -1);
+            if (tokens.length == 4) {
+                add(new Entry(tokens[0], tokens[1], tokens[2], StringUtils.trimToNull(tokens[3])));
+            }
+        }
+        return true;
+    }
+
+    private static String source(File metadata) {
+        return metadata.getName() + ":" + metadata.length() + ":" + metadata.lastModified();
+    }
+
+    private void readMetadata(File repository) throws IOException {
+        InputStream input = RepositoryFiles.openMetadata(repository, RepositoryFiles.ARTIFACTS);
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+            try {
+                readArtifacts(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read the artifacts metadata of " + repository, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void readArtifacts(XMLStreamReader reader) throws XMLStreamException {
+        String classifier = null;
+        String id = null;
+        String version = null;
+        String sha256 = null;
+        String md5 = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("artifact".equals(name)) {
+                    classifier = reader.getAttributeValue(null, "classifier");
+                    id = reader.getAttributeValue(null, "id");
+                    version = reader.getAttributeValue(null, "version");
+                    sha256 = null;
+                    md5 = null;
+                } else if (id != null && "property".equals(name)) {
+                    String property = reader.getAttributeValue(null, "name");
+                    if (CHECKSUM_SHA_256.equals(property)) {
+                        sha256 = reader.getAttributeValue(null, "value");
+                    } else if (CHECKSUM_MD5.equals(property)) {
+                        md5 = reader.getAttributeValue(null, "value");
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "artifact".equals(reader.getLocalName())) {
+                add(new Entry(classifier, id, version, sha256 != null ? sha256 : md5));
+                id = null;
+            }
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(key(entry.classifier, entry.id, entry.version), entry);
+    }
+
+    private static String key(String classifier, String id, String version) {
+        return classifier + "/" + id + "/" + version;
+    }
+
+    /**
+     * One artifact of the repository.
+     */
+    public static class Entry {
+        private final String classifier;
+        private final String id;
+        private final String version;
+        private final String checksum;
+
+        Entry(String classifier, String id, String version, String checksum) {
+            this.classifier = classifier;
+            this.id = id;
+            this.version = version;
+            this.checksum = checksum;
+        }
+
+        public String getClassifier() {
+            return classifier;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the sha-256 checksum if recorded in the repository, md5 otherwise, null if neither is recorded
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public boolean isBundle() {
+            return MetadataXml.BUNDLE_CLASSIFIER.equals(classifier);
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Routes the artifact lookups to the repositories that host them, so that an artifact is not looked up in every
+ * repository in turn. An artifact is routed by its key - the groupId of a Maven artifact, the IU id of a p2 artifact -
+ * within its namespace, {@link #MAVEN} or {@link #P2}, as the same key may be hosted by different repositories in each.
+ * <p>
+ * The declared routes map key prefixes to repository ids (the longest matching prefix wins) and restrict the lookup
+ * to that repository. A declared prefix applies to both namespaces unless it starts with the namespace, e.g.
+ * {@code p2:org.eclipse}. The learned routes record the repository every key was last found in; they only move that
+ * repository to the front, as the artifact may have moved since, and they're kept in a file between the builds.
+ *
+ * @since 1.4.3
+ */
+public class RepositoryRouter {
+
+    public static final String MAVEN = "maven";
+    public static final String P2 = "p2";
+
+    private static final List<String> NAMESPACES = Arrays.asList(MAVEN, P2);
+
+    private final Map<String, String> declaredRoutes;
+    private final ConcurrentMap<String, String> learnedRoutes = new ConcurrentHashMap<String, String>();
+    private final AtomicBoolean learnedChanged = new AtomicBoolean();
+
+    public RepositoryRouter(Map<String, String> declaredRoutes) {
+        this.declaredRoutes = new LinkedHashMap<String, String>(declaredRoutes);
+    }
+
+    /**
+     * Orders the repositories for the lookup of the key.
+     *
+     * @param namespace     {@link #MAVEN} or {@link #P2}
+     * @param key           groupId or IU id of the artifact
+     * @param repositoryIds ids of the repositories available for the lookup, in their configured order
+     * @return ids of the repositories to look the key up in, in the lookup order
+     */
+    public List<String> route(String namespace, String key, List<String> repositoryIds) {
+        String declared = declaredRoute(namespace, key);
+        if (declared != null && repositoryIds.contains(declared)) {
+            List<String> routed = new ArrayList<String>();
+            routed.add(declared);
+            return routed;
+        }
+        String learned = learnedRoute(namespace, key);
+        if (learned != null && repositoryIds.contains(learned)) {
+            List<String> routed = new ArrayList<String>();
+            routed.add(learned);
+            for (String repositoryId : repositoryIds) {
+                if (!repositoryId.equals(learned)) {
+                    routed.add(repositoryId);
+                }
+            }
+            return routed;
+        }
+        return new ArrayList<String>(repositoryIds);
+    }
+
+    /**
+     * Records the repository the key was found in.
+     */
+    public void learn(String namespace, String key, String repositoryId) {
+        if (key == null || repositoryId == null) {
+            return;
+        }
+        String previous = learnedRoutes.put(namespacedKey(namespace, key), repositoryId);
+        if (!repositoryId.equals(previous)) {
+            learnedChanged.set(true);
+        }
+    }
+
+    public String declaredRoute(String namespace, String key) {
+        String route = null;
+        int matched = -1;
+        for (Map.Entry<String, String> declared : declaredRoutes.entrySet()) {
+            String prefix = declared.getKey();
+            // a prefix of the namespace wins over the same prefix declared for both namespaces
+            int length = 2 * prefix.length();
+            if (prefix.startsWith(namespace + ":")) {
+                prefix = prefix.substring(namespace.length() + 1);
+                length = 2 * prefix.length() + 1;
+            } else if (namespaceOf(prefix) != null) {
+                continue;
+            }
+            boolean matches = key.equals(prefix) || key.startsWith(prefix + ".");
+            if (matches && length > matched) {
+                route = declared.getValue();
+                matched = length;
+            }
+        }
+        return route;
+    }
+
+    public String learnedRoute(String namespace, String key) {
+        return learnedRoutes.get(namespacedKey(namespace, key));
+    }
+
+    private static String namespacedKey(String namespace, String key) {
+        return namespace + ":" + key;
+    }
+
+    private static String namespaceOf(String key) {
+        int separator = key.indexOf(':');
+        if (separator < 0) {
+            return null;
+        }
+        String namespace = key.substring(0, separator);
+        return NAMESPACES.contains(namespace) ? namespace : null;
+    }
+
+    /**
+     * Validates that every declared route points to one of the given repositories.
+     *
+     * @return error messages, empty if the routes are valid
+     */
+    public List<String> validate(Collection<String> repositoryIds) {
+        List<String> errors = new ArrayList<String>();
+        for (Map.Entry<String, String> declared : declaredRoutes.entrySet()) {
+            if (!repositoryIds.contains(declared.getValue())) {
+                errors.add(String.format("repository route [%s] points to unknown repository [%s], known repositories %s",
+                        declared.getKey(), declared.getValue(), repositoryIds));
+            }
+        }
+        return errors;
+    }
+
+    public void load(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        Properties routes = new Properties();
+        InputStream input = new FileInputStream(file);
+        try {
+            routes.load(input);
+        } finally {
+            input.close();
+        }
+        for (String key : routes.stringPropertyNames()) {
+            // the routes learned before the keys were namespaced are dropped
+            if (namespaceOf(key) != null) {
+                learnedRoutes.put(key, routes.getProperty(key));
+            }
+        }
+        Logger.getLog().info(String.format("Loaded %d learned repository routes from %s", learnedRoutes.size(), file));
+    }
+
+    /**
+     * Writes the learned routes, sorted so that the file diffs well, if they changed since they were loaded.
+     */
+    public void save(File file) throws IOException {
+        if (!learnedChanged.get()) {
+            return;
+        }
+        StringBuilder content = new StringBuilder("# repository routes learned by the p2-maven-plugin, namespace:key=repository id\n");
+        for (Map.Entry<String, String> route : new TreeMap<String, String>(learnedRoutes).entrySet()) {
+            content.append(escape(route.getKey())).append('=').append(escape(route.getValue())).append('\n');
+        }
+        FileUtils.writeStringToFile(file, content.toString(), "ISO-8859-1");
+        learnedChanged.set(false);
+        Logger.getLog().info(String.format("Written %d learned repository routes to %s", learnedRoutes.size(), file));
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("=", "\\=").replace(":", "\\:").replace(" ", "\\ ");
+    }
+
+}
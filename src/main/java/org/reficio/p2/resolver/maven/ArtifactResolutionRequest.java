@@ -18,7 +18,10 @@
  */
 package org.reficio.p2.resolver.maven;
 
+import org.apache.commons.lang.StringUtils;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -58,6 +61,19 @@ public final class ArtifactResolutionRequest {
         return resolveSource;
     }
 
+    /**
+     * @return string identifying the request, requests with equal signatures resolve the same artifacts
+     */
+    public String getSignature() {
+        List<String> sortedExcludes = new ArrayList<String>();
+        if (excludes != null) {
+            sortedExcludes.addAll(excludes);
+        }
+        Collections.sort(sortedExcludes);
+        return String.format("%s|transitive=%s|source=%s|excludes=%s", rootArtifactId, resolveTransitive, resolveSource,
+                StringUtils.join(sortedExcludes, ","));
+    }
+
 
     public static Builder builder() {
         return new Builder();
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.utils.HashUtils;
+import org.reficio.p2.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resolved closures of the artifact resolution requests, keyed by the request signature.
+ * Every locked artifact carries its exact version and the sha-256 of its file (and of its sources if available),
+ * so that a locked build resolves bit-for-bit the same files without collecting the dependency graphs again.
+ *
+ * @since 1.4.3
+ */
+public class ResolutionLock {
+
+    private static final String LOCK = "p2-lock";
+    private static final String ROOT = "root";
+    private static final String ARTIFACT = "artifact";
+    private static final String VERSION = "1";
+
+    private final Map<String, List<LockedArtifact>> entries = new TreeMap<String, List<LockedArtifact>>();
+
+    public synchronized List<LockedArtifact> get(ArtifactResolutionRequest request) {
+        return entries.get(request.getSignature());
+    }
+
+    public synchronized void put(ArtifactResolutionRequest request, ArtifactResolutionResult result) {
+        List<LockedArtifact> artifacts = new ArrayList<LockedArtifact>();
+        for (ResolvedArtifact resolvedArtifact : result.getResolvedArtifacts()) {
+            artifacts.add(LockedArtifact.of(resolvedArtifact));
+        }
+        entries.put(request.getSignature(), artifacts);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public static ResolutionLock read(File file) throws IOException {
+        ResolutionLock lock = new ResolutionLock();
+        InputStream input = new FileInputStream(file);
+        try {
+            Element root = XmlUtils.parseXml(input).getDocumentElement();
+            if (!VERSION.equals(root.getAttribute("version"))) {
+                throw new RuntimeException("Unsupported lockfile version [" + root.getAttribute("version") + "] in " + file);
+            }
+            for (Element entry : MetadataXml.children(root, ROOT)) {
+                List<LockedArtifact> artifacts = new ArrayList<LockedArtifact>();
+                for (Element artifact : MetadataXml.children(entry, ARTIFACT)) {
+                    artifacts.add(LockedArtifact.read(artifact));
+                }
+                lock.entries.put(entry.getAttribute("signature"), artifacts);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return lock;
+    }
+
+    public synchronized void write(File file) throws IOException {
+        Document doc;
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        Element root = XmlUtils.createElement(doc, doc, LOCK);
+        root.setAttribute("version", VERSION);
+        for (Map.Entry<String, List<LockedArtifact>> entry : entries.entrySet()) {
+            Element rootElement = XmlUtils.createElement(doc, root, ROOT);
+            rootElement.setAttribute("signature", entry.getKey());
+            for (LockedArtifact artifact : entry.getValue()) {
+                artifact.write(XmlUtils.createElement(doc, rootElement, ARTIFACT));
+            }
+        }
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        XmlUtils.writeXml(doc, file);
+    }
+
+    /**
+     * One artifact of a locked closure.
+     */
+    public static class LockedArtifact {
+        private final String groupId;
+        private final String artifactId;
+        private final String baseVersion;
+        private final String version;
+        private final String extension;
+        private final String classifier;
+        private final boolean root;
+        private final String sha256;
+        private final String sourceSha256;
+
+        public LockedArtifact(String groupId, String artifactId, String baseVersion, String version, String extension,
+                              String classifier, boolean root, String sha256, String sourceSha256) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.baseVersion = baseVersion;
+            this.version = version;
+            this.extension = extension;
+            this.classifier = classifier;
+            this.root = root;
+            this.sha256 = sha256;
+            this.sourceSha256 = sourceSha256;
+        }
+
+        static LockedArtifact of(ResolvedArtifact resolvedArtifact) {
+            Artifact artifact = resolvedArtifact.getArtifact();
+            Artifact source = resolvedArtifact.getSourceArtifact();
+            return new LockedArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion(),
+                    artifact.getVersion(), artifact.getExtension(), artifact.getClassifier(), resolvedArtifact.isRoot(),
+                    HashUtils.sha256(artifact.getFile()), source != null ? HashUtils.sha256(source.getFile()) : null);
+        }
+
+        static LockedArtifact read(Element element) {
+            return new LockedArtifact(element.getAttribute("groupId"), element.getAttribute("artifactId"),
+                    element.getAttribute("baseVersion"), element.getAttribute("version"), element.getAttribute("extension"),
+                    element.getAttribute("classifier"), Boolean.parseBoolean(element.getAttribute("root")),
+                    element.getAttribute("sha256"), StringUtils.trimToNull(element.getAttribute("sourceSha256")));
+        }
+
+        void write(Element element) {
+            element.setAttribute("groupId", groupId);
+            element.setAttribute("artifactId", artifactId);
+            element.setAttribute("baseVersion", baseVersion);
+            element.setAttribute("version", version);
+            element.setAttribute("extension", extension);
+            element.setAttribute("classifier", StringUtils.defaultString(classifier));
+            element.setAttribute("root", Boolean.toString(root));
+            element.setAttribute("sha256", sha256);
+            if (sourceSha256 != null) {
+                element.setAttribute("sourceSha256", sourceSha256);
+            }
+        }
+
+        /**
+         * @return the exact coordinates, snapshots are pinned to their timestamped version
+         */
+        public String getCoordinates() {
+            // <groupId>:<artifactId>:<extension>:<classifier>:<version>
+            return String.format("%s:%s:%s:%s:%s", groupId, artifactId, extension, StringUtils.defaultString(classifier), version);
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getBaseVersion() {
+            return baseVersion;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getClassifier() {
+            return classifier;
+        }
+
+        public boolean isRoot() {
+            return root;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getSourceSha256() {
+            return sourceSha256;
+        }
+
+        public boolean isSourceAvailable() {
+            return sourceSha256 != null;
+        }
+    }
+
+}
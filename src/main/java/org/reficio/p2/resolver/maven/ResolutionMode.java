@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+/**
+ * Specifies how the maven artifacts are resolved with respect to the resolution lockfile.
+ *
+ * @since 1.4.3
+ */
+public enum ResolutionMode {
+
+    /**
+     * Dependency graphs are always collected, the lockfile is neither read nor written.
+     */
+    RESOLVE,
+
+    /**
+     * Dependency graphs are collected and the resolved closures are written to the lockfile.
+     */
+    LOCK,
+
+    /**
+     * The closures recorded in the lockfile are resolved directly, without any graph collection.
+     */
+    LOCKED;
+
+    public static ResolutionMode fromString(String mode) {
+        for (ResolutionMode value : values()) {
+            if (value.name().equalsIgnoreCase(mode.trim())) {
+                return value;
+            }
+        }
+        throw new RuntimeException("p2-maven-plugin misconfiguration: unknown resolutionMode [" + mode + "], " +
+                "expected one of resolve, lock, locked");
+    }
+
+}
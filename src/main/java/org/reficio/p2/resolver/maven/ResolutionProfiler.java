@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the statistics of the artifact resolution: the requests, misses, failures, bytes and latencies of every
+ * remote repository (fed by the transfer and repository listeners of the aether session) and the resolution time of
+ * every root artifact. Prints a report ranked by the time spent in each repository and flags the repositories that
+ * answer most requests with not-found or are much slower than the others, so that the repository order and the
+ * mirrors can be fixed.
+ *
+ * @since 1.4.3
+ */
+public class ResolutionProfiler {
+
+    public enum Outcome {
+        SUCCEEDED, MISSING, FAILED
+    }
+
+    /**
+     * A repository answering at least this ratio of its requests with not-found is reported.
+     */
+    static final double MISS_RATIO_WARNING = 0.9;
+    /**
+     * A repository is reported as slow if its median latency is this many times the overall median.
+     */
+    static final double SLOW_FACTOR = 3.0;
+    static final long SLOW_MIN_MILLIS = 200;
+    static final int MIN_REQUESTS = 10;
+    static final int SLOWEST_ROOTS = 10;
+
+    private final ConcurrentMap<String, RepositoryStatistics> repositories = new ConcurrentHashMap<String, RepositoryStatistics>();
+    private final ConcurrentMap<String, String> repositoryIds = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, AtomicLong> roots = new ConcurrentHashMap<String, AtomicLong>();
+
+    public void registerRepository(String id, String url) {
+        if (id != null && url != null) {
+            repositoryIds.put(normalize(url), id);
+        }
+    }
+
+    /**
+     * Records a finished transfer.
+     *
+     * @param url       url of the repository
+     * @param startTime start of the transfer in milliseconds since the epoch, 0 if unknown
+     * @param bytes     transferred bytes
+     * @param outcome   outcome of the transfer
+     */
+    public void transfer(String url, long startTime, long bytes, Outcome outcome) {
+        long latency = startTime > 0 ? Math.max(0, System.currentTimeMillis() - startTime) : 0;
+        statistics(normalize(url)).record(latency, bytes, outcome);
+    }
+
+    public void rootResolved(String rootArtifactId, long nanos) {
+        AtomicLong total = roots.get(rootArtifactId);
+        if (total == null) {
+            AtomicLong created = new AtomicLong();
+            total = roots.putIfAbsent(rootArtifactId, created);
+            if (total == null) {
+                total = created;
+            }
+        }
+        total.addAndGet(nanos);
+    }
+
+    /**
+     * The repositories ranked by the total time spent in their requests, the slowest first.
+     */
+    public List<RepositoryStatistics> getRepositories() {
+        List<RepositoryStatistics> ranked = new ArrayList<RepositoryStatistics>(repositories.values());
+        Collections.sort(ranked, new Comparator<RepositoryStatistics>() {
+            @Override
+            public int compare(RepositoryStatistics first, RepositoryStatistics second) {
+                int byTime = Long.compare(second.getTotalMillis(), first.getTotalMillis());
+                return byTime != 0 ? byTime : first.getUrl().compareTo(second.getUrl());
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * The root artifacts ranked by their resolution time in milliseconds, the slowest first.
+     */
+    public List<Map.Entry<String, Long>> getRoots() {
+        List<Map.Entry<String, Long>> ranked = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, AtomicLong> root : roots.entrySet()) {
+            ranked.add(new AbstractMap.SimpleImmutableEntry<String, Long>(root.getKey(),
+                    TimeUnit.NANOSECONDS.toMillis(root.getValue().get())));
+        }
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> first, Map.Entry<String, Long> second) {
+                int byTime = second.getValue().compareTo(first.getValue());
+                return byTime != 0 ? byTime : first.getKey().compareTo(second.getKey());
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * The repositories answering (almost) every request with not-found and the repositories much slower than the rest.
+     */
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<String>();
+        List<RepositoryStatistics> ranked = getRepositories();
+        List<Long> allLatencies = new ArrayList<Long>();
+        for (RepositoryStatistics repository : ranked) {
+            allLatencies.addAll(repository.getLatencies());
+        }
+        long overallMedian = percentile(allLatencies, 50);
+        for (RepositoryStatistics repository : ranked) {
+            if (repository.getRequests() < MIN_REQUESTS) {
+                continue;
+            }
+            double missRatio = repository.getMisses() / (double) repository.getRequests();
+            if (missRatio >= MISS_RATIO_WARNING) {
+                warnings.add(String.format("Repository %s answered %.0f%% of %d requests with not found, " +
+                                "move it down the repository order or restrict its content",
+                        repository.getName(), missRatio * 100, repository.getRequests()));
+            }
+            long median = repository.percentile(50);
+            if (ranked.size() > 1 && median >= SLOW_MIN_MILLIS && median >= overallMedian * SLOW_FACTOR) {
+                warnings.add(String.format("Repository %s is slow, its median latency is %d ms " +
+                        "while the overall median is %d ms", repository.getName(), median, overallMedian));
+            }
+        }
+        return warnings;
+    }
+
+    public void report() {
+        List<RepositoryStatistics> ranked = getRepositories();
+        if (ranked.isEmpty() && roots.isEmpty()) {
+            return;
+        }
+        Logger.getLog().info("Resolution profile (repositories ranked by the total time of their requests):");
+        Logger.getLog().info(String.format("  %-40s %8s %8s %8s %12s %8s %8s %8s %8s %10s", "repository", "requests",
+                "misses", "failures", "bytes", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms"));
+        for (RepositoryStatistics repository : ranked) {
+            Logger.getLog().info(String.format("  %-40s %8d %8d %8d %12d %8d %8d %8d %8d %10d", repository.getName(),
+                    repository.getRequests(), repository.getMisses(), repository.getFailures(), repository.getBytes(),
+                    repository.percentile(50), repository.percentile(90), repository.percentile(99),
+                    repository.percentile(100), repository.getTotalMillis()));
+        }
+        List<Map.Entry<String, Long>> rankedRoots = getRoots();
+        if (!rankedRoots.isEmpty()) {
+            Logger.getLog().info("Slowest root artifacts:");
+            for (Map.Entry<String, Long> root : rankedRoots.subList(0, Math.min(SLOWEST_ROOTS, rankedRoots.size()))) {
+                Logger.getLog().info(String.format("  %-60s %10d ms", root.getKey(), root.getValue()));
+            }
+        }
+        for (String warning : getWarnings()) {
+            Logger.getLog().warn(warning);
+        }
+    }
+
+    public void writeJson(File file) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"repositories\": [");
+        String separator = "\n";
+        for (RepositoryStatistics repository : getRepositories()) {
+            json.append(separator).append("    {\"id\": ").append(quote(repository.getId()))
+                    .append(", \"url\": ").append(quote(repository.getUrl()))
+                    .append(", \"requests\": ").append(repository.getRequests())
+                    .append(", \"misses\": ").append(repository.getMisses())
+                    .append(", \"failures\": ").append(repository.getFailures())
+                    .append(", \"bytes\": ").append(repository.getBytes())
+                    .append(", \"totalMillis\": ").append(repository.getTotalMillis())
+                    .append(", \"latencyMillis\": {\"p50\": ").append(repository.percentile(50))
+                    .append(", \"p90\": ").append(repository.percentile(90))
+                    .append(", \"p99\": ").append(repository.percentile(99))
+                    .append(", \"max\": ").append(repository.percentile(100)).append("}}");
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"roots\": [");
+        separator = "\n";
+        for (Map.Entry<String, Long> root : getRoots()) {
+            json.append(separator).append("    {\"artifact\": ").append(quote(root.getKey()))
+                    .append(", \"millis\": ").append(root.getValue()).append("}");
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"warnings\": [");
+        separator = "\n";
+        for (String warning : getWarnings()) {
+            json.append(separator).append("    ").append(quote(warning));
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        FileUtils.writeStringToFile(file, json.toString(), "UTF-8");
+        Logger.getLog().info("Resolution profile written to " + file);
+    }
+
+    private RepositoryStatistics statistics(String url) {
+        RepositoryStatistics statistics = repositories.get(url);
+        if (statistics == null) {
+            RepositoryStatistics created = new RepositoryStatistics(url);
+            statistics = repositories.putIfAbsent(url, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
+
+    private static String normalize(String url) {
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * Nearest-rank percentile of the values, 0 if there are none.
+     */
+    static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    public class RepositoryStatistics {
+
+        private final String url;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+
+        RepositoryStatistics(String url) {
+            this.url = url;
+        }
+
+        void record(long latency, long transferred, Outcome outcome) {
+            requests.incrementAndGet();
+            if (outcome == Outcome.MISSING) {
+                misses.incrementAndGet();
+            } else if (outcome == Outcome.FAILED) {
+                failures.incrementAndGet();
+            }
+            bytes.addAndGet(transferred);
+            totalMillis.addAndGet(latency);
+            latencies.add(latency);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getId() {
+            return repositoryIds.get(url);
+        }
+
+        public String getName() {
+            String id = getId();
+            return id != null ? id + " (" + url + ")" : url;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getTotalMillis() {
+            return totalMillis.get();
+        }
+
+        public List<Long> getLatencies() {
+            synchronized (latencies) {
+                return new ArrayList<Long>(latencies);
+            }
+        }
+
+        public long percentile(int percentile) {
+            return ResolutionProfiler.percentile(getLatencies(), percentile);
+        }
+    }
+
+}
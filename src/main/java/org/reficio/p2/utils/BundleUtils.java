@@ -28,6 +28,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -48,6 +50,8 @@ public class BundleUtils extends BundlePlugin {
 
     private boolean reuseSnapshotVersionFromArtifact = true;
 
+    private final ConcurrentMap<String, String> cleanedVersions = new ConcurrentHashMap<String, String>();
+
     public boolean reportErrors(Analyzer analyzer) {
         return super.reportErrors("", analyzer);
     }
@@ -70,7 +74,16 @@ public class BundleUtils extends BundlePlugin {
     }
 
     public String cleanupVersion(String version) {
-        return super.getMaven2OsgiConverter().getVersion(version);
+        String cleanedVersion = cleanedVersions.get(version);
+        if (cleanedVersion == null) {
+            cleanedVersion = super.getMaven2OsgiConverter().getVersion(version);
+            cleanedVersions.put(version, cleanedVersion);
+        }
+        return cleanedVersion;
+    }
+
+    public void clearVersionCache() {
+        cleanedVersions.clear();
     }
 
     public boolean isBundle(File file) {
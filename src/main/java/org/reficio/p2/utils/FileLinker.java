@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Places unmodified files in the output without copying their bytes where the file system allows it.
+ * A hard link is tried first, then a copy-on-write reflink, and the content is transferred by the kernel
+ * as the last resort. File stores that don't support a method are remembered, so it's tried only once per store.
+ * <p>
+ * The placed files may share their content with the source, so they must never be modified in place.
+ *
+ * @since 1.4.3
+ */
+public class FileLinker {
+
+    public enum Strategy {
+        /**
+         * hard link, falls back to reflink and copy
+         */
+        LINK,
+        /**
+         * copy-on-write reflink, falls back to copy
+         */
+        REFLINK,
+        /**
+         * plain copy
+         */
+        COPY;
+
+        public static Strategy fromString(String strategy) {
+            for (Strategy value : values()) {
+                if (value.name().equalsIgnoreCase(strategy.trim())) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("p2-maven-plugin misconfiguration: unknown outputStrategy [" + strategy + "], " +
+                    "expected one of link, reflink, copy");
+        }
+    }
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private final Strategy strategy;
+    private final Set<FileStore> linkUnsupported = Collections.newSetFromMap(new ConcurrentHashMap<FileStore, Boolean>());
+    private final Set<FileStore> reflinkUnsupported = Collections.newSetFromMap(new ConcurrentHashMap<FileStore, Boolean>());
+
+    public FileLinker(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Places the content of the source at the target, replacing the target if it exists.
+     *
+     * @return the method that has been used
+     */
+    public Strategy place(File source, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        FileStore store = Files.getFileStore(source.toPath());
+        if (strategy == Strategy.LINK && !linkUnsupported.contains(store)) {
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+                return Strategy.LINK;
+            } catch (IOException e) {
+                unsupported(linkUnsupported, store, "Hard links", e.getMessage());
+            } catch (UnsupportedOperationException e) {
+                unsupported(linkUnsupported, store, "Hard links", e.getMessage());
+            }
+        }
+        if (strategy != Strategy.COPY && !reflinkUnsupported.contains(store)) {
+            if (reflink(source, target)) {
+                return Strategy.REFLINK;
+            }
+            unsupported(reflinkUnsupported, store, "Reflinks", null);
+        }
+        transfer(source, target);
+        return Strategy.COPY;
+    }
+
+    private void unsupported(Set<FileStore> unsupported, FileStore store, String method, String reason) {
+        if (unsupported.add(store)) {
+            Logger.getLog().debug(String.format("%s not supported for %s, falling back%s", method, store,
+                    reason != null ? ": " + reason : ""));
+        }
+    }
+
+    private static boolean reflink(File source, File target) {
+        if (WINDOWS) {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder("cp", "--reflink=always", source.getAbsolutePath(), target.getAbsolutePath())
+                    .redirectErrorStream(true)
+                    .start();
+            process.getOutputStream().close();
+            process.getInputStream().close();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            // no cp on the path
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // cp may leave an empty file behind
+        target.delete();
+        return false;
+    }
+
+    private static void transfer(File source, File target) throws IOException {
+        FileInputStream input = new FileInputStream(source);
+        try {
+            FileOutputStream output = new FileOutputStream(target);
+            try {
+                FileChannel in = input.getChannel();
+                FileChannel out = output.getChannel();
+                long size = in.size();
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+        target.setLastModified(source.lastModified());
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a set of files for changes by registering their parent folders.
+ * Tools usually write a file in several steps, so the events are collected until the folders are quiet
+ * for the given period and the changed files are reported in one batch.
+ *
+ * @since 1.4.3
+ */
+public class FileWatcher implements Closeable {
+
+    private final Set<Path> files;
+    private final long quietPeriodInMillis;
+    private final WatchService watchService;
+    private final Set<Path> folders = new HashSet<Path>();
+
+    public FileWatcher(Collection<Path> files, long quietPeriodInMillis) throws IOException {
+        this.files = new HashSet<Path>(files);
+        this.quietPeriodInMillis = quietPeriodInMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (Path file : this.files) {
+            Path folder = file.getParent();
+            if (folders.add(folder)) {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    public int getFolderCount() {
+        return folders.size();
+    }
+
+    /**
+     * Blocks until a file changes in one of the watched folders and the folders are quiet again.
+     *
+     * @return the changed watched files, empty if only the other files in the folders changed
+     */
+    public Set<Path> awaitChanges() throws InterruptedException {
+        Set<Path> changedFiles = new LinkedHashSet<Path>();
+        collectChanges(watchService.take(), changedFiles);
+        WatchKey key;
+        while ((key = watchService.poll(quietPeriodInMillis, TimeUnit.MILLISECONDS)) != null) {
+            collectChanges(key, changedFiles);
+        }
+        return changedFiles;
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changedFiles) {
+        changedFiles.addAll(changedFiles((Path) key.watchable(), key.pollEvents(), files));
+        key.reset();
+    }
+
+    static Set<Path> changedFiles(Path folder, List<WatchEvent<?>> events, Set<Path> files) {
+        Set<Path> changedFiles = new LinkedHashSet<Path>();
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path file = folder.resolve((Path) event.context());
+            if (files.contains(file)) {
+                changedFiles.add(file);
+            }
+        }
+        return changedFiles;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+}
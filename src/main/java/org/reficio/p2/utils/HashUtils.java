@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes file checksums streaming the content through a single buffer.
+ * All requested digests are updated from the same buffer, so every file is read only once.
+ * The files are not memory-mapped: a mapping is released only when the buffer is garbage collected,
+ * and until then the file cannot be deleted or replaced on Windows.
+ */
+public class HashUtils {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA_256 = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static String sha256(File file) {
+        return digest(file, SHA_256).get(SHA_256);
+    }
+
+    public static Map<String, String> digest(File file, String... algorithms) {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = newDigest(algorithms[i]);
+        }
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    for (MessageDigest digest : digests) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot compute checksum of " + file, e);
+        }
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int i = 0; i < algorithms.length; i++) {
+            result.put(algorithms[i], toHex(digests[i].digest()));
+        }
+        return result;
+    }
+
+    public static String sha256(String content) {
+        MessageDigest digest = newDigest(SHA_256);
+        try {
+            return toHex(digest.digest(content.getBytes("UTF-8")));
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -27,16 +27,28 @@ import edu.emory.mathcs.backport.java.util.Arrays;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.logging.Log;
+import org.reficio.p2.jfr.P2Event;
+import org.reficio.p2.jfr.P2Events;
+import org.reficio.p2.logger.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -54,6 +66,7 @@ import java.util.zip.ZipOutputStream;
 public class JarUtils {
 
     public static void adjustSnapshotOutputVersion(File inputFile, File outputFile, String version) {
+        P2Event event = P2Events.jarRewrite("adjustSnapshotVersion", outputFile);
         Jar jar = null;
         try {
             jar = new Jar(inputFile);
@@ -61,16 +74,19 @@ public class JarUtils {
             Attributes attributes = manifest.getMainAttributes();
             attributes.putValue(Analyzer.BUNDLE_VERSION, version);
             jar.write(outputFile);
+            event.bytes(outputFile.length()).success();
         } catch (Exception e) {
             throw new RuntimeException("Cannot open jar " + outputFile, e);
         } finally {
             if (jar != null) {
                 jar.close();
             }
+            event.commit();
         }
     }
 
     public static boolean attemptOSGiOverride(File inputFile, File outputFile, Map<String, String> osgiOverride) {
+        P2Event event = P2Events.jarRewrite("osgiOverride", outputFile);
         Jar jar = null;
         boolean result = false;
         try {
@@ -89,13 +105,16 @@ public class JarUtils {
             }
             if (result) {
                 jar.write(outputFile);
+                event.bytes(outputFile.length());
             }
+            event.outcome(result ? P2Events.OUTCOME_SUCCESS : P2Events.OUTCOME_UNCHANGED);
         } catch (Exception e) {
             throw new RuntimeException("Cannot open jar " + outputFile, e);
         } finally {
             if (jar != null) {
                 jar.close();
             }
+            event.commit();
         }
         
         return result;
@@ -112,6 +131,7 @@ public class JarUtils {
      *
      */
     public static void adjustFeatureXml(File inputFile, File outputFile, File pluginDir, Log log, String timestamp) {
+        P2Event event = P2Events.jarRewrite("adjustFeatureXml", outputFile);
         Jar jar = null;
         File newXml = null;
         try {
@@ -130,6 +150,7 @@ public class JarUtils {
             FileResource newRes = new FileResource(newXml);
             jar.putResource("feature.xml", newRes, true);
             jar.write(outputFile);
+            event.bytes(outputFile.length()).success();
         } catch (Exception e) {
             throw new RuntimeException("Cannot open jar " + outputFile, e);
         } finally {
@@ -139,6 +160,7 @@ public class JarUtils {
             if (newXml != null) {
             	newXml.delete();
             }
+            event.commit();
         }
     }
 
@@ -182,7 +204,7 @@ public class JarUtils {
 		        		File lastFile = files[files.length-1];
 		        		//String firstVersion = BundleUtils.INSTANCE.getBundleVersion(new Jar(firstFile));
 		        		String lastVersion = BundleUtils.INSTANCE.getBundleVersion(new Jar(lastFile)); //may throw IOException
-		        		log.info("Adjusting version for plugin "+pluginId+" to "+lastVersion);
+		        		Logger.getLog().detail("Adjusting version for plugin "+pluginId+" to "+lastVersion);
 		        		el.setAttribute("version", lastVersion);
 		        	}
 	        	}
@@ -199,6 +221,7 @@ public class JarUtils {
     }
     
     public static void removeSignature(File jar) {
+        P2Event event = P2Events.jarRewrite("removeSignature", jar);
         File unsignedJar = new File(jar.getParent(), jar.getName() + ".tmp");
         try {
             if (unsignedJar.exists()) {
@@ -232,6 +255,7 @@ public class JarUtils {
                 IOUtils.closeQuietly(zipOutputStream);
                 FileUtils.copyFile(unsignedJar, jar);
                 zip.close();
+                event.bytes(jar.length()).success();
             } finally {
                 IOUtils.closeQuietly(zipOutputStream);
             }
@@ -239,6 +263,7 @@ public class JarUtils {
             throw new RuntimeException(e);
         } finally {
             FileUtils.deleteQuietly(unsignedJar);
+            event.commit();
         }
     }
 
@@ -297,4 +322,137 @@ public class JarUtils {
 
 		}
 	}
+
+    /**
+     * Time of all the entries of the normalized jars, the same DOS date and time in every time zone
+     */
+    static final long REPRODUCIBLE_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final int MANIFEST_LINE_LENGTH = 72;
+
+    /**
+     * Rewrites the jar so that the same content always results in the same bytes: the manifest goes first,
+     * the other entries are sorted by name, all the entries get the same time and the manifest attributes
+     * are written in a stable order. Signed jars are left untouched as their manifest has to stay as signed.
+     *
+     * @return true if the jar has been rewritten
+     */
+    public static boolean normalizeJar(File jar) throws IOException {
+        if (containsSignature(jar)) {
+            return false;
+        }
+        P2Event event = P2Events.jarRewrite("normalize", jar);
+        try {
+            rewriteNormalized(jar);
+            event.bytes(jar.length()).success();
+        } finally {
+            event.commit();
+        }
+        return true;
+    }
+
+    private static void rewriteNormalized(File jar) throws IOException {
+        File normalized = new File(jar.getParentFile(), jar.getName() + ".normalized");
+        ZipFile zip = new ZipFile(jar);
+        try {
+            List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            for (Enumeration<? extends ZipEntry> list = zip.entries(); list.hasMoreElements(); ) {
+                entries.add(list.nextElement());
+            }
+            Collections.sort(entries, entryComparator);
+            ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(normalized)));
+            try {
+                for (ZipEntry entry : entries) {
+                    ZipEntry normalizedEntry = new ZipEntry(entry.getName());
+                    normalizedEntry.setTime(REPRODUCIBLE_TIME);
+                    output.putNextEntry(normalizedEntry);
+                    InputStream input = zip.getInputStream(entry);
+                    try {
+                        if (entry.getName().equalsIgnoreCase(MANIFEST)) {
+                            writeManifest(new Manifest(input), output);
+                        } else {
+                            IOUtils.copy(input, output);
+                        }
+                    } finally {
+                        input.close();
+                    }
+                    output.closeEntry();
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            zip.close();
+        }
+        // moved rather than copied, so a jar linked to its source is replaced and not modified
+        Files.move(normalized.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final Comparator<ZipEntry> entryComparator = new Comparator<ZipEntry>() {
+        @Override
+        public int compare(ZipEntry first, ZipEntry second) {
+            int rank = Integer.compare(rank(first.getName()), rank(second.getName()));
+            return rank != 0 ? rank : first.getName().compareTo(second.getName());
+        }
+
+        private int rank(String name) {
+            // readers expect the manifest within the first entries
+            if (name.equalsIgnoreCase("META-INF/")) {
+                return 0;
+            }
+            return name.equalsIgnoreCase(MANIFEST) ? 1 : 2;
+        }
+    };
+
+    /**
+     * Writes the manifest with Manifest-Version first and the other attributes and sections sorted by name.
+     */
+    static void writeManifest(Manifest manifest, OutputStream output) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Attributes main = manifest.getMainAttributes();
+        String version = main.getValue(Attributes.Name.MANIFEST_VERSION);
+        writeAttribute(content, Attributes.Name.MANIFEST_VERSION.toString(), version != null ? version : "1.0");
+        writeAttributes(content, main);
+        content.write('\r');
+        content.write('\n');
+        for (String name : new TreeSet<String>(manifest.getEntries().keySet())) {
+            writeAttribute(content, "Name", name);
+            writeAttributes(content, manifest.getAttributes(name));
+            content.write('\r');
+            content.write('\n');
+        }
+        content.writeTo(output);
+    }
+
+    private static void writeAttributes(OutputStream output, Attributes attributes) throws IOException {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Entry<Object, Object> attribute : attributes.entrySet()) {
+            sorted.put(attribute.getKey().toString(), String.valueOf(attribute.getValue()));
+        }
+        sorted.remove(Attributes.Name.MANIFEST_VERSION.toString());
+        for (Entry<String, String> attribute : sorted.entrySet()) {
+            writeAttribute(output, attribute.getKey(), attribute.getValue());
+        }
+    }
+
+    private static void writeAttribute(OutputStream output, String name, String value) throws IOException {
+        byte[] line = (name + ": " + value).getBytes("UTF-8");
+        int start = 0;
+        int limit = MANIFEST_LINE_LENGTH;
+        while (line.length - start > limit) {
+            int end = start + limit;
+            // continuation lines must not split a multi-byte character
+            while ((line[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            output.write(line, start, end - start);
+            output.write(new byte[]{'\r', '\n', ' '});
+            start = end;
+            limit = MANIFEST_LINE_LENGTH - 1;
+        }
+        output.write(line, start, line.length - start);
+        output.write('\r');
+        output.write('\n');
+    }
 }
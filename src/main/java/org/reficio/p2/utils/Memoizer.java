@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread-safe cache that computes the value of every key exactly once, even if it's requested by several threads
+ * at the same time. Failures are cached as well and rethrown to every caller.
+ *
+ * @since 1.4.3
+ */
+public class Memoizer<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> values = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    public V get(K key, Callable<V> computation) {
+        FutureTask<V> task = new FutureTask<V>(computation);
+        FutureTask<V> existing = values.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public void clear() {
+        values.clear();
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a build for the performance regression suite: the wall-clock time, the peak resident set size of the
+ * process, the peak heap use and the number of bytes written to the output. The measurements are written as a
+ * properties file that the suite compares against the checked-in baseline.
+ *
+ * @since 1.4.3
+ */
+public class PerformanceReport {
+
+    public static final String TIME = "time.millis";
+    public static final String PEAK_RSS = "peak.rss.bytes";
+    public static final String PEAK_HEAP = "peak.heap.bytes";
+    public static final String BYTES_WRITTEN = "bytes.written";
+
+    private static final File PROC_STATUS = new File("/proc/self/status");
+    private static final File PROC_CLEAR_REFS = new File("/proc/self/clear_refs");
+    private static final String PEAK_RSS_FIELD = "VmHWM:";
+    private static final String RESET_PEAK_RSS = "5";
+
+    private final long startNanos;
+
+    private PerformanceReport(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Resets the memory peaks recorded so far, so that they cover only the measured build, and starts the clock.
+     */
+    public static PerformanceReport start() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        resetPeakResidentSetSize();
+        return new PerformanceReport(System.nanoTime());
+    }
+
+    public Properties measure(File output) {
+        Properties measurements = new Properties();
+        measurements.setProperty(TIME, String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+        measurements.setProperty(PEAK_RSS, String.valueOf(peakResidentSetSize()));
+        measurements.setProperty(PEAK_HEAP, String.valueOf(peakHeapUsage()));
+        measurements.setProperty(BYTES_WRITTEN, String.valueOf(output.exists() ? FileUtils.sizeOfDirectory(output) : 0));
+        return measurements;
+    }
+
+    public void write(File report, File output) throws IOException {
+        Properties measurements = measure(output);
+        FileUtils.forceMkdir(report.getAbsoluteFile().getParentFile());
+        OutputStream out = new FileOutputStream(report);
+        try {
+            measurements.store(out, "p2-maven-plugin performance report");
+        } finally {
+            out.close();
+        }
+        Logger.getLog().info("Performance report written to " + report + ": " + measurements);
+    }
+
+    /**
+     * Peak resident set size of the process in bytes, -1 where the platform doesn't expose it.
+     */
+    static long peakResidentSetSize() {
+        if (!PROC_STATUS.canRead()) {
+            return -1;
+        }
+        try {
+            List<String> lines = Files.readAllLines(PROC_STATUS.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.startsWith(PEAK_RSS_FIELD)) {
+                    // e.g. "VmHWM:	  123456 kB"
+                    String[] value = line.substring(PEAK_RSS_FIELD.length()).trim().split("\\s+");
+                    return Long.parseLong(value[0]) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            Logger.getLog().debug("Cannot read the peak resident set size", e);
+        } catch (NumberFormatException e) {
+            Logger.getLog().debug("Cannot parse the peak resident set size", e);
+        }
+        return -1;
+    }
+
+    static long peakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getPeakUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                peak += usage.getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void resetPeakResidentSetSize() {
+        // supported since Linux 4.0, elsewhere the peak covers the whole process
+        if (!PROC_CLEAR_REFS.canWrite()) {
+            return;
+        }
+        try {
+            FileUtils.writeStringToFile(PROC_CLEAR_REFS, RESET_PEAK_RSS, "US-ASCII");
+        } catch (IOException e) {
+            Logger.getLog().debug("Cannot reset the peak resident set size", e);
+        }
+    }
+
+}
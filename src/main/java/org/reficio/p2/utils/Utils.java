@@ -18,6 +18,8 @@
  */
 package org.reficio.p2.utils;
 
+import org.apache.commons.lang.StringUtils;
+
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -36,7 +38,7 @@ public class Utils {
     public static String eclipseQualifierToTimeStamp(String version, String timestamp) {
         String tweakedVersion = version;
         if (version.contains(ECLIPSE_QUALIFIER_POSTFIX)) {
-            tweakedVersion = tweakedVersion.replace(ECLIPSE_QUALIFIER_POSTFIX, "." + timestamp );
+            tweakedVersion = StringUtils.replace(tweakedVersion, ECLIPSE_QUALIFIER_POSTFIX, "." + timestamp );
         }
         return tweakedVersion;
     }
@@ -44,9 +46,9 @@ public class Utils {
     public static String snapshotToTimestamp(String version, String timestamp) {
         String tweakedVersion = version;
         if (version.contains(JAR_SNAPSHOT_POSTFIX)) {
-            tweakedVersion = tweakedVersion.replace(JAR_SNAPSHOT_POSTFIX, "-" + timestamp);
+            tweakedVersion = StringUtils.replace(tweakedVersion, JAR_SNAPSHOT_POSTFIX, "-" + timestamp);
         } else if (version.contains(OSGI_SNAPSHOT_POSTFIX)) {
-            tweakedVersion = tweakedVersion.replace(OSGI_SNAPSHOT_POSTFIX, "." + timestamp);
+            tweakedVersion = StringUtils.replace(tweakedVersion, OSGI_SNAPSHOT_POSTFIX, "." + timestamp);
         }
         return tweakedVersion;
     }
@@ -54,7 +56,7 @@ public class Utils {
     public static String mavenToEclipse(String version, String timestamp) {
     	 String tweakedVersion = version;
          if (version.contains(JAR_SNAPSHOT_POSTFIX)) {
-             tweakedVersion = tweakedVersion.replace(JAR_SNAPSHOT_POSTFIX, "." + timestamp);
+             tweakedVersion = StringUtils.replace(tweakedVersion, JAR_SNAPSHOT_POSTFIX, "." + timestamp);
          }
          return tweakedVersion;
     }
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Normalizes the versions proposed for the bundles using hand-written scanners instead of regular expressions.
+ * The results are memoized, as the same versions are normalized several times per artifact; call {@link #clear()}
+ * at the beginning of every build. Also compares the OSGi versions of the units found in the p2 repositories.
+ *
+ * @since 1.4.3
+ */
+public final class VersionNormalizer {
+
+    private static final int SEGMENTS = 3;
+    private static final int SNAPSHOT_BUILD_NUMBER_LENGTH = 3;
+    private static final int SNAPSHOT_TIMESTAMP_MIN_LENGTH = 13;
+
+    private static final ConcurrentMap<String, String> NORMALIZED = new ConcurrentHashMap<String, String>();
+
+    private VersionNormalizer() {
+    }
+
+    public static void clear() {
+        NORMALIZED.clear();
+    }
+
+    /**
+     * Removes the leading zeros of the first three numeric segments, the trailing dots and pads the version
+     * to three numeric segments, e.g. "01.02.003-beta" becomes "1.2.3-beta" and "1.2." becomes "1.2.0".
+     * Versions that do not start with a number are returned without padding.
+     */
+    public static String normalize(String version) {
+        String normalized = NORMALIZED.get(version);
+        if (normalized == null) {
+            normalized = pad(stripTrailingDots(stripLeadingZeros(version)));
+            NORMALIZED.put(version, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * @return true if the version ends with a timestamp and a build number, e.g. "1.0.0-20140205.123456-001"
+     */
+    public static boolean isProperSnapshotVersion(String version) {
+        int length = version.length();
+        int separator = length - SNAPSHOT_BUILD_NUMBER_LENGTH - 1;
+        if (separator < SNAPSHOT_TIMESTAMP_MIN_LENGTH || version.charAt(separator) != '-') {
+            return false;
+        }
+        for (int i = separator + 1; i < length; i++) {
+            if (!isDigit(version.charAt(i))) {
+                return false;
+            }
+        }
+        for (int i = separator - SNAPSHOT_TIMESTAMP_MIN_LENGTH; i < separator; i++) {
+            char c = version.charAt(i);
+            if (!isDigit(c) && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares OSGi versions: the three numeric segments numerically, missing or non-numeric ones as 0,
+     * and then the qualifiers lexically, e.g. "1.10.0" is greater than "1.9.0.v2014".
+     */
+    public static int compare(String first, String second) {
+        String[] a = first.split("\\.", SEGMENTS + 1);
+        String[] b = second.split("\\.", SEGMENTS + 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            int result = Long.compare(segment(a, i), segment(b, i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return (a.length > SEGMENTS ? a[SEGMENTS] : "").compareTo(b.length > SEGMENTS ? b[SEGMENTS] : "");
+    }
+
+    private static long segment(String[] segments, int index) {
+        try {
+            return index < segments.length ? Long.parseLong(segments[index]) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String stripLeadingZeros(String version) {
+        int[] starts = new int[SEGMENTS];
+        int[] ends = new int[SEGMENTS];
+        if (scanSegments(version, starts, ends) < SEGMENTS) {
+            return version;
+        }
+        boolean zeros = false;
+        for (int i = 0; i < SEGMENTS; i++) {
+            zeros |= version.charAt(starts[i]) == '0' && ends[i] - starts[i] > 1;
+        }
+        if (!zeros) {
+            return version;
+        }
+        StringBuilder result = new StringBuilder(version.length());
+        for (int i = 0; i < SEGMENTS; i++) {
+            int start = starts[i];
+            // at least one digit is kept
+            while (start < ends[i] - 1 && version.charAt(start) == '0') {
+                start++;
+            }
+            if (i > 0) {
+                result.append('.');
+            }
+            result.append(version, start, ends[i]);
+        }
+        return result.append(version, ends[SEGMENTS - 1], version.length()).toString();
+    }
+
+    private static String stripTrailingDots(String version) {
+        int end = version.length();
+        while (end > 0 && version.charAt(end - 1) == '.') {
+            end--;
+        }
+        return end == version.length() ? version : version.substring(0, end);
+    }
+
+    private static String pad(String version) {
+        int[] starts = new int[SEGMENTS];
+        int[] ends = new int[SEGMENTS];
+        int segments = scanSegments(version, starts, ends);
+        if (segments == SEGMENTS) {
+            return version;
+        }
+        if (segments == 0 || ends[segments - 1] != version.length()) {
+            // cannot become a three segment version by appending zeros
+            return version;
+        }
+        StringBuilder result = new StringBuilder(version);
+        for (int i = segments; i < SEGMENTS; i++) {
+            result.append(".0");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Scans the leading numeric segments separated by dots.
+     *
+     * @return number of the complete segments found, at most three
+     */
+    private static int scanSegments(String version, int[] starts, int[] ends) {
+        int position = 0;
+        int length = version.length();
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            if (segment > 0) {
+                if (position >= length - 1 || version.charAt(position) != '.' || !isDigit(version.charAt(position + 1))) {
+                    return segment;
+                }
+                position++;
+            }
+            int start = position;
+            while (position < length && isDigit(version.charAt(position))) {
+                position++;
+            }
+            if (position == start) {
+                return segment;
+            }
+            starts[segment] = start;
+            ends[segment] = position;
+        }
+        return SEGMENTS;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -19,8 +19,11 @@
 package org.reficio.p2.resolver.maven.impl.facade
 
 import org.junit.Test
+import org.reficio.p2.resolver.maven.ResolutionProfiler
 
 import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
 
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
@@ -34,6 +37,8 @@ abstract class AbstractAetherFacadeTest {
 
     abstract String expectedPackage();
 
+    abstract def newRepositorySystemSession();
+
     void assertCorrectType(object) {
         assertEquals(expectedPackage(),
                 object.getClass().getPackage().getName().substring(0, expectedPackage().length()));
@@ -79,4 +84,17 @@ abstract class AbstractAetherFacadeTest {
         assertCorrectType(facade().newPatternExclusionsDependencyFilter([]))
     }
 
+    @Test
+    void newProfilingSession() {
+        def session = facade().newProfilingSession(newRepositorySystemSession(), new ResolutionProfiler())
+        assertCorrectType(session)
+        assertNotNull(session.transferListener)
+        assertNotNull(session.repositoryListener)
+    }
+
+    @Test
+    void remoteRepositoryId_notRemoteRepository() {
+        assertNull(facade().remoteRepositoryId(new File("local")))
+    }
+
 }
@@ -18,6 +18,8 @@
  */
 package org.reficio.p2.resolver.maven.impl.facade
 
+import org.eclipse.aether.DefaultRepositorySystemSession
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -34,4 +36,9 @@ class AetherEclipseFacadeTest extends AbstractAetherFacadeTest {
     String expectedPackage() {
         return "org.eclipse.aether."
     }
+
+    @Override
+    def newRepositorySystemSession() {
+        return new DefaultRepositorySystemSession()
+    }
 }
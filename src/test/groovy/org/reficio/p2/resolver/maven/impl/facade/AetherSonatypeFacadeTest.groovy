@@ -18,6 +18,8 @@
  */
 package org.reficio.p2.resolver.maven.impl.facade
 
+import org.sonatype.aether.util.DefaultRepositorySystemSession
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -34,4 +36,9 @@ class AetherSonatypeFacadeTest extends AbstractAetherFacadeTest {
     String expectedPackage() {
         return "org.sonatype.aether."
     }
+
+    @Override
+    def newRepositorySystemSession() {
+        return new DefaultRepositorySystemSession()
+    }
 }
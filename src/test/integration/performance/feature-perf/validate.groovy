@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+// verify target
+File target = new File(basedir, 'target/repository/plugins')
+assert target.exists()
+assert target.listFiles().size() > 20
+
+File features = new File(basedir, 'target/repository/features')
+assert features.listFiles().any { it.name.startsWith("perf.feature_1.0.0") }
+assert features.listFiles().any { it.name.startsWith("perf.feature.source_1.0.0") }
+
+// verify the measurements compared by the performance regression suite
+File report = new File(basedir, 'target/p2-perf.properties')
+assert report.exists()
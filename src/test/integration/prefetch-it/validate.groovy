@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+// nothing is bundled
+assert !new File(basedir, 'target/repository').exists()
+
+// the binaries and sources are in the local repository
+File repository = new File(localRepositoryPath.toString())
+assert new File(repository, 'org/mockito/mockito-core/1.9.0/mockito-core-1.9.0.jar').exists()
+assert new File(repository, 'org/mockito/mockito-core/1.9.0/mockito-core-1.9.0-sources.jar').exists()
+assert new File(repository, 'org/hamcrest/hamcrest-core/1.1/hamcrest-core-1.1.jar').exists()
+assert new File(repository, 'org/hamcrest/hamcrest-core/1.1/hamcrest-core-1.1-sources.jar').exists()
+assert new File(repository, 'org/objenesis/objenesis/1.0/objenesis-1.0.jar').exists()
+assert new File(repository, 'org/objenesis/objenesis/1.0/objenesis-1.0-sources.jar').exists()
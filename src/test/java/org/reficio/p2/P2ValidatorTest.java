@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class P2ValidatorTest {
+
+    @Test
+    public void validateConfiguration_validConfiguration() {
+        // GIVEN
+        List<P2Artifact> artifacts = Arrays.asList(artifact("commons-io:commons-io:2.4"),
+                artifact("org.mockito:mockito-core:jar:tests:3.0.0"), artifact("org.mockito:mockito-core:jar::3.0.0"));
+        P2FeatureDefinition definition = new P2FeatureDefinition();
+        definition.setId("org.reficio.feature");
+        definition.setVersion("1.0.0");
+        definition.setArtifacts(Arrays.asList(artifact("commons-io:commons-io:2.4")));
+
+        // WHEN
+        List<String> errors = P2Validator.validateConfiguration(artifacts, new ArrayList<P2Artifact>(),
+                Arrays.asList(definition), Arrays.asList(eclipseArtifact("org.junit:4.11.0")), new ArrayList<EclipseFeature>());
+
+        // THEN
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    @Test
+    public void validateConfiguration_allErrorsReported() {
+        // GIVEN
+        List<P2Artifact> artifacts = Arrays.asList(artifact("commons-io:commons-io"), artifact("commons-lang:commons-lang:2.6"),
+                artifact("commons-lang:commons-lang:2.6"), artifact(":commons-io:2.4"));
+        P2FeatureDefinition definition = new P2FeatureDefinition();
+        definition.setFeatureFile(new File("non-existing/feature.xml"));
+        EclipseFeature feature = new EclipseFeature();
+        feature.setId("org.eclipse.rcp");
+
+        // WHEN
+        List<String> errors = P2Validator.validateConfiguration(artifacts, new ArrayList<P2Artifact>(),
+                Arrays.asList(definition), Arrays.asList(eclipseArtifact("org.junit:4.11.0:extra")), Arrays.asList(feature));
+
+        // THEN
+        assertEquals(errors.toString(), 7, errors.size());
+        assertTrue(errors.get(0).contains("[commons-io:commons-io]"));
+        assertTrue(errors.get(1).contains("configured multiple times"));
+        assertTrue(errors.get(2).contains("[:commons-io:2.4]"));
+        assertTrue(errors.get(3).contains("id of a feature definition"));
+        assertTrue(errors.get(4).contains("does not exist"));
+        assertTrue(errors.get(5).contains("[org.junit:4.11.0:extra]"));
+        assertTrue(errors.get(6).contains("[org.eclipse.rcp]"));
+    }
+
+    @Test
+    public void requiresBundleCheck() {
+        // GIVEN
+        P2Artifact plain = artifact("commons-io:commons-io:2.4");
+        P2Artifact instructions = artifact("commons-io:commons-io:2.4");
+        instructions.setInstructions(Collections.singletonMap("Import-Package", "*"));
+        instructions.setKeepOSGi(false);
+        P2Artifact overridden = artifact("commons-io:commons-io:2.4");
+        overridden.setSingleton(true);
+        overridden.setOverride(true);
+
+        // THEN
+        assertFalse(P2Validator.requiresBundleCheck(plain));
+        assertTrue(P2Validator.requiresBundleCheck(instructions));
+        assertFalse(P2Validator.requiresBundleCheck(overridden));
+    }
+
+    @Test
+    public void requiresBundleCheck_globalInstructionsAppliedToArtifactWithOwnInstructions() {
+        // GIVEN
+        P2Artifact instructions = artifact("commons-io:commons-io:2.4");
+        instructions.setInstructions(Collections.singletonMap("Import-Package", "org.apache.*"));
+        instructions.setKeepOSGi(false);
+        P2Artifact singleton = artifact("commons-lang:commons-lang:2.6");
+        singleton.setSingleton(true);
+        Map<String, String> globalInstructions = new LinkedHashMap<String, String>();
+        globalInstructions.put("Import-Package", "*;resolution:=optional");
+        globalInstructions.put("-noee", "true");
+        assertTrue(P2Validator.requiresBundleCheck(instructions));
+        assertTrue(P2Validator.requiresBundleCheck(singleton));
+
+        // WHEN
+        instructions.applyGlobalInstructions(globalInstructions, true);
+        singleton.applyGlobalInstructions(globalInstructions, true);
+
+        // THEN
+        assertFalse(P2Validator.requiresBundleCheck(instructions));
+        assertFalse(P2Validator.requiresBundleCheck(singleton));
+        assertTrue(instructions.shouldOverrideManifest());
+        assertEquals("org.apache.*,*;resolution:=optional", instructions.getCombinedInstructions().get("Import-Package"));
+        assertEquals("true", instructions.getCombinedInstructions().get("-noee"));
+        assertEquals(globalInstructions, singleton.getCombinedInstructions());
+        assertTrue(singleton.shouldOverrideManifest());
+        assertTrue(singleton.shouldKeepOSGiManifest());
+    }
+
+    @Test
+    public void validateConfiguration_dependencyPatterns() {
+        // GIVEN
+        List<P2Artifact> artifacts = Arrays.asList(artifact("commons-io:commons-io"), artifact("org.apache"));
+
+        // WHEN
+        List<String> withoutDependencies = P2Validator.validateConfiguration(artifacts, new ArrayList<P2Artifact>(),
+                new ArrayList<P2FeatureDefinition>(), new ArrayList<EclipseArtifact>(), new ArrayList<EclipseFeature>());
+        List<String> withDependencies = P2Validator.validateConfiguration(artifacts, new ArrayList<P2Artifact>(),
+                new ArrayList<P2FeatureDefinition>(), new ArrayList<EclipseArtifact>(), new ArrayList<EclipseFeature>(), true);
+        artifacts.get(0).setId("commons-io:commons-io:jar:2.4");
+        List<String> unmatched = P2Validator.validateDependencyPatterns(artifacts);
+
+        // THEN
+        assertEquals(withoutDependencies.toString(), 2, withoutDependencies.size());
+        assertTrue(withDependencies.toString(), withDependencies.isEmpty());
+        assertEquals(1, unmatched.size());
+        assertTrue(unmatched.get(0).contains("[org.apache]"));
+    }
+
+    private static P2Artifact artifact(String id) {
+        P2Artifact artifact = new P2Artifact();
+        artifact.setId(id);
+        return artifact;
+    }
+
+    private static EclipseArtifact eclipseArtifact(String id) {
+        EclipseArtifact artifact = new EclipseArtifact();
+        artifact.setId(id);
+        return artifact;
+    }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.utils.HashUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RemoteBundleCacheTest {
+
+    private static final String KEY = HashUtils.sha256("bundle");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BundleCacheServer server;
+
+    @Before
+    public void setup() throws Exception {
+        Logger.initialize(new SystemStreamLog());
+        server = BundleCacheServer.start(folder.newFolder("server"), 0);
+    }
+
+    @After
+    public void cleanup() {
+        server.stop();
+    }
+
+    @Test
+    public void putAndGet_roundTrip() throws Exception {
+        // given
+        File bundle = folder.newFile("bundle.jar");
+        FileUtils.writeStringToFile(bundle, "bundle content", "UTF-8");
+        File downloaded = new File(folder.getRoot(), "downloaded.jar");
+        RemoteBundleCache cache = new RemoteBundleCache(server.getUrl(), BundleCacheMode.READWRITE);
+
+        // when
+        boolean missed = cache.get(KEY, downloaded);
+        cache.put(KEY, bundle);
+        boolean hit = cache.get(KEY, downloaded);
+
+        // then
+        assertFalse(missed);
+        assertTrue(hit);
+        assertEquals("bundle content", FileUtils.readFileToString(downloaded, "UTF-8"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getStores());
+    }
+
+    @Test
+    public void put_readMode_doesNotStore() throws Exception {
+        // given
+        File bundle = folder.newFile("bundle.jar");
+        FileUtils.writeStringToFile(bundle, "bundle content", "UTF-8");
+        RemoteBundleCache readOnly = new RemoteBundleCache(server.getUrl(), BundleCacheMode.READ);
+
+        // when
+        readOnly.put(KEY, bundle);
+
+        // then
+        assertFalse(readOnly.get(KEY, new File(folder.getRoot(), "downloaded.jar")));
+        assertEquals(0, readOnly.getStores());
+    }
+
+    @Test
+    public void start_bindsLoopbackByDefault() {
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+    }
+
+    @Test
+    public void put_checksumMismatch_isRefused() throws Exception {
+        // given
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl() + KEY).openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setRequestProperty(RemoteBundleCache.CHECKSUM_HEADER, HashUtils.sha256("other content"));
+
+        // when
+        OutputStream output = connection.getOutputStream();
+        output.write("bundle content".getBytes("UTF-8"));
+        output.close();
+        int status = connection.getResponseCode();
+
+        // then
+        assertEquals(400, status);
+        assertFalse(new RemoteBundleCache(server.getUrl(), BundleCacheMode.READ).get(KEY, new File(folder.getRoot(), "downloaded.jar")));
+    }
+
+    @Test
+    public void get_checksumMismatch_isRejected() throws Exception {
+        // given
+        HttpServer corrupted = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        corrupted.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] content = "corrupted content".getBytes("UTF-8");
+                exchange.getResponseHeaders().set(RemoteBundleCache.CHECKSUM_HEADER, HashUtils.sha256("bundle content"));
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+                exchange.close();
+            }
+        });
+        corrupted.start();
+        File downloaded = new File(folder.getRoot(), "downloaded.jar");
+        try {
+            RemoteBundleCache cache = new RemoteBundleCache("http://localhost:" + corrupted.getAddress().getPort() + "/",
+                    BundleCacheMode.READ);
+
+            // when
+            boolean hit = cache.get(KEY, downloaded);
+
+            // then
+            assertFalse(hit);
+            assertFalse(downloaded.exists());
+            assertFalse(new File(folder.getRoot(), "downloaded.jar.download").exists());
+        } finally {
+            corrupted.stop(0);
+        }
+    }
+
+    @Test
+    public void get_unreachableServer_isMiss() throws Exception {
+        // given
+        int port = server.getPort();
+        server.stop();
+        RemoteBundleCache cache = new RemoteBundleCache("http://localhost:" + port + "/", BundleCacheMode.READWRITE);
+
+        // when
+        boolean hit = cache.get(KEY, new File(folder.getRoot(), "downloaded.jar"));
+
+        // then
+        assertFalse(hit);
+    }
+
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.impl;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.bundler.ArtifactBundlerInstructions;
+import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class AquteBundlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File destination;
+
+    @Before
+    public void setup() throws Exception {
+        Logger.initialize(new SystemStreamLog());
+        destination = folder.newFolder("destination");
+    }
+
+    @Test
+    public void execute_identicalInputUnderOtherCoordinates_reusesAnalysisWithPatchedNames() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+        AquteBundler bundler = AquteBundler.builder().registry(registry).build();
+        File original = jar(folder.newFolder("org.reficio"));
+        File relocated = jar(folder.newFolder("com.reficio"));
+        File originalBundle = new File(folder.getRoot(), "out/org.reficio.lib_1.0.0.jar");
+        File relocatedBundle = new File(folder.getRoot(), "out/com.reficio.lib_1.0.0.jar");
+
+        // when
+        bundle(bundler, original, originalBundle, "org.reficio.lib", "Reficio Lib");
+        bundle(bundler, relocated, relocatedBundle, "com.reficio.lib", "Relocated Lib");
+
+        // then
+        Attributes originalAttributes = manifest(originalBundle);
+        Attributes relocatedAttributes = manifest(relocatedBundle);
+        assertEquals("org.reficio.lib", originalAttributes.getValue("Bundle-SymbolicName"));
+        assertEquals("com.reficio.lib", relocatedAttributes.getValue("Bundle-SymbolicName"));
+        assertEquals("Reficio Lib", originalAttributes.getValue("Bundle-Name"));
+        assertEquals("Relocated Lib", relocatedAttributes.getValue("Bundle-Name"));
+        // apart from the names the reused manifest is the one of the analyzed bundle
+        for (String header : new String[]{"Bundle-Version", "Export-Package", "Import-Package", AquteHelper.TOOL_KEY}) {
+            assertEquals(originalAttributes.getValue(header), relocatedAttributes.getValue(header));
+        }
+        assertEquals(1, registry.reportDuplicates());
+    }
+
+    @Test
+    public void execute_reuseKeepsBundleNameFromInstructions() throws Exception {
+        // given
+        AquteBundler bundler = AquteBundler.builder().registry(new BundleContentRegistry()).build();
+        File relocatedBundle = new File(folder.getRoot(), "out/com.reficio.lib_1.0.0.jar");
+        Map<String, String> instructions = new HashMap<String, String>();
+        instructions.put("Bundle-Name", "Configured Name");
+        bundle(bundler, jar(folder.newFolder("org.reficio")), new File(folder.getRoot(), "out/org.reficio.lib_1.0.0.jar"),
+                "org.reficio.lib", "Reficio Lib", new HashMap<String, String>(instructions));
+
+        // when
+        bundle(bundler, jar(folder.newFolder("com.reficio")), relocatedBundle, "com.reficio.lib", "Relocated Lib",
+                new HashMap<String, String>(instructions));
+
+        // then
+        assertEquals("com.reficio.lib", manifest(relocatedBundle).getValue("Bundle-SymbolicName"));
+        assertEquals("Configured Name", manifest(relocatedBundle).getValue("Bundle-Name"));
+    }
+
+    @Test
+    public void execute_deduplicate_skipsIdenticalBundle() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+        AquteBundler bundler = AquteBundler.builder().registry(registry).deduplicate(true).build();
+        File first = new File(folder.getRoot(), "out/first/org.reficio.lib_1.0.0.jar");
+        File second = new File(folder.getRoot(), "out/second/org.reficio.lib_1.0.0.jar");
+
+        // when
+        bundle(bundler, jar(folder.newFolder("org.reficio")), first, "org.reficio.lib", "Reficio Lib");
+        bundle(bundler, jar(folder.newFolder("com.reficio")), second, "org.reficio.lib", "Reficio Lib");
+
+        // then
+        assertTrue(first.isFile());
+        assertFalse(second.exists());
+        assertEquals(1, registry.reportDuplicates());
+    }
+
+    @Test
+    public void execute_deduplicate_wrapsSourcesOfSkippedBundle() throws Exception {
+        // given
+        AquteBundler bundler = AquteBundler.builder().registry(new BundleContentRegistry()).deduplicate(true).build();
+        File sourceBundle = new File(folder.getRoot(), "out/second/org.reficio.lib.source_1.0.0.jar");
+        bundle(bundler, jar(folder.newFolder("org.reficio")), new File(folder.getRoot(), "out/first/org.reficio.lib_1.0.0.jar"),
+                "org.reficio.lib", "Reficio Lib");
+
+        // when
+        ArtifactBundlerRequest request = new ArtifactBundlerRequest(jar(folder.newFolder("com.reficio")),
+                new File(folder.getRoot(), "out/second/org.reficio.lib_1.0.0.jar"), jar(folder.newFolder("sources")),
+                sourceBundle, true, true, false);
+        bundler.execute(request, instructions("org.reficio.lib", "Reficio Lib", new HashMap<String, String>()),
+                destination.getAbsolutePath(), Collections.<String, String>emptyMap());
+
+        // then
+        assertFalse(request.getBinaryOutputFile().exists());
+        assertEquals("org.reficio.lib.source", manifest(sourceBundle).getValue("Bundle-SymbolicName"));
+    }
+
+    @Test
+    public void execute_deduplicate_emitsSameContentUnderOtherName() throws Exception {
+        // given
+        AquteBundler bundler = AquteBundler.builder().registry(new BundleContentRegistry()).deduplicate(true).build();
+        File relocatedBundle = new File(folder.getRoot(), "out/com.reficio.lib_1.0.0.jar");
+
+        // when
+        bundle(bundler, jar(folder.newFolder("org.reficio")), new File(folder.getRoot(), "out/org.reficio.lib_1.0.0.jar"),
+                "org.reficio.lib", "Reficio Lib");
+        bundle(bundler, jar(folder.newFolder("com.reficio")), relocatedBundle, "com.reficio.lib", "Relocated Lib");
+
+        // then
+        assertEquals("com.reficio.lib", manifest(relocatedBundle).getValue("Bundle-SymbolicName"));
+    }
+
+    private void bundle(AquteBundler bundler, File input, File output, String symbolicName, String name) {
+        bundle(bundler, input, output, symbolicName, name, new HashMap<String, String>());
+    }
+
+    private void bundle(AquteBundler bundler, File input, File output, String symbolicName, String name,
+                        Map<String, String> instructions) {
+        ArtifactBundlerRequest request = new ArtifactBundlerRequest(input, output, null, null, true, false, false);
+        bundler.execute(request, instructions(symbolicName, name, instructions), destination.getAbsolutePath(),
+                Collections.<String, String>emptyMap());
+    }
+
+    private static ArtifactBundlerInstructions instructions(String symbolicName, String name, Map<String, String> instructions) {
+        return ArtifactBundlerInstructions.builder()
+                .name(name)
+                .symbolicName(symbolicName)
+                .symbolicNameWithOptions(symbolicName)
+                .sourceName(name + " Source")
+                .sourceSymbolicName(symbolicName + ".source")
+                .version("1.0.0")
+                .proposedVersion("1.0.0")
+                .instructions(instructions)
+                .snapshot(false)
+                .build();
+    }
+
+    /**
+     * Plain jar, not a bundle, always with the same content.
+     */
+    private static File jar(File folder) throws Exception {
+        File jar = new File(folder, "lib-1.0.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            JarEntry entry = new JarEntry("org/reficio/lib/messages.properties");
+            entry.setTime(0);
+            output.putNextEntry(entry);
+            output.write("greeting=hello\n".getBytes("UTF-8"));
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static Attributes manifest(File bundle) throws Exception {
+        JarFile jar = new JarFile(bundle);
+        try {
+            return jar.getManifest().getMainAttributes();
+        } finally {
+            jar.close();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler.impl;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.bundler.impl.BundleContentRegistry.BundledContent;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class BundleContentRegistryTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void reportDuplicates_identicalInputsOfTheSameName() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+
+        // when
+        registry.recordInput(HASH, new File(folder.newFolder("org.reficio"), "lib-1.0.jar"));
+        registry.recordInput(HASH, new File(folder.newFolder("com.reficio"), "lib-1.0.jar"));
+
+        // then
+        assertEquals(1, registry.reportDuplicates());
+    }
+
+    @Test
+    public void reportDuplicates_sameFileRecordedTwiceIsNotDuplicate() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+        File input = folder.newFile("lib-1.0.jar");
+
+        // when
+        registry.recordInput(HASH, input);
+        registry.recordInput(HASH, input);
+
+        // then
+        assertEquals(0, registry.reportDuplicates());
+    }
+
+    @Test
+    public void findBundle_matchesSymbolicNameAndVersion() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+        registry.register(HASH, new BundledContent(folder.newFile("a.jar"), "org.reficio.a", "1.0.0", null));
+
+        // then
+        assertNotNull(registry.findBundle(HASH, "org.reficio.a", "1.0.0"));
+        assertNull(registry.findBundle(HASH, "org.reficio.a", "2.0.0"));
+        assertNull(registry.findBundle(HASH, "org.reficio.b", "1.0.0"));
+    }
+
+    @Test
+    public void findAnalysis_onlyAnalyzedBundlesThatStillExist() throws Exception {
+        // given
+        BundleContentRegistry registry = new BundleContentRegistry();
+        File copied = folder.newFile("copied.jar");
+        File analyzed = folder.newFile("analyzed.jar");
+        File removed = new File(folder.getRoot(), "removed.jar");
+        registry.register(HASH, new BundledContent(copied, "org.reficio.a", "1.0.0", null));
+        registry.register(HASH, new BundledContent(removed, "org.reficio.b", "1.0.0", "other"));
+        registry.register(HASH, new BundledContent(analyzed, "org.reficio.c", "1.0.0", "key"));
+
+        // then
+        assertSame(analyzed, registry.findAnalysis(HASH, "key").getOutputFile());
+        assertNull(registry.findAnalysis(HASH, "other"));
+    }
+
+}
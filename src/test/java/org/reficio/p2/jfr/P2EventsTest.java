@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class P2EventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void create_noRecording_disabledEventReturned() {
+        // when
+        P2Event event = P2Events.resolve("org.reficio:a:1.0.0");
+
+        // then
+        assertSame(P2Events.DISABLED, event);
+    }
+
+    @Test
+    public void disabled_allCallsIgnored() {
+        // when
+        P2Event event = P2Events.DISABLED.bytes(10).outcome(P2Events.OUTCOME_REUSED).success();
+        event.commit();
+
+        // then
+        assertSame(P2Events.DISABLED, event);
+    }
+
+    @Test
+    public void startRecording_writesBuildEvents() throws Exception {
+        assumeTrue(P2Events.isAvailable());
+
+        // given
+        File destination = new File(folder.getRoot(), "p2.jfr");
+        Closeable recording = P2Events.startRecording(destination);
+
+        // when
+        P2Event resolve = P2Events.resolve("org.reficio:a:1.0.0");
+        resolve.bytes(10).success();
+        resolve.commit();
+        P2Event rewrite = P2Events.jarRewrite("normalize", new File("b.jar"));
+        rewrite.commit();
+        recording.close();
+
+        // then
+        assertNotSame(P2Events.DISABLED, resolve);
+        Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(destination.toPath())) {
+            if (event.getEventType().getName().startsWith("org.reficio.p2.")) {
+                events.put(event.getEventType().getName(), event);
+            }
+        }
+        assertEquals(2, events.size());
+        RecordedEvent resolved = events.get("org.reficio.p2.Resolve");
+        assertEquals("org.reficio:a:1.0.0", resolved.getString("artifact"));
+        assertEquals(10, resolved.getLong("bytes"));
+        assertEquals(P2Events.OUTCOME_SUCCESS, resolved.getString("outcome"));
+        RecordedEvent rewritten = events.get("org.reficio.p2.JarRewrite");
+        assertEquals("b.jar", rewritten.getString("artifact"));
+        assertEquals("normalize", rewritten.getString("operation"));
+        assertEquals(P2Events.OUTCOME_FAILURE, rewritten.getString("outcome"));
+    }
+
+    @Test
+    public void startRecording_eventsDisabledAfterRecordingClosed() throws Exception {
+        assumeTrue(P2Events.isAvailable());
+
+        // given
+        Closeable recording = P2Events.startRecording(new File(folder.getRoot(), "p2.jfr"));
+        recording.close();
+
+        // when
+        P2Event event = P2Events.publish("mirror", "repository");
+
+        // then
+        assertSame(P2Events.DISABLED, event);
+    }
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class AsyncLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void reset() {
+        Logger.shutdown();
+        Logger.initialize(null);
+    }
+
+    @Test
+    public void shutdown_forwardsAllMessagesInOrder() throws Exception {
+        // given
+        Log delegate = mock(Log.class);
+        Logger.initialize(delegate, true, null);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            Logger.getLog().info("message " + i);
+        }
+        Logger.getLog().warn("warning");
+        Logger.shutdown();
+
+        // then
+        InOrder inOrder = inOrder(delegate);
+        for (int i = 0; i < 100; i++) {
+            inOrder.verify(delegate).info("message " + i);
+        }
+        inOrder.verify(delegate).warn("warning");
+    }
+
+    @Test
+    public void detail_rateLimitedOnConsoleAndFullyWrittenToFile() throws Exception {
+        // given
+        Log delegate = mock(Log.class);
+        File logFile = new File(folder.getRoot(), "p2.log");
+        Logger.initialize(delegate, true, logFile);
+
+        // when
+        LogPhase phase = Logger.phase("Bundling");
+        for (int i = 0; i < 1000; i++) {
+            Logger.getLog().detail("artifact " + i);
+        }
+        phase.end();
+        Logger.shutdown();
+
+        // then
+        assertEquals(1000, phase.getCount());
+        assertTrue(phase.getSuppressed() > 0);
+        verify(delegate, times(1000 - phase.getSuppressed())).info(startsWith("artifact "));
+        String content = FileUtils.readFileToString(logFile);
+        assertTrue(content.contains("[INFO] artifact 0\n"));
+        assertTrue(content.contains("[INFO] artifact 999\n"));
+    }
+
+    @Test
+    public void detail_synchronousModeLogsEverything() {
+        // given
+        Log delegate = mock(Log.class);
+        Logger.initialize(delegate);
+
+        // when
+        LogPhase phase = Logger.phase("Bundling");
+        for (int i = 0; i < 100; i++) {
+            Logger.getLog().detail("artifact " + i);
+        }
+        phase.end();
+
+        // then
+        verify(delegate, times(100)).info(startsWith("artifact "));
+        assertEquals(0, phase.getSuppressed());
+    }
+
+    @Test
+    public void log_slowConsole_messagesDroppedInsteadOfBlocking() throws Exception {
+        // given
+        final CountDownLatch console = new CountDownLatch(1);
+        Log delegate = mock(Log.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                console.await();
+                return null;
+            }
+        }).when(delegate).info(any(CharSequence.class));
+        Logger.initialize(delegate, true, null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // when
+        Future<?> logging = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10000; i++) {
+                    Logger.getLog().info("message " + i);
+                }
+            }
+        });
+        logging.get(10, TimeUnit.SECONDS);
+        console.countDown();
+        Logger.shutdown();
+        executor.shutdown();
+
+        // then
+        verify(delegate).warn(endsWith("log messages dropped, the log buffer was full"));
+        verify(delegate, atLeastOnce()).info("message 0");
+        verify(delegate, never()).info("message 9999");
+    }
+
+    @Test
+    public void log_fullBuffer_errorsForwardedDirectly() throws Exception {
+        // given
+        final CountDownLatch console = new CountDownLatch(1);
+        Log delegate = mock(Log.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                console.await();
+                return null;
+            }
+        }).when(delegate).info(any(CharSequence.class));
+        Logger.initialize(delegate, true, null);
+        for (int i = 0; i < 10000; i++) {
+            Logger.getLog().info("message " + i);
+        }
+
+        // when
+        Logger.getLog().warn("warning");
+        Logger.getLog().error("failure");
+
+        // then the console still blocks the drainer
+        verify(delegate).warn("warning");
+        verify(delegate).error("failure");
+        console.countDown();
+    }
+
+    @Test
+    public void shutdown_concurrentLogging_noMessageLost() throws Exception {
+        // given
+        Log delegate = mock(Log.class);
+        Logger.initialize(delegate, true, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int thread = 0; thread < 4; thread++) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        Logger.getLog().info("message " + i);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // when
+        start.countDown();
+        Logger.shutdown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        // then
+        verify(delegate, times(4000)).info(startsWith("message "));
+    }
+
+    @Test
+    public void detail_phaseAppliesOnlyToThreadsStartedDuringThePhase() throws Exception {
+        // given
+        Logger.initialize(mock(Log.class), true, null);
+        ExecutorService before = Executors.newSingleThreadExecutor();
+        before.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        Runnable detail = new Runnable() {
+            @Override
+            public void run() {
+                Logger.getLog().detail("artifact");
+            }
+        };
+
+        // when
+        LogPhase phase = Logger.phase("Bundling");
+        ExecutorService during = Executors.newSingleThreadExecutor();
+        Logger.getLog().detail("artifact");
+        during.submit(detail).get();
+        before.submit(detail).get();
+        phase.end();
+        during.submit(detail).get();
+        before.shutdown();
+        during.shutdown();
+
+        // then
+        assertEquals(2, phase.getCount());
+    }
+
+}
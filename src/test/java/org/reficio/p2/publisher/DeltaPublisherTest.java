@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.CompositeRepository;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class DeltaPublisherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_publishesOnlyNewUnitsToNewLayer() throws Exception {
+        // given
+        File baseline = folder.newFolder("layered");
+        File site = site("first", "org.reficio.a", "org.reficio.b");
+        delta(site, baseline, "20140101", 10);
+
+        // when
+        int published = delta(site("second", "org.reficio.a", "org.reficio.b", "org.reficio.c"), baseline, "20150101", 10);
+
+        // then
+        assertEquals(1, published);
+        assertEquals("[org.reficio.c]", unitIds(new File(baseline, "20150101")));
+        assertTrue(new File(baseline, "20150101/plugins/org.reficio.c_1.0.0.jar").isFile());
+        assertFalse(new File(baseline, "20150101/plugins/org.reficio.a_1.0.0.jar").exists());
+        String composite = FileUtils.readFileToString(RepositoryFiles.xml(baseline, CompositeRepository.COMPOSITE_CONTENT), "UTF-8");
+        assertTrue(composite.contains("<child location='20140101'/>"));
+        assertTrue(composite.contains("<child location='20150101'/>"));
+        assertTrue(RepositoryFiles.xml(baseline, CompositeRepository.COMPOSITE_ARTIFACTS).isFile());
+    }
+
+    @Test
+    public void execute_nothingChanged() throws Exception {
+        // given
+        File baseline = folder.newFolder("layered");
+        File site = site("first", "org.reficio.a");
+        delta(site, baseline, "20140101", 10);
+
+        // when
+        int published = delta(site, baseline, "20150101", 10);
+
+        // then
+        assertEquals(0, published);
+        assertFalse(new File(baseline, "20150101").exists());
+    }
+
+    @Test
+    public void execute_compactsLayersAboveLimit() throws Exception {
+        // given
+        File baseline = folder.newFolder("layered");
+        delta(site("first", "org.reficio.a"), baseline, "20140101", 2);
+        delta(site("second", "org.reficio.a", "org.reficio.b"), baseline, "20150101", 2);
+
+        // when
+        delta(site("third", "org.reficio.c"), baseline, "20160101", 2);
+
+        // then
+        File compacted = new File(baseline, "20160101-compacted");
+        assertEquals("[org.reficio.c, org.reficio.b, org.reficio.a]", unitIds(compacted));
+        assertTrue(new File(compacted, "plugins/org.reficio.a_1.0.0.jar").isFile());
+        assertFalse(new File(baseline, "20140101").exists());
+        assertFalse(new File(baseline, "20160101").exists());
+        String composite = FileUtils.readFileToString(RepositoryFiles.xml(baseline, CompositeRepository.COMPOSITE_CONTENT), "UTF-8");
+        assertTrue(composite.contains("<children size='1'>"));
+    }
+
+    private int delta(File site, File baseline, String layerName, int maxLayers) throws Exception {
+        return DeltaPublisher.builder()
+                .repository(site)
+                .baseline(baseline)
+                .layerName(layerName)
+                .maxLayers(maxLayers)
+                .build()
+                .execute();
+    }
+
+    private File site(String name, String... bundles) throws Exception {
+        File site = folder.newFolder(name);
+        StringBuilder content = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+                "  <units size='" + bundles.length + "'>\n");
+        StringBuilder artifacts = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+                "  <artifacts size='" + bundles.length + "'>\n");
+        for (String bundle : bundles) {
+            content.append("    <unit id='").append(bundle).append("' version='1.0.0'/>\n");
+            artifacts.append("    <artifact classifier='osgi.bundle' id='").append(bundle).append("' version='1.0.0'/>\n");
+            FileUtils.writeStringToFile(new File(site, "plugins/" + bundle + "_1.0.0.jar"), bundle, "UTF-8");
+        }
+        content.append("  </units>\n</repository>\n");
+        artifacts.append("  </artifacts>\n</repository>\n");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.CONTENT), content.toString(), "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.ARTIFACTS), artifacts.toString(), "UTF-8");
+        return site;
+    }
+
+    private static String unitIds(File layer) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (org.w3c.dom.Element unit : MetadataXml.units(RepositoryFiles.readMetadata(layer, RepositoryFiles.CONTENT))) {
+            ids.add(unit.getAttribute("id"));
+        }
+        return ids.toString();
+    }
+
+}
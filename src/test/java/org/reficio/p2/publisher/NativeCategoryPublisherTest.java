@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class NativeCategoryPublisherTest {
+
+    private static final String CONTENT = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<?metadataRepository version='1.1.0'?>\n" +
+            "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+            "  <units size='4'>\n" +
+            bundle("org.reficio.a", "1.0.0") +
+            bundle("org.reficio.b", "2.0.0.20140101") +
+            "    <unit id='org.reficio.feature.feature.group' version='1.0.0.20140101'/>\n" +
+            "    <unit id='org.reficio.feature.feature.group' version='1.0.0.20150101'/>\n" +
+            "  </units>\n" +
+            "</repository>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_publishesCategoriesOfFeaturesAndQueries() throws Exception {
+        // given
+        File repository = repository();
+        File category = category("<site>\n" +
+                "  <feature id='org.reficio.feature' version='1.0.0.qualifier'><category name='features'/></feature>\n" +
+                "  <iu><category name='bundles'/><query>\n" +
+                "    <expression type='match'>providedCapabilities.exists(p | p.namespace == 'osgi.bundle' &amp;&amp; p.name == $0)</expression>\n" +
+                "    <param>org.reficio.b</param>\n" +
+                "  </query></iu>\n" +
+                "  <category-def name='features' label='Features'><description>All features</description></category-def>\n" +
+                "  <category-def name='bundles' label='Bundles'><category name='features'/></category-def>\n" +
+                "  <category-def name='empty' label='Empty'/>\n" +
+                "</site>");
+
+        // when
+        int published = publisher(category, repository).execute();
+
+        // then
+        assertEquals(2, published);
+        Document content = RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT);
+        Element features = categoryUnit(content, "Features");
+        assertEquals("All features", MetadataXml.getProperty(features, NativeCategoryPublisher.DESCRIPTION_PROPERTY));
+        assertEquals("1.0.0.20991231", features.getAttribute("version"));
+        List<String> requirements = requirements(features);
+        assertTrue(requirements.contains("org.reficio.feature.feature.group [1.0.0.20150101,1.0.0.20150101]"));
+        assertEquals(2, requirements.size());
+        assertEquals(1, requirements(categoryUnit(content, "Bundles")).size());
+        assertTrue(requirements(categoryUnit(content, "Bundles")).get(0).startsWith("org.reficio.b "));
+        assertEquals("6", MetadataXml.child(content.getDocumentElement(), "units").getAttribute("size"));
+    }
+
+    @Test
+    public void execute_defaultCategoryMatchesAllBundles() throws Exception {
+        // given
+        File repository = repository();
+        File category = category("<site>\n" +
+                "  <category-def name='all' label='Maven osgi-bundles'/>\n" +
+                "  <iu><category name='all'/><query>\n" +
+                "    <expression type='match'>providedCapabilities.exists(p | p.namespace == 'osgi.bundle')</expression>\n" +
+                "  </query></iu>\n" +
+                "</site>");
+
+        // when
+        publisher(category, repository).execute();
+        publisher(category, repository).execute();
+
+        // then
+        Document content = RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT);
+        assertEquals(2, requirements(categoryUnit(content, "Maven osgi-bundles")).size());
+        assertEquals("5", MetadataXml.child(content.getDocumentElement(), "units").getAttribute("size"));
+    }
+
+    @Test(expected = UnsupportedCategoryException.class)
+    public void execute_unsupportedQuery() throws Exception {
+        // given
+        File repository = repository();
+        File category = category("<site>\n" +
+                "  <iu><category name='all'/><query>\n" +
+                "    <expression type='match'>requirements.exists(r | r.name == 'org.reficio.a')</expression>\n" +
+                "  </query></iu>\n" +
+                "</site>");
+
+        // when
+        publisher(category, repository).execute();
+    }
+
+    private static String bundle(String id, String version) {
+        return "    <unit id='" + id + "' version='" + version + "'>\n" +
+                "      <provides size='1'>\n" +
+                "        <provided namespace='osgi.bundle' name='" + id + "' version='" + version + "'/>\n" +
+                "      </provides>\n" +
+                "    </unit>\n";
+    }
+
+    private File repository() throws Exception {
+        File repository = folder.newFolder("repository");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT), CONTENT, "UTF-8");
+        return repository;
+    }
+
+    private File category(String xml) throws Exception {
+        File category = folder.newFile("category.xml");
+        FileUtils.writeStringToFile(category, xml, "UTF-8");
+        return category;
+    }
+
+    private static NativeCategoryPublisher publisher(File category, File repository) {
+        return NativeCategoryPublisher.builder()
+                .categoryFileLocation(category.getPath())
+                .metadataRepositoryLocation(repository.getPath())
+                .versionQualifier("20991231")
+                .build();
+    }
+
+    private static Element categoryUnit(Document content, String label) {
+        for (Element unit : MetadataXml.units(content)) {
+            if ("true".equals(MetadataXml.getProperty(unit, NativeCategoryPublisher.CATEGORY_PROPERTY))
+                    && label.equals(MetadataXml.getProperty(unit, NativeCategoryPublisher.NAME_PROPERTY))) {
+                return unit;
+            }
+        }
+        throw new AssertionError("No category " + label);
+    }
+
+    private static List<String> requirements(Element unit) {
+        List<String> result = new ArrayList<String>();
+        for (Element required : MetadataXml.children(MetadataXml.child(unit, "requires"), "required")) {
+            result.add(required.getAttribute("name") + " " + required.getAttribute("range"));
+        }
+        return result;
+    }
+
+}
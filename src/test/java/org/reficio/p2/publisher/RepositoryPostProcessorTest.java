@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.reficio.p2.utils.HashUtils;
+import org.tukaani.xz.XZInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.jar.JarInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RepositoryPostProcessorTest {
+
+    private static final String BUNDLE = "bundle content";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_addsMissingChecksums() throws Exception {
+        // given
+        File repository = site();
+
+        // when
+        RepositoryPostProcessor.builder().repository(repository).threads(2).build().execute();
+
+        // then
+        List<Element> artifacts = MetadataXml.artifacts(RepositoryFiles.readMetadata(repository, RepositoryFiles.ARTIFACTS));
+        Element computed = artifacts.get(0);
+        assertEquals(hex("SHA-256", BUNDLE), MetadataXml.getProperty(computed, RepositoryPostProcessor.CHECKSUM_SHA_256));
+        assertEquals(hex("MD5", BUNDLE), MetadataXml.getProperty(computed, RepositoryPostProcessor.CHECKSUM_MD5));
+        assertEquals(hex("MD5", BUNDLE), MetadataXml.getProperty(computed, RepositoryPostProcessor.DOWNLOAD_MD5));
+        assertEquals(String.valueOf(BUNDLE.length()), MetadataXml.getProperty(computed, RepositoryPostProcessor.DOWNLOAD_SIZE));
+        assertEquals(String.valueOf(BUNDLE.length()), MetadataXml.getProperty(computed, RepositoryPostProcessor.ARTIFACT_SIZE));
+        Element existing = artifacts.get(1);
+        assertEquals("existing", MetadataXml.getProperty(existing, RepositoryPostProcessor.CHECKSUM_SHA_256));
+        assertNull(MetadataXml.getProperty(existing, RepositoryPostProcessor.CHECKSUM_MD5));
+        assertTrue(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT).isFile());
+        assertFalse(RepositoryFiles.jar(repository, RepositoryFiles.CONTENT).exists());
+    }
+
+    @Test
+    public void execute_compress_keepsOnlyJars() throws Exception {
+        // given
+        File repository = site();
+
+        // when
+        RepositoryPostProcessor.builder().repository(repository).compress(true).build().execute();
+
+        // then
+        for (String name : new String[]{RepositoryFiles.CONTENT, RepositoryFiles.ARTIFACTS}) {
+            assertFalse(RepositoryFiles.xml(repository, name).exists());
+            JarInputStream jar = new JarInputStream(new FileInputStream(RepositoryFiles.jar(repository, name)));
+            try {
+                assertEquals(name + ".xml", jar.getNextJarEntry().getName());
+                assertNull(jar.getNextJarEntry());
+            } finally {
+                jar.close();
+            }
+            Document document = RepositoryFiles.readMetadata(repository, name);
+            assertEquals("true", MetadataXml.getProperty(document.getDocumentElement(), RepositoryPostProcessor.COMPRESSED));
+        }
+    }
+
+    @Test
+    public void execute_xz_writesXzMetadataAndIndex() throws Exception {
+        // given
+        File repository = site();
+
+        // when
+        RepositoryPostProcessor.builder().repository(repository).xz(true).build().execute();
+
+        // then
+        for (String name : new String[]{RepositoryFiles.CONTENT, RepositoryFiles.ARTIFACTS}) {
+            String xml = FileUtils.readFileToString(RepositoryFiles.xml(repository, name), "UTF-8");
+            InputStream xz = new XZInputStream(new FileInputStream(RepositoryFiles.xz(repository, name)));
+            try {
+                assertEquals(xml, IOUtils.toString(xz, "UTF-8"));
+            } finally {
+                xz.close();
+            }
+        }
+        String index = FileUtils.readFileToString(new File(repository, RepositoryFiles.P2_INDEX), "UTF-8");
+        assertTrue(index.contains("metadata.repository.factory.order=content.xml.xz,content.xml,!"));
+        assertTrue(index.contains("artifact.repository.factory.order=artifacts.xml.xz,artifacts.xml,!"));
+    }
+
+    @Test
+    public void execute_withoutXz_removesStaleXzMetadata() throws Exception {
+        // given
+        File repository = site();
+        RepositoryPostProcessor.builder().repository(repository).xz(true).build().execute();
+
+        // when
+        RepositoryPostProcessor.builder().repository(repository).build().execute();
+
+        // then
+        assertFalse(RepositoryFiles.xz(repository, RepositoryFiles.CONTENT).exists());
+        assertFalse(RepositoryFiles.xz(repository, RepositoryFiles.ARTIFACTS).exists());
+    }
+
+    private File site() throws Exception {
+        File site = folder.newFolder("site");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.CONTENT), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+                "  <units size='0'/>\n" +
+                "</repository>\n", "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.ARTIFACTS), "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+                "  <artifacts size='2'>\n" +
+                "    <artifact classifier='osgi.bundle' id='org.reficio.a' version='1.0.0'/>\n" +
+                "    <artifact classifier='osgi.bundle' id='org.reficio.b' version='1.0.0'>\n" +
+                "      <properties size='1'>\n" +
+                "        <property name='download.checksum.sha-256' value='existing'/>\n" +
+                "      </properties>\n" +
+                "    </artifact>\n" +
+                "  </artifacts>\n" +
+                "</repository>\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(site, "plugins/org.reficio.a_1.0.0.jar"), BUNDLE, "UTF-8");
+        FileUtils.writeStringToFile(new File(site, "plugins/org.reficio.b_1.0.0.jar"), BUNDLE, "UTF-8");
+        return site;
+    }
+
+    private static String hex(String algorithm, String content) throws Exception {
+        return HashUtils.toHex(MessageDigest.getInstance(algorithm).digest(content.getBytes("UTF-8")));
+    }
+
+}
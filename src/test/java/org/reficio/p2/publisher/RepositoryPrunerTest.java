@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RepositoryPrunerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_keepsNewestVersions() throws Exception {
+        // given
+        File repository = site("org.reficio.a_1.0.0.20140101000000", "org.reficio.a_1.0.0.20150101000000",
+                "org.reficio.a_1.0.0.20160101000000", "org.reficio.b_2.0.0");
+
+        // when
+        int pruned = RepositoryPruner.builder().repository(repository).keepVersions(2).build().execute();
+
+        // then
+        assertEquals(1, pruned);
+        assertEquals("[org.reficio.a_1.0.0.20150101000000, org.reficio.a_1.0.0.20160101000000, org.reficio.b_2.0.0]",
+                units(repository));
+        assertEquals("3", MetadataXml.child(RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT)
+                .getDocumentElement(), "units").getAttribute(MetadataXml.SIZE));
+        assertEquals(3, MetadataXml.artifacts(RepositoryFiles.readMetadata(repository, RepositoryFiles.ARTIFACTS)).size());
+        assertFalse(new File(repository, "plugins/org.reficio.a_1.0.0.20140101000000.jar").exists());
+        assertTrue(new File(repository, "plugins/org.reficio.a_1.0.0.20150101000000.jar").isFile());
+    }
+
+    @Test
+    public void execute_keepsVersionsNewerThanDate() throws Exception {
+        // given
+        File repository = site("org.reficio.a_1.0.0.20140101000000", "org.reficio.a_1.0.0.20150101000000",
+                "org.reficio.a_1.0.0.20160101000000");
+        long date = new SimpleDateFormat("yyyy-MM-dd").parse("2015-01-01").getTime();
+
+        // when
+        RepositoryPruner.builder().repository(repository).keepNewerThan(date).build().execute();
+
+        // then
+        assertEquals("[org.reficio.a_1.0.0.20150101000000, org.reficio.a_1.0.0.20160101000000]", units(repository));
+    }
+
+    @Test
+    public void execute_keepsBundlesOfRetainedFeature() throws Exception {
+        // given
+        File repository = site("org.reficio.a_1.0.0.20140101000000", "org.reficio.a_1.0.0.20150101000000",
+                "org.reficio.feature.group_1.0.0>org.reficio.a_1.0.0.20140101000000");
+
+        // when
+        int pruned = RepositoryPruner.builder().repository(repository).keepVersions(1).build().execute();
+
+        // then
+        assertEquals(0, pruned);
+        assertTrue(new File(repository, "plugins/org.reficio.a_1.0.0.20140101000000.jar").isFile());
+    }
+
+    @Test
+    public void execute_takesBuildTimeOfFeatureGroupFromFeatureJar() throws Exception {
+        // given
+        File repository = site("org.reficio.feature.group_1.0.0>org.reficio.feature.jar_1.0.0", "org.reficio.feature.jar_1.0.0",
+                "org.reficio.feature.group_2.0.0>org.reficio.feature.jar_2.0.0", "org.reficio.feature.jar_2.0.0");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        assertTrue(new File(repository, "features/org.reficio_1.0.0.jar").setLastModified(format.parse("2014-01-01").getTime()));
+        assertTrue(new File(repository, "features/org.reficio_2.0.0.jar").setLastModified(format.parse("2016-01-01").getTime()));
+
+        // when
+        int pruned = RepositoryPruner.builder().repository(repository).keepNewerThan(format.parse("2015-01-01").getTime())
+                .build().execute();
+
+        // then
+        assertEquals(2, pruned);
+        assertEquals("[org.reficio.feature.group_2.0.0, org.reficio.feature.jar_2.0.0]", units(repository));
+        assertFalse(new File(repository, "features/org.reficio_1.0.0.jar").exists());
+    }
+
+    @Test
+    public void execute_dryRun() throws Exception {
+        // given
+        File repository = site("org.reficio.a_1.0.0.20140101000000", "org.reficio.a_1.0.0.20150101000000");
+
+        // when
+        int pruned = RepositoryPruner.builder().repository(repository).keepVersions(1).dryRun(true).build().execute();
+
+        // then
+        assertEquals(1, pruned);
+        assertEquals("[org.reficio.a_1.0.0.20140101000000, org.reficio.a_1.0.0.20150101000000]", units(repository));
+        assertTrue(new File(repository, "plugins/org.reficio.a_1.0.0.20140101000000.jar").isFile());
+    }
+
+    /**
+     * @param units id_version of the units, optionally followed by &gt; and the id_version the unit requires;
+     *              the feature groups have no artifact and the feature jars are published under features
+     */
+    private File site(String... units) throws Exception {
+        File site = folder.newFolder("site");
+        StringBuilder content = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+                "  <units size='" + units.length + "'>\n");
+        StringBuilder artifacts = new StringBuilder();
+        int artifactCount = 0;
+        for (String unit : units) {
+            String[] requirement = unit.split(">");
+            String[] coordinates = requirement[0].split("_");
+            content.append("    <unit id='").append(coordinates[0]).append("' version='").append(coordinates[1]).append("'>\n");
+            if (requirement.length > 1) {
+                String[] required = requirement[1].split("_");
+                content.append("      <requires size='1'>\n")
+                        .append("        <required namespace='org.eclipse.equinox.p2.iu' name='").append(required[0])
+                        .append("' range='[").append(required[1]).append(",").append(required[1]).append("]'/>\n")
+                        .append("      </requires>\n");
+            }
+            content.append("    </unit>\n");
+            if (coordinates[0].endsWith(".feature.group")) {
+                continue;
+            }
+            boolean feature = coordinates[0].endsWith(".feature.jar");
+            String id = feature ? coordinates[0].substring(0, coordinates[0].length() - ".feature.jar".length()) : coordinates[0];
+            artifacts.append("    <artifact classifier='").append(feature ? MetadataXml.FEATURE_CLASSIFIER : MetadataXml.BUNDLE_CLASSIFIER)
+                    .append("' id='").append(id).append("' version='").append(coordinates[1]).append("'/>\n");
+            FileUtils.writeStringToFile(new File(site, (feature ? "features/" : "plugins/") + id + "_" + coordinates[1] + ".jar"),
+                    unit, "UTF-8");
+            artifactCount++;
+        }
+        content.append("  </units>\n</repository>\n");
+        artifacts.insert(0, "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+                "  <artifacts size='" + artifactCount + "'>\n");
+        artifacts.append("  </artifacts>\n</repository>\n");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.CONTENT), content.toString(), "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.ARTIFACTS), artifacts.toString(), "UTF-8");
+        return site;
+    }
+
+    private static String units(File repository) throws Exception {
+        Document content = RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT);
+        List<String> units = new ArrayList<String>();
+        for (Element unit : MetadataXml.units(content)) {
+            units.add(unit.getAttribute("id") + "_" + unit.getAttribute("version"));
+        }
+        return units.toString();
+    }
+
+}
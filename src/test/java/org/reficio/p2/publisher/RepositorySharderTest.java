@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.CompositeRepository;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RepositorySharderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_partitionsUnitsAndArtifactsIntoShards() throws Exception {
+        // given
+        File site = site("org.apache.a", "org.apache.b", "com.acme.c", "category");
+        Map<String, String> unitShards = new HashMap<String, String>();
+        unitShards.put("org.apache.a_1.0.0", "org.apache");
+        unitShards.put("org.apache.b", "org.apache");
+        unitShards.put("com.acme.c_1.0.0", "com acme");
+
+        // when
+        int shards = RepositorySharder.builder().repository(site).unitShards(unitShards).threads(2).build().execute();
+
+        // then
+        assertEquals(3, shards);
+        assertEquals("[org.apache.a, org.apache.b]", unitIds(new File(site, "org.apache")));
+        assertEquals("[com.acme.c]", unitIds(new File(site, "com_acme")));
+        assertEquals("[category]", unitIds(new File(site, RepositorySharder.DEFAULT_SHARD)));
+        assertTrue(new File(site, "org.apache/plugins/org.apache.a_1.0.0.jar").isFile());
+        assertTrue(new File(site, "com_acme/plugins/com.acme.c_1.0.0.jar").isFile());
+        assertFalse(new File(site, "plugins/org.apache.a_1.0.0.jar").exists());
+        assertFalse(RepositoryFiles.xml(site, RepositoryFiles.CONTENT).exists());
+        assertEquals("[com_acme, default, org.apache]", CompositeRepository.readChildren(site).toString());
+    }
+
+    @Test
+    public void execute_compressedShards() throws Exception {
+        // given
+        File site = site("org.apache.a");
+
+        // when
+        RepositorySharder.builder().repository(site).compress(true).build().execute();
+
+        // then
+        File shard = new File(site, RepositorySharder.DEFAULT_SHARD);
+        assertTrue(RepositoryFiles.jar(shard, RepositoryFiles.CONTENT).isFile());
+        assertFalse(RepositoryFiles.xml(shard, RepositoryFiles.CONTENT).exists());
+        assertEquals("[org.apache.a]", unitIds(shard));
+    }
+
+    private File site(String... bundles) throws Exception {
+        File site = folder.newFolder("site");
+        StringBuilder content = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+                "  <units size='" + bundles.length + "'>\n");
+        StringBuilder artifacts = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+                "  <artifacts size='" + bundles.length + "'>\n");
+        for (String bundle : bundles) {
+            content.append("    <unit id='").append(bundle).append("' version='1.0.0'/>\n");
+            artifacts.append("    <artifact classifier='osgi.bundle' id='").append(bundle).append("' version='1.0.0'/>\n");
+            FileUtils.writeStringToFile(new File(site, "plugins/" + bundle + "_1.0.0.jar"), bundle, "UTF-8");
+        }
+        content.append("  </units>\n</repository>\n");
+        artifacts.append("  </artifacts>\n</repository>\n");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.CONTENT), content.toString(), "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.ARTIFACTS), artifacts.toString(), "UTF-8");
+        return site;
+    }
+
+    private static String unitIds(File repository) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (org.w3c.dom.Element unit : MetadataXml.units(RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT))) {
+            ids.add(unit.getAttribute("id"));
+        }
+        return ids.toString();
+    }
+
+}
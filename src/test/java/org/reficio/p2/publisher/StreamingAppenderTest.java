@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.repository.MetadataXml;
+import org.reficio.p2.repository.RepositoryFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class StreamingAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void execute_appendsNewUnitsAndArtifacts() throws Exception {
+        // given
+        File repository = site("repository", "org.reficio.a", "org.reficio.b");
+        File staging = site("staging", "org.reficio.c");
+
+        // when
+        int appended = StreamingAppender.builder().repository(repository).staging(staging).build().execute();
+
+        // then
+        assertEquals(1, appended);
+        Document content = RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT);
+        assertEquals("[org.reficio.a, org.reficio.b, org.reficio.c]", unitIds(content));
+        assertEquals("3", MetadataXml.child(content.getDocumentElement(), "units").getAttribute(MetadataXml.SIZE));
+        Document artifacts = RepositoryFiles.readMetadata(repository, RepositoryFiles.ARTIFACTS);
+        assertEquals(3, MetadataXml.artifacts(artifacts).size());
+        assertEquals("3", MetadataXml.child(artifacts.getDocumentElement(), "artifacts").getAttribute(MetadataXml.SIZE));
+        assertTrue(new File(repository, "plugins/org.reficio.c_1.0.0.jar").isFile());
+        assertEquals("child", MetadataXml.child(MetadataXml.units(content).get(2), "touchpoint").getAttribute("id"));
+    }
+
+    @Test
+    public void execute_replacesUnitsWithSameVersion() throws Exception {
+        // given
+        File repository = site("repository", "org.reficio.a", "org.reficio.b");
+        File staging = site("staging", "org.reficio.a");
+
+        // when
+        StreamingAppender.builder().repository(repository).staging(staging).build().execute();
+
+        // then
+        Document content = RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT);
+        assertEquals("[org.reficio.b, org.reficio.a]", unitIds(content));
+        assertEquals("2", MetadataXml.child(content.getDocumentElement(), "units").getAttribute(MetadataXml.SIZE));
+        assertEquals(2, MetadataXml.artifacts(RepositoryFiles.readMetadata(repository, RepositoryFiles.ARTIFACTS)).size());
+    }
+
+    @Test
+    public void execute_keepsCompressedVariant() throws Exception {
+        // given
+        File repository = site("repository", "org.reficio.a");
+        for (String name : new String[]{RepositoryFiles.CONTENT, RepositoryFiles.ARTIFACTS}) {
+            RepositoryFiles.writeJar(RepositoryFiles.xml(repository, name), RepositoryFiles.jar(repository, name));
+            FileUtils.forceDelete(RepositoryFiles.xml(repository, name));
+        }
+        File staging = site("staging", "org.reficio.b");
+
+        // when
+        StreamingAppender.builder().repository(repository).staging(staging).build().execute();
+
+        // then
+        assertFalse(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT).exists());
+        assertEquals("[org.reficio.a, org.reficio.b]",
+                unitIds(RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT)));
+    }
+
+    private File site(String name, String... bundles) throws Exception {
+        File site = folder.newFolder(name);
+        StringBuilder content = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<?metadataRepository version='1.1.0'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+                "  <properties size='1'>\n" +
+                "    <property name='p2.timestamp' value='1'/>\n" +
+                "  </properties>\n" +
+                "  <units size='" + bundles.length + "'>\n");
+        StringBuilder artifacts = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+                "  <artifacts size='" + bundles.length + "'>\n");
+        for (String bundle : bundles) {
+            content.append("    <unit id='").append(bundle).append("' version='1.0.0'>\n")
+                    .append("      <touchpoint id='child' version='1.0.0'/>\n")
+                    .append("    </unit>\n");
+            artifacts.append("    <artifact classifier='osgi.bundle' id='").append(bundle).append("' version='1.0.0'/>\n");
+            FileUtils.writeStringToFile(new File(site, "plugins/" + bundle + "_1.0.0.jar"), bundle, "UTF-8");
+        }
+        content.append("  </units>\n</repository>\n");
+        artifacts.append("  </artifacts>\n</repository>\n");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.CONTENT), content.toString(), "UTF-8");
+        FileUtils.writeStringToFile(RepositoryFiles.xml(site, RepositoryFiles.ARTIFACTS), artifacts.toString(), "UTF-8");
+        return site;
+    }
+
+    private static String unitIds(Document content) {
+        List<String> ids = new ArrayList<String>();
+        for (Element unit : MetadataXml.units(content)) {
+            ids.add(unit.getAttribute("id"));
+        }
+        return ids.toString();
+    }
+
+}
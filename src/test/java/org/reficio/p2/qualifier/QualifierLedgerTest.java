@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.qualifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class QualifierLedgerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void qualifier_reusedForUnchangedContent() throws Exception {
+        // given
+        File site = folder.getRoot();
+        QualifierLedger first = QualifierLedger.load(site.getPath());
+        assertEquals("20140101000000", first.qualifier("org.reficio/a//1.0.0-SNAPSHOT", "aaa", "20140101000000"));
+        assertEquals("20140101000000", first.qualifier("org.reficio/b//1.0.0-SNAPSHOT", "bbb", "20140101000000"));
+        first.write(site);
+
+        // when
+        QualifierLedger second = QualifierLedger.load(site.getPath());
+        String unchanged = second.qualifier("org.reficio/a//1.0.0-SNAPSHOT", "aaa", "20150101000000");
+        String changed = second.qualifier("org.reficio/b//1.0.0-SNAPSHOT", "ccc", "20150101000000");
+
+        // then
+        assertEquals("20140101000000", unchanged);
+        assertEquals("20150101000000", changed);
+        assertEquals(1, second.getReused());
+    }
+
+    @Test
+    public void write_keepsEntriesNotPublishedAgain() throws Exception {
+        // given
+        File site = folder.getRoot();
+        QualifierLedger first = QualifierLedger.empty();
+        first.qualifier("feature/org.reficio.feature/1.0.0.qualifier", "aaa", "20140101000000");
+        first.write(site);
+
+        // when
+        QualifierLedger second = QualifierLedger.load(site.toURI().toString());
+        second.qualifier("org.reficio/a//1.0.0-SNAPSHOT", "bbb", "20150101000000");
+        second.write(site);
+
+        // then
+        QualifierLedger third = QualifierLedger.load(site.getPath());
+        assertEquals("20140101000000", third.qualifier("feature/org.reficio.feature/1.0.0.qualifier", "aaa", "20160101000000"));
+        assertEquals("20150101000000", third.qualifier("org.reficio/a//1.0.0-SNAPSHOT", "bbb", "20160101000000"));
+    }
+
+    @Test
+    public void load_missingLedger() throws Exception {
+        // when
+        QualifierLedger ledger = QualifierLedger.load(new File(folder.getRoot(), "missing").getPath());
+
+        // then
+        assertEquals("20140101000000", ledger.qualifier("org.reficio/a//1.0.0-SNAPSHOT", "aaa", "20140101000000"));
+        assertEquals(0, ledger.getReused());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void strategy_unknown() {
+        QualifierStrategy.fromString("hash");
+    }
+
+}
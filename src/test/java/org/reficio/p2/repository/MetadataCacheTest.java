@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class MetadataCacheTest {
+
+    private static final String CONTENT = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<repository name='test' type='org.eclipse.equinox.p2.metadata.repository.simpleRepository' version='1'>\n" +
+            "  <units size='0'/>\n" +
+            "</repository>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void read_cachedCopyWhileMetadataUnchanged() throws Exception {
+        // given
+        File repository = folder.getRoot();
+        FileUtils.writeStringToFile(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT), CONTENT, "UTF-8");
+        MetadataCache cache = new MetadataCache();
+
+        // when
+        Document first = cache.read(repository, RepositoryFiles.CONTENT);
+        first.getDocumentElement().setAttribute("name", "modified");
+        Document second = cache.read(repository, RepositoryFiles.CONTENT);
+
+        // then
+        assertNotSame(first, second);
+        assertEquals("test", second.getDocumentElement().getAttribute("name"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void read_reparsedWhenMetadataRewritten() throws Exception {
+        // given
+        File repository = folder.getRoot();
+        File xml = RepositoryFiles.xml(repository, RepositoryFiles.CONTENT);
+        FileUtils.writeStringToFile(xml, CONTENT, "UTF-8");
+        MetadataCache cache = new MetadataCache();
+        Document first = cache.read(repository, RepositoryFiles.CONTENT);
+
+        // when
+        FileUtils.writeStringToFile(xml, CONTENT.replace("name='test'", "name='rewritten'"), "UTF-8");
+        Document second = cache.read(repository, RepositoryFiles.CONTENT);
+
+        // then
+        assertNotSame(first, second);
+        assertEquals("rewritten", second.getDocumentElement().getAttribute("name"));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void write_keepsWrittenDocument() throws Exception {
+        // given
+        File repository = folder.getRoot();
+        FileUtils.writeStringToFile(RepositoryFiles.xml(repository, RepositoryFiles.CONTENT), CONTENT, "UTF-8");
+        MetadataCache cache = new MetadataCache();
+        Document document = cache.read(repository, RepositoryFiles.CONTENT);
+        document.getDocumentElement().setAttribute("name", "categorized");
+
+        // when
+        cache.write(repository, RepositoryFiles.CONTENT, document);
+
+        // then
+        assertEquals("categorized", cache.read(repository, RepositoryFiles.CONTENT).getDocumentElement().getAttribute("name"));
+        assertEquals(1, cache.getHits());
+        assertEquals("categorized", RepositoryFiles.readMetadata(repository, RepositoryFiles.CONTENT).getDocumentElement().getAttribute("name"));
+    }
+
+}
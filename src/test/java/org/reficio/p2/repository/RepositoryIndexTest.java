@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RepositoryIndexTest {
+
+    private static final String ARTIFACTS = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<repository name='test' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n" +
+            "  <properties size='1'><property name='p2.compressed' value='false'/></properties>\n" +
+            "  <artifacts size='2'>\n" +
+            "    <artifact classifier='osgi.bundle' id='org.junit' version='4.11.0'>\n" +
+            "      <properties size='1'><property name='download.checksum.sha-256' value='abc'/></properties>\n" +
+            "    </artifact>\n" +
+            "    <artifact classifier='org.eclipse.update.feature' id='org.junit.feature' version='1.0.0'>\n" +
+            "      <properties size='1'><property name='download.md5' value='def'/></properties>\n" +
+            "    </artifact>\n" +
+            "  </artifacts>\n" +
+            "</repository>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load_fromArtifactsMetadata() throws Exception {
+        // given
+        File repository = folder.getRoot();
+        FileUtils.writeStringToFile(RepositoryFiles.xml(repository, RepositoryFiles.ARTIFACTS), ARTIFACTS, "UTF-8");
+
+        // when
+        RepositoryIndex index = RepositoryIndex.load(repository);
+
+        // then
+        assertEquals(2, index.size());
+        assertTrue(index.containsBundle("org.junit", "4.11.0"));
+        assertFalse(index.containsBundle("org.junit", "4.12.0"));
+        assertTrue(index.containsFeature("org.junit.feature", "1.0.0"));
+        assertEquals("abc", index.get(MetadataXml.BUNDLE_CLASSIFIER, "org.junit", "4.11.0").getChecksum());
+        assertEquals("def", index.get(MetadataXml.FEATURE_CLASSIFIER, "org.junit.feature", "1.0.0").getChecksum());
+    }
+
+    @Test
+    public void load_fromSidecarWhileMetadataUnchanged() throws Exception {
+        // given
+        File repository = folder.getRoot();
+        File metadata = RepositoryFiles.xml(repository, RepositoryFiles.ARTIFACTS);
+        FileUtils.writeStringToFile(metadata, ARTIFACTS, "UTF-8");
+        RepositoryIndex.load(repository).writeSidecar(repository);
+        File sidecar = new File(repository, RepositoryIndex.SIDECAR);
+        FileUtils.writeStringToFile(sidecar, "osgi.bundle\torg.hamcrest\t1.3.0\t\n", "UTF-8", true);
+
+        // when
+        RepositoryIndex index = RepositoryIndex.load(repository);
+
+        // then
+        assertTrue("Index should be read from the sidecar", index.containsBundle("org.hamcrest", "1.3.0"));
+        assertTrue(metadata.setLastModified(metadata.lastModified() + 2000));
+        assertFalse("Stale sidecar should be ignored", RepositoryIndex.load(repository).containsBundle("org.hamcrest", "1.3.0"));
+    }
+
+    @Test
+    public void load_nonExistingRepository() throws Exception {
+        assertEquals(0, RepositoryIndex.load(new File(folder.getRoot(), "missing")).size());
+    }
+
+}
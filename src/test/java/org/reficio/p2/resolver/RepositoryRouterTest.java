@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class RepositoryRouterTest {
+
+    private static final List<String> REPOSITORIES = Arrays.asList("central", "jboss", "eclipse");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void route_declaredRestrictsToRepository() {
+        // given
+        Map<String, String> routes = new LinkedHashMap<String, String>();
+        routes.put("org", "central");
+        routes.put("org.jboss", "jboss");
+        RepositoryRouter router = new RepositoryRouter(routes);
+
+        // then
+        assertEquals(Arrays.asList("jboss"), router.route(RepositoryRouter.MAVEN, "org.jboss.logging", REPOSITORIES));
+        assertEquals(Arrays.asList("jboss"), router.route(RepositoryRouter.MAVEN, "org.jboss", REPOSITORIES));
+        assertEquals(Arrays.asList("central"), router.route(RepositoryRouter.MAVEN, "org.jbossx", REPOSITORIES));
+        assertEquals(REPOSITORIES, router.route(RepositoryRouter.MAVEN, "com.google.guava", REPOSITORIES));
+    }
+
+    @Test
+    public void route_declaredToUnavailableRepository_fallsBackToAll() {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.singletonMap("org.eclipse", "eclipse"));
+
+        // then
+        List<String> mavenRepositories = Arrays.asList("central", "jboss");
+        assertEquals(mavenRepositories, router.route(RepositoryRouter.MAVEN, "org.eclipse.core.runtime", mavenRepositories));
+    }
+
+    @Test
+    public void route_learnedGoesFirst() {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.<String, String>emptyMap());
+
+        // when
+        router.learn(RepositoryRouter.MAVEN, "org.hibernate", "jboss");
+
+        // then
+        assertEquals(Arrays.asList("jboss", "central", "eclipse"), router.route(RepositoryRouter.MAVEN, "org.hibernate", REPOSITORIES));
+        assertEquals(REPOSITORIES, router.route(RepositoryRouter.MAVEN, "org.hibernate.common", REPOSITORIES));
+    }
+
+    @Test
+    public void route_declaredForNamespace() {
+        // given
+        Map<String, String> routes = new LinkedHashMap<String, String>();
+        routes.put("org.eclipse", "central");
+        routes.put("p2:org.eclipse", "eclipse");
+        RepositoryRouter router = new RepositoryRouter(routes);
+
+        // then
+        assertEquals(Arrays.asList("central"), router.route(RepositoryRouter.MAVEN, "org.eclipse.jetty", REPOSITORIES));
+        assertEquals(Arrays.asList("eclipse"), router.route(RepositoryRouter.P2, "org.eclipse.core.runtime", REPOSITORIES));
+    }
+
+    @Test
+    public void route_learnedForNamespace() {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.<String, String>emptyMap());
+
+        // when
+        router.learn(RepositoryRouter.P2, "org.eclipse.jetty", "eclipse");
+
+        // then
+        assertEquals(Arrays.asList("eclipse", "central", "jboss"), router.route(RepositoryRouter.P2, "org.eclipse.jetty", REPOSITORIES));
+        assertEquals(REPOSITORIES, router.route(RepositoryRouter.MAVEN, "org.eclipse.jetty", REPOSITORIES));
+    }
+
+    @Test
+    public void saveAndLoad_keepsLearnedRoutes() throws Exception {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.<String, String>emptyMap());
+        router.learn(RepositoryRouter.MAVEN, "org.hibernate", "jboss");
+        router.learn(RepositoryRouter.P2, "org.eclipse.core.runtime", "eclipse");
+        File file = new File(folder.getRoot(), "p2-routes.properties");
+
+        // when
+        router.save(file);
+        RepositoryRouter loaded = new RepositoryRouter(Collections.<String, String>emptyMap());
+        loaded.load(file);
+
+        // then
+        assertEquals("jboss", loaded.learnedRoute(RepositoryRouter.MAVEN, "org.hibernate"));
+        assertEquals("eclipse", loaded.learnedRoute(RepositoryRouter.P2, "org.eclipse.core.runtime"));
+        assertNull(loaded.learnedRoute(RepositoryRouter.MAVEN, "org.eclipse.core.runtime"));
+    }
+
+    @Test
+    public void save_unchangedRoutesNotWritten() throws Exception {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.<String, String>emptyMap());
+        File file = new File(folder.getRoot(), "p2-routes.properties");
+
+        // when
+        router.save(file);
+
+        // then
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void validate_unknownRepository() {
+        // given
+        RepositoryRouter router = new RepositoryRouter(Collections.singletonMap("org.jboss", "jboss-releases"));
+
+        // when
+        List<String> errors = router.validate(REPOSITORIES);
+
+        // then
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("[jboss-releases]"));
+    }
+
+}
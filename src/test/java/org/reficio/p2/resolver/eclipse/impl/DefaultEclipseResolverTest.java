@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.eclipse.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class DefaultEclipseResolverTest {
+
+    private static final String BUNDLE = "org.reficio.a_1.0.0.jar";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repository;
+    private List<Object> repositories;
+
+    @Before
+    public void setup() throws Exception {
+        Logger.initialize(new SystemStreamLog());
+        repository = folder.newFolder("repository");
+        FileUtils.writeStringToFile(new File(repository, "plugins/" + BUNDLE), "bundle", "UTF-8");
+        repositories = Collections.<Object>singletonList(new RemoteRepository.Builder("eclipse", "p2",
+                repository.toURI().toString().replaceAll("/$", "")).build());
+    }
+
+    @Test
+    public void resolve_cacheMiss_downloadsAndCaches() throws Exception {
+        // given
+        File target = folder.newFolder("target");
+        File cache = folder.newFolder("cache");
+
+        // when
+        new DefaultEclipseResolver(repositories, target, null, cache).resolve(request());
+
+        // then
+        assertEquals("bundle", FileUtils.readFileToString(new File(target, BUNDLE), "UTF-8"));
+        File[] cachedRepositories = cache.listFiles();
+        assertEquals(1, cachedRepositories.length);
+        assertEquals("bundle", FileUtils.readFileToString(new File(cachedRepositories[0], "plugins/" + BUNDLE), "UTF-8"));
+    }
+
+    @Test
+    public void resolve_cacheHit_doesNotDownload() throws Exception {
+        // given
+        File cache = folder.newFolder("cache");
+        new DefaultEclipseResolver(repositories, folder.newFolder("first"), null, cache).resolve(request());
+        FileUtils.forceDelete(new File(repository, "plugins/" + BUNDLE));
+        File target = folder.newFolder("target");
+
+        // when
+        new DefaultEclipseResolver(repositories, target, null, cache).resolve(request());
+
+        // then
+        assertEquals("bundle", FileUtils.readFileToString(new File(target, BUNDLE), "UTF-8"));
+    }
+
+    @Test
+    public void resolve_cacheOfOtherRepository_isMiss() throws Exception {
+        // given
+        File cache = folder.newFolder("cache");
+        FileUtils.writeStringToFile(new File(cache, "other.example.org/plugins/" + BUNDLE), "other", "UTF-8");
+        File target = folder.newFolder("target");
+
+        // when
+        new DefaultEclipseResolver(repositories, target, null, cache).resolve(request());
+
+        // then
+        assertEquals("bundle", FileUtils.readFileToString(new File(target, BUNDLE), "UTF-8"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void resolve_withoutCache_alwaysDownloads() throws Exception {
+        // given
+        File cache = folder.newFolder("cache");
+        new DefaultEclipseResolver(repositories, folder.newFolder("first"), null, cache).resolve(request());
+        FileUtils.forceDelete(new File(repository, "plugins/" + BUNDLE));
+
+        // when
+        new DefaultEclipseResolver(repositories, folder.newFolder("target"), null, null).resolve(request());
+    }
+
+    private static EclipseResolutionRequest request() {
+        return new EclipseResolutionRequest("org.reficio.a", "1.0.0", false);
+    }
+
+}
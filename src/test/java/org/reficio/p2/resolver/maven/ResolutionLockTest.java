@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.resolver.maven.ResolutionLock.LockedArtifact;
+import org.reficio.p2.utils.HashUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResolutionLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead_preservesLockedClosure() throws Exception {
+        // given
+        File jar = jar("commons-io-2.4.jar", "binary");
+        File sources = jar("commons-io-2.4-sources.jar", "sources");
+        ResolutionLock lock = new ResolutionLock();
+        lock.put(request("commons-io:commons-io:2.4", "b:*", "a:*"), new ArtifactResolutionResult(Arrays.asList(
+                new ResolvedArtifact(artifact("commons-io", "2.4", jar), artifact("commons-io", "2.4", sources), true))));
+        File lockFile = new File(folder.getRoot(), "p2-lock.xml");
+
+        // when
+        lock.write(lockFile);
+        ResolutionLock read = ResolutionLock.read(lockFile);
+
+        // then
+        List<LockedArtifact> locked = read.get(request("commons-io:commons-io:2.4", "a:*", "b:*"));
+        assertNotNull("Excludes order should not matter", locked);
+        assertEquals(1, locked.size());
+        assertEquals("commons-io:commons-io:jar::2.4", locked.get(0).getCoordinates());
+        assertTrue(locked.get(0).isRoot());
+        assertEquals(HashUtils.sha256(jar), locked.get(0).getSha256());
+        assertEquals(HashUtils.sha256(sources), locked.get(0).getSourceSha256());
+    }
+
+    @Test
+    public void get_differentRequestSignature() throws Exception {
+        // given
+        ResolutionLock lock = new ResolutionLock();
+        lock.put(request("commons-io:commons-io:2.4"), new ArtifactResolutionResult(Arrays.asList(
+                new ResolvedArtifact(artifact("commons-io", "2.4", jar("commons-io-2.4.jar", "binary")), null, true))));
+
+        // when
+        List<LockedArtifact> locked = lock.get(ArtifactResolutionRequest.builder()
+                .rootArtifactId("commons-io:commons-io:2.4")
+                .excludes(Arrays.<String>asList())
+                .resolveTransitive(false)
+                .build());
+
+        // then
+        assertNull(locked);
+    }
+
+    private File jar(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+
+    private static Artifact artifact(String artifactId, String version, File file) {
+        return new Artifact(artifactId, artifactId, version, "jar", "", false, version, file);
+    }
+
+    private static ArtifactResolutionRequest request(String id, String... excludes) {
+        return ArtifactResolutionRequest.builder()
+                .rootArtifactId(id)
+                .excludes(Arrays.asList(excludes))
+                .resolveTransitive(true)
+                .resolveSource(true)
+                .build();
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.ResolutionProfiler.Outcome;
+import org.reficio.p2.resolver.maven.ResolutionProfiler.RepositoryStatistics;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class ResolutionProfilerTest {
+
+    private static final String CENTRAL = "https://repo.maven.apache.org/maven2/";
+    private static final String MIRROR = "http://mirror.example.com/maven2";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void getRepositories_rankedByTotalTime() {
+        // given
+        ResolutionProfiler profiler = new ResolutionProfiler();
+        profiler.registerRepository("central", CENTRAL);
+        long now = System.currentTimeMillis();
+
+        // when
+        profiler.transfer(CENTRAL, now - 10, 100, Outcome.SUCCEEDED);
+        profiler.transfer(CENTRAL, now - 10, 200, Outcome.SUCCEEDED);
+        profiler.transfer(MIRROR, now - 5000, 0, Outcome.MISSING);
+        profiler.transfer(MIRROR, 0, 0, Outcome.FAILED);
+
+        // then
+        List<RepositoryStatistics> repositories = profiler.getRepositories();
+        assertEquals(2, repositories.size());
+        RepositoryStatistics mirror = repositories.get(0);
+        assertEquals(MIRROR + "/", mirror.getUrl());
+        assertNull(mirror.getId());
+        assertEquals(2, mirror.getRequests());
+        assertEquals(1, mirror.getMisses());
+        assertEquals(1, mirror.getFailures());
+        assertTrue(mirror.percentile(100) >= 5000);
+        RepositoryStatistics central = repositories.get(1);
+        assertEquals("central", central.getId());
+        assertEquals(2, central.getRequests());
+        assertEquals(0, central.getMisses());
+        assertEquals(300, central.getBytes());
+    }
+
+    @Test
+    public void getWarnings_repositoryMissingEverything() {
+        // given
+        ResolutionProfiler profiler = new ResolutionProfiler();
+        profiler.registerRepository("mirror", MIRROR);
+
+        // when
+        for (int i = 0; i < ResolutionProfiler.MIN_REQUESTS; i++) {
+            profiler.transfer(MIRROR, 0, 0, Outcome.MISSING);
+            profiler.transfer(CENTRAL, 0, 10, Outcome.SUCCEEDED);
+        }
+
+        // then
+        List<String> warnings = profiler.getWarnings();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).startsWith("Repository mirror (" + MIRROR + "/) answered 100%"));
+    }
+
+    @Test
+    public void getWarnings_slowRepository() {
+        // given
+        ResolutionProfiler profiler = new ResolutionProfiler();
+        long now = System.currentTimeMillis();
+
+        // when
+        for (int i = 0; i < ResolutionProfiler.MIN_REQUESTS; i++) {
+            profiler.transfer(MIRROR, now - 2000, 10, Outcome.SUCCEEDED);
+            profiler.transfer(CENTRAL, 0, 10, Outcome.SUCCEEDED);
+            profiler.transfer(CENTRAL, 0, 10, Outcome.SUCCEEDED);
+        }
+
+        // then
+        List<String> warnings = profiler.getWarnings();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).startsWith("Repository " + MIRROR + "/ is slow"));
+    }
+
+    @Test
+    public void getRoots_rankedByTime() {
+        // given
+        ResolutionProfiler profiler = new ResolutionProfiler();
+
+        // when
+        profiler.rootResolved("org.slf4j:slf4j-api:1.7.2", 2000000L);
+        profiler.rootResolved("org.hibernate:hibernate-core:4.3.0.Final", 900000000L);
+        profiler.rootResolved("org.slf4j:slf4j-api:1.7.2", 3000000L);
+
+        // then
+        List<Map.Entry<String, Long>> roots = profiler.getRoots();
+        assertEquals("org.hibernate:hibernate-core:4.3.0.Final", roots.get(0).getKey());
+        assertEquals(Long.valueOf(900), roots.get(0).getValue());
+        assertEquals(Long.valueOf(5), roots.get(1).getValue());
+    }
+
+    @Test
+    public void percentile_nearestRank() {
+        List<Long> values = Arrays.asList(40L, 10L, 30L, 20L);
+        assertEquals(20, ResolutionProfiler.percentile(values, 50));
+        assertEquals(40, ResolutionProfiler.percentile(values, 90));
+        assertEquals(40, ResolutionProfiler.percentile(values, 100));
+        assertEquals(0, ResolutionProfiler.percentile(Arrays.<Long>asList(), 50));
+    }
+
+    @Test
+    public void writeJson() throws Exception {
+        // given
+        ResolutionProfiler profiler = new ResolutionProfiler();
+        profiler.registerRepository("central \"main\"", CENTRAL);
+        profiler.transfer(CENTRAL, 0, 42, Outcome.SUCCEEDED);
+        profiler.rootResolved("commons-io:commons-io:2.4", 1000000L);
+        File file = new File(folder.getRoot(), "resolution-profile.json");
+
+        // when
+        profiler.writeJson(file);
+
+        // then
+        String json = FileUtils.readFileToString(file, "UTF-8");
+        assertTrue(json.contains("{\"id\": \"central \\\"main\\\"\", \"url\": \"" + CENTRAL + "\", \"requests\": 1, " +
+                "\"misses\": 0, \"failures\": 0, \"bytes\": 42"));
+        assertTrue(json.contains("{\"artifact\": \"commons-io:commons-io:2.4\", \"millis\": 1}"));
+        assertTrue(json.contains("\"warnings\": [\n  ]"));
+    }
+
+}
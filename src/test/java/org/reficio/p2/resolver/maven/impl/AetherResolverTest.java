@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven.impl;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.RepositoryRouter;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ArtifactResolutionRequest;
+import org.reficio.p2.resolver.maven.ResolutionMode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @since 1.4.3
+ */
+public class AetherResolverTest {
+
+    private static final RemoteRepository CENTRAL = new RemoteRepository.Builder("central", "default", "https://repo1.maven.org/maven2/").build();
+    private static final RemoteRepository INTERNAL = new RemoteRepository.Builder("internal", "default", "https://repo.example.org/internal/").build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void resolve_collectsRoutedRootFromAllRepositories() throws Exception {
+        // given
+        RepositorySystem system = mock(RepositorySystem.class);
+        DefaultArtifact root = new DefaultArtifact("com.example.internal:lib:1.0");
+        DefaultDependencyNode node = new DefaultDependencyNode(new Dependency(root, "compile"));
+        when(system.collectDependencies(any(), any(CollectRequest.class))).thenReturn(new CollectResult(new CollectRequest()).setRoot(node));
+        when(system.resolveDependencies(any(), any(DependencyRequest.class))).thenReturn(new DependencyResult(new DependencyRequest()));
+        AetherResolver resolver = resolver(system);
+
+        // when
+        resolver.resolve(ArtifactResolutionRequest.builder()
+                .rootArtifactId("com.example.internal:lib:1.0")
+                .excludes(Collections.<String>emptyList())
+                .resolveTransitive(true)
+                .resolveSource(false)
+                .build());
+
+        // then the unrouted transitive dependencies can be found in central
+        ArgumentCaptor<CollectRequest> collectRequest = ArgumentCaptor.forClass(CollectRequest.class);
+        verify(system).collectDependencies(any(), collectRequest.capture());
+        assertEquals(Arrays.asList(CENTRAL, INTERNAL), collectRequest.getValue().getRepositories());
+    }
+
+    @Test
+    public void resolve_routesTransitiveDependenciesByTheirGroupId() throws Exception {
+        // given
+        RepositorySystem system = mock(RepositorySystem.class);
+        final DefaultDependencyNode transitive = new DefaultDependencyNode(
+                new Dependency(new DefaultArtifact("com.example.internal:lib:1.0"), "compile"));
+        transitive.setRepositories(Arrays.asList(CENTRAL, INTERNAL));
+        DefaultDependencyNode node = new DefaultDependencyNode(
+                new Dependency(new DefaultArtifact("org.slf4j:slf4j-api:1.7.25"), "compile"));
+        node.setRepositories(Arrays.asList(CENTRAL, INTERNAL));
+        node.setChildren(new ArrayList<DependencyNode>(Collections.singletonList(transitive)));
+        when(system.collectDependencies(any(), any(CollectRequest.class))).thenReturn(new CollectResult(new CollectRequest()).setRoot(node));
+        final List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+        when(system.resolveDependencies(any(), any(DependencyRequest.class))).thenAnswer(new Answer<DependencyResult>() {
+            @Override
+            public DependencyResult answer(InvocationOnMock invocation) throws Throwable {
+                // the artifacts of the nodes are requested from the repositories of the nodes
+                requests.add(new ArtifactRequest(transitive));
+                return new DependencyResult(invocation.<DependencyRequest>getArgument(1));
+            }
+        });
+        AetherResolver resolver = resolver(system);
+
+        // when
+        resolver.resolve(ArtifactResolutionRequest.builder()
+                .rootArtifactId("org.slf4j:slf4j-api:1.7.25")
+                .excludes(Collections.<String>emptyList())
+                .resolveTransitive(true)
+                .resolveSource(false)
+                .build());
+
+        // then
+        assertEquals(Collections.singletonList(INTERNAL), requests.get(0).getRepositories());
+        assertEquals(Arrays.asList(CENTRAL, INTERNAL), node.getRepositories());
+    }
+
+    @Test
+    public void resolveSourceForArtifact_routesEachArtifactByItsGroupId() throws Exception {
+        // given
+        RepositorySystem system = mock(RepositorySystem.class);
+        final List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+        when(system.resolveArtifact(any(), any(ArtifactRequest.class))).thenAnswer(new Answer<ArtifactResult>() {
+            @Override
+            public ArtifactResult answer(InvocationOnMock invocation) throws Throwable {
+                ArtifactRequest request = invocation.getArgument(1);
+                requests.add(request);
+                File file = folder.newFile(request.getArtifact().getArtifactId() + "-sources.jar");
+                return new ArtifactResult(request).setArtifact(request.getArtifact().setFile(file))
+                        .setRepository(request.getRepositories().get(0));
+            }
+        });
+        AetherResolver resolver = resolver(system);
+
+        // when
+        resolver.resolveSourceForArtifact(artifact("com.example.internal", "lib"));
+        resolver.resolveSourceForArtifact(artifact("org.slf4j", "slf4j-api"));
+
+        // then
+        assertEquals(Collections.singletonList(INTERNAL), requests.get(0).getRepositories());
+        assertEquals(Arrays.asList(CENTRAL, INTERNAL), requests.get(1).getRepositories());
+    }
+
+    private static AetherResolver resolver(RepositorySystem system) {
+        RepositoryRouter router = new RepositoryRouter(Collections.singletonMap("com.example.internal", "internal"));
+        return AetherResolver.builder()
+                .repositorySystem(system)
+                .repositorySystemSession(new DefaultRepositorySystemSession())
+                .remoteRepositories(Arrays.asList(CENTRAL, INTERNAL))
+                .router(router)
+                .build();
+    }
+
+    private static Artifact artifact(String groupId, String artifactId) {
+        return new Artifact(groupId, artifactId, "1.0", "jar", "", false, "1.0", null);
+    }
+
+}
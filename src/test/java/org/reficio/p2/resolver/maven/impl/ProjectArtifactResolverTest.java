@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven.impl;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.junit.Test;
+import org.reficio.p2.resolver.maven.ArtifactResolutionRequest;
+import org.reficio.p2.resolver.maven.ArtifactResolutionResult;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+import org.reficio.p2.resolver.maven.impl.facade.AetherEclipseFacade;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @since 1.4.3
+ */
+public class ProjectArtifactResolverTest {
+
+    @Test
+    public void resolve_takesClosureFromProjectGraph() {
+        // given
+        Artifact direct = artifact("commons-lang", "commons-lang", "2.6");
+        Artifact transitive = artifact("org.slf4j", "slf4j-api", "1.7.25");
+        Artifact other = artifact("junit", "junit", "4.12");
+        DefaultDependencyNode graph = node("org.reficio:project:1.0",
+                node(direct, node(transitive)),
+                node(other));
+        AetherResolver delegate = mock(AetherResolver.class);
+        ProjectArtifactResolver resolver = resolver(Arrays.asList(direct, transitive, other), graph, delegate);
+
+        // when
+        ArtifactResolutionResult result = resolver.resolve(request("commons-lang:commons-lang:2.6"));
+
+        // then
+        List<ResolvedArtifact> resolved = result.getResolvedArtifacts();
+        assertEquals(2, resolved.size());
+        assertEquals("commons-lang-2.6.jar", resolved.get(0).getArtifact().getFile().getName());
+        assertTrue(resolved.get(0).isRoot());
+        assertEquals("slf4j-api-1.7.25.jar", resolved.get(1).getArtifact().getFile().getName());
+        assertFalse(resolved.get(1).isRoot());
+        assertEquals("", resolved.get(1).getArtifact().getClassifier());
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void resolve_takesSharedDependencyIntoEveryClosure() {
+        // given
+        Artifact first = artifact("org.reficio", "first", "1.0");
+        Artifact second = artifact("org.reficio", "second", "1.0");
+        Artifact shared = artifact("org.reficio", "shared", "1.0");
+        Artifact sharedDependency = artifact("org.reficio", "shared-dependency", "1.0");
+        DefaultDependencyNode winner = node(shared, node(sharedDependency));
+        DefaultDependencyNode omitted = node(shared);
+        omitted.setData(ConflictResolver.NODE_DATA_WINNER, winner);
+        DefaultDependencyNode graph = node("org.reficio:project:1.0",
+                node(first, winner),
+                node(second, omitted));
+        AetherResolver delegate = mock(AetherResolver.class);
+        ProjectArtifactResolver resolver = resolver(Arrays.asList(first, second, shared, sharedDependency), graph, delegate);
+
+        // when
+        ArtifactResolutionResult result = resolver.resolve(request("org.reficio:second:1.0"));
+
+        // then
+        List<ResolvedArtifact> resolved = result.getResolvedArtifacts();
+        assertEquals(3, resolved.size());
+        assertEquals("second-1.0.jar", resolved.get(0).getArtifact().getFile().getName());
+        assertEquals("shared-1.0.jar", resolved.get(1).getArtifact().getFile().getName());
+        assertEquals("shared-dependency-1.0.jar", resolved.get(2).getArtifact().getFile().getName());
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void resolve_delegatesDependenciesWithUnresolvedClosure() {
+        // given
+        Artifact direct = artifact("commons-lang", "commons-lang", "2.6");
+        Artifact unresolved = artifact("org.slf4j", "slf4j-api", "1.7.25");
+        DefaultDependencyNode graph = node("org.reficio:project:1.0", node(direct, node(unresolved)));
+        AetherResolver delegate = mock(AetherResolver.class);
+        ProjectArtifactResolver resolver = resolver(Collections.singletonList(direct), graph, delegate);
+        ArtifactResolutionRequest request = request("commons-lang:commons-lang:2.6");
+        ArtifactResolutionResult expected = new ArtifactResolutionResult(new ArrayList<ResolvedArtifact>());
+        when(delegate.resolve(request)).thenReturn(expected);
+
+        // when
+        ArtifactResolutionResult result = resolver.resolve(request);
+
+        // then
+        assertSame(expected, result);
+    }
+
+    @Test
+    public void resolve_delegatesRequestsWithExcludes() {
+        // given
+        Artifact direct = artifact("commons-lang", "commons-lang", "2.6");
+        DefaultDependencyNode graph = node("org.reficio:project:1.0", node(direct));
+        AetherResolver delegate = mock(AetherResolver.class);
+        ProjectArtifactResolver resolver = resolver(Collections.singletonList(direct), graph, delegate);
+        ArtifactResolutionRequest request = request("commons-lang:commons-lang:2.6", "org.slf4j:slf4j-api");
+        ArtifactResolutionResult expected = new ArtifactResolutionResult(new ArrayList<ResolvedArtifact>());
+        when(delegate.resolve(request)).thenReturn(expected);
+
+        // when
+        ArtifactResolutionResult result = resolver.resolve(request);
+
+        // then
+        assertSame(expected, result);
+    }
+
+    @Test
+    public void resolve_delegatesArtifactsOutsideOfProjectGraph() {
+        // given
+        AetherResolver delegate = mock(AetherResolver.class);
+        ProjectArtifactResolver resolver = resolver(new ArrayList<Artifact>(), null, delegate);
+        ArtifactResolutionRequest request = request("commons-io:commons-io:2.4");
+        ArtifactResolutionResult expected = new ArtifactResolutionResult(new ArrayList<ResolvedArtifact>());
+        when(delegate.resolve(request)).thenReturn(expected);
+
+        // when
+        ArtifactResolutionResult result = resolver.resolve(request);
+
+        // then
+        assertSame(expected, result);
+    }
+
+    private static ProjectArtifactResolver resolver(List<Artifact> projectArtifacts, DefaultDependencyNode graph,
+                                                    AetherResolver delegate) {
+        return new ProjectArtifactResolver(projectArtifacts, graph, new AetherEclipseFacade(), delegate, null);
+    }
+
+    private static Artifact artifact(String groupId, String artifactId, String version) {
+        Artifact artifact = new DefaultArtifact(groupId, artifactId, version, "compile", "jar", null,
+                new DefaultArtifactHandler("jar"));
+        artifact.setFile(new File(artifactId + "-" + version + ".jar"));
+        return artifact;
+    }
+
+    private static DefaultDependencyNode node(Artifact artifact, DefaultDependencyNode... children) {
+        return node(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion(), children);
+    }
+
+    private static DefaultDependencyNode node(String coordinates, DefaultDependencyNode... children) {
+        DefaultDependencyNode node = new DefaultDependencyNode(
+                new Dependency(new org.eclipse.aether.artifact.DefaultArtifact(coordinates), "compile"));
+        node.setChildren(new ArrayList<org.eclipse.aether.graph.DependencyNode>(Arrays.asList(children)));
+        return node;
+    }
+
+    private static ArtifactResolutionRequest request(String id, String... excludes) {
+        return ArtifactResolutionRequest.builder()
+                .rootArtifactId(id)
+                .excludes(Arrays.asList(excludes))
+                .resolveTransitive(true)
+                .resolveSource(false)
+                .build();
+    }
+
+}
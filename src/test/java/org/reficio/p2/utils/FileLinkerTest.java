@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class FileLinkerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void place_link_sharesContentWithSource() throws Exception {
+        // given
+        File source = folder.newFile("source.jar");
+        FileUtils.writeStringToFile(source, "content", "UTF-8");
+        File target = new File(folder.getRoot(), "target.jar");
+
+        // when
+        FileLinker.Strategy placement = new FileLinker(FileLinker.Strategy.LINK).place(source, target);
+
+        // then
+        assertEquals("content", FileUtils.readFileToString(target, "UTF-8"));
+        if (placement == FileLinker.Strategy.LINK) {
+            assertTrue(Files.isSameFile(source.toPath(), target.toPath()));
+        }
+    }
+
+    @Test
+    public void place_copy_createsIndependentFile() throws Exception {
+        // given
+        File source = folder.newFile("source.jar");
+        FileUtils.writeStringToFile(source, "content", "UTF-8");
+        File target = folder.newFile("target.jar");
+        FileUtils.writeStringToFile(target, "stale content to be replaced", "UTF-8");
+
+        // when
+        FileLinker.Strategy placement = new FileLinker(FileLinker.Strategy.COPY).place(source, target);
+        FileUtils.writeStringToFile(target, "modified", "UTF-8");
+
+        // then
+        assertEquals(FileLinker.Strategy.COPY, placement);
+        assertEquals("content", FileUtils.readFileToString(source, "UTF-8"));
+        assertEquals(source.length(), "content".length());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void fromString_unknown() {
+        FileLinker.Strategy.fromString("symlink");
+    }
+
+}
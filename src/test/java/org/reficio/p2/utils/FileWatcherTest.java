@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class FileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changedFiles_reportsOnlyWatchedFiles() {
+        // given
+        Path libs = Paths.get("/work/libs");
+        Set<Path> watched = new HashSet<Path>(Arrays.asList(libs.resolve("a.jar"), libs.resolve("b.jar")));
+        List<WatchEvent<?>> events = Arrays.<WatchEvent<?>>asList(
+                event(StandardWatchEventKinds.ENTRY_MODIFY, Paths.get("a.jar")),
+                event(StandardWatchEventKinds.ENTRY_CREATE, Paths.get("a.jar")),
+                event(StandardWatchEventKinds.ENTRY_CREATE, Paths.get("a.jar.tmp")),
+                event(StandardWatchEventKinds.ENTRY_MODIFY, Paths.get("c.jar")));
+
+        // when
+        Set<Path> changed = FileWatcher.changedFiles(libs, events, watched);
+
+        // then
+        assertEquals(Collections.singleton(libs.resolve("a.jar")), changed);
+    }
+
+    @Test
+    public void changedFiles_ignoresOverflow() {
+        // given
+        Path libs = Paths.get("/work/libs");
+        List<WatchEvent<?>> events = Arrays.<WatchEvent<?>>asList(event(StandardWatchEventKinds.OVERFLOW, null));
+
+        // when
+        Set<Path> changed = FileWatcher.changedFiles(libs, events, Collections.singleton(libs.resolve("a.jar")));
+
+        // then
+        assertTrue(changed.isEmpty());
+    }
+
+    @Test
+    public void awaitChanges_returnsModifiedWatchedFile() throws Exception {
+        // given
+        Path watched = folder.newFile("watched.jar").toPath().toAbsolutePath().normalize();
+        Path other = folder.newFile("other.jar").toPath().toAbsolutePath().normalize();
+        FileWatcher watcher = new FileWatcher(Collections.singleton(watched), 100);
+        try {
+            // when
+            FileUtils.writeStringToFile(other.toFile(), "other", "UTF-8");
+            FileUtils.writeStringToFile(watched.toFile(), "changed", "UTF-8");
+            Set<Path> changed = watcher.awaitChanges();
+
+            // then
+            assertEquals(1, watcher.getFolderCount());
+            assertEquals(Collections.singleton(watched), changed);
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private static WatchEvent<Path> event(final WatchEvent.Kind<?> kind, final Path context) {
+        return new WatchEvent<Path>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Kind<Path> kind() {
+                return (Kind<Path>) kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public Path context() {
+                return context;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class HashUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sha256_knownValue() throws Exception {
+        // given
+        File file = folder.newFile("abc.txt");
+        FileUtils.writeStringToFile(file, "abc", "UTF-8");
+
+        // then
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashUtils.sha256(file));
+        assertEquals(HashUtils.sha256("abc"), HashUtils.sha256(file));
+    }
+
+    @Test
+    public void digest_emptyFile() throws Exception {
+        // given
+        File file = folder.newFile("empty.txt");
+
+        // when
+        Map<String, String> digest = HashUtils.digest(file, HashUtils.MD5, HashUtils.SHA_256);
+
+        // then
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", digest.get(HashUtils.MD5));
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", digest.get(HashUtils.SHA_256));
+    }
+
+    @Test
+    public void digest_fileLargerThanBuffer_allDigestsFromOneRead() throws Exception {
+        // given
+        byte[] content = new byte[200 * 1024 + 17];
+        new Random(7).nextBytes(content);
+        File file = folder.newFile("large.bin");
+        FileUtils.writeByteArrayToFile(file, content);
+
+        // when
+        Map<String, String> digest = HashUtils.digest(file, HashUtils.MD5, HashUtils.SHA_256);
+
+        // then
+        assertEquals(HashUtils.toHex(MessageDigest.getInstance("MD5").digest(content)), digest.get(HashUtils.MD5));
+        assertEquals(HashUtils.toHex(MessageDigest.getInstance("SHA-256").digest(content)), digest.get(HashUtils.SHA_256));
+    }
+
+    @Test
+    public void sha256_fileCanBeDeletedRightAfterwards() throws Exception {
+        // given
+        File file = folder.newFile("bundle.jar");
+        FileUtils.writeStringToFile(file, "bundle", "UTF-8");
+
+        // when
+        HashUtils.sha256(file);
+
+        // then
+        assertTrue(file.delete());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void sha256_missingFile() {
+        HashUtils.sha256(new File(folder.getRoot(), "missing.jar"));
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class JarUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void normalizeJar_sameContentSameBytes() throws Exception {
+        // given
+        File first = jar("first.jar", new String[]{"b.txt", "a.txt"}, 1000000000000L, "Bundle-SymbolicName", "Bundle-Version");
+        File second = jar("second.jar", new String[]{"a.txt", "b.txt"}, 1400000000000L, "Bundle-Version", "Bundle-SymbolicName");
+        assertNotEquals(HashUtils.sha256(first), HashUtils.sha256(second));
+
+        // when
+        boolean firstNormalized = JarUtils.normalizeJar(first);
+        boolean secondNormalized = JarUtils.normalizeJar(second);
+
+        // then
+        assertTrue(firstNormalized);
+        assertTrue(secondNormalized);
+        assertEquals(HashUtils.sha256(first), HashUtils.sha256(second));
+    }
+
+    @Test
+    public void normalizeJar_manifestFirstAndEntriesSorted() throws Exception {
+        // given
+        File jar = jar("bundle.jar", new String[]{"z/c.txt", "a.txt"}, 1400000000000L, "Bundle-Version", "Bundle-SymbolicName");
+
+        // when
+        JarUtils.normalizeJar(jar);
+
+        // then
+        JarFile normalized = new JarFile(jar);
+        try {
+            List<String> names = new ArrayList<String>();
+            for (Enumeration<JarEntry> entries = normalized.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                names.add(entry.getName());
+                assertEquals(JarUtils.REPRODUCIBLE_TIME, entry.getTime());
+            }
+            assertEquals("[META-INF/MANIFEST.MF, a.txt, z/c.txt]", names.toString());
+            assertEquals("org.reficio.bundle", normalized.getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+        } finally {
+            normalized.close();
+        }
+    }
+
+    @Test
+    public void normalizeJar_signedJarUntouched() throws Exception {
+        // given
+        File jar = jar("signed.jar", new String[]{"META-INF/SIGNER.SF", "a.txt"}, 1400000000000L, "Bundle-Version");
+        String hash = HashUtils.sha256(jar);
+
+        // when
+        boolean normalized = JarUtils.normalizeJar(jar);
+
+        // then
+        assertFalse(normalized);
+        assertEquals(hash, HashUtils.sha256(jar));
+    }
+
+    private File jar(String name, String[] entries, long time, String... attributes) throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (String attribute : attributes) {
+            manifest.getMainAttributes().putValue(attribute, attribute.equals("Bundle-Version") ? "1.0.0" : "org.reficio.bundle");
+        }
+        File jar = new File(folder.getRoot(), name);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            for (String entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry);
+                zipEntry.setTime(time);
+                output.putNextEntry(zipEntry);
+                output.write(entry.getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+        return jar;
+    }
+
+}
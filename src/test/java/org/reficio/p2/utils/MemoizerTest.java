@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class MemoizerTest {
+
+    @Test
+    public void get_computesEveryKeyOnceForConcurrentCallers() throws Exception {
+        // given
+        final Memoizer<String, Integer> memoizer = new Memoizer<String, Integer>();
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        // when
+        try {
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        start.await();
+                        return memoizer.get("key", new Callable<Integer>() {
+                            @Override
+                            public Integer call() {
+                                return computations.incrementAndGet();
+                            }
+                        });
+                    }
+                }));
+            }
+            start.countDown();
+
+            // then
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(1), result.get());
+            }
+            assertEquals(1, computations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void get_rethrowsCachedFailure() {
+        // given
+        Memoizer<String, Integer> memoizer = new Memoizer<String, Integer>();
+        final AtomicInteger computations = new AtomicInteger();
+        Callable<Integer> failing = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                computations.incrementAndGet();
+                throw new IllegalStateException("broken");
+            }
+        };
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            try {
+                memoizer.get("key", failing);
+                fail("exception expected");
+            } catch (IllegalStateException e) {
+                // then
+                assertEquals("broken", e.getMessage());
+            }
+        }
+        assertEquals(1, computations.get());
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 1.4.3
+ */
+public class PerformanceReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @Test
+    public void write_measuresBuild() throws Exception {
+        // given
+        File output = folder.newFolder("repository");
+        FileUtils.writeStringToFile(new File(output, "plugins/a_1.0.0.jar"), "0123456789", "UTF-8");
+        FileUtils.writeStringToFile(new File(output, "content.xml"), "01234", "UTF-8");
+        File report = new File(folder.getRoot(), "target/p2-perf.properties");
+        PerformanceReport performanceReport = PerformanceReport.start();
+
+        // when
+        performanceReport.write(report, output);
+
+        // then
+        Properties measurements = new Properties();
+        InputStream in = new FileInputStream(report);
+        try {
+            measurements.load(in);
+        } finally {
+            in.close();
+        }
+        assertEquals("15", measurements.getProperty(PerformanceReport.BYTES_WRITTEN));
+        assertTrue(Long.parseLong(measurements.getProperty(PerformanceReport.TIME)) >= 0);
+        assertTrue(Long.parseLong(measurements.getProperty(PerformanceReport.PEAK_HEAP)) > 0);
+        assertNotNull(measurements.getProperty(PerformanceReport.PEAK_RSS));
+    }
+
+    @Test
+    public void measure_missingOutput() {
+        // when
+        Properties measurements = PerformanceReport.start().measure(new File(folder.getRoot(), "missing"));
+
+        // then
+        assertEquals("0", measurements.getProperty(PerformanceReport.BYTES_WRITTEN));
+    }
+
+    @Test
+    public void peakResidentSetSize_positiveWhereAvailable() {
+        // when
+        long peak = PerformanceReport.peakResidentSetSize();
+
+        // then
+        assertTrue(peak == -1 || peak > 0);
+    }
+
+}
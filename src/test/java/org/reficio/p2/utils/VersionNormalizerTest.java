@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the equivalence with the regular expressions previously used by P2Helper on randomly generated versions.
+ *
+ * @since 1.4.3
+ */
+public class VersionNormalizerTest {
+
+    private static final String[] TOKENS = {"0", "00", "1", "7", "09", "10", "2014", "20140205", ".", ".", ".", "-",
+            "SNAPSHOT", "beta", "v", "_", "123456", "001"};
+    private static final int MAX_PADDING = 3;
+
+    @Before
+    public void setup() {
+        VersionNormalizer.clear();
+    }
+
+    @Test
+    public void normalize_examples() {
+        assertEquals("1.2.3", VersionNormalizer.normalize("01.002.3"));
+        assertEquals("0.0.0", VersionNormalizer.normalize("000.0.00"));
+        assertEquals("1.2.30-beta", VersionNormalizer.normalize("1.2.0030-beta"));
+        assertEquals("1.2.0", VersionNormalizer.normalize("1.2."));
+        assertEquals("1.0.0", VersionNormalizer.normalize("1"));
+        assertEquals("01.0.0", VersionNormalizer.normalize("01"));
+        assertEquals("v1", VersionNormalizer.normalize("v1"));
+    }
+
+    @Test
+    public void compare_examples() {
+        assertTrue(VersionNormalizer.compare("1.10.0", "1.9.0.v2014") > 0);
+        assertTrue(VersionNormalizer.compare("1.0.0.20140101", "1.0.0.20150101") < 0);
+        assertTrue(VersionNormalizer.compare("1.0.0.v1", "1.0.0") > 0);
+        assertEquals(0, VersionNormalizer.compare("1", "1.0.0"));
+    }
+
+    @Test
+    public void normalize_equivalentToLegacyImplementation() {
+        Random random = new Random(20140205L);
+        for (int i = 0; i < 100000; i++) {
+            String version = randomVersion(random);
+            assertEquals(version, legacyNormalize(version), VersionNormalizer.normalize(version));
+        }
+    }
+
+    @Test
+    public void isProperSnapshotVersion_equivalentToLegacyImplementation() {
+        Random random = new Random(20140205L);
+        for (int i = 0; i < 100000; i++) {
+            String version = randomVersion(random);
+            assertEquals(version, version.matches(".*[0-9\\.]{13,16}-[0-9]{3}"), VersionNormalizer.isProperSnapshotVersion(version));
+        }
+        assertTrue(VersionNormalizer.isProperSnapshotVersion("1.0.0-20140205.123456-001"));
+        assertFalse(VersionNormalizer.isProperSnapshotVersion("1.0.0-SNAPSHOT"));
+    }
+
+    private static String randomVersion(Random random) {
+        StringBuilder version = new StringBuilder();
+        int tokens = random.nextInt(8);
+        for (int i = 0; i < tokens; i++) {
+            version.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return version.toString();
+    }
+
+    /**
+     * The previous implementation, the padding loop never ended for versions that could not be padded,
+     * these versions are expected to be returned without padding now.
+     */
+    private static String legacyNormalize(String version) {
+        version = version.replaceFirst("^0*(\\d+)\\.0*(\\d+)\\.0*(\\d+)", "$1.$2.$3");
+        while (version.endsWith("."))
+            version = version.substring(0, version.length() - 1);
+        String unpadded = version;
+        Pattern pattern = Pattern.compile("^\\d+\\.\\d+\\.\\d+");
+        int padding = 0;
+        while (!pattern.matcher(version).find()) {
+            if (++padding > MAX_PADDING) {
+                return unpadded;
+            }
+            version += ".0";
+        }
+        return version;
+    }
+
+}
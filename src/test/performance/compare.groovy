@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// Compares the measurements of the performance suite (-Pperf) with the checked-in baseline and fails the build
+// on regressions, and if the baseline doesn't match the measurements. An empty baseline is recorded from the
+// measurements. Run with -Dp2.perf.updateBaseline=true to record a new baseline instead.
+//
+
+def setting = { String name ->
+    session.userProperties.getProperty(name) ?: project.properties.getProperty(name)
+}
+
+File baselineFile = new File(setting('p2.perf.baseline'))
+File projects = new File(project.build.directory, 'perf')
+boolean updateBaseline = Boolean.parseBoolean(setting('p2.perf.updateBaseline'))
+Map<String, Double> tolerances = [
+        'time.millis'    : setting('p2.perf.tolerance.time') as double,
+        'peak.rss.bytes' : setting('p2.perf.tolerance.memory') as double,
+        'peak.heap.bytes': setting('p2.perf.tolerance.memory') as double,
+        'bytes.written'  : setting('p2.perf.tolerance.bytes') as double
+]
+
+Properties baseline = new Properties()
+if (baselineFile.exists()) {
+    baselineFile.withInputStream { baseline.load(it) }
+}
+
+// measurements keyed by <project>.<metric>, the project being its path relative to the cloned projects
+Map<String, Long> measured = new TreeMap<String, Long>()
+projects.eachFileRecurse { File file ->
+    if (file.name == 'p2-perf.properties' && file.parentFile.name == 'target') {
+        String name = projects.toURI().relativize(file.parentFile.parentFile.toURI()).path.replaceAll('/$', '')
+        Properties report = new Properties()
+        file.withInputStream { report.load(it) }
+        tolerances.keySet().each { String metric ->
+            String value = report.getProperty(metric)
+            if (value != null) {
+                measured.put(name + '.' + metric, value as long)
+            }
+        }
+    }
+}
+if (measured.isEmpty()) {
+    throw new RuntimeException("p2-maven-plugin performance suite: no measurements found in " + projects)
+}
+
+if (!updateBaseline && baseline.isEmpty()) {
+    // a fresh checkout has nothing to compare with, the first run on the reference machine records the baseline
+    log.warn("The performance baseline " + baselineFile + " is empty, recording it from this run; " +
+            "commit it if this is the reference machine")
+    updateBaseline = true
+}
+
+if (updateBaseline) {
+    // keeps the header comments and writes the entries sorted, so that the baseline diffs well; the entries
+    // that are not measured anymore are dropped
+    List<String> header = baselineFile.exists() ? baselineFile.readLines().takeWhile { it.startsWith('#') || it.trim().isEmpty() } : []
+    baselineFile.withWriter('ISO-8859-1') { writer ->
+        header.each { writer.write(it + '\n') }
+        measured.each { String key, Long value -> writer.write(key + '=' + value + '\n') }
+    }
+    log.info("Performance baseline written to " + baselineFile)
+    return
+}
+
+List<String> regressions = []
+List<String> missing = []
+log.info(String.format('%-60s %15s %15s %9s', 'measurement', 'baseline', 'measured', 'change'))
+measured.each { String key, Long value ->
+    String metric = tolerances.keySet().find { key.endsWith('.' + it) }
+    String expected = baseline.getProperty(key)
+    if (value < 0) {
+        // the platform doesn't expose the metric
+        return
+    }
+    if (expected == null) {
+        missing << key
+        log.error(String.format('%-60s %15s %15d', key, 'missing', value))
+        return
+    }
+    long reference = expected as long
+    double change = reference > 0 ? (value - reference) / (double) reference : 0
+    String line = String.format('%-60s %15d %15d %+8.1f%%', key, reference, value, change * 100)
+    if (change > tolerances[metric]) {
+        regressions << String.format('%s: %d -> %d (%+.1f%%, tolerance %.0f%%)', key, reference, value,
+                change * 100, tolerances[metric] * 100)
+        log.error(line)
+    } else {
+        log.info(line)
+    }
+}
+
+// the baseline entries of the projects and metrics that are not measured anymore
+List<String> stale = baseline.stringPropertyNames().findAll { !measured.containsKey(it) }.sort()
+stale.each { String key -> log.error(String.format('%-60s %15s %15s', key, baseline.getProperty(key), 'missing')) }
+if (!missing.isEmpty() || !stale.isEmpty()) {
+    throw new RuntimeException("p2-maven-plugin performance suite: the baseline doesn't match the measurements, " +
+            "record it again with -Dp2.perf.updateBaseline=true" +
+            (missing ? "\n  not in the baseline: " + missing.join(", ") : "") +
+            (stale ? "\n  not measured: " + stale.join(", ") : ""))
+}
+
+if (!regressions.isEmpty()) {
+    throw new RuntimeException("p2-maven-plugin performance regressions:\n  " + regressions.join("\n  "))
+}